@@ -0,0 +1,351 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.scheduler.Device;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+
+// Audio processing unit registers at $4000-$4017. Channels are not clocked every CPU cycle; clock() and sync() only
+// move the current cycle and the channels catch up to it, event by event, on register accesses and reads of the output.
+public class Apu implements Memory, Device, Snapshottable {
+    public static final int CLOCK_RATE = 1_789_773;
+    public static final int SAMPLE_RATE = 48_000;
+
+    static final int[] LENGTHS = {
+            10, 254, 20, 2, 40, 4, 80, 6, 160, 8, 60, 10, 14, 12, 26, 14,
+            12, 16, 24, 18, 48, 20, 96, 22, 192, 24, 72, 26, 16, 28, 32, 30,
+    };
+
+    // Frame sequencer steps in CPU cycles after a $4017 write, for the 4 and 5 step sequences
+    private static final int[][] FRAME_STEPS = {{7457, 14913, 22371, 29829}, {7457, 14913, 22371, 37281}};
+    private static final int[] FRAME_PERIODS = {29830, 37282};
+    // Longest stretch of cycles synthesised into one buffer frame, about 2.3 ms of output
+    private static final int MAX_FRAME = 4096;
+    private static final float AMPLITUDE = 32767;
+    private static final float[] PULSE_MIX = new float[31];
+    private static final float[] TND_MIX = new float[203];
+
+    static {
+        for (int i = 1; i < PULSE_MIX.length; i++) {
+            PULSE_MIX[i] = (float) (95.52 / (8128.0 / i + 100)) * AMPLITUDE;
+        }
+        for (int i = 1; i < TND_MIX.length; i++) {
+            TND_MIX[i] = (float) (163.67 / (24329.0 / i + 100)) * AMPLITUDE;
+        }
+    }
+
+    private final Pulse pulse1 = new Pulse(true);
+    private final Pulse pulse2 = new Pulse(false);
+    private final Triangle triangle = new Triangle();
+    private final Noise noise = new Noise();
+    private final Dmc dmc;
+    private final int sampleRate;
+    // Allocated once audio is on, which a fork used for search may never have
+    private BlipBuffer blip;
+    private boolean audio;
+
+    private long cycle;
+    // Cycle the channels have been run up to
+    private long time;
+    private long frameStart;
+    private float level;
+
+    private int frameMode;
+    private boolean frameIrqInhibit;
+    private boolean frameIrq;
+    private int frameStep;
+    private long frameSequenceStart;
+    private long frameEvent = FRAME_STEPS[0][0];
+
+    public Apu(Memory bus, int sampleRate, boolean audio) {
+        this.dmc = new Dmc(bus);
+        this.sampleRate = sampleRate;
+        this.audio = audio;
+        if (audio) {
+            allocate();
+        }
+    }
+
+    public Apu(Memory bus, int sampleRate) {
+        this(bus, sampleRate, true);
+    }
+
+    public Apu(Memory bus) {
+        this(bus, SAMPLE_RATE);
+    }
+
+    // Advances one CPU cycle
+    public void clock() {
+        cycle++;
+    }
+
+    public long cycle() {
+        return cycle;
+    }
+
+    @Override
+    public void sync(long cycle) {
+        this.cycle = cycle;
+        run();
+    }
+
+    // The next frame or DMC interrupt
+    @Override
+    public long deadline() {
+        long deadline = dmc.irqDeadline();
+        if (frameMode == 0 && !frameIrqInhibit) {
+            deadline = Math.min(deadline, frameSequenceStart + FRAME_STEPS[0][3]);
+        }
+        return deadline;
+    }
+
+    @Override
+    public void save(ByteBuffer buffer) {
+        run();
+        buffer.putLong(cycle).putLong(time);
+        pulse1.save(buffer);
+        pulse2.save(buffer);
+        triangle.save(buffer);
+        noise.save(buffer);
+        dmc.save(buffer);
+        buffer.putInt(frameMode);
+        Snapshot.put(buffer, frameIrqInhibit);
+        Snapshot.put(buffer, frameIrq);
+        buffer.putInt(frameStep).putLong(frameSequenceStart).putLong(frameEvent);
+    }
+
+    // Output already synthesised stays in the buffer and the restored channels carry on from the current level, so
+    // jumping between snapshots does not click more than the change in the waveform itself. With audio off the silence
+    // since it was turned off is dropped instead, so frames run ahead and then restored leave no gap in the output.
+    @Override
+    public void restore(ByteBuffer buffer) {
+        if (audio) {
+            endFrame();
+        }
+        cycle = buffer.getLong();
+        time = buffer.getLong();
+        frameStart = time;
+        pulse1.restore(buffer);
+        pulse2.restore(buffer);
+        triangle.restore(buffer);
+        noise.restore(buffer);
+        dmc.restore(buffer);
+        frameMode = buffer.getInt();
+        frameIrqInhibit = Snapshot.getBoolean(buffer);
+        frameIrq = Snapshot.getBoolean(buffer);
+        frameStep = buffer.getInt();
+        frameSequenceStart = buffer.getLong();
+        frameEvent = buffer.getLong();
+    }
+
+    // Turns synthesis off or on. Channels, length counters and interrupts keep running either way.
+    public void audio(boolean audio) {
+        if (audio != this.audio) {
+            // Output up to here keeps the old setting
+            run();
+            endFrame();
+        }
+        if (audio) {
+            allocate();
+        }
+        this.audio = audio;
+    }
+
+    public boolean audio() {
+        return audio;
+    }
+
+    public boolean irq() {
+        run();
+        return frameIrq || dmc.irq;
+    }
+
+    // Number of DMC sample bytes read from the bus, each of which stalls the CPU on hardware
+    public long dmcFetches() {
+        return dmc.fetches;
+    }
+
+    public int available() {
+        run();
+        endFrame();
+        return blip != null ? blip.available() : 0;
+    }
+
+    // Reads up to length samples of output, returning the number read
+    public int read(short[] samples, int offset, int length) {
+        return available() > 0 ? blip.read(samples, offset, length) : 0;
+    }
+
+    private void allocate() {
+        if (blip == null) {
+            // Room for a quarter of a second of output between reads
+            blip = new BlipBuffer(CLOCK_RATE, sampleRate, sampleRate / 4);
+        }
+    }
+
+    // Makes the output up to the current time available to read
+    private void endFrame() {
+        if (blip != null) {
+            blip.endFrame(time - frameStart);
+        }
+        frameStart = time;
+    }
+
+    @Override
+    public byte load(short address) {
+        if ((address & 0xFFFF) != 0x4015) {
+            return 0;
+        }
+        run();
+        int status = (pulse1.length > 0 ? 0x01 : 0)
+                | (pulse2.length > 0 ? 0x02 : 0)
+                | (triangle.length > 0 ? 0x04 : 0)
+                | (noise.length > 0 ? 0x08 : 0)
+                | (dmc.remaining > 0 ? 0x10 : 0)
+                | (frameIrq ? 0x40 : 0)
+                | (dmc.irq ? 0x80 : 0);
+        frameIrq = false;
+        return (byte) status;
+    }
+
+    @Override
+    public void store(short address, byte value) {
+        int register = address & 0xFFFF;
+        if (register < 0x4000 || register > 0x4017) {
+            return;
+        }
+        run();
+        int data = value & 0xFF;
+        switch (register) {
+            case 0x4000, 0x4001, 0x4002, 0x4003 -> pulse1.write(register & 0x03, data);
+            case 0x4004, 0x4005, 0x4006, 0x4007 -> pulse2.write(register & 0x03, data);
+            case 0x4008, 0x4009, 0x400A, 0x400B -> triangle.write(register & 0x03, data);
+            case 0x400C, 0x400D, 0x400E, 0x400F -> noise.write(register & 0x03, data);
+            case 0x4010, 0x4011, 0x4012, 0x4013 -> dmc.write(register & 0x03, data);
+            case 0x4015 -> {
+                pulse1.enabled = (data & 0x01) != 0;
+                pulse2.enabled = (data & 0x02) != 0;
+                triangle.enabled = (data & 0x04) != 0;
+                noise.enabled = (data & 0x08) != 0;
+                pulse1.length = pulse1.enabled ? pulse1.length : 0;
+                pulse2.length = pulse2.enabled ? pulse2.length : 0;
+                triangle.length = triangle.enabled ? triangle.length : 0;
+                noise.length = noise.enabled ? noise.length : 0;
+                dmc.irq = false;
+                dmc.enable((data & 0x10) != 0);
+            }
+            case 0x4017 -> {
+                frameMode = (data & 0x80) != 0 ? 1 : 0;
+                frameIrqInhibit = (data & 0x40) != 0;
+                if (frameIrqInhibit) {
+                    frameIrq = false;
+                }
+                frameStep = 0;
+                frameSequenceStart = time;
+                frameEvent = time + FRAME_STEPS[frameMode][0];
+                if (frameMode == 1) {
+                    quarterFrame();
+                    halfFrame();
+                }
+            }
+        }
+        schedule();
+        mix();
+    }
+
+    // Runs the channels up to the current cycle, one timer or frame sequencer event at a time
+    private void run() {
+        while (time < cycle) {
+            long target = Math.min(cycle, frameStart + MAX_FRAME);
+            while (time < target) {
+                long next = Math.min(Math.min(target, frameEvent), Math.min(pulse1.next, pulse2.next));
+                next = Math.min(next, Math.min(Math.min(triangle.next, noise.next), dmc.next));
+                time = next;
+                if (pulse1.next == time) {
+                    pulse1.clock();
+                }
+                if (pulse2.next == time) {
+                    pulse2.clock();
+                }
+                if (triangle.next == time) {
+                    triangle.clock();
+                }
+                if (noise.next == time) {
+                    noise.clock();
+                }
+                if (dmc.next == time) {
+                    dmc.clock();
+                }
+                if (frameEvent == time) {
+                    frameSequencer();
+                }
+                mix();
+            }
+            if (time - frameStart == MAX_FRAME) {
+                endFrame();
+                // Nobody is reading, keep the most recent output
+                int excess = blip != null ? blip.available() - blip.capacity() / 2 : 0;
+                if (excess > 0) {
+                    blip.skip(excess);
+                }
+            }
+        }
+    }
+
+    private void frameSequencer() {
+        int step = frameStep;
+        if (step == 1 || step == 3) {
+            halfFrame();
+        }
+        quarterFrame();
+        if (frameMode == 0 && step == 3 && !frameIrqInhibit) {
+            frameIrq = true;
+        }
+        if (step == 3) {
+            frameStep = 0;
+            frameSequenceStart += FRAME_PERIODS[frameMode];
+        }
+        else {
+            frameStep++;
+        }
+        frameEvent = frameSequenceStart + FRAME_STEPS[frameMode][frameStep];
+        schedule();
+    }
+
+    // Silent channels stop their timers, so an idle APU costs only frame sequencer events
+    private void schedule() {
+        pulse1.schedule(time);
+        pulse2.schedule(time);
+        triangle.schedule(time);
+        noise.schedule(time);
+    }
+
+    private void quarterFrame() {
+        pulse1.quarterFrame();
+        pulse2.quarterFrame();
+        triangle.quarterFrame();
+        noise.quarterFrame();
+    }
+
+    private void halfFrame() {
+        pulse1.halfFrame();
+        pulse2.halfFrame();
+        triangle.halfFrame();
+        noise.halfFrame();
+    }
+
+    // Mixes the channels with the non-linear DAC approximation and records any change of level
+    private void mix() {
+        if (!audio) {
+            return;
+        }
+        float mixed = PULSE_MIX[pulse1.output() + pulse2.output()]
+                + TND_MIX[3 * triangle.output() + 2 * noise.output() + dmc.output()];
+        if (mixed != level) {
+            blip.addDelta(time - frameStart, mixed - level);
+            level = mixed;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.experiments.nes.apu;
+
+// Band-limited step synthesis. Amplitude changes at clock times are added to a ring of output-rate samples as
+// windowed-sinc impulses, picked from a polyphase table by the sub-sample phase of the change. Reading integrates the
+// impulses back into band-limited steps, so resampling costs a fixed number of taps per change and nothing per clock.
+class BlipBuffer {
+    static final int PHASE_BITS = 6;
+    static final int PHASES = 1 << PHASE_BITS;
+    static final int HALF_WIDTH = 8;
+    static final int WIDTH = HALF_WIDTH * 2;
+    // Fraction of the output Nyquist frequency passed by the filter
+    private static final double CUTOFF = 0.9;
+    // Pole of the DC-removing high-pass filter applied to the output
+    private static final float HIGH_PASS = 0.999f;
+    private static final float[][] KERNEL = kernel();
+
+    private final float[] buffer;
+    private final int mask;
+    // Output samples per clock and position of the current frame's start relative to the read position, in 32.32
+    // fixed point
+    private final long factor;
+    private long offset;
+    private int read;
+    private float sum;
+    private float lastInput;
+    private float lastOutput;
+
+    BlipBuffer(int clockRate, int sampleRate, int capacity) {
+        this.buffer = new float[Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = buffer.length - 1;
+        this.factor = Math.round((double) sampleRate * (1L << 32) / clockRate);
+    }
+
+    int capacity() {
+        return buffer.length - WIDTH;
+    }
+
+    // Adds a change of amplitude at a clock relative to the start of the current frame
+    void addDelta(long clock, float delta) {
+        long position = clock * factor + offset;
+        int index = read + (int) (position >>> 32);
+        float[] kernel = KERNEL[(int) (position >>> (32 - PHASE_BITS)) & (PHASES - 1)];
+        for (int tap = 0; tap < WIDTH; tap++) {
+            buffer[(index + tap) & mask] += kernel[tap] * delta;
+        }
+    }
+
+    // Ends the current frame after the given number of clocks, making the samples before it available
+    void endFrame(long clocks) {
+        offset += clocks * factor;
+        if (available() > capacity()) {
+            throw new IllegalStateException("Audio buffer overrun");
+        }
+    }
+
+    int available() {
+        return (int) (offset >>> 32);
+    }
+
+    int read(short[] samples, int start, int length) {
+        int count = Math.min(length, available());
+        for (int i = 0; i < count; i++) {
+            float sample = next();
+            samples[start + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+        }
+        offset -= (long) count << 32;
+        return count;
+    }
+
+    // Drops the oldest samples, keeping the integrator in step so later samples are unaffected
+    void skip(int length) {
+        int count = Math.min(length, available());
+        for (int i = 0; i < count; i++) {
+            next();
+        }
+        offset -= (long) count << 32;
+    }
+
+    private float next() {
+        sum += buffer[read];
+        buffer[read] = 0;
+        read = (read + 1) & mask;
+        lastOutput = sum - lastInput + HIGH_PASS * lastOutput;
+        lastInput = sum;
+        return lastOutput;
+    }
+
+    // Blackman-windowed sinc impulses for each phase, each normalised to unit gain so steps settle exactly
+    private static float[][] kernel() {
+        float[][] kernel = new float[PHASES][WIDTH];
+        for (int phase = 0; phase < PHASES; phase++) {
+            double total = 0;
+            double[] taps = new double[WIDTH];
+            for (int tap = 0; tap < WIDTH; tap++) {
+                double t = tap - HALF_WIDTH + 1 - (double) phase / PHASES;
+                double x = Math.PI * CUTOFF * t;
+                double sinc = x == 0 ? 1 : Math.sin(x) / x;
+                double w = Math.PI * (t + HALF_WIDTH) / HALF_WIDTH;
+                double window = 0.42 - 0.5 * Math.cos(w) + 0.08 * Math.cos(2 * w);
+                taps[tap] = sinc * window;
+                total += taps[tap];
+            }
+            for (int tap = 0; tap < WIDTH; tap++) {
+                kernel[phase][tap] = (float) (taps[tap] / total);
+            }
+        }
+        return kernel;
+    }
+}
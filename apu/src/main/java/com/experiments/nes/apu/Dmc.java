@@ -0,0 +1,157 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+// Delta modulation channel, fetching 1-bit delta samples from CPU memory
+class Dmc {
+    private static final int[] RATES = {428, 380, 340, 320, 286, 254, 226, 214, 190, 160, 142, 128, 106, 84, 72, 54};
+
+    private final Memory bus;
+    private boolean irqEnabled;
+    private boolean loop;
+    private int rate = RATES[0];
+    private int level;
+    private int sampleAddress = 0xC000;
+    private int sampleLength = 1;
+    private int address;
+    int remaining;
+    private int buffer;
+    private boolean bufferEmpty = true;
+    private int shift;
+    private int bits = 8;
+    private boolean silence = true;
+    boolean irq;
+    long next = RATES[0];
+    long fetches;
+
+    Dmc(Memory bus) {
+        this.bus = bus;
+    }
+
+    void write(int register, int value) {
+        switch (register) {
+            case 0 -> {
+                irqEnabled = (value & 0x80) != 0;
+                loop = (value & 0x40) != 0;
+                rate = RATES[value & 0x0F];
+                if (!irqEnabled) {
+                    irq = false;
+                }
+            }
+            case 1 -> level = value & 0x7F;
+            case 2 -> sampleAddress = 0xC000 | value << 6;
+            case 3 -> sampleLength = value << 4 | 1;
+        }
+    }
+
+    void enable(boolean enabled) {
+        if (!enabled) {
+            remaining = 0;
+        }
+        else if (remaining == 0) {
+            restart();
+            fetch();
+        }
+    }
+
+    void clock() {
+        if (!silence) {
+            if ((shift & 0x01) != 0) {
+                if (level <= 125) {
+                    level += 2;
+                }
+            }
+            else if (level >= 2) {
+                level -= 2;
+            }
+        }
+        shift >>= 1;
+        if (--bits == 0) {
+            bits = 8;
+            silence = bufferEmpty;
+            if (!bufferEmpty) {
+                shift = buffer;
+                bufferEmpty = true;
+                fetch();
+            }
+        }
+        next += rate;
+    }
+
+    // Cycle of the fetch of the last sample byte, which raises the interrupt
+    long irqDeadline() {
+        if (!irqEnabled || loop || remaining == 0) {
+            return Long.MAX_VALUE;
+        }
+        // Bytes are fetched as the shift register reloads, every eight output clocks
+        return next + (bits - 1L) * rate + (remaining - 1L) * 8 * rate;
+    }
+
+    int output() {
+        return level;
+    }
+
+    private void restart() {
+        address = sampleAddress;
+        remaining = sampleLength;
+    }
+
+    private void fetch() {
+        if (!bufferEmpty || remaining == 0) {
+            return;
+        }
+        buffer = bus.load((short) address) & 0xFF;
+        bufferEmpty = false;
+        fetches++;
+        address = address == 0xFFFF ? 0x8000 : address + 1;
+        if (--remaining == 0) {
+            if (loop) {
+                restart();
+            }
+            else if (irqEnabled) {
+                irq = true;
+            }
+        }
+    }
+
+    void save(ByteBuffer buffer) {
+        Snapshot.put(buffer, irqEnabled);
+        Snapshot.put(buffer, loop);
+        buffer.putInt(rate);
+        buffer.putInt(level);
+        buffer.putInt(sampleAddress);
+        buffer.putInt(sampleLength);
+        buffer.putInt(address);
+        buffer.putInt(remaining);
+        buffer.putInt(this.buffer);
+        Snapshot.put(buffer, bufferEmpty);
+        buffer.putInt(shift);
+        buffer.putInt(bits);
+        Snapshot.put(buffer, silence);
+        Snapshot.put(buffer, irq);
+        buffer.putLong(next);
+        buffer.putLong(fetches);
+    }
+
+    void restore(ByteBuffer buffer) {
+        irqEnabled = Snapshot.getBoolean(buffer);
+        loop = Snapshot.getBoolean(buffer);
+        rate = buffer.getInt();
+        level = buffer.getInt();
+        sampleAddress = buffer.getInt();
+        sampleLength = buffer.getInt();
+        address = buffer.getInt();
+        remaining = buffer.getInt();
+        this.buffer = buffer.getInt();
+        bufferEmpty = Snapshot.getBoolean(buffer);
+        shift = buffer.getInt();
+        bits = buffer.getInt();
+        silence = Snapshot.getBoolean(buffer);
+        irq = Snapshot.getBoolean(buffer);
+        next = buffer.getLong();
+        fetches = buffer.getLong();
+    }
+}
@@ -0,0 +1,67 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+// Volume envelope shared by the pulse and noise channels, also holding the length counter halt flag it shares a bit with
+class Envelope {
+    boolean loop;
+    private boolean constant;
+    private int period;
+    private boolean start;
+    private int divider;
+    private int decay;
+
+    void write(int value) {
+        loop = (value & 0x20) != 0;
+        constant = (value & 0x10) != 0;
+        period = value & 0x0F;
+    }
+
+    void restart() {
+        start = true;
+    }
+
+    void quarterFrame() {
+        if (start) {
+            start = false;
+            decay = 15;
+            divider = period;
+        }
+        else if (divider == 0) {
+            divider = period;
+            if (decay > 0) {
+                decay--;
+            }
+            else if (loop) {
+                decay = 15;
+            }
+        }
+        else {
+            divider--;
+        }
+    }
+
+    int volume() {
+        return constant ? period : decay;
+    }
+
+    void save(ByteBuffer buffer) {
+        Snapshot.put(buffer, loop);
+        Snapshot.put(buffer, constant);
+        buffer.putInt(period);
+        Snapshot.put(buffer, start);
+        buffer.putInt(divider);
+        buffer.putInt(decay);
+    }
+
+    void restore(ByteBuffer buffer) {
+        loop = Snapshot.getBoolean(buffer);
+        constant = Snapshot.getBoolean(buffer);
+        period = buffer.getInt();
+        start = Snapshot.getBoolean(buffer);
+        divider = buffer.getInt();
+        decay = buffer.getInt();
+    }
+}
@@ -0,0 +1,82 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+class Noise {
+    private static final int[] PERIODS = {4, 8, 16, 32, 64, 96, 128, 160, 202, 254, 380, 508, 762, 1016, 2034, 4068};
+
+    private final Envelope envelope = new Envelope();
+    private boolean mode;
+    private int period = PERIODS[0];
+    private int shift = 1;
+    boolean enabled;
+    int length;
+    long next = Long.MAX_VALUE;
+
+    void write(int register, int value) {
+        switch (register) {
+            case 0 -> envelope.write(value);
+            case 2 -> {
+                mode = (value & 0x80) != 0;
+                period = PERIODS[value & 0x0F];
+            }
+            case 3 -> {
+                if (enabled) {
+                    length = Apu.LENGTHS[value >> 3];
+                }
+                envelope.restart();
+            }
+        }
+    }
+
+    void clock() {
+        int feedback = (shift ^ (shift >> (mode ? 6 : 1))) & 0x01;
+        shift = shift >> 1 | feedback << 14;
+        next += period;
+    }
+
+    void schedule(long time) {
+        if (length == 0) {
+            next = Long.MAX_VALUE;
+        }
+        else if (next == Long.MAX_VALUE) {
+            next = time + period;
+        }
+    }
+
+    void quarterFrame() {
+        envelope.quarterFrame();
+    }
+
+    void halfFrame() {
+        if (!envelope.loop && length > 0) {
+            length--;
+        }
+    }
+
+    int output() {
+        return length == 0 || (shift & 0x01) != 0 ? 0 : envelope.volume();
+    }
+
+    void save(ByteBuffer buffer) {
+        envelope.save(buffer);
+        Snapshot.put(buffer, mode);
+        buffer.putInt(period);
+        buffer.putInt(shift);
+        Snapshot.put(buffer, enabled);
+        buffer.putInt(length);
+        buffer.putLong(next);
+    }
+
+    void restore(ByteBuffer buffer) {
+        envelope.restore(buffer);
+        mode = Snapshot.getBoolean(buffer);
+        period = buffer.getInt();
+        shift = buffer.getInt();
+        enabled = Snapshot.getBoolean(buffer);
+        length = buffer.getInt();
+        next = buffer.getLong();
+    }
+}
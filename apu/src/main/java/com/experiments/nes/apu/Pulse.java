@@ -0,0 +1,143 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+class Pulse {
+    private static final int[][] DUTY = {
+            {0, 1, 0, 0, 0, 0, 0, 0},
+            {0, 1, 1, 0, 0, 0, 0, 0},
+            {0, 1, 1, 1, 1, 0, 0, 0},
+            {1, 0, 0, 1, 1, 1, 1, 1},
+    };
+
+    // Pulse 1 negates the sweep change with ones' complement, pulse 2 with two's complement
+    private final int negateOffset;
+    private final Envelope envelope = new Envelope();
+    private int duty;
+    private int step;
+    private int period;
+    private boolean sweepEnabled;
+    private int sweepPeriod;
+    private boolean sweepNegate;
+    private int sweepShift;
+    private int sweepDivider;
+    private boolean sweepReload;
+    boolean enabled;
+    int length;
+    long next = Long.MAX_VALUE;
+
+    Pulse(boolean first) {
+        this.negateOffset = first ? 1 : 0;
+    }
+
+    void write(int register, int value) {
+        switch (register) {
+            case 0 -> {
+                duty = value >> 6;
+                envelope.write(value);
+            }
+            case 1 -> {
+                sweepEnabled = (value & 0x80) != 0;
+                sweepPeriod = (value >> 4) & 0x07;
+                sweepNegate = (value & 0x08) != 0;
+                sweepShift = value & 0x07;
+                sweepReload = true;
+            }
+            case 2 -> period = (period & 0x700) | value;
+            case 3 -> {
+                period = (period & 0xFF) | (value & 0x07) << 8;
+                if (enabled) {
+                    length = Apu.LENGTHS[value >> 3];
+                }
+                step = 0;
+                envelope.restart();
+            }
+        }
+    }
+
+    // The sequencer is clocked every other CPU cycle
+    void clock() {
+        step = (step + 1) & 0x07;
+        next += 2L * (period + 1);
+    }
+
+    void schedule(long time) {
+        boolean running = length > 0 && period >= 8;
+        if (!running) {
+            next = Long.MAX_VALUE;
+        }
+        else if (next == Long.MAX_VALUE) {
+            next = time + 2L * (period + 1);
+        }
+    }
+
+    void quarterFrame() {
+        envelope.quarterFrame();
+    }
+
+    void halfFrame() {
+        if (!envelope.loop && length > 0) {
+            length--;
+        }
+        if (sweepDivider == 0 && sweepEnabled && sweepShift > 0 && !muted()) {
+            period = target();
+        }
+        if (sweepDivider == 0 || sweepReload) {
+            sweepDivider = sweepPeriod;
+            sweepReload = false;
+        }
+        else {
+            sweepDivider--;
+        }
+    }
+
+    int output() {
+        if (length == 0 || muted() || DUTY[duty][step] == 0) {
+            return 0;
+        }
+        return envelope.volume();
+    }
+
+    private boolean muted() {
+        return period < 8 || target() > 0x7FF;
+    }
+
+    private int target() {
+        int change = period >> sweepShift;
+        return sweepNegate ? period - change - negateOffset : period + change;
+    }
+
+    void save(ByteBuffer buffer) {
+        envelope.save(buffer);
+        buffer.putInt(duty);
+        buffer.putInt(step);
+        buffer.putInt(period);
+        Snapshot.put(buffer, sweepEnabled);
+        buffer.putInt(sweepPeriod);
+        Snapshot.put(buffer, sweepNegate);
+        buffer.putInt(sweepShift);
+        buffer.putInt(sweepDivider);
+        Snapshot.put(buffer, sweepReload);
+        Snapshot.put(buffer, enabled);
+        buffer.putInt(length);
+        buffer.putLong(next);
+    }
+
+    void restore(ByteBuffer buffer) {
+        envelope.restore(buffer);
+        duty = buffer.getInt();
+        step = buffer.getInt();
+        period = buffer.getInt();
+        sweepEnabled = Snapshot.getBoolean(buffer);
+        sweepPeriod = buffer.getInt();
+        sweepNegate = Snapshot.getBoolean(buffer);
+        sweepShift = buffer.getInt();
+        sweepDivider = buffer.getInt();
+        sweepReload = Snapshot.getBoolean(buffer);
+        enabled = Snapshot.getBoolean(buffer);
+        length = buffer.getInt();
+        next = buffer.getLong();
+    }
+}
@@ -0,0 +1,96 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+class Triangle {
+    private boolean control;
+    private int linearPeriod;
+    private int linear;
+    private boolean linearReload;
+    private int period;
+    private int step;
+    boolean enabled;
+    int length;
+    long next = Long.MAX_VALUE;
+
+    void write(int register, int value) {
+        switch (register) {
+            case 0 -> {
+                control = (value & 0x80) != 0;
+                linearPeriod = value & 0x7F;
+            }
+            case 2 -> period = (period & 0x700) | value;
+            case 3 -> {
+                period = (period & 0xFF) | (value & 0x07) << 8;
+                if (enabled) {
+                    length = Apu.LENGTHS[value >> 3];
+                }
+                linearReload = true;
+            }
+        }
+    }
+
+    void clock() {
+        step = (step + 1) & 0x1F;
+        next += period + 1;
+    }
+
+    void schedule(long time) {
+        // Ultrasonic periods are held rather than played, as most emulators do, to avoid aliasing
+        boolean running = length > 0 && linear > 0 && period >= 2;
+        if (!running) {
+            next = Long.MAX_VALUE;
+        }
+        else if (next == Long.MAX_VALUE) {
+            next = time + period + 1;
+        }
+    }
+
+    void quarterFrame() {
+        if (linearReload) {
+            linear = linearPeriod;
+        }
+        else if (linear > 0) {
+            linear--;
+        }
+        if (!control) {
+            linearReload = false;
+        }
+    }
+
+    void halfFrame() {
+        if (!control && length > 0) {
+            length--;
+        }
+    }
+
+    int output() {
+        return step < 16 ? 15 - step : step - 16;
+    }
+
+    void save(ByteBuffer buffer) {
+        Snapshot.put(buffer, control);
+        buffer.putInt(linearPeriod);
+        buffer.putInt(linear);
+        Snapshot.put(buffer, linearReload);
+        buffer.putInt(period);
+        buffer.putInt(step);
+        Snapshot.put(buffer, enabled);
+        buffer.putInt(length);
+        buffer.putLong(next);
+    }
+
+    void restore(ByteBuffer buffer) {
+        control = Snapshot.getBoolean(buffer);
+        linearPeriod = buffer.getInt();
+        linear = buffer.getInt();
+        linearReload = Snapshot.getBoolean(buffer);
+        period = buffer.getInt();
+        step = buffer.getInt();
+        enabled = Snapshot.getBoolean(buffer);
+        length = buffer.getInt();
+        next = buffer.getLong();
+    }
+}
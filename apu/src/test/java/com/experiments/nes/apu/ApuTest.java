@@ -0,0 +1,216 @@
+package com.experiments.nes.apu;
+
+import com.experiments.nes.cpu.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApuTest {
+    private SampleMemory memory;
+    private Apu apu;
+
+    @BeforeEach
+    void setup() {
+        memory = new SampleMemory();
+        apu = new Apu(memory);
+    }
+
+    @Test
+    void testLengthCounter() {
+        write(0x4015, 0x01);
+        // Length index 0 loads 10, counted down twice per frame
+        write(0x4003, 0x00);
+        assertEquals(0x01, status() & 0x01);
+
+        run(4 * 29830);
+        assertEquals(0x01, status() & 0x01);
+        run(29830);
+        assertEquals(0, status() & 0x01);
+    }
+
+    @Test
+    void testLengthCounterIgnoredWhenDisabled() {
+        write(0x400F, 0x00);
+
+        assertEquals(0, status() & 0x08);
+    }
+
+    @Test
+    void testFrameIrq() {
+        run(29828);
+        assertFalse(apu.irq());
+        run(1);
+        assertTrue(apu.irq());
+
+        assertEquals(0x40, status() & 0x40);
+        assertFalse(apu.irq());
+    }
+
+    @Test
+    void testFrameIrqDeadline() {
+        assertEquals(29829, apu.deadline());
+        apu.sync(29828);
+        assertFalse(apu.irq());
+        apu.sync(29829);
+        assertTrue(apu.irq());
+        assertEquals(29830 + 29829, apu.deadline());
+
+        write(0x4017, 0x40);
+        assertEquals(Long.MAX_VALUE, apu.deadline());
+    }
+
+    @Test
+    void testDmcIrqDeadline() {
+        write(0x4017, 0x40);
+        // IRQ enabled, rate 54, 17 byte sample
+        write(0x4010, 0x8F);
+        write(0x4013, 0x01);
+        write(0x4015, 0x10);
+        apu.sync(1000);
+
+        long deadline = apu.deadline();
+        apu.sync(deadline - 1);
+        assertFalse(apu.irq());
+        apu.sync(deadline);
+        assertTrue(apu.irq());
+        assertEquals(17, apu.dmcFetches());
+    }
+
+    @Test
+    void testFrameIrqInhibit() {
+        write(0x4017, 0x40);
+        run(2 * 29830);
+
+        assertFalse(apu.irq());
+    }
+
+    @Test
+    void testFiveStepSequence() {
+        write(0x4015, 0x01);
+        write(0x4003, 0x00);
+        // Selecting the 5 step sequence clocks a half frame immediately
+        write(0x4017, 0x80);
+        run(4 * 37282);
+        assertEquals(0x01, status() & 0x01);
+        run(37282);
+        assertEquals(0, status() & 0x01);
+        assertFalse(apu.irq());
+    }
+
+    @Test
+    void testDmc() {
+        // IRQ enabled, fastest rate, one byte sample at $C000
+        write(0x4010, 0x8F);
+        write(0x4012, 0x00);
+        write(0x4013, 0x00);
+        write(0x4015, 0x10);
+
+        assertEquals(1, apu.dmcFetches());
+        assertEquals(0xC000, memory.lastAddress);
+        assertTrue(apu.irq());
+        assertEquals(0x80, status() & 0x90);
+
+        write(0x4015, 0x00);
+        assertFalse(apu.irq());
+    }
+
+    @Test
+    void testPulseFrequency() {
+        write(0x4015, 0x01);
+        // 50% duty, constant volume 15, period 253 for 440.4 Hz
+        write(0x4000, 0xBF);
+        write(0x4002, 253);
+        write(0x4003, 0x08);
+        write(0x4017, 0x40);
+
+        short[] samples = new short[Apu.SAMPLE_RATE];
+        int read = 0;
+        for (int i = 0; i < 100; i++) {
+            run(Apu.CLOCK_RATE / 100);
+            read += apu.read(samples, read, samples.length - read);
+        }
+
+        assertTrue(read >= Apu.SAMPLE_RATE - 20);
+        // Skip the first tenth of a second, while the DC filter centres the wave on zero
+        int crossings = 0;
+        for (int i = Apu.SAMPLE_RATE / 10; i < Apu.SAMPLE_RATE - 20; i++) {
+            if (samples[i - 1] < 0 && samples[i] >= 0) {
+                crossings++;
+            }
+        }
+        assertEquals(396, crossings, 2);
+    }
+
+    @Test
+    void testAudioOff() {
+        apu.audio(false);
+        write(0x4015, 0x01);
+        write(0x4000, 0xBF);
+        write(0x4002, 253);
+        write(0x4003, 0x08);
+
+        short[] samples = new short[1000];
+        run(Apu.CLOCK_RATE / 50);
+        int read = apu.read(samples, 0, samples.length);
+
+        assertEquals(960, read, 1);
+        for (int i = 0; i < read; i++) {
+            assertEquals(0, samples[i]);
+        }
+    }
+
+    @Test
+    void testRestoreWithAudioOffDropsSilence() {
+        run(Apu.CLOCK_RATE / 50);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        apu.save(buffer);
+
+        // As when running ahead: frames without audio, then back to the saved state
+        apu.audio(false);
+        run(Apu.CLOCK_RATE / 50);
+        apu.restore(buffer.flip());
+        apu.audio(true);
+
+        assertEquals(960, apu.available(), 1);
+    }
+
+    @Test
+    void testUnreadOutputIsDropped() {
+        run(Apu.CLOCK_RATE);
+
+        assertTrue(apu.available() <= Apu.SAMPLE_RATE / 4);
+    }
+
+    private void run(int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            apu.clock();
+        }
+    }
+
+    private int status() {
+        return apu.load((short) 0x4015) & 0xFF;
+    }
+
+    private void write(int address, int value) {
+        apu.store((short) address, (byte) value);
+    }
+
+    static class SampleMemory implements Memory {
+        int lastAddress;
+
+        @Override
+        public byte load(short address) {
+            lastAddress = address & 0xFFFF;
+            return (byte) 0xFF;
+        }
+
+        @Override
+        public void store(short address, byte value) {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.experiments.nes.apu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlipBufferTest {
+    @Test
+    void testSampleCount() {
+        BlipBuffer blip = new BlipBuffer(Apu.CLOCK_RATE, Apu.SAMPLE_RATE, Apu.SAMPLE_RATE);
+        int total = 0;
+        short[] samples = new short[1000];
+        for (int frame = 0; frame < 60; frame++) {
+            blip.endFrame(Apu.CLOCK_RATE / 60);
+            total += blip.read(samples, 0, samples.length);
+        }
+
+        assertEquals(Apu.SAMPLE_RATE, total, 1);
+    }
+
+    @Test
+    void testStep() {
+        BlipBuffer blip = new BlipBuffer(Apu.CLOCK_RATE, Apu.SAMPLE_RATE, 1024);
+        blip.addDelta(100, 10000);
+        blip.endFrame(1000);
+
+        short[] samples = new short[blip.available()];
+        blip.read(samples, 0, samples.length);
+
+        // The step lands HALF_WIDTH samples late, rings briefly and then decays slowly through the DC filter
+        int step = (int) (100L * Apu.SAMPLE_RATE / Apu.CLOCK_RATE) + BlipBuffer.HALF_WIDTH;
+        assertEquals(0, samples[step - BlipBuffer.HALF_WIDTH]);
+        assertEquals(10000, samples[step + BlipBuffer.HALF_WIDTH], 100);
+        for (int i = 0; i < samples.length; i++) {
+            assertTrue(samples[i] <= 10000 * 1.1);
+        }
+    }
+
+    @Test
+    void testSkip() {
+        BlipBuffer blip = new BlipBuffer(Apu.CLOCK_RATE, Apu.SAMPLE_RATE, 1024);
+        blip.addDelta(0, 5000);
+        blip.endFrame(2000);
+        int available = blip.available();
+
+        blip.skip(10);
+
+        short[] samples = new short[1];
+        assertEquals(available - 10, blip.available());
+        blip.read(samples, 0, 1);
+        assertEquals(5000, samples[0], 100);
+    }
+}
@@ -0,0 +1,95 @@
+package com.experiments.nes.benchmarks;
+
+import com.experiments.nes.cpu.BatchCpu;
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One frame's worth of CPU cycles on a population of instances running the same loop on different data, batched
+// against one cycle-level Cpu per instance
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchCpuBenchmark {
+    private static final int FRAME_CYCLES = 29781;
+    private static final int[] PROGRAM = {
+            0xA5, 0x10,       // $0200 LDA $10
+            0x65, 0x11,       // $0202 ADC $11
+            0x85, 0x10,       // $0204 STA $10
+            0xA6, 0x10,       // $0206 LDX $10
+            0xB5, 0x20,       // $0208 LDA $20,X
+            0x2A,             // $020A ROL A
+            0x9D, 0x00, 0x03, // $020B STA $0300,X
+            0xE6, 0x11,       // $020E INC $11
+            0x4C, 0x00, 0x02, // $0210 JMP $0200
+    };
+
+    @Param({"64"})
+    private int lanes;
+
+    private BatchCpu batch;
+    private Cpu[] cpus;
+
+    @Setup
+    public void setup() {
+        Memory[] batchMemories = new Memory[lanes];
+        cpus = new Cpu[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            batchMemories[lane] = memory(lane);
+            cpus[lane] = new Cpu(memory(lane));
+            cpus[lane].pc(0x0200);
+        }
+        batch = new BatchCpu(batchMemories);
+        for (int lane = 0; lane < lanes; lane++) {
+            batch.pc(lane, 0x0200);
+        }
+    }
+
+    private static Memory memory(int lane) {
+        byte[] memory = new byte[0x10000];
+        for (int i = 0; i < PROGRAM.length; i++) {
+            memory[0x0200 + i] = (byte) PROGRAM[i];
+        }
+        memory[0x11] = (byte) (lane * 7 + 1);
+        return new Memory() {
+            @Override
+            public byte load(short address) {
+                return memory[address & 0xFFFF];
+            }
+
+            @Override
+            public void store(short address, byte value) {
+                memory[address & 0xFFFF] = value;
+            }
+        };
+    }
+
+    @Benchmark
+    public long batched() {
+        batch.run(FRAME_CYCLES);
+        return batch.cycles(0);
+    }
+
+    @Benchmark
+    public long scalar() {
+        for (Cpu cpu : cpus) {
+            cpu.run(FRAME_CYCLES);
+        }
+        return cpus[0].cycles();
+    }
+}
@@ -0,0 +1,68 @@
+package com.experiments.nes.benchmarks;
+
+import com.experiments.nes.ppu.Compositor;
+import com.experiments.nes.ppu.Ppu;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Composites one full frame of random scanlines
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CompositorBenchmark {
+    @Param({"scalar", "vector"})
+    private String compositor;
+
+    private Compositor instance;
+    private final byte[][] backgrounds = new byte[Ppu.HEIGHT][Ppu.WIDTH + 8];
+    private final byte[][] sprites = new byte[Ppu.HEIGHT][Ppu.WIDTH];
+    private final int[] colors = new int[0x20];
+    private final int[] framebuffer = new int[Ppu.WIDTH * Ppu.HEIGHT];
+
+    @Setup
+    public void setup() {
+        instance = compositor.equals("vector") ? Compositor.vector() : Compositor.scalar();
+        Random random = new Random(1);
+        for (int line = 0; line < Ppu.HEIGHT; line++) {
+            for (int x = 0; x < Ppu.WIDTH + 8; x++) {
+                backgrounds[line][x] = (byte) (random.nextInt(4) == 0 ? 0 : random.nextInt(16));
+            }
+            // A handful of sprites per line, as in most games
+            for (int sprite = 0; sprite < 4; sprite++) {
+                int start = random.nextInt(Ppu.WIDTH - 8);
+                for (int x = start; x < start + 8; x++) {
+                    sprites[line][x] = (byte) (0x10 | random.nextInt(16) | random.nextInt(2) << 5);
+                }
+            }
+        }
+        for (int index = 0; index < colors.length; index++) {
+            colors[index] = 0xFF000000 | index * 0x040404;
+        }
+    }
+
+    @Benchmark
+    public int frame() {
+        int hits = 0;
+        for (int line = 0; line < Ppu.HEIGHT; line++) {
+            if (instance.composite(backgrounds[line], line & 0x07, sprites[line], colors, framebuffer, line * Ppu.WIDTH)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
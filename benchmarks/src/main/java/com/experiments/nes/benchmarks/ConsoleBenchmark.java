@@ -0,0 +1,77 @@
+package com.experiments.nes.benchmarks;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.mapper.Cartridge;
+import com.experiments.nes.mapper.Nrom;
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Runs one frame of a program that keeps the CPU busy with rendering enabled, drawing every Nth frame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ConsoleBenchmark {
+    private static final int[] PROGRAM = {
+            0xA9, 0x80,       // $8000 LDA #$80
+            0x8D, 0x00, 0x20, // $8002 STA $2000
+            0xA9, 0x1E,       // $8005 LDA #$1E
+            0x8D, 0x01, 0x20, // $8007 STA $2001
+            0xE8,             // $800A INX
+            0xB5, 0x00,       // $800B LDA $00,X
+            0x69, 0x01,       // $800D ADC #$01
+            0x95, 0x00,       // $800F STA $00,X
+            0x4C, 0x0A, 0x80, // $8011 JMP $800A
+            0xE6, 0x00,       // $8014 NMI: INC $00
+            0x40,             // $8016 RTI
+    };
+
+    @Param({"0", "1"})
+    private int render;
+
+    private Console console;
+
+    @Setup
+    public void setup() {
+        console = console();
+        console.render(render);
+    }
+
+    static Console console() {
+        byte[] prg = new byte[0x4000];
+        for (int i = 0; i < PROGRAM.length; i++) {
+            prg[i] = (byte) PROGRAM[i];
+        }
+        int[] vectors = {0x14, 0x80, 0x00, 0x80, 0x14, 0x80};
+        for (int i = 0; i < vectors.length; i++) {
+            prg[0x3FFA + i] = (byte) vectors[i];
+        }
+        byte[] chr = new byte[0x2000];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = (byte) (i * 37);
+        }
+        Cartridge cartridge = new Cartridge(0, prg, chr, Mirroring.Horizontal, false);
+        return new Console(new Nrom(cartridge), Ppu.Mode.Scanline, true);
+    }
+
+    @Benchmark
+    public long frame() {
+        console.runFrame();
+        return console.cpu().cycles();
+    }
+}
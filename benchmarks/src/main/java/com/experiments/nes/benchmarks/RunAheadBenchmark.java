@@ -0,0 +1,44 @@
+package com.experiments.nes.benchmarks;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.console.RunAhead;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A drawn frame with audio on, running N frames ahead
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RunAheadBenchmark {
+    @Param({"0", "1", "2", "4"})
+    private int frames;
+
+    private RunAhead runAhead;
+
+    @Setup
+    public void setup() {
+        Console console = ConsoleBenchmark.console();
+        console.audio(true);
+        runAhead = new RunAhead(console, frames);
+    }
+
+    @Benchmark
+    public long frame() {
+        runAhead.runFrame();
+        return runAhead.console().cpu().cycles();
+    }
+}
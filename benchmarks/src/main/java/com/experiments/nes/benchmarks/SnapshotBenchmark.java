@@ -0,0 +1,113 @@
+package com.experiments.nes.benchmarks;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.mapper.Cartridge;
+import com.experiments.nes.mapper.Mmc3;
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import com.experiments.nes.snapshot.DirtyPages;
+import com.experiments.nes.snapshot.RewindBuffer;
+import com.experiments.nes.snapshot.Snapshottable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Saves, restores and forks a whole machine with PRG RAM, CHR RAM and the APU present
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SnapshotBenchmark {
+    private Console console;
+    private ByteBuffer buffer;
+    private DirtyPages changed;
+    private RewindBuffer rewind;
+    private RewindBuffer untracked;
+    private long frame;
+
+    @Setup
+    public void setup() {
+        byte[] prg = new byte[0x8000];
+        // JMP $8000 at reset
+        prg[0] = 0x4C;
+        prg[2] = (byte) 0x80;
+        prg[0x7FFD] = (byte) 0x80;
+        Cartridge cartridge = new Cartridge(4, prg, new byte[0], Mirroring.Vertical, true);
+        console = new Console(new Mmc3(cartridge), Ppu.Mode.Scanline, true);
+        console.runFrames(2);
+        buffer = ByteBuffer.allocateDirect(console.snapshotSize());
+        changed = new DirtyPages(console.snapshotSize(), 6);
+        console.saveChanges(buffer, changed);
+        rewind = new RewindBuffer(console, console.snapshotSize(), 16 << 20, 60);
+        // Hides saveChanges, so every capture copies and compares the whole machine
+        Snapshottable whole = new Snapshottable() {
+            @Override
+            public void save(ByteBuffer buffer) {
+                console.save(buffer);
+            }
+
+            @Override
+            public void restore(ByteBuffer buffer) {
+                console.restore(buffer);
+            }
+        };
+        untracked = new RewindBuffer(whole, console.snapshotSize(), 16 << 20, 60);
+    }
+
+    @Benchmark
+    public int save() {
+        buffer.clear();
+        console.save(buffer);
+        return buffer.position();
+    }
+
+    // A frame's capture when a few bytes of RAM changed since the last one
+    @Benchmark
+    public int saveChanges() {
+        console.bus().store((short) 0x0000, (byte) (console.ram()[0] + 1));
+        buffer.clear();
+        changed.markAll();
+        console.saveChanges(buffer, changed);
+        return changed.count();
+    }
+
+    @Benchmark
+    public int capture() {
+        console.bus().store((short) 0x0000, (byte) (console.ram()[0] + 1));
+        rewind.capture(frame++);
+        return rewind.size();
+    }
+
+    @Benchmark
+    public int captureUntracked() {
+        console.bus().store((short) 0x0000, (byte) (console.ram()[0] + 1));
+        untracked.capture(frame++);
+        return untracked.size();
+    }
+
+    @Benchmark
+    public Console fork() {
+        return console.fork();
+    }
+
+    @Benchmark
+    public int saveAndRestore() {
+        buffer.clear();
+        console.save(buffer);
+        buffer.flip();
+        console.restore(buffer);
+        return buffer.position();
+    }
+}
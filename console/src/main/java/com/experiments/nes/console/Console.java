@@ -0,0 +1,488 @@
+package com.experiments.nes.console;
+
+import com.experiments.nes.apu.Apu;
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.events.DmaEvent;
+import com.experiments.nes.events.FrameEvent;
+import com.experiments.nes.input.Controllers;
+import com.experiments.nes.mapper.Cartridge;
+import com.experiments.nes.mapper.Mapper;
+import com.experiments.nes.mapper.Mappers;
+import com.experiments.nes.metrics.CountingMemory;
+import com.experiments.nes.metrics.InstanceMetrics;
+import com.experiments.nes.ppu.Ppu;
+import com.experiments.nes.scheduler.Device;
+import com.experiments.nes.scheduler.Scheduler;
+import com.experiments.nes.snapshot.CopyOnWritePages;
+import com.experiments.nes.snapshot.DirtyPages;
+import com.experiments.nes.snapshot.RewindBuffer;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+// A headless console. The CPU runs uninterrupted between device deadlines, the PPU only draws every Nth frame and
+// audio is off unless asked for, so it runs as fast as the CPU core allows. A frame ends when vertical blank starts.
+public class Console implements Snapshottable {
+    private static final int OAM_DATA = 0x2004;
+    private static final int DMA_LENGTH = 0x100;
+    private static final int DMA_STALL = 513;
+    // Comfortably more than the CPU, APU and controllers save
+    private static final int REGISTERS_SIZE = 1024;
+
+    private final CopyOnWritePages ram = new CopyOnWritePages(0x800, 8);
+    private final Memory bus = new Bus();
+    // Counts the CPU's accesses by region, standing between it and the bus while metrics are attached
+    private CountingMemory counting;
+    private final Mapper mapper;
+    private final Ppu ppu;
+    private final Apu apu;
+    private final Controllers controllers = new Controllers();
+    private final Cpu cpu;
+    private final Scheduler scheduler;
+    private final Memory video;
+    private final Memory audio;
+    private final Memory cartridge;
+    private final int snapshotSize;
+
+    private int renderInterval = 1;
+    private boolean nmiLevel;
+    private long nmiVblank;
+    private boolean irqLevel;
+    private InstanceMetrics metrics;
+    private boolean metricsSuspended;
+    private RewindBuffer rewind;
+
+    public Console(Mapper mapper, Ppu.Mode mode, boolean apu) {
+        this(mapper, new Ppu(mapper.chr(), mode), apu, -1);
+    }
+
+    public Console(Cartridge cartridge) {
+        this(Mappers.create(cartridge), Ppu.Mode.Scanline, true);
+    }
+
+    // Works out the snapshot size unless it is given
+    private Console(Mapper mapper, Ppu ppu, boolean apu, int snapshotSize) {
+        this.mapper = mapper;
+        this.ppu = ppu;
+        this.apu = apu ? new Apu(bus, Apu.SAMPLE_RATE, false) : null;
+        this.cpu = new Cpu(bus);
+        this.scheduler = new Scheduler(cpu::cycles);
+        mapper.attach(ppu);
+
+        this.video = registers(scheduler.add(signalling(ppu)), ppu);
+        this.audio = apu ? registers(scheduler.add(signalling(this.apu)), this.apu) : null;
+        this.cartridge = registers(scheduler.add(signalling(mapper)), mapper);
+        controllers.frame();
+        cpu.pc(vector());
+
+        if (snapshotSize < 0) {
+            ByteBuffer sizing = ByteBuffer.allocate(1 << 16);
+            save(sizing, null);
+            snapshotSize = sizing.position();
+        }
+        this.snapshotSize = snapshotSize;
+    }
+
+    public Cpu cpu() {
+        return cpu;
+    }
+
+    public Ppu ppu() {
+        return ppu;
+    }
+
+    // Null when the console was built without an APU
+    public Apu apu() {
+        return apu;
+    }
+
+    public Mapper mapper() {
+        return mapper;
+    }
+
+    public Controllers controllers() {
+        return controllers;
+    }
+
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    // The CPU's view of memory. Stores go through the devices' registers as they would from the CPU.
+    public Memory bus() {
+        return bus;
+    }
+
+    // A copy of RAM. Writes go through bus().
+    public byte[] ram() {
+        return ram.toArray();
+    }
+
+    // One byte of RAM, read without copying it all or going through the bus
+    public byte ram(int address) {
+        return ram.get(address & 0x07FF);
+    }
+
+    public int[] framebuffer() {
+        return ppu.framebuffer();
+    }
+
+    public long frames() {
+        return ppu.vblanks();
+    }
+
+    // Draws every Nth frame into the framebuffer, or none with 0. Skipped frames still run sprite zero hits.
+    public void render(int interval) {
+        if (interval < 0) {
+            throw new IllegalStateException("Render interval must not be negative: " + interval);
+        }
+        this.renderInterval = interval;
+        ppu.output(rendered(ppu.vblanks() + 1));
+    }
+
+    public int render() {
+        return renderInterval;
+    }
+
+    public void audio(boolean audio) {
+        if (apu != null) {
+            apu.audio(audio);
+        }
+    }
+
+    public boolean audio() {
+        return apu != null && apu.audio();
+    }
+
+    public void metrics(InstanceMetrics metrics) {
+        if (this.metrics != null) {
+            counting.flush(this.metrics);
+        }
+        this.metrics = metrics;
+        this.counting = metrics != null ? new CountingMemory(bus) : null;
+        cpu.memory(metrics != null && !metricsSuspended ? counting : bus);
+        if (metrics != null) {
+            metrics.observe(cpu);
+        }
+    }
+
+    public InstanceMetrics metrics() {
+        return metrics;
+    }
+
+    // Stops recording into the attached metrics without detaching them, e.g. for frames that are run and then rolled
+    // back. Resuming carries on with the same counters from where the CPU is then.
+    public void metricsSuspended(boolean suspended) {
+        if (metrics != null && suspended != metricsSuspended) {
+            if (suspended) {
+                metrics.observe(cpu);
+                counting.flush(metrics);
+                cpu.memory(bus);
+            }
+            else {
+                cpu.memory(counting);
+                metrics.rebase(cpu);
+            }
+        }
+        metricsSuspended = suspended;
+    }
+
+    public boolean metricsSuspended() {
+        return metricsSuspended;
+    }
+
+    // Captures every frame into the buffer as it completes, or stops capturing with null
+    public void rewindBuffer(RewindBuffer rewind) {
+        this.rewind = rewind;
+    }
+
+    public RewindBuffer rewindBuffer() {
+        return rewind;
+    }
+
+    // Bytes written by save, constant for a given board
+    public int snapshotSize() {
+        return snapshotSize;
+    }
+
+    // Saves the whole machine at the current cycle, which may be in the middle of an instruction
+    @Override
+    public void save(ByteBuffer buffer) {
+        save(buffer, null);
+    }
+
+    // RAM, nametables and cartridge RAM are only copied where written since the last call
+    @Override
+    public void saveChanges(ByteBuffer buffer, DirtyPages changed) {
+        save(buffer, changed);
+    }
+
+    private void save(ByteBuffer buffer, DirtyPages changed) {
+        Snapshot.writeHeader(buffer);
+        cpu.save(buffer);
+        Snapshot.put(buffer, ram, changed);
+        if (changed != null) {
+            ppu.saveChanges(buffer, changed);
+        }
+        else {
+            ppu.save(buffer);
+        }
+        Snapshot.put(buffer, apu != null);
+        if (apu != null) {
+            apu.save(buffer);
+        }
+        if (changed != null) {
+            mapper.saveChanges(buffer, changed);
+        }
+        else {
+            mapper.save(buffer);
+        }
+        controllers.save(buffer);
+        Snapshot.put(buffer, nmiLevel);
+        buffer.putLong(nmiVblank);
+        Snapshot.put(buffer, irqLevel);
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        Snapshot.readHeader(buffer);
+        cpu.restore(buffer);
+        Snapshot.get(buffer, ram);
+        ppu.restore(buffer);
+        if (Snapshot.getBoolean(buffer) != (apu != null)) {
+            throw new IllegalStateException("Snapshot and console disagree on the presence of an APU");
+        }
+        if (apu != null) {
+            apu.restore(buffer);
+        }
+        mapper.restore(buffer);
+        controllers.restore(buffer);
+        nmiLevel = Snapshot.getBoolean(buffer);
+        nmiVblank = buffer.getLong();
+        irqLevel = Snapshot.getBoolean(buffer);
+        ppu.output(rendered(ppu.vblanks() + 1));
+        scheduler.rescheduleAll();
+        if (metrics != null) {
+            // The CPU's totals went back, but the work since the snapshot was still done
+            metrics.rebase(cpu);
+        }
+    }
+
+    // An independent machine in the same state. ROM is shared and RAM, PRG RAM, CHR RAM and nametables are shared
+    // copy-on-write, so a fork costs its registers and page tables rather than a copy of memory. Call between frames
+    // on the thread running this console; the fork may then run on any thread. Forks start with drawing, audio and
+    // rewind capture off, and take input from their own controllers.
+    public Console fork() {
+        // Boards count lazily from the PPU, e.g. MMC3 line clocks, and a fork's board starts from the PPU's count
+        scheduler.syncAll();
+        Mapper board = mapper.fork();
+        Console fork = new Console(board, ppu.fork(board.chr()), apu != null, snapshotSize);
+        ByteBuffer buffer = ByteBuffer.allocate(REGISTERS_SIZE);
+        cpu.save(buffer);
+        if (apu != null) {
+            apu.save(buffer);
+        }
+        controllers.save(buffer);
+        buffer.flip();
+        fork.cpu.restore(buffer);
+        if (apu != null) {
+            fork.apu.restore(buffer);
+        }
+        fork.controllers.restore(buffer);
+        fork.ram.share(ram);
+        fork.nmiLevel = nmiLevel;
+        fork.nmiVblank = nmiVblank;
+        fork.irqLevel = irqLevel;
+        fork.render(0);
+        // Reading the reset vector while building the fork synced its board at cycle 0
+        fork.scheduler.syncAll();
+        return fork;
+    }
+
+    public void reset() {
+        cpu.reset();
+        cpu.pc(vector());
+    }
+
+    public void runFrames(long frames) {
+        for (long frame = 0; frame < frames; frame++) {
+            runFrame();
+        }
+    }
+
+    // Runs whole frames until the condition holds, checking it before each frame. Returns false if maxFrames ran out.
+    public boolean runUntil(Predicate<Console> condition, long maxFrames) {
+        for (long frame = 0; frame < maxFrames; frame++) {
+            if (condition.test(this)) {
+                return true;
+            }
+            runFrame();
+        }
+        return condition.test(this);
+    }
+
+    public boolean runUntil(Predicate<Console> condition) {
+        return runUntil(condition, Long.MAX_VALUE);
+    }
+
+    public void runFrame() {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        boolean recording = metrics != null && !metricsSuspended;
+        long start = recording ? System.nanoTime() : 0;
+        long startCycles = cpu.cycles();
+        long startInstructions = cpu.instructions();
+        boolean rendered = ppu.output();
+
+        long frame = ppu.vblanks() + 1;
+        while (ppu.vblanks() < frame) {
+            // The PPU deadline is the start of vertical blank, where the scheduler syncs it
+            scheduler.run(cpu, Math.max(ppu.deadline(), cpu.cycles() + 1));
+        }
+        ppu.output(rendered(frame + 1));
+        controllers.frame();
+        if (rewind != null) {
+            rewind.capture(frame);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.frame = frame;
+            event.cycles = cpu.cycles() - startCycles;
+            event.instructions = cpu.instructions() - startInstructions;
+            event.rendered = rendered;
+            event.commit();
+        }
+        if (recording) {
+            metrics.observe(cpu);
+            counting.flush(metrics);
+            metrics.recordFrame(System.nanoTime() - start);
+        }
+    }
+
+    // Frames are counted from 1, the lines of frame N being drawn after the vertical blank that completed frame N - 1
+    private boolean rendered(long frame) {
+        return renderInterval > 0 && frame % renderInterval == 0;
+    }
+
+    private short vector() {
+        return (short) ((cartridge.load((short) 0xFFFC) & 0xFF) | (cartridge.load((short) 0xFFFD) & 0xFF) << 8);
+    }
+
+    // A device whose interrupt outputs are looked at every time it is synced
+    private Device signalling(Device device) {
+        return new Device() {
+            @Override
+            public void sync(long cycle) {
+                device.sync(cycle);
+                signals(cycle);
+            }
+
+            @Override
+            public long deadline() {
+                return device.deadline();
+            }
+        };
+    }
+
+    // Register accesses can change the interrupt outputs too, e.g. enabling NMI during vertical blank
+    private Memory registers(int id, Memory registers) {
+        Memory synced = scheduler.registers(id, registers);
+        return new Memory() {
+            @Override
+            public byte load(short address) {
+                byte value = synced.load(address);
+                signals(cpu.cycles());
+                return value;
+            }
+
+            @Override
+            public void store(short address, byte value) {
+                synced.store(address, value);
+                signals(cpu.cycles());
+            }
+        };
+    }
+
+    private void signals(long cycle) {
+        // The PPU may not be synced between two vertical blanks, so a new one counts as an edge even if the level
+        // looked high on both sides
+        boolean nmi = ppu.nmi();
+        long vblank = ppu.vblanks();
+        if (nmi && (!nmiLevel || vblank != nmiVblank)) {
+            cpu.nmi(cycle);
+        }
+        nmiLevel = nmi;
+        nmiVblank = vblank;
+        boolean irq = (apu != null && apu.irq()) || mapper.irq();
+        if (irq != irqLevel) {
+            cpu.irq(irq ? cycle : Long.MAX_VALUE);
+            irqLevel = irq;
+        }
+    }
+
+    private void dma(int page) {
+        long cycle = cpu.cycles();
+        int source = page << 8;
+        for (int offset = 0; offset < DMA_LENGTH; offset++) {
+            video.store((short) OAM_DATA, bus.load((short) (source | offset)));
+        }
+        // One more cycle to align when the write lands on an odd cycle
+        int stall = DMA_STALL + (int) (cycle & 1);
+        cpu.stall(stall);
+        DmaEvent.emit(cycle, source, DMA_LENGTH, stall);
+    }
+
+    private class Bus implements Memory {
+        @Override
+        public byte load(short address) {
+            int cpuAddress = address & 0xFFFF;
+            if (cpuAddress < 0x2000) {
+                return ram.get(cpuAddress & 0x07FF);
+            }
+            if (cpuAddress < 0x4000) {
+                return video.load((short) (0x2000 | (cpuAddress & 0x07)));
+            }
+            if (cpuAddress == 0x4016 || cpuAddress == 0x4017) {
+                return controllers.load(address);
+            }
+            if (cpuAddress == 0x4015) {
+                return audio != null ? audio.load(address) : 0;
+            }
+            if (cpuAddress < 0x4020) {
+                // Open bus is not modelled
+                return 0;
+            }
+            // PRG reads have no side effects, so they skip the scheduler
+            return mapper.load(address);
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            int cpuAddress = address & 0xFFFF;
+            if (cpuAddress < 0x2000) {
+                ram.set(cpuAddress & 0x07FF, value);
+            }
+            else if (cpuAddress < 0x4000) {
+                video.store((short) (0x2000 | (cpuAddress & 0x07)), value);
+            }
+            else if (cpuAddress == 0x4014) {
+                dma(value & 0xFF);
+            }
+            else if (cpuAddress == 0x4016) {
+                controllers.store(address, value);
+            }
+            else if (cpuAddress < 0x4018) {
+                if (audio != null) {
+                    audio.store(address, value);
+                }
+            }
+            else if (cpuAddress >= 0x4020) {
+                cartridge.store(address, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.experiments.nes.console;
+
+import com.experiments.nes.metrics.FrameTimeHistogram;
+import com.experiments.nes.snapshot.RewindBuffer;
+
+import java.nio.ByteBuffer;
+
+// Hides a game's own input lag. Each frame the console runs for real without drawing, is saved, runs N more frames
+// holding the same input with only the last one drawn and no audio, and is restored. What is shown is N frames
+// ahead of the machine, so input shows up N frames sooner as long as the game would have held it that long.
+public class RunAhead {
+    private final Console console;
+    private final ByteBuffer snapshot;
+    // Time spent on each frame beyond the real one
+    private final FrameTimeHistogram overhead = new FrameTimeHistogram();
+    private int frames;
+    private long lastOverhead;
+
+    public RunAhead(Console console, int frames) {
+        this.console = console;
+        this.snapshot = ByteBuffer.allocateDirect(console.snapshotSize());
+        this.frames = checked(frames);
+    }
+
+    public void frames(int frames) {
+        this.frames = checked(frames);
+    }
+
+    private static int checked(int frames) {
+        if (frames < 0) {
+            throw new IllegalStateException("Run-ahead frames must not be negative: " + frames);
+        }
+        return frames;
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    public Console console() {
+        return console;
+    }
+
+    // Cost of the latest frame's run-ahead in nanoseconds, to set against the frame budget when choosing N
+    public long lastOverhead() {
+        return lastOverhead;
+    }
+
+    public FrameTimeHistogram overhead() {
+        return overhead;
+    }
+
+    public void runFrames(long frames) {
+        for (long frame = 0; frame < frames; frame++) {
+            runFrame();
+        }
+    }
+
+    public void runFrame() {
+        if (frames == 0) {
+            console.runFrame();
+            return;
+        }
+        // The console's render interval decides whether the frame shown is drawn
+        boolean draw = console.ppu().output();
+        console.ppu().output(false);
+        console.runFrame();
+
+        long start = System.nanoTime();
+        snapshot.clear();
+        console.save(snapshot);
+        boolean audio = console.audio();
+        RewindBuffer rewind = console.rewindBuffer();
+        boolean suspended = console.metricsSuspended();
+        console.audio(false);
+        console.rewindBuffer(null);
+        console.metricsSuspended(true);
+        console.controllers().freeze(true);
+        try {
+            for (int frame = 1; frame <= frames; frame++) {
+                console.ppu().output(draw && frame == frames);
+                console.runFrame();
+            }
+        }
+        finally {
+            console.restore(snapshot.flip());
+            console.controllers().freeze(false);
+            console.rewindBuffer(rewind);
+            console.metricsSuspended(suspended);
+            console.audio(audio);
+        }
+        lastOverhead = System.nanoTime() - start;
+        overhead.record(lastOverhead);
+    }
+}
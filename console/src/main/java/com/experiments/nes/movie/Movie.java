@@ -0,0 +1,146 @@
+package com.experiments.nes.movie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Recorded input for a run of frames, with snapshots of the machine every N frames to seek from. The first snapshot
+// is of the frame recording started at, and input N is what the controllers picked up as the frame N after it ended,
+// packed as port 1 in bits 0-7 and port 2 in bits 8-15.
+public class Movie {
+    public static final int MAGIC = 0x4E45534D;
+    public static final int VERSION = 1;
+
+    private final long start;
+    private final int snapshotInterval;
+    private final List<byte[]> snapshots = new ArrayList<>();
+    private short[] inputs = new short[1024];
+    private int length;
+
+    public Movie(long start, int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalStateException("Snapshot interval must be at least 1: " + snapshotInterval);
+        }
+        this.start = start;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public static Movie load(Path path) throws IOException {
+        return parse(Files.readAllBytes(path));
+    }
+
+    public static Movie parse(byte[] image) {
+        ByteBuffer buffer = ByteBuffer.wrap(image);
+        if (image.length < 8 || buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a movie");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalStateException(String.format("Unsupported movie version %d, expected %d", version,
+                    VERSION));
+        }
+        Movie movie = new Movie(buffer.getLong(), buffer.getInt());
+        int length = buffer.getInt();
+        for (int i = 0; i < length; i++) {
+            movie.add(buffer.getShort() & 0xFFFF);
+        }
+        int snapshots = buffer.getInt();
+        for (int i = 0; i < snapshots; i++) {
+            byte[] snapshot = new byte[buffer.getInt()];
+            buffer.get(snapshot);
+            movie.snapshots.add(snapshot);
+        }
+        if (snapshots != length / movie.snapshotInterval + 1) {
+            throw new IllegalStateException(String.format("Movie of %d frames has %d snapshots, one every %d frames"
+                    + " expected", length, snapshots, movie.snapshotInterval));
+        }
+        return movie;
+    }
+
+    public void save(Path path) throws IOException {
+        Files.write(path, bytes());
+    }
+
+    public byte[] bytes() {
+        int size = 28 + 2 * length;
+        for (byte[] snapshot : snapshots) {
+            size += 4 + snapshot.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putLong(start).putInt(snapshotInterval);
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.putShort(inputs[i]);
+        }
+        buffer.putInt(snapshots.size());
+        for (byte[] snapshot : snapshots) {
+            buffer.putInt(snapshot.length).put(snapshot);
+        }
+        return buffer.array();
+    }
+
+    // The frame recording started from
+    public long start() {
+        return start;
+    }
+
+    // The last frame recorded
+    public long end() {
+        return start + length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int snapshotInterval() {
+        return snapshotInterval;
+    }
+
+    // Input picked up at the end of the given frame, for the frame after it
+    public int input(long frame) {
+        if (frame <= start || frame > end()) {
+            throw new IllegalStateException(String.format("Frame %d is outside the movie of frames %d to %d", frame,
+                    start, end()));
+        }
+        return inputs[(int) (frame - start - 1)] & 0xFFFF;
+    }
+
+    // The latest frame at or before the given one with a snapshot
+    public long snapshotFrame(long frame) {
+        if (frame < start || frame > end()) {
+            throw new IllegalStateException(String.format("Frame %d is outside the movie of frames %d to %d", frame,
+                    start, end()));
+        }
+        return start + (frame - start) / snapshotInterval * snapshotInterval;
+    }
+
+    public byte[] snapshot(long frame) {
+        long index = (frame - start) / snapshotInterval;
+        if (frame < start || (frame - start) % snapshotInterval != 0 || index >= snapshots.size()) {
+            throw new IllegalStateException("No snapshot of frame " + frame);
+        }
+        return snapshots.get((int) index);
+    }
+
+    // Appends the input of the next frame. A snapshot of that frame must follow when it falls on the interval.
+    void add(int input) {
+        if (length == inputs.length) {
+            inputs = Arrays.copyOf(inputs, length * 2);
+        }
+        inputs[length++] = (short) input;
+    }
+
+    void snapshot(byte[] snapshot) {
+        if (snapshots.size() != length / snapshotInterval || length % snapshotInterval != 0) {
+            throw new IllegalStateException("Snapshots are taken every " + snapshotInterval + " frames, not at frame "
+                    + end());
+        }
+        snapshots.add(snapshot);
+    }
+}
@@ -0,0 +1,92 @@
+package com.experiments.nes.movie;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.input.InputScript;
+import com.experiments.nes.snapshot.RewindBuffer;
+
+import java.nio.ByteBuffer;
+
+// Replays a movie on a console of the same board. Seeking restores the nearest snapshot before the frame and runs
+// the rest of the way without drawing, sound or rewind capture, so any frame is at most one snapshot interval away.
+public class Player {
+    private final Console console;
+    private final Movie movie;
+
+    public Player(Console console, Movie movie) {
+        this.console = console;
+        this.movie = movie;
+    }
+
+    public Console console() {
+        return console;
+    }
+
+    public Movie movie() {
+        return movie;
+    }
+
+    public long frame() {
+        return console.frames();
+    }
+
+    public boolean finished() {
+        return console.frames() >= movie.end();
+    }
+
+    // Restores the frame the movie started from
+    public void rewind() {
+        seek(movie.start());
+    }
+
+    public void seek(long frame) {
+        long snapshot = movie.snapshotFrame(frame);
+        console.restore(ByteBuffer.wrap(movie.snapshot(snapshot)));
+        console.controllers().cancel();
+        console.controllers().queue(script(snapshot));
+
+        int render = console.render();
+        boolean audio = console.audio();
+        RewindBuffer rewind = console.rewindBuffer();
+        console.render(0);
+        console.audio(false);
+        console.rewindBuffer(null);
+        try {
+            console.runFrames(frame - snapshot);
+        }
+        finally {
+            console.render(render);
+            console.audio(audio);
+            console.rewindBuffer(rewind);
+        }
+    }
+
+    // Plays the next frame, returning false once the movie has ended
+    public boolean runFrame() {
+        if (finished()) {
+            return false;
+        }
+        console.runFrame();
+        return true;
+    }
+
+    public void runToEnd() {
+        while (runFrame()) {
+        }
+    }
+
+    // The movie's input from the given frame on, held buttons merged into single runs
+    private InputScript script(long from) {
+        InputScript script = new InputScript();
+        long frame = from + 1;
+        while (frame <= movie.end()) {
+            int input = movie.input(frame);
+            int count = 1;
+            while (frame + count <= movie.end() && movie.input(frame + count) == input) {
+                count++;
+            }
+            script.hold(input & 0xFF, input >> 8, count);
+            frame += count;
+        }
+        return script;
+    }
+}
@@ -0,0 +1,42 @@
+package com.experiments.nes.movie;
+
+import com.experiments.nes.console.Console;
+
+import java.nio.ByteBuffer;
+
+// Runs a console and records the input it picks up each frame, however that input was provided, into a movie
+// starting from the console's current frame
+public class Recorder {
+    private final Console console;
+    private final Movie movie;
+
+    public Recorder(Console console, int snapshotInterval) {
+        this.console = console;
+        this.movie = new Movie(console.frames(), snapshotInterval);
+        movie.snapshot(snapshot());
+    }
+
+    public Movie movie() {
+        return movie;
+    }
+
+    public void runFrame() {
+        console.runFrame();
+        movie.add(console.controllers().buttons(0) | console.controllers().buttons(1) << 8);
+        if (movie.length() % movie.snapshotInterval() == 0) {
+            movie.snapshot(snapshot());
+        }
+    }
+
+    public void runFrames(long frames) {
+        for (long frame = 0; frame < frames; frame++) {
+            runFrame();
+        }
+    }
+
+    private byte[] snapshot() {
+        ByteBuffer buffer = ByteBuffer.allocate(console.snapshotSize());
+        console.save(buffer);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,413 @@
+package com.experiments.nes.console;
+
+import com.experiments.nes.mapper.Cartridge;
+import com.experiments.nes.mapper.Mmc3;
+import com.experiments.nes.metrics.MetricsRegistry;
+import com.experiments.nes.mapper.Nrom;
+import com.experiments.nes.ppu.DirtyRows;
+import com.experiments.nes.ppu.FrameDelta;
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import com.experiments.nes.snapshot.RewindBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Also holds the test ROMs used by the other tests of this module and, through the test jar, of the modules built on it
+public class ConsoleTest {
+    // Enables NMI and spins; the NMI handler counts frames in $00
+    public static final int[] NMI_COUNTER = {
+            0xA9, 0x80,       // $8000 LDA #$80
+            0x8D, 0x00, 0x20, // $8002 STA $2000
+            0x4C, 0x05, 0x80, // $8005 JMP $8005
+            0xE6, 0x00,       // $8008 NMI: INC $00
+            0x40,             // $800A RTI
+    };
+
+    // Enables NMI and spins; the NMI handler reads controller 1 into $01 and carries on with the given end, which
+    // returns from the interrupt
+    public static int[] controllerReader(int... end) {
+        int[] start = {
+                0xA9, 0x80,       // $8000 LDA #$80
+                0x8D, 0x00, 0x20, // $8002 STA $2000
+                0x4C, 0x05, 0x80, // $8005 JMP $8005
+                0xA9, 0x01,       // $8008 NMI: LDA #$01
+                0x8D, 0x16, 0x40, // $800A STA $4016
+                0xA9, 0x00,       // $800D LDA #$00
+                0x8D, 0x16, 0x40, // $800F STA $4016
+        };
+        int[] read = {
+                0xAD, 0x16, 0x40, // LDA $4016
+                0x4A,             // LSR A
+                0x26, 0x01,       // ROL $01
+        };
+        // Without branches the eight reads are unrolled
+        int[] program = new int[start.length + 8 * read.length + end.length];
+        System.arraycopy(start, 0, program, 0, start.length);
+        for (int i = 0; i < 8; i++) {
+            System.arraycopy(read, 0, program, start.length + i * read.length, read.length);
+        }
+        System.arraycopy(end, 0, program, start.length + 8 * read.length, end.length);
+        return program;
+    }
+
+    // NROM board with the program at $8000
+    public static Console console(int[] program, boolean apu) {
+        byte[] prg = new byte[0x4000];
+        for (int i = 0; i < program.length; i++) {
+            prg[i] = (byte) program[i];
+        }
+        // NMI $8008, reset $8000, IRQ $8008
+        int[] vectors = {0x08, 0x80, 0x00, 0x80, 0x08, 0x80};
+        for (int i = 0; i < vectors.length; i++) {
+            prg[0x3FFA + i] = (byte) vectors[i];
+        }
+        Cartridge cartridge = new Cartridge(0, prg, new byte[0x2000], Mirroring.Horizontal, false);
+        return new Console(new Nrom(cartridge), Ppu.Mode.Scanline, apu);
+    }
+
+    // MMC3 board with the program in the fixed bank at $E000
+    public static Console mmc3(int[] program) {
+        byte[] prg = new byte[0x8000];
+        for (int i = 0; i < program.length; i++) {
+            prg[0x6000 + i] = (byte) program[i];
+        }
+        // NMI $E000, reset $E000, IRQ $E011
+        int[] vectors = {0x00, 0xE0, 0x00, 0xE0, 0x11, 0xE0};
+        for (int i = 0; i < vectors.length; i++) {
+            prg[0x7FFA + i] = (byte) vectors[i];
+        }
+        Cartridge cartridge = new Cartridge(4, prg, new byte[0x2000], Mirroring.Horizontal, false);
+        return new Console(new Mmc3(cartridge), Ppu.Mode.Scanline, false);
+    }
+
+    // Shows the background and takes an MMC3 scanline interrupt every 6 lines, counting them in $00
+    private static final int[] MMC3_IRQ = {
+            0xA9, 0x08,       // $E000 LDA #$08
+            0x8D, 0x01, 0x20, // $E002 STA $2001
+            0xA9, 0x05,       // $E005 LDA #$05
+            0x8D, 0x00, 0xC0, // $E007 STA $C000, latch
+            0x8D, 0x01, 0xE0, // $E00A STA $E001, enable
+            0x58,             // $E00D CLI
+            0x4C, 0x0E, 0xE0, // $E00E JMP $E00E
+            0xE6, 0x00,       // $E011 IRQ: INC $00
+            0x8D, 0x00, 0xE0, // $E013 STA $E000, acknowledge
+            0x8D, 0x01, 0xE0, // $E016 STA $E001, enable again
+            0x40,             // $E019 RTI
+    };
+
+    @Test
+    void testPowerOn() {
+        Console console = console(NMI_COUNTER, true);
+
+        assertEquals((short) 0x8000, console.cpu().pc());
+        assertEquals(0, console.frames());
+    }
+
+    @Test
+    void testRunFrames() {
+        Console console = console(NMI_COUNTER, false);
+
+        console.runFrames(10);
+
+        assertEquals(10, console.frames());
+        // The handler for the last vertical blank runs in the next frame
+        assertEquals(9, console.ram()[0]);
+        // Frames are 262 lines of 341 dots, three dots per cycle, and the tenth ends at dot 1 of line 241
+        assertEquals((9 * 262 * 341 + 241 * 341 + 1) / 3, console.cpu().cycles(), 10);
+    }
+
+    @Test
+    void testRunUntil() {
+        Console console = console(NMI_COUNTER, false);
+
+        assertTrue(console.runUntil(c -> c.ram()[0] == 5, 100));
+        assertEquals(6, console.frames());
+        assertFalse(console.runUntil(c -> c.ram()[0] == 0, 3));
+        assertEquals(9, console.frames());
+    }
+
+    @Test
+    void testRenderInterval() {
+        Console console = console(NMI_COUNTER, false);
+        console.render(0);
+
+        console.runFrames(3);
+
+        assertEquals(0, console.framebuffer()[0]);
+        assertFalse(console.ppu().output());
+
+        // Frame 4 is drawn, frame 5 is not
+        console.render(2);
+        assertTrue(console.ppu().output());
+        console.runFrames(1);
+        assertFalse(console.ppu().output());
+
+        assertNotEquals(0, console.framebuffer()[0]);
+    }
+
+    @Test
+    void testOamDma() {
+        int[] program = {
+                0xA9, 0x42,       // $8000 LDA #$42
+                0x85, 0x10,       // $8002 STA $10
+                0xA9, 0x00,       // $8004 LDA #$00
+                0x8D, 0x14, 0x40, // $8006 STA $4014
+                0x4C, 0x09, 0x80, // $8009 JMP $8009
+        };
+        Console console = console(program, false);
+
+        console.scheduler().run(console.cpu(), 11);
+        long instructions = console.cpu().instructions();
+        console.scheduler().run(console.cpu(), 11 + 513);
+
+        // The CPU is halted for the transfer
+        assertEquals(instructions, console.cpu().instructions());
+        console.ppu().store((short) 0x2003, (byte) 0x10);
+        assertEquals(0x42, console.ppu().load((short) 0x2004));
+    }
+
+    @Test
+    void testApuFrameIrq() {
+        int[] program = {
+                0x58,             // $8000 CLI
+                0x4C, 0x01, 0x80, // $8001 JMP $8001
+                0x00, 0x00, 0x00, 0x00,
+                0xE6, 0x01,       // $8008 IRQ: INC $01
+                0xAD, 0x15, 0x40, // $800A LDA $4015, acknowledges the frame interrupt
+                0x40,             // $800D RTI
+        };
+        Console console = console(program, true);
+
+        // The 4 step sequence interrupts every 29830 cycles
+        console.scheduler().run(console.cpu(), 3 * 29830 + 100);
+
+        assertEquals(3, console.ram()[1]);
+    }
+
+    @Test
+    void testMmc3ScanlineIrq() {
+        Console console = mmc3(MMC3_IRQ);
+        console.runFrames(2);
+        int count = console.ram()[0] & 0xFF;
+
+        console.runFrames(1);
+
+        // Enabling the interrupt brings the board's deadline forward from the next vertical blank, and the 241 line
+        // clocks of a frame reload the counter every 6, which in this frame's phase interrupts 40 times
+        assertEquals(40, (console.ram()[0] & 0xFF) - count);
+    }
+
+    @Test
+    void testDirtyRows() {
+        int[] program = {
+                0xA9, 0x80,       // $8000 LDA #$80
+                0x8D, 0x00, 0x20, // $8002 STA $2000
+                0x4C, 0x05, 0x80, // $8005 JMP $8005
+                0xE6, 0x00,       // $8008 NMI: INC $00
+                0xA9, 0x3F,       // $800A LDA #$3F
+                0x8D, 0x06, 0x20, // $800C STA $2006
+                0xA9, 0x00,       // $800F LDA #$00
+                0x8D, 0x06, 0x20, // $8011 STA $2006
+                0xA5, 0x00,       // $8014 LDA $00
+                0x4A,             // $8016 LSR A, so the backdrop changes every other frame
+                0x8D, 0x07, 0x20, // $8017 STA $2007
+                0x40,             // $801A RTI
+        };
+        Console console = console(program, false);
+        int[] previous = console.framebuffer().clone();
+        int[] delta = new int[FrameDelta.MAX_LENGTH];
+
+        for (int frame = 1; frame <= 6; frame++) {
+            console.runFrame();
+
+            // The dirty rows are those of the frame that just ended
+            DirtyRows dirty = console.ppu().dirtyRows();
+            for (int row = 0; row < Ppu.HEIGHT; row++) {
+                assertEquals(!Arrays.equals(previous, row * Ppu.WIDTH, (row + 1) * Ppu.WIDTH,
+                        console.framebuffer(), row * Ppu.WIDTH, (row + 1) * Ppu.WIDTH), dirty.dirty(row),
+                        "Frame " + frame + " row " + row);
+            }
+            FrameDelta.apply(delta, FrameDelta.encode(console.framebuffer(), dirty, delta), previous);
+            assertArrayEquals(console.framebuffer(), previous);
+        }
+    }
+
+    @Test
+    void testSnapshot() {
+        Console console = console(NMI_COUNTER, true);
+        console.runFrames(3);
+        // Part way into a frame, and into an instruction
+        console.scheduler().run(console.cpu(), console.cpu().cycles() + 12345);
+        ByteBuffer buffer = ByteBuffer.allocate(console.snapshotSize());
+
+        console.save(buffer);
+        assertEquals(console.snapshotSize(), buffer.position());
+        console.runFrames(5);
+        long cycles = console.cpu().cycles();
+        byte[] ram = console.ram().clone();
+        int[] framebuffer = console.framebuffer().clone();
+
+        Console restored = console(NMI_COUNTER, true);
+        restored.restore(buffer.flip());
+        restored.runFrames(5);
+
+        assertEquals(cycles, restored.cpu().cycles());
+        assertEquals(console.frames(), restored.frames());
+        assertArrayEquals(ram, restored.ram());
+        assertArrayEquals(framebuffer, restored.framebuffer());
+    }
+
+    @Test
+    void testRestoreRewinds() {
+        Console console = console(NMI_COUNTER, false);
+        console.runFrames(2);
+        ByteBuffer buffer = ByteBuffer.allocate(console.snapshotSize());
+        console.save(buffer);
+        console.runFrames(4);
+        byte[] ram = console.ram().clone();
+
+        console.restore(buffer.flip());
+        assertEquals(2, console.frames());
+        assertEquals(1, console.ram()[0]);
+        console.runFrames(4);
+
+        assertArrayEquals(ram, console.ram());
+        assertEquals(6, console.frames());
+    }
+
+    @Test
+    void testRestoreKeepsMetrics() {
+        Console console = console(NMI_COUNTER, false);
+        MetricsRegistry registry = new MetricsRegistry();
+        console.metrics(registry.instance("console"));
+        console.runFrames(2);
+        ByteBuffer buffer = ByteBuffer.allocate(console.snapshotSize());
+        console.save(buffer);
+        long cycles = console.cpu().cycles();
+        console.runFrames(4);
+        long ran = console.cpu().cycles();
+
+        console.restore(buffer.flip());
+        console.runFrames(4);
+
+        // Frames run again after the restore are counted again
+        assertEquals(2 * ran - cycles, console.metrics().getCycles());
+        assertEquals(2 * ran - cycles, registry.getCycles());
+    }
+
+    @Test
+    void testMetricsCountBusAccesses() {
+        Console console = console(NMI_COUNTER, false);
+        MetricsRegistry registry = new MetricsRegistry();
+        console.metrics(registry.instance("console"));
+
+        console.runFrames(3);
+
+        // Each of the two handlers run: the NMI pushes 3 bytes, INC $00 reads once and writes twice, and RTI reads the
+        // stack 4 times. The first instruction stores to $2000.
+        assertEquals(20, console.metrics().getRamAccesses());
+        assertEquals(1, console.metrics().getPpuAccesses());
+        assertTrue(console.metrics().getCartridgeAccesses() > 3 * 29780 / 2);
+        assertEquals(0, console.metrics().getIoAccesses());
+    }
+
+    @Test
+    void testFork() {
+        Console console = console(NMI_COUNTER, true);
+        console.runFrames(10);
+
+        Console fork = console.fork();
+        assertEquals(10, fork.frames());
+        assertEquals(console.cpu().cycles(), fork.cpu().cycles());
+        assertArrayEquals(console.ram(), fork.ram());
+        fork.runFrames(5);
+        // The fork wrote its own copy of the counter's page
+        fork.bus().store((short) 0x0001, (byte) 0x42);
+
+        assertEquals(9, console.ram()[0]);
+        assertEquals(0, console.ram()[1]);
+        assertEquals(14, fork.ram()[0]);
+        console.runFrames(5);
+        assertEquals(console.cpu().cycles(), fork.cpu().cycles());
+    }
+
+    @Test
+    void testForkMmc3() {
+        int[] program = {
+                0xA9, 0x08,       // $E000 LDA #$08
+                0x8D, 0x01, 0x20, // $E002 STA $2001
+                0xA9, 0x05,       // $E005 LDA #$05
+                0x8D, 0x00, 0xC0, // $E007 STA $C000, latch
+                0x8D, 0x01, 0xC0, // $E00A STA $C001, reload
+                0x4C, 0x0D, 0xE0, // $E00D JMP $E00D
+        };
+        // With the interrupt disabled, the board is only brought up to date when something syncs it
+        for (int frames = 2; frames <= 6; frames++) {
+            Console console = mmc3(program);
+            console.runFrames(frames);
+
+            Console fork = console.fork();
+            console.runFrames(3);
+            fork.runFrames(3);
+
+            ByteBuffer expected = ByteBuffer.allocate(console.snapshotSize());
+            console.save(expected);
+            ByteBuffer actual = ByteBuffer.allocate(fork.snapshotSize());
+            fork.save(actual);
+            assertArrayEquals(expected.array(), actual.array(), "Forked after " + frames + " frames");
+        }
+    }
+
+    @Test
+    void testForksInParallel() throws Exception {
+        Console console = console(NMI_COUNTER, true);
+        console.runFrames(3);
+        Console[] forks = new Console[64];
+        for (int i = 0; i < forks.length; i++) {
+            forks[i] = console.fork();
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < forks.length; i++) {
+                Console fork = forks[i];
+                int frames = i;
+                executor.submit(() -> fork.runFrames(frames));
+            }
+        }
+
+        for (int i = 0; i < forks.length; i++) {
+            assertEquals(3 + i, forks[i].frames());
+            assertEquals(2 + i, forks[i].ram()[0] & 0xFF);
+        }
+        assertEquals(2, console.ram()[0]);
+    }
+
+    @Test
+    void testRewind() {
+        Console console = console(NMI_COUNTER, true);
+        RewindBuffer rewind = new RewindBuffer(console, console.snapshotSize(), 1 << 20, 30);
+        console.rewindBuffer(rewind);
+        console.runFrames(60);
+        long cycles = console.cpu().cycles();
+
+        assertEquals(60, rewind.newest());
+        assertEquals(50, rewind.rewind(10));
+        assertEquals(50, console.frames());
+        assertEquals(49, console.ram()[0]);
+
+        console.runFrames(10);
+
+        assertEquals(cycles, console.cpu().cycles());
+        assertEquals(60, rewind.newest());
+    }
+}
@@ -0,0 +1,98 @@
+package com.experiments.nes.console;
+
+import com.experiments.nes.input.Button;
+import com.experiments.nes.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunAheadTest {
+    // Enables NMI with rendering off and spins; the NMI handler reads controller 1 into $01 and sets the backdrop
+    // colour to it, so the screen shows the buttons held
+    private static final int[] BACKDROP = ConsoleTest.controllerReader(
+            0xA9, 0x3F,       // LDA #$3F
+            0x8D, 0x06, 0x20, // STA $2006
+            0xA9, 0x00,       // LDA #$00
+            0x8D, 0x06, 0x20, // STA $2006
+            0xA5, 0x01,       // LDA $01
+            0x8D, 0x07, 0x20, // STA $2007
+            0x40              // RTI
+    );
+
+    @Test
+    void testInputShowsSooner() {
+        Console plain = ConsoleTest.console(BACKDROP, true);
+        Console console = ConsoleTest.console(BACKDROP, true);
+        RunAhead runAhead = new RunAhead(console, 1);
+        plain.runFrames(3);
+        runAhead.runFrames(3);
+
+        plain.controllers().publish(Button.Up.mask(), 0);
+        console.controllers().publish(Button.Up.mask(), 0);
+        plain.runFrame();
+        runAhead.runFrame();
+
+        assertNotEquals(plain.framebuffer()[0], console.framebuffer()[0]);
+        plain.runFrame();
+        assertArrayEquals(plain.framebuffer(), console.framebuffer());
+    }
+
+    @Test
+    void testMachineUnaffected() {
+        Console plain = ConsoleTest.console(BACKDROP, true);
+        Console console = ConsoleTest.console(BACKDROP, true);
+        RunAhead runAhead = new RunAhead(console, 2);
+        Random random = new Random(1);
+
+        for (int frame = 0; frame < 20; frame++) {
+            int buttons = random.nextInt(256);
+            plain.controllers().publish(buttons, 0);
+            console.controllers().publish(buttons, 0);
+            plain.runFrame();
+            runAhead.runFrame();
+
+            assertEquals(plain.frames(), console.frames());
+            assertEquals(plain.cpu().cycles(), console.cpu().cycles());
+            assertArrayEquals(plain.ram(), console.ram());
+        }
+        assertFalse(console.controllers().frozen());
+        assertEquals(20, runAhead.overhead().count());
+        assertTrue(runAhead.lastOverhead() > 0);
+    }
+
+    @Test
+    void testMetricsCountRealFrames() {
+        Console plain = ConsoleTest.console(BACKDROP, true);
+        Console console = ConsoleTest.console(BACKDROP, true);
+        MetricsRegistry registry = new MetricsRegistry();
+        plain.metrics(registry.instance("plain"));
+        console.metrics(registry.instance("console"));
+        RunAhead runAhead = new RunAhead(console, 2);
+
+        plain.runFrames(5);
+        runAhead.runFrames(5);
+
+        assertFalse(console.metricsSuspended());
+        assertEquals(5, console.metrics().getFrames());
+        assertEquals(plain.metrics().getCycles(), console.metrics().getCycles());
+        assertEquals(plain.metrics().getRamAccesses(), console.metrics().getRamAccesses());
+        assertEquals(plain.metrics().getIoAccesses(), console.metrics().getIoAccesses());
+    }
+
+    @Test
+    void testNoRunAhead() {
+        Console console = ConsoleTest.console(BACKDROP, true);
+        RunAhead runAhead = new RunAhead(console, 0);
+
+        runAhead.runFrames(5);
+
+        assertEquals(5, console.frames());
+        assertEquals(0, runAhead.overhead().count());
+    }
+}
@@ -0,0 +1,113 @@
+package com.experiments.nes.movie;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.console.ConsoleTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieTest {
+    // Enables NMI and spins; the NMI handler reads controller 1 into $01, adds it to $00 and counts frames in $02
+    private static final int[] INPUT_SUM = ConsoleTest.controllerReader(
+            0xA5, 0x01,       // LDA $01
+            0x18,             // CLC
+            0x65, 0x00,       // ADC $00
+            0x85, 0x00,       // STA $00
+            0xE6, 0x02,       // INC $02
+            0x40              // RTI
+    );
+
+    private final List<byte[]> ram = new ArrayList<>();
+    private final List<Long> cycles = new ArrayList<>();
+
+    static Console console() {
+        return ConsoleTest.console(INPUT_SUM, true);
+    }
+
+    // Records from frame 5 to 205 with random input published before each frame
+    private Movie record() {
+        Console console = console();
+        console.runFrames(5);
+        Recorder recorder = new Recorder(console, 30);
+        Random random = new Random(1);
+        for (int frame = 0; frame < 200; frame++) {
+            ram.add(console.ram().clone());
+            cycles.add(console.cpu().cycles());
+            console.controllers().publish(random.nextInt(256), random.nextInt(256));
+            recorder.runFrame();
+        }
+        ram.add(console.ram().clone());
+        cycles.add(console.cpu().cycles());
+        return recorder.movie();
+    }
+
+    @Test
+    void testRecord() {
+        Movie movie = record();
+
+        assertEquals(5, movie.start());
+        assertEquals(205, movie.end());
+        assertEquals(200, movie.length());
+        assertEquals(185, movie.snapshotFrame(204));
+        assertEquals(5, movie.snapshotFrame(34));
+        assertThrows(IllegalStateException.class, () -> movie.input(5));
+        assertThrows(IllegalStateException.class, () -> movie.snapshotFrame(206));
+        assertThrows(IllegalStateException.class, () -> movie.snapshot(36));
+    }
+
+    @Test
+    void testSeek() {
+        Movie movie = record();
+        Console console = console();
+        console.render(1);
+        Player player = new Player(console, movie);
+
+        for (long frame : new long[] {150, 35, 36, 5, 205}) {
+            player.seek(frame);
+
+            assertEquals(frame, console.frames());
+            assertArrayEquals(ram.get((int) (frame - 5)), console.ram(), "Frame " + frame);
+            assertEquals(cycles.get((int) (frame - 5)), console.cpu().cycles(), "Frame " + frame);
+        }
+        assertEquals(1, console.render());
+        assertTrue(player.finished());
+    }
+
+    @Test
+    void testPlay() {
+        Movie movie = record();
+        Console console = console();
+        Player player = new Player(console, movie);
+        // Input published live is ignored while the movie plays
+        console.controllers().publish(0xFF, 0xFF);
+
+        player.seek(100);
+        player.runToEnd();
+
+        assertEquals(205, console.frames());
+        assertArrayEquals(ram.get(200), console.ram());
+        assertFalse(player.runFrame());
+    }
+
+    @Test
+    void testSaveAndLoad() {
+        Movie movie = Movie.parse(record().bytes());
+        Player player = new Player(console(), movie);
+
+        player.seek(200);
+
+        assertEquals(200, movie.length());
+        assertArrayEquals(ram.get(195), player.console().ram());
+        byte[] bytes = movie.bytes();
+        bytes[0] = 0;
+        assertThrows(IllegalStateException.class, () -> Movie.parse(bytes));
+    }
+}
@@ -0,0 +1,739 @@
+package com.experiments.nes.cpu;
+
+// Experimental engine running many instances of the same program a whole instruction at a time, for searches over
+// large populations that only care about the CPU's registers and memory. Registers for every lane are held in
+// arrays, and each step the lanes at the most common PC that fetched the same opcode run it together, decoding it
+// once and looping over the lanes, while lanes that diverged run theirs alone. Only the accesses an instruction
+// needs reach memory, without the dummy reads of the cycle-level Cpu, and interrupts are taken between instructions
+// without the delay after CLI and SEI.
+public class BatchCpu {
+    private static final int RESET_VECTOR = 0xFFFC;
+    private static final int NMI_VECTOR = 0xFFFA;
+    private static final int IRQ_VECTOR = 0xFFFE;
+    private static final int C = 0x01;
+    private static final int Z = 0x02;
+    private static final int I = 0x04;
+    private static final int V = 0x40;
+    private static final int N = 0x80;
+
+    private enum Mode {
+        Implied, Accumulator, Immediate, ZeroPage, ZeroPageX, ZeroPageY, Absolute, AbsoluteX, AbsoluteY,
+        IndexedIndirect, IndirectIndexed, Indirect
+    }
+
+    private enum Op {
+        ADC, AND, ASL, BIT, BRK, CLC, CLD, CLI, CLV, CMP, CPX, CPY, DEC, DEX, DEY, EOR, INC, INX, INY, JMP, JSR,
+        LDA, LDX, LDY, LSR, NOP, ORA, ROL, ROR, RTI, RTS, SBC, SEC, SED, SEI, STA, STX, STY, TAX, TAY, TSX, TXA,
+        TXS, TYA;
+
+        boolean writes() {
+            return this == STA || this == STX || this == STY;
+        }
+
+        boolean modifies() {
+            return this == ASL || this == LSR || this == ROL || this == ROR || this == INC || this == DEC;
+        }
+    }
+
+    private static final Mode[] MODES = new Mode[0x100];
+    private static final Op[] OPS = new Op[0x100];
+    private static final int[] CYCLES = new int[0x100];
+    static {
+        define(Op.ADC, 0x69, 0x65, 0x75, 0x6D, 0x7D, 0x79, 0x61, 0x71);
+        define(Op.AND, 0x29, 0x25, 0x35, 0x2D, 0x3D, 0x39, 0x21, 0x31);
+        define(Op.CMP, 0xC9, 0xC5, 0xD5, 0xCD, 0xDD, 0xD9, 0xC1, 0xD1);
+        define(Op.EOR, 0x49, 0x45, 0x55, 0x4D, 0x5D, 0x59, 0x41, 0x51);
+        define(Op.LDA, 0xA9, 0xA5, 0xB5, 0xAD, 0xBD, 0xB9, 0xA1, 0xB1);
+        define(Op.ORA, 0x09, 0x05, 0x15, 0x0D, 0x1D, 0x19, 0x01, 0x11);
+        define(Op.SBC, 0xE9, 0xE5, 0xF5, 0xED, 0xFD, 0xF9, 0xE1, 0xF1);
+        define(Op.STA, -1, 0x85, 0x95, 0x8D, 0x9D, 0x99, 0x81, 0x91);
+        defineShift(Op.ASL, 0x0A, 0x06, 0x16, 0x0E, 0x1E);
+        defineShift(Op.LSR, 0x4A, 0x46, 0x56, 0x4E, 0x5E);
+        defineShift(Op.ROL, 0x2A, 0x26, 0x36, 0x2E, 0x3E);
+        defineShift(Op.ROR, 0x6A, 0x66, 0x76, 0x6E, 0x7E);
+        defineShift(Op.DEC, -1, 0xC6, 0xD6, 0xCE, 0xDE);
+        defineShift(Op.INC, -1, 0xE6, 0xF6, 0xEE, 0xFE);
+        define(Op.BIT, 0x24, Mode.ZeroPage);
+        define(Op.BIT, 0x2C, Mode.Absolute);
+        define(Op.CPX, 0xE0, Mode.Immediate);
+        define(Op.CPX, 0xE4, Mode.ZeroPage);
+        define(Op.CPX, 0xEC, Mode.Absolute);
+        define(Op.CPY, 0xC0, Mode.Immediate);
+        define(Op.CPY, 0xC4, Mode.ZeroPage);
+        define(Op.CPY, 0xCC, Mode.Absolute);
+        define(Op.LDX, 0xA2, Mode.Immediate);
+        define(Op.LDX, 0xA6, Mode.ZeroPage);
+        define(Op.LDX, 0xB6, Mode.ZeroPageY);
+        define(Op.LDX, 0xAE, Mode.Absolute);
+        define(Op.LDX, 0xBE, Mode.AbsoluteY);
+        define(Op.LDY, 0xA0, Mode.Immediate);
+        define(Op.LDY, 0xA4, Mode.ZeroPage);
+        define(Op.LDY, 0xB4, Mode.ZeroPageX);
+        define(Op.LDY, 0xAC, Mode.Absolute);
+        define(Op.LDY, 0xBC, Mode.AbsoluteX);
+        define(Op.STX, 0x86, Mode.ZeroPage);
+        define(Op.STX, 0x96, Mode.ZeroPageY);
+        define(Op.STX, 0x8E, Mode.Absolute);
+        define(Op.STY, 0x84, Mode.ZeroPage);
+        define(Op.STY, 0x94, Mode.ZeroPageX);
+        define(Op.STY, 0x8C, Mode.Absolute);
+        define(Op.JMP, 0x4C, Mode.Absolute);
+        define(Op.JMP, 0x6C, Mode.Indirect);
+        define(Op.JSR, 0x20, Mode.Absolute);
+        define(Op.RTS, 0x60, Mode.Implied);
+        define(Op.RTI, 0x40, Mode.Implied);
+        define(Op.BRK, 0x00, Mode.Implied);
+        define(Op.CLC, 0x18, Mode.Implied);
+        define(Op.CLD, 0xD8, Mode.Implied);
+        define(Op.CLI, 0x58, Mode.Implied);
+        define(Op.CLV, 0xB8, Mode.Implied);
+        define(Op.DEX, 0xCA, Mode.Implied);
+        define(Op.DEY, 0x88, Mode.Implied);
+        define(Op.INX, 0xE8, Mode.Implied);
+        define(Op.INY, 0xC8, Mode.Implied);
+        define(Op.NOP, 0xEA, Mode.Implied);
+        define(Op.SEC, 0x38, Mode.Implied);
+        define(Op.SED, 0xF8, Mode.Implied);
+        define(Op.SEI, 0x78, Mode.Implied);
+        define(Op.TAX, 0xAA, Mode.Implied);
+        define(Op.TAY, 0xA8, Mode.Implied);
+        define(Op.TSX, 0xBA, Mode.Implied);
+        define(Op.TXA, 0x8A, Mode.Implied);
+        define(Op.TXS, 0x9A, Mode.Implied);
+        define(Op.TYA, 0x98, Mode.Implied);
+    }
+
+    private static void define(Op op, int immediate, int zeroPage, int zeroPageX, int absolute, int absoluteX,
+                               int absoluteY, int indexedIndirect, int indirectIndexed) {
+        define(op, immediate, Mode.Immediate);
+        define(op, zeroPage, Mode.ZeroPage);
+        define(op, zeroPageX, Mode.ZeroPageX);
+        define(op, absolute, Mode.Absolute);
+        define(op, absoluteX, Mode.AbsoluteX);
+        define(op, absoluteY, Mode.AbsoluteY);
+        define(op, indexedIndirect, Mode.IndexedIndirect);
+        define(op, indirectIndexed, Mode.IndirectIndexed);
+    }
+
+    private static void defineShift(Op op, int accumulator, int zeroPage, int zeroPageX, int absolute, int absoluteX) {
+        define(op, accumulator, Mode.Accumulator);
+        define(op, zeroPage, Mode.ZeroPage);
+        define(op, zeroPageX, Mode.ZeroPageX);
+        define(op, absolute, Mode.Absolute);
+        define(op, absoluteX, Mode.AbsoluteX);
+    }
+
+    private static void define(Op op, int opcode, Mode mode) {
+        if (opcode < 0) {
+            return;
+        }
+        MODES[opcode] = mode;
+        OPS[opcode] = op;
+        CYCLES[opcode] = switch (op) {
+            case BRK -> 7;
+            case JSR, RTS, RTI -> 6;
+            case JMP -> mode == Mode.Indirect ? 5 : 3;
+            // Reads crossing a page take one more, added when the address is known
+            default -> switch (mode) {
+                case Implied, Accumulator, Immediate -> 2;
+                case ZeroPage -> op.modifies() ? 5 : 3;
+                case ZeroPageX, ZeroPageY, Absolute -> op.modifies() ? 6 : 4;
+                case AbsoluteX, AbsoluteY -> op.modifies() ? 7 : op.writes() ? 5 : 4;
+                case IndexedIndirect -> 6;
+                case IndirectIndexed -> op.writes() ? 6 : 5;
+                case Indirect -> throw new IllegalStateException();
+            };
+        };
+    }
+
+    private final Memory[] memories;
+    private final byte[] a;
+    private final byte[] x;
+    private final byte[] y;
+    private final byte[] s;
+    private final byte[] p;
+    private final short[] pc;
+    private final long[] cycles;
+    private final long[] instructions;
+    private final boolean[] nmi;
+    private final boolean[] irq;
+
+    // Working space for a step: lanes to run, their opcodes, and the group running together
+    private final int[] ready;
+    private final int[] opcodes;
+    private final int[] group;
+    private final int[] address;
+    private final long[] targets;
+    private long batched;
+    private long scalar;
+
+    public BatchCpu(Memory[] memories) {
+        int lanes = memories.length;
+        if (lanes == 0) {
+            throw new IllegalStateException("A batch needs at least one lane");
+        }
+        this.memories = memories.clone();
+        this.a = new byte[lanes];
+        this.x = new byte[lanes];
+        this.y = new byte[lanes];
+        this.s = new byte[lanes];
+        this.p = new byte[lanes];
+        this.pc = new short[lanes];
+        this.cycles = new long[lanes];
+        this.instructions = new long[lanes];
+        this.nmi = new boolean[lanes];
+        this.irq = new boolean[lanes];
+        this.ready = new int[lanes];
+        this.opcodes = new int[lanes];
+        this.group = new int[lanes];
+        this.address = new int[lanes];
+        this.targets = new long[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            s[lane] = (byte) 0xFD;
+            p[lane] = (byte) (I | 0x20);
+        }
+    }
+
+    public boolean implemented(int opcode) {
+        return OPS[opcode & 0xFF] != null;
+    }
+
+    public int lanes() {
+        return memories.length;
+    }
+
+    public Memory memory(int lane) {
+        return memories[lane];
+    }
+
+    public byte a(int lane) {
+        return a[lane];
+    }
+
+    public void a(int lane, int a) {
+        this.a[lane] = (byte) a;
+    }
+
+    public byte x(int lane) {
+        return x[lane];
+    }
+
+    public void x(int lane, int x) {
+        this.x[lane] = (byte) x;
+    }
+
+    public byte y(int lane) {
+        return y[lane];
+    }
+
+    public void y(int lane, int y) {
+        this.y[lane] = (byte) y;
+    }
+
+    public short pc(int lane) {
+        return pc[lane];
+    }
+
+    public void pc(int lane, int pc) {
+        this.pc[lane] = (short) pc;
+    }
+
+    public byte s(int lane) {
+        return s[lane];
+    }
+
+    public void s(int lane, int s) {
+        this.s[lane] = (byte) s;
+    }
+
+    public byte p(int lane) {
+        return p[lane];
+    }
+
+    public void p(int lane, int p) {
+        this.p[lane] = (byte) p;
+    }
+
+    public boolean flag(int lane, Cpu.Flag flag) {
+        return flag.isSet(p[lane]);
+    }
+
+    public long cycles(int lane) {
+        return cycles[lane];
+    }
+
+    public long instructions(int lane) {
+        return instructions[lane];
+    }
+
+    // Lane instructions run together with others at the same PC, and alone
+    public long batched() {
+        return batched;
+    }
+
+    public long scalar() {
+        return scalar;
+    }
+
+    // Copies a lane's registers from a cycle-level CPU that is between instructions
+    public void load(int lane, Cpu cpu) {
+        a[lane] = cpu.a();
+        x[lane] = cpu.x();
+        y[lane] = cpu.y();
+        pc[lane] = cpu.pc();
+        s[lane] = cpu.s();
+        p[lane] = cpu.p();
+    }
+
+    // Signals an NMI edge, taken before the lane's next instruction
+    public void nmi(int lane) {
+        nmi[lane] = true;
+    }
+
+    public void irq(int lane, boolean asserted) {
+        irq[lane] = asserted;
+    }
+
+    // Resets every lane, starting each at its reset vector
+    public void reset() {
+        for (int lane = 0; lane < lanes(); lane++) {
+            s[lane] -= 3;
+            p[lane] |= I;
+            pc[lane] = vector(lane, RESET_VECTOR);
+            cycles[lane] += 7;
+        }
+    }
+
+    // Runs one instruction, or takes one interrupt, on every lane
+    public void step() {
+        int count = 0;
+        for (int lane = 0; lane < lanes(); lane++) {
+            count = prepare(lane, count);
+        }
+        execute(count);
+    }
+
+    // Runs every lane for at least the given number of cycles, lanes that get there first waiting for the rest
+    public void run(long cycles) {
+        for (int lane = 0; lane < lanes(); lane++) {
+            targets[lane] = this.cycles[lane] + cycles;
+        }
+        while (true) {
+            int count = 0;
+            for (int lane = 0; lane < lanes(); lane++) {
+                if (this.cycles[lane] < targets[lane]) {
+                    count = prepare(lane, count);
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            execute(count);
+        }
+    }
+
+    // Takes a pending interrupt in place of the lane's next instruction, or adds it to those ready to run one
+    private int prepare(int lane, int count) {
+        if (nmi[lane]) {
+            nmi[lane] = false;
+            interrupt(lane, NMI_VECTOR);
+            return count;
+        }
+        if (irq[lane] && (p[lane] & I) == 0) {
+            interrupt(lane, IRQ_VECTOR);
+            return count;
+        }
+        ready[count] = lane;
+        return count + 1;
+    }
+
+    private void execute(int count) {
+        // The PC most lanes are at, if any one is shared by more than half of them
+        int leader = pc[ready[0]];
+        int votes = 0;
+        for (int i = 0; i < count; i++) {
+            int lanePc = pc[ready[i]];
+            if (votes == 0) {
+                leader = lanePc;
+                votes = 1;
+            }
+            else {
+                votes += lanePc == leader ? 1 : -1;
+            }
+        }
+        int opcode = -1;
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int lane = ready[i];
+            opcodes[lane] = memories[lane].load(pc[lane]) & 0xFF;
+            if (pc[lane] == leader && (opcode < 0 || opcodes[lane] == opcode)) {
+                opcode = opcodes[lane];
+                group[size++] = lane;
+                // Marks the lane as run
+                ready[i] = -1;
+            }
+        }
+        if (size > 0) {
+            execute(opcode, group, size);
+            batched += size;
+        }
+        for (int i = 0; i < count; i++) {
+            int lane = ready[i];
+            if (lane >= 0) {
+                group[0] = lane;
+                execute(opcodes[lane], group, 1);
+                scalar++;
+            }
+        }
+    }
+
+    private void execute(int opcode, int[] lanes, int count) {
+        Op op = OPS[opcode];
+        if (op == null) {
+            int lane = lanes[0];
+            throw new IllegalStateException(String.format("Unimplemented opcode %02x at %04x in lane %d", opcode,
+                    pc[lane], lane));
+        }
+        Mode mode = MODES[opcode];
+        for (int i = 0; i < count; i++) {
+            int lane = lanes[i];
+            cycles[lane] += CYCLES[opcode];
+            instructions[lane]++;
+        }
+        resolve(mode, !op.writes() && !op.modifies(), lanes, count);
+        switch (op) {
+            case ADC -> {
+                for (int i = 0; i < count; i++) {
+                    addWithCarry(lanes[i], operand(lanes[i], i));
+                }
+            }
+            case SBC -> {
+                for (int i = 0; i < count; i++) {
+                    addWithCarry(lanes[i], operand(lanes[i], i) ^ 0xFF);
+                }
+            }
+            case AND -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    a[lane] = flags(lane, a[lane] & operand(lane, i));
+                }
+            }
+            case EOR -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    a[lane] = flags(lane, a[lane] ^ operand(lane, i));
+                }
+            }
+            case ORA -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    a[lane] = flags(lane, a[lane] | operand(lane, i));
+                }
+            }
+            case LDA -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    a[lane] = flags(lane, operand(lane, i));
+                }
+            }
+            case LDX -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    x[lane] = flags(lane, operand(lane, i));
+                }
+            }
+            case LDY -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    y[lane] = flags(lane, operand(lane, i));
+                }
+            }
+            case CMP -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    compare(lane, a[lane], operand(lane, i));
+                }
+            }
+            case CPX -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    compare(lane, x[lane], operand(lane, i));
+                }
+            }
+            case CPY -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    compare(lane, y[lane], operand(lane, i));
+                }
+            }
+            case BIT -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    int value = operand(lane, i);
+                    int zero = (a[lane] & value) == 0 ? Z : 0;
+                    p[lane] = (byte) (p[lane] & ~(N | V | Z) | value & (N | V) | zero);
+                }
+            }
+            case STA -> {
+                for (int i = 0; i < count; i++) {
+                    store(lanes[i], address[i], a[lanes[i]]);
+                }
+            }
+            case STX -> {
+                for (int i = 0; i < count; i++) {
+                    store(lanes[i], address[i], x[lanes[i]]);
+                }
+            }
+            case STY -> {
+                for (int i = 0; i < count; i++) {
+                    store(lanes[i], address[i], y[lanes[i]]);
+                }
+            }
+            case ASL, LSR, ROL, ROR, INC, DEC -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    if (mode == Mode.Accumulator) {
+                        a[lane] = modify(op, lane, a[lane] & 0xFF);
+                    }
+                    else {
+                        store(lane, address[i], modify(op, lane, operand(lane, i)));
+                    }
+                }
+            }
+            case JMP -> {
+                for (int i = 0; i < count; i++) {
+                    pc[lanes[i]] = (short) address[i];
+                }
+            }
+            case JSR -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    // The return address is the last byte of the JSR
+                    push(lane, pc[lane] - 1 >> 8);
+                    push(lane, pc[lane] - 1);
+                    pc[lane] = (short) address[i];
+                }
+            }
+            case RTS -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    int low = pull(lane);
+                    pc[lane] = (short) ((pull(lane) << 8 | low) + 1);
+                }
+            }
+            case RTI -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    p[lane] = (byte) (pull(lane) & ~0x10 | 0x20);
+                    int low = pull(lane);
+                    pc[lane] = (short) (pull(lane) << 8 | low);
+                }
+            }
+            case BRK -> {
+                for (int i = 0; i < count; i++) {
+                    int lane = lanes[i];
+                    // Skips a padding byte and pushes the B flag
+                    pc[lane]++;
+                    push(lane, pc[lane] >> 8);
+                    push(lane, pc[lane]);
+                    push(lane, p[lane] | 0x30);
+                    p[lane] |= I;
+                    pc[lane] = vector(lane, IRQ_VECTOR);
+                }
+            }
+            default -> {
+                for (int i = 0; i < count; i++) {
+                    implied(op, lanes[i]);
+                }
+            }
+        }
+    }
+
+    // Fills in each lane's effective address and moves its PC past the operand, for immediate mode the address of
+    // the operand itself
+    private void resolve(Mode mode, boolean reads, int[] lanes, int count) {
+        for (int i = 0; i < count; i++) {
+            int lane = lanes[i];
+            int operand = (pc[lane] + 1) & 0xFFFF;
+            address[i] = switch (mode) {
+                case Implied, Accumulator -> {
+                    pc[lane] = (short) operand;
+                    yield 0;
+                }
+                case Immediate -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield operand;
+                }
+                case ZeroPage -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield load(lane, operand);
+                }
+                case ZeroPageX -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield (load(lane, operand) + x[lane]) & 0xFF;
+                }
+                case ZeroPageY -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield (load(lane, operand) + y[lane]) & 0xFF;
+                }
+                case Absolute -> {
+                    pc[lane] = (short) (operand + 2);
+                    yield word(lane, operand);
+                }
+                case AbsoluteX -> {
+                    pc[lane] = (short) (operand + 2);
+                    yield indexed(lane, word(lane, operand), x[lane] & 0xFF, reads);
+                }
+                case AbsoluteY -> {
+                    pc[lane] = (short) (operand + 2);
+                    yield indexed(lane, word(lane, operand), y[lane] & 0xFF, reads);
+                }
+                case IndexedIndirect -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield zeroPageWord(lane, load(lane, operand) + x[lane]);
+                }
+                case IndirectIndexed -> {
+                    pc[lane] = (short) (operand + 1);
+                    yield indexed(lane, zeroPageWord(lane, load(lane, operand)), y[lane] & 0xFF, reads);
+                }
+                case Indirect -> {
+                    pc[lane] = (short) (operand + 2);
+                    // The pointer's high byte is not carried into, so it wraps within its page
+                    int pointer = word(lane, operand);
+                    int high = pointer & 0xFF00 | (pointer + 1) & 0x00FF;
+                    yield load(lane, high) << 8 | load(lane, pointer);
+                }
+            };
+        }
+    }
+
+    private int indexed(int lane, int base, int index, boolean reads) {
+        int address = (base + index) & 0xFFFF;
+        if (reads && (address & 0xFF00) != (base & 0xFF00)) {
+            cycles[lane]++;
+        }
+        return address;
+    }
+
+    private byte modify(Op op, int lane, int value) {
+        int result = switch (op) {
+            case ASL -> {
+                carry(lane, value & 0x80);
+                yield value << 1;
+            }
+            case LSR -> {
+                carry(lane, value & 0x01);
+                yield value >> 1;
+            }
+            case ROL -> {
+                int carry = p[lane] & C;
+                carry(lane, value & 0x80);
+                yield value << 1 | carry;
+            }
+            case ROR -> {
+                int carry = p[lane] & C;
+                carry(lane, value & 0x01);
+                yield value >> 1 | carry << 7;
+            }
+            case INC -> value + 1;
+            case DEC -> value - 1;
+            default -> throw new IllegalStateException();
+        };
+        return flags(lane, result);
+    }
+
+    private void implied(Op op, int lane) {
+        switch (op) {
+            case CLC -> p[lane] &= ~C;
+            case SEC -> p[lane] |= C;
+            case CLD -> p[lane] &= ~0x08;
+            case SED -> p[lane] |= 0x08;
+            case CLI -> p[lane] &= ~I;
+            case SEI -> p[lane] |= I;
+            case CLV -> p[lane] &= ~V;
+            case DEX -> x[lane] = flags(lane, x[lane] - 1);
+            case DEY -> y[lane] = flags(lane, y[lane] - 1);
+            case INX -> x[lane] = flags(lane, x[lane] + 1);
+            case INY -> y[lane] = flags(lane, y[lane] + 1);
+            case TAX -> x[lane] = flags(lane, a[lane]);
+            case TAY -> y[lane] = flags(lane, a[lane]);
+            case TSX -> x[lane] = flags(lane, s[lane]);
+            case TXA -> a[lane] = flags(lane, x[lane]);
+            case TYA -> a[lane] = flags(lane, y[lane]);
+            // Unlike the other transfers, TXS does not affect the flags
+            case TXS -> s[lane] = x[lane];
+            case NOP -> {
+            }
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    private void interrupt(int lane, int vector) {
+        push(lane, pc[lane] >> 8);
+        push(lane, pc[lane]);
+        push(lane, (p[lane] | 0x20) & ~0x10);
+        p[lane] |= I;
+        pc[lane] = vector(lane, vector);
+        cycles[lane] += 7;
+    }
+
+    private void addWithCarry(int lane, int value) {
+        int accumulator = a[lane] & 0xFF;
+        int result = accumulator + value + (p[lane] & C);
+        int overflow = (result ^ accumulator) & (result ^ value) & 0x80;
+        carry(lane, result & 0x100);
+        p[lane] = (byte) (p[lane] & ~V | (overflow != 0 ? V : 0));
+        a[lane] = flags(lane, result);
+    }
+
+    private void compare(int lane, byte register, int value) {
+        int result = (register & 0xFF) - value;
+        carry(lane, result >= 0 ? 1 : 0);
+        flags(lane, result);
+    }
+
+    private void carry(int lane, int set) {
+        p[lane] = (byte) (p[lane] & ~C | (set != 0 ? C : 0));
+    }
+
+    // Sets the zero and negative flags from the low byte of the value, and returns that byte
+    private byte flags(int lane, int value) {
+        byte result = (byte) value;
+        p[lane] = (byte) (p[lane] & ~(N | Z) | result & N | (result == 0 ? Z : 0));
+        return result;
+    }
+
+    private int operand(int lane, int index) {
+        return load(lane, address[index]);
+    }
+
+    private int load(int lane, int address) {
+        return memories[lane].load((short) address) & 0xFF;
+    }
+
+    private void store(int lane, int address, byte value) {
+        memories[lane].store((short) address, value);
+    }
+
+    private int word(int lane, int address) {
+        return load(lane, (address + 1) & 0xFFFF) << 8 | load(lane, address);
+    }
+
+    private int zeroPageWord(int lane, int address) {
+        return load(lane, (address + 1) & 0xFF) << 8 | load(lane, address & 0xFF);
+    }
+
+    private short vector(int lane, int vector) {
+        return (short) word(lane, vector);
+    }
+
+    private void push(int lane, int value) {
+        store(lane, 0x0100 | s[lane] & 0xFF, (byte) value);
+        s[lane]--;
+    }
+
+    private int pull(int lane) {
+        s[lane]++;
+        return load(lane, 0x0100 | s[lane] & 0xFF);
+    }
+}
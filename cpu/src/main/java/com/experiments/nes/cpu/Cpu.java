@@ -1,9 +1,20 @@
 package com.experiments.nes.cpu;
 
+import com.experiments.nes.events.InstructionBatchEvent;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+
 import static com.experiments.nes.cpu.Cpu.OperationType.*;
 
-public class Cpu {
+public class Cpu implements Snapshottable {
     private static final short RESET_VECTOR = (short) 0xFFFC;
+    private static final short NMI_VECTOR = (short) 0xFFFA;
+    private static final short IRQ_VECTOR = (short) 0xFFFE;
+    // Snapshot ids of the operations that are not found by opcode
+    private static final short NO_OPERATION = -1;
+    private static final short INTERRUPT_OPERATION = 0x100;
 
     public enum Flag {
         Carry(0x01), Zero(0x02), InterruptDisabled(0x04), Decimal(0x08),
@@ -57,18 +68,24 @@ public class Cpu {
         READ_STACK_TOP,
         PUSH_PCH,
         PUSH_PCL,
+        PUSH_P,
+        FETCH_VECTOR_LOW,
+        FETCH_VECTOR_HIGH,
         INCREMENT_SP,
+        POP_P,
         POP_PCL,
         POP_PCH,
         INCREMENT_PC,
-        DATA_AVAILABLE
+        DATA_AVAILABLE;
+
+        private static final State[] VALUES = values();
     }
 
     enum OperationType {
         Read, Write, ReadWrite, Jump
     }
 
-    private final Memory memory;
+    private Memory memory;
     private byte a = 0;
     private byte x = 0;
     private byte y = 0;
@@ -80,8 +97,22 @@ public class Cpu {
     private byte data;
     private State state = State.FETCH_OPCODE;
     private Operation operation;
-
-    private final Operation[] operations = new Operation[255];
+    private long cycles;
+    private long stallCycles;
+    private long instructions;
+    // Cycle at which the current run() ends, which stop() can bring forward
+    private long stopCycle;
+    // Cycles from which an NMI edge and the IRQ line are seen, Long.MAX_VALUE when there are none. The opcode fetch
+    // only looks at them once the cycle passes nextInterruptCycle, which may be early but is never late.
+    private long nmiCycle = Long.MAX_VALUE;
+    private long irqCycle = Long.MAX_VALUE;
+    private long nextInterruptCycle = Long.MAX_VALUE;
+    // CLI and SEI change the flag after interrupts are polled, so the instruction after them still sees the old value
+    private long interruptFlagCycle = -1;
+    private boolean interruptFlagBefore;
+    private final Operation interrupt = new Interrupt(this, false);
+
+    private final Operation[] operations = new Operation[0x100];
     {
         ImmediateMode immediateMode = new ImmediateMode(this);
         ZeroPageMode zeroPageMode = new ZeroPageMode(this);
@@ -96,7 +127,8 @@ public class Cpu {
         ImpliedMode impliedMode = new ImpliedMode(this);
         AbsoluteIndirectMode absoluteIndirectMode = new AbsoluteIndirectMode(this);
 
-        operation(0x00, new BreakOperation());
+        // BRK
+        operation(0x00, new Interrupt(this, true));
         // ADC
         operation(0x69, new StandardOperation(immediateMode, Read, this::addWithCarry));
         operation(0x65, new StandardOperation(zeroPageMode, Read, this::addWithCarry));
@@ -123,7 +155,7 @@ public class Cpu {
         operation(0x1E, new StandardOperation(absoluteXMode, ReadWrite, this::leftShift));
         // BIT
         operation(0x24, new StandardOperation(zeroPageMode, Read, this::bit));
-        operation(0x2C, new StandardOperation(absoluteXMode, Read, this::bit));
+        operation(0x2C, new StandardOperation(absoluteMode, Read, this::bit));
         // CLC
         operation(0x18, new StandardOperation(impliedMode, Read, this::clearCarry));
         // CLD
@@ -231,6 +263,8 @@ public class Cpu {
         operation(0x76, new StandardOperation(zeroPageXMode, ReadWrite, this::rotateRight));
         operation(0x6E, new StandardOperation(absoluteMode, ReadWrite, this::rotateRight));
         operation(0x7E, new StandardOperation(absoluteXMode, ReadWrite, this::rotateRight));
+        // RTI
+        operation(0x40, new ReturnFromInterrupt(this));
         // RTS
         operation(0x60, new ReturnFromSubroutine(this));
         // SBC
@@ -286,6 +320,10 @@ public class Cpu {
         this.memory = memory;
     }
 
+    public boolean implemented(int opcode) {
+        return this.operations[opcode & 0x00FF] != null;
+    }
+
     public byte a() {
         return a;
     }
@@ -336,6 +374,59 @@ public class Cpu {
 
     public void p(int p) {
         this.p = (byte) p;
+        updateInterrupts();
+    }
+
+    public Memory memory() {
+        return memory;
+    }
+
+    // Swaps the memory the CPU reads and writes through, e.g. for one that counts accesses while metrics are attached
+    public void memory(Memory memory) {
+        this.memory = memory;
+    }
+
+    public long cycles() {
+        return cycles;
+    }
+
+    public long instructions() {
+        return instructions;
+    }
+
+    // Signals an NMI edge, seen by the CPU from the given cycle, which may be in the future
+    public void nmi(long cycle) {
+        this.nmiCycle = Math.min(this.nmiCycle, cycle);
+        updateInterrupts();
+    }
+
+    public void nmi() {
+        nmi(this.cycles);
+    }
+
+    // Asserts the IRQ line from the given cycle, which may be in the future, or releases it with Long.MAX_VALUE
+    public void irq(long cycle) {
+        this.irqCycle = cycle;
+        updateInterrupts();
+    }
+
+    public void irq(boolean asserted) {
+        irq(asserted ? this.cycles : Long.MAX_VALUE);
+    }
+
+    public long nextInterruptCycle() {
+        return nextInterruptCycle;
+    }
+
+    // Ends the current run() once the given cycle has run, or after the current cycle if it already has, e.g. when a
+    // register write brings a device's deadline forward
+    public void stop(long cycle) {
+        this.stopCycle = Math.min(this.stopCycle, cycle);
+    }
+
+    // Halts the CPU for the given number of cycles after the current one, as a DMA transfer does
+    public void stall(int cycles) {
+        this.stallCycles += cycles;
     }
 
     public void reset() {
@@ -344,14 +435,95 @@ public class Cpu {
         this.p = Flag.InterruptDisabled.set(p);
     }
 
+    // Captures the registers together with the state of the instruction in progress, so a snapshot can be taken
+    // between any two cycles
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.put(this.a).put(this.x).put(this.y).putShort(this.pc).put(this.s).put(this.p);
+        buffer.putShort(this.address).putShort(this.pointer).put(this.data);
+        buffer.put((byte) this.state.ordinal()).putShort(operationId());
+        buffer.putLong(this.cycles).putLong(this.stallCycles).putLong(this.instructions);
+        buffer.putLong(this.nmiCycle).putLong(this.irqCycle).putLong(this.nextInterruptCycle);
+        buffer.putLong(this.interruptFlagCycle);
+        Snapshot.put(buffer, this.interruptFlagBefore);
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        this.a = buffer.get();
+        this.x = buffer.get();
+        this.y = buffer.get();
+        this.pc = buffer.getShort();
+        this.s = buffer.get();
+        this.p = buffer.get();
+        this.address = buffer.getShort();
+        this.pointer = buffer.getShort();
+        this.data = buffer.get();
+        this.state = State.VALUES[buffer.get()];
+        short operation = buffer.getShort();
+        this.operation = operation == NO_OPERATION ? null
+                : operation == INTERRUPT_OPERATION ? this.interrupt
+                : this.operations[operation];
+        this.cycles = buffer.getLong();
+        this.stallCycles = buffer.getLong();
+        this.instructions = buffer.getLong();
+        this.nmiCycle = buffer.getLong();
+        this.irqCycle = buffer.getLong();
+        this.nextInterruptCycle = buffer.getLong();
+        this.interruptFlagCycle = buffer.getLong();
+        this.interruptFlagBefore = Snapshot.getBoolean(buffer);
+    }
+
+    private short operationId() {
+        if (this.operation == null) {
+            return NO_OPERATION;
+        }
+        if (this.operation == this.interrupt) {
+            return INTERRUPT_OPERATION;
+        }
+        for (short opcode = 0; opcode < this.operations.length; opcode++) {
+            if (this.operations[opcode] == this.operation) {
+                return opcode;
+            }
+        }
+        throw new IllegalStateException("Operation in progress has no opcode");
+    }
+
     public void clock() {
+        this.cycles++;
+        if (this.stallCycles > 0) {
+            this.stallCycles--;
+            return;
+        }
+        step();
+    }
+
+    public void run(long cycles) {
+        InstructionBatchEvent event = new InstructionBatchEvent();
+        event.begin();
+        long startCycle = this.cycles;
+        long startInstructions = this.instructions;
+        this.stopCycle = startCycle + cycles;
+        while (this.cycles < this.stopCycle) {
+            clock();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.startCycle = startCycle;
+            event.cycles = this.cycles - startCycle;
+            event.instructions = this.instructions - startInstructions;
+            event.commit();
+        }
+    }
+
+    private void step() {
         if (state == State.FETCH_OPCODE) {
             fetchOpcode();
         }
         state = operation.clock(state);
         if (state == State.FETCH_OPCODE_IN_SAME_CYCLE) {
             this.state = State.FETCH_OPCODE;
-            clock();
+            step();
         }
     }
 
@@ -390,7 +562,46 @@ public class Cpu {
     }
 
     private void fetchOpcode() {
-        this.operation = this.operations[initLowByte(this.memory.load(this.pc++))];
+        // Interrupts are polled before the last cycle of the previous instruction, so they must be seen before this one
+        if (this.nextInterruptCycle < this.cycles && interruptPending()) {
+            // The opcode is fetched and discarded
+            this.memory.load(this.pc);
+            this.operation = this.interrupt;
+            return;
+        }
+        this.instructions++;
+        short opcode = initLowByte(this.memory.load(this.pc++));
+        this.operation = this.operations[opcode];
+        if (this.operation == null) {
+            throw new IllegalStateException(String.format("Unimplemented opcode %02x at %04x", opcode,
+                    (short) (this.pc - 1)));
+        }
+    }
+
+    private boolean interruptPending() {
+        if (this.nmiCycle < this.cycles) {
+            return true;
+        }
+        boolean disabled = this.interruptFlagCycle == this.cycles ? this.interruptFlagBefore : flag(Flag.InterruptDisabled);
+        if (this.irqCycle < this.cycles && !disabled) {
+            return true;
+        }
+        updateInterrupts();
+        return false;
+    }
+
+    private void updateInterrupts() {
+        this.nextInterruptCycle = Math.min(this.nmiCycle, flag(Flag.InterruptDisabled) ? Long.MAX_VALUE : this.irqCycle);
+    }
+
+    private void interruptFlag(boolean disabled) {
+        this.interruptFlagCycle = this.cycles;
+        this.interruptFlagBefore = flag(Flag.InterruptDisabled);
+        this.p = Flag.InterruptDisabled.set(this.p, disabled);
+        // Setting the flag leaves nextInterruptCycle early, so the next poll still sees an IRQ that was pending
+        if (!disabled) {
+            updateInterrupts();
+        }
     }
 
     private State fetchImmediate() {
@@ -503,10 +714,44 @@ public class Cpu {
         return State.PUSH_PCL;
     }
 
-    private State pushPCL() {
+    private State pushPCL(State nextState) {
         this.memory.store(stackTopAddress(), lowByte(this.pc));
         this.s--;
-        return State.UPDATE_PC;
+        return nextState;
+    }
+
+    private State fetchBreakPadding() {
+        this.memory.load(this.pc++);
+        return State.PUSH_PCH;
+    }
+
+    private State pushP(boolean software) {
+        // Bit 5 is always pushed set, the B flag only by BRK
+        byte pushed = (byte) (software ? this.p | 0x30 : (this.p | 0x20) & ~0x10);
+        this.memory.store(stackTopAddress(), pushed);
+        this.s--;
+        // An NMI arriving by now hijacks the vector of a BRK or IRQ
+        if (this.nmiCycle < this.cycles) {
+            this.nmiCycle = Long.MAX_VALUE;
+            this.pointer = NMI_VECTOR;
+        }
+        else {
+            this.pointer = IRQ_VECTOR;
+        }
+        return State.FETCH_VECTOR_LOW;
+    }
+
+    private State fetchVectorLow() {
+        this.address = initLowByte(this.memory.load(this.pointer));
+        this.p = Flag.InterruptDisabled.set(this.p);
+        updateInterrupts();
+        return State.FETCH_VECTOR_HIGH;
+    }
+
+    private State fetchVectorHigh() {
+        this.address = setHighByte(this.address, this.memory.load((short) (this.pointer + 1)));
+        this.pc = this.address;
+        return State.FETCH_OPCODE;
     }
 
     private State fetchAddressHighAndUpdatePC() {
@@ -515,9 +760,17 @@ public class Cpu {
         return nextState;
     }
 
-    private State incrementSP() {
+    private State incrementSP(State nextState) {
         this.memory.load(stackTopAddress());
         this.s++;
+        return nextState;
+    }
+
+    private State popP() {
+        // The B flag and bit 5 do not exist in the register
+        this.p = (byte) ((this.memory.load(stackTopAddress()) & ~0x10) | 0x20);
+        this.s++;
+        updateInterrupts();
         return State.POP_PCL;
     }
 
@@ -527,9 +780,9 @@ public class Cpu {
         return State.POP_PCH;
     }
 
-    private State popPCH() {
+    private State popPCH(State nextState) {
         this.pc = setHighByte(this.pc, this.memory.load(stackTopAddress()));
-        return State.INCREMENT_PC;
+        return nextState;
     }
 
     private State incrementPC() {
@@ -598,7 +851,8 @@ public class Cpu {
 
     private void rotateRight() {
         int bit0 = this.data & 0x01;
-        int result = (this.data >> 1) | ((this.p & Flag.Carry.mask()) << 7);
+        // Clear the sign extension before shifting so only the carry lands in bit 7
+        int result = ((this.data & 0x00FF) >> 1) | ((this.p & Flag.Carry.mask()) << 7);
         this.data = (byte) result;
         setZeroNegativeFlags(this.data);
         this.p = Flag.Carry.set(this.p, bit0 != 0);
@@ -666,10 +920,11 @@ public class Cpu {
     }
 
     private void compare(byte register) {
-        int result = register - this.data;
+        // Compare is an unsigned subtraction; the negative flag is bit 7 of the 8-bit difference
+        int result = (register & 0x00FF) - (this.data & 0x00FF);
         this.p = Flag.Carry.set(this.p, result >= 0);
         this.p = Flag.Zero.set(this.p, result == 0);
-        this.p = Flag.Negative.set(this.p, result < 0);
+        this.p = Flag.Negative.set(this.p, (result & 0x80) != 0);
     }
 
     private void compareA() {
@@ -708,11 +963,11 @@ public class Cpu {
     }
 
     private void clearInterrupt() {
-        this.p = Flag.InterruptDisabled.clear(this.p);
+        interruptFlag(false);
     }
 
     private void setInterrupt() {
-        this.p = Flag.InterruptDisabled.set(this.p);
+        interruptFlag(true);
     }
 
     private void clearOverflow() {
@@ -740,8 +995,8 @@ public class Cpu {
     }
 
     private void transferXtoS() {
+        // Unlike the other transfers, TXS does not affect the flags
         this.s = this.x;
-        setZeroNegativeFlags(this.s);
     }
 
     private void transferYtoA() {
@@ -789,13 +1044,6 @@ public class Cpu {
         }
     }
 
-    private static class BreakOperation implements Operation {
-        @Override
-        public State clock(State state) {
-            return State.FETCH_VALUE;
-        }
-    }
-
     private interface AddressingMode {
         State clock(State state, Runnable operation, OperationType operationType);
     }
@@ -994,7 +1242,7 @@ public class Cpu {
                 case FETCH_ADDRESS -> cpu.fetchAddress(State.READ_STACK_TOP, cpu::nextPC);
                 case READ_STACK_TOP -> cpu.readStackTop();
                 case PUSH_PCH -> cpu.pushPCH();
-                case PUSH_PCL -> cpu.pushPCL();
+                case PUSH_PCL -> cpu.pushPCL(State.UPDATE_PC);
                 case UPDATE_PC -> cpu.fetchAddressHighAndUpdatePC();
                 default -> throw new IllegalStateException();
             };
@@ -1008,12 +1256,47 @@ public class Cpu {
                 case FETCH_OPCODE -> State.FETCH_BOGUS_INSTRUCTION;
                 // CPU requires minimum 2 cycles per operation, so it does a bogus fetch of PC
                 case FETCH_BOGUS_INSTRUCTION -> cpu.fetchBogusInstruction(State.INCREMENT_SP);
-                case INCREMENT_SP -> cpu.incrementSP();
+                case INCREMENT_SP -> cpu.incrementSP(State.POP_PCL);
                 case POP_PCL -> cpu.popPCL();
-                case POP_PCH -> cpu.popPCH();
+                case POP_PCH -> cpu.popPCH(State.INCREMENT_PC);
                 case INCREMENT_PC -> cpu.incrementPC();
                 default -> throw new IllegalStateException();
             };
         }
     }
+
+    private record ReturnFromInterrupt(Cpu cpu) implements Operation {
+        @Override
+        public State clock(State state) {
+            return switch (state) {
+                case FETCH_OPCODE -> State.FETCH_BOGUS_INSTRUCTION;
+                // CPU requires minimum 2 cycles per operation, so it does a bogus fetch of PC
+                case FETCH_BOGUS_INSTRUCTION -> cpu.fetchBogusInstruction(State.INCREMENT_SP);
+                case INCREMENT_SP -> cpu.incrementSP(State.POP_P);
+                case POP_P -> cpu.popP();
+                case POP_PCL -> cpu.popPCL();
+                case POP_PCH -> cpu.popPCH(State.FETCH_OPCODE);
+                default -> throw new IllegalStateException();
+            };
+        }
+    }
+
+    // BRK, or an IRQ or NMI taken in place of the next instruction
+    private record Interrupt(Cpu cpu, boolean software) implements Operation {
+        @Override
+        public State clock(State state) {
+            return switch (state) {
+                // BRK skips a padding byte, hardware interrupts read the PC without incrementing it
+                case FETCH_OPCODE -> software ? State.FETCH_VALUE : State.FETCH_BOGUS_INSTRUCTION;
+                case FETCH_VALUE -> cpu.fetchBreakPadding();
+                case FETCH_BOGUS_INSTRUCTION -> cpu.fetchBogusInstruction(State.PUSH_PCH);
+                case PUSH_PCH -> cpu.pushPCH();
+                case PUSH_PCL -> cpu.pushPCL(State.PUSH_P);
+                case PUSH_P -> cpu.pushP(software);
+                case FETCH_VECTOR_LOW -> cpu.fetchVectorLow();
+                case FETCH_VECTOR_HIGH -> cpu.fetchVectorHigh();
+                default -> throw new IllegalStateException();
+            };
+        }
+    }
 }
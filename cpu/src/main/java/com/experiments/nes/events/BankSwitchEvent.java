@@ -0,0 +1,41 @@
+package com.experiments.nes.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.experiments.nes.BankSwitch")
+@Label("Bank Switch")
+@Category({"NES", "Memory"})
+@Description("A mapper register write that remapped a PRG or CHR window")
+@StackTrace(false)
+// Games switch banks thousands of times per second, so this is opt-in
+@Enabled(false)
+public class BankSwitchEvent extends jdk.jfr.Event {
+    @Label("Cycle")
+    public long cycle;
+
+    @Label("Window")
+    @Description("First address of the remapped window")
+    public int window;
+
+    @Label("Bank")
+    public int bank;
+
+    @Label("CHR")
+    public boolean chr;
+
+    public static void emit(long cycle, int window, int bank, boolean chr) {
+        BankSwitchEvent event = new BankSwitchEvent();
+        if (event.isEnabled()) {
+            event.cycle = cycle;
+            event.window = window;
+            event.bank = bank;
+            event.chr = chr;
+            event.commit();
+        }
+    }
+}
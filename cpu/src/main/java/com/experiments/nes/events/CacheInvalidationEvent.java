@@ -0,0 +1,35 @@
+package com.experiments.nes.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.experiments.nes.CacheInvalidation")
+@Label("Cache Invalidation")
+@Category({"NES", "Memory"})
+@Description("Entries dropped from a decoded-data cache")
+@StackTrace(false)
+@Enabled(false)
+public class CacheInvalidationEvent extends jdk.jfr.Event {
+    @Label("Cache")
+    public String cache;
+
+    @Label("First Entry")
+    public int first;
+
+    @Label("Entries")
+    public int count;
+
+    public static void emit(String cache, int first, int count) {
+        CacheInvalidationEvent event = new CacheInvalidationEvent();
+        if (event.isEnabled()) {
+            event.cache = cache;
+            event.first = first;
+            event.count = count;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.experiments.nes.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.experiments.nes.Dma")
+@Label("DMA")
+@Category({"NES", "Memory"})
+@Description("A DMA transfer that halted the CPU")
+@StackTrace(false)
+@Enabled(false)
+public class DmaEvent extends jdk.jfr.Event {
+    @Label("Cycle")
+    public long cycle;
+
+    @Label("Source")
+    public int source;
+
+    @Label("Length")
+    public int length;
+
+    @Label("Stall Cycles")
+    public int stallCycles;
+
+    public static void emit(long cycle, int source, int length, int stallCycles) {
+        DmaEvent event = new DmaEvent();
+        if (event.isEnabled()) {
+            event.cycle = cycle;
+            event.source = source;
+            event.length = length;
+            event.stallCycles = stallCycles;
+            event.commit();
+        }
+    }
+}
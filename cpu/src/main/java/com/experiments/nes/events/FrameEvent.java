@@ -0,0 +1,29 @@
+package com.experiments.nes.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.experiments.nes.Frame")
+@Label("Frame")
+@Category({"NES", "Emulation"})
+@Description("Execution of one emulated video frame")
+@StackTrace(false)
+// A frame slower than the 60Hz display budget is a stall worth looking at
+@Threshold("16 ms")
+public class FrameEvent extends jdk.jfr.Event {
+    @Label("Frame")
+    public long frame;
+
+    @Label("Cycles")
+    public long cycles;
+
+    @Label("Instructions")
+    public long instructions;
+
+    @Label("Rendered")
+    public boolean rendered;
+}
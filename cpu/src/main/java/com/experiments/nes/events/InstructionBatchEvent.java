@@ -0,0 +1,25 @@
+package com.experiments.nes.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.experiments.nes.InstructionBatch")
+@Label("Instruction Batch")
+@Category({"NES", "CPU"})
+@Description("A run of CPU cycles executed without returning to the caller")
+@StackTrace(false)
+@Threshold("10 ms")
+public class InstructionBatchEvent extends jdk.jfr.Event {
+    @Label("Start Cycle")
+    public long startCycle;
+
+    @Label("Cycles")
+    public long cycles;
+
+    @Label("Instructions")
+    public long instructions;
+}
@@ -0,0 +1,33 @@
+package com.experiments.nes.metrics;
+
+import com.experiments.nes.cpu.Memory;
+
+public class CountingMemory implements Memory {
+    private final Memory memory;
+    // Plain counters of reads and writes together, as only their sum is exported: the emulation thread owns these and
+    // flushes them into the shared adders in batches
+    private final long[] accesses = new long[Region.values().length];
+
+    public CountingMemory(Memory memory) {
+        this.memory = memory;
+    }
+
+    @Override
+    public byte load(short address) {
+        accesses[Region.index(address)]++;
+        return memory.load(address);
+    }
+
+    @Override
+    public void store(short address, byte value) {
+        accesses[Region.index(address)]++;
+        memory.store(address, value);
+    }
+
+    public void flush(InstanceMetrics metrics) {
+        for (int region = 0; region < accesses.length; region++) {
+            metrics.recordBusAccesses(region, accesses[region]);
+            accesses[region] = 0;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.experiments.nes.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear buckets in the style of HdrHistogram: each power of two is split into 2^SUB_BUCKET_BITS linear
+// sub-buckets, so any recorded value is reported with a relative error below 2 / 2^SUB_BUCKET_BITS.
+public class FrameTimeHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+    private final LongAdder[] buckets = new LongAdder[(MAGNITUDES + 1) * SUB_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[bucket(Math.max(nanos, 0))].increment();
+        count.increment();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long percentile(double percentile) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+    }
+
+    static int bucket(long value) {
+        // Values below SUB_BUCKETS are stored exactly in magnitude 0
+        int magnitude = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+        // Above magnitude 0 the leading bit is implied, so the top half of the sub-buckets is the only half used
+        return magnitude == 0 ? (int) value : magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS;
+        long subBucket = bucket % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
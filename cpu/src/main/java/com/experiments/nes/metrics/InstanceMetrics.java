@@ -0,0 +1,141 @@
+package com.experiments.nes.metrics;
+
+import com.experiments.nes.cpu.Cpu;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class InstanceMetrics implements InstanceMetricsMBean {
+    private final String name;
+    private final MetricsRegistry registry;
+    private final LongAdder cycles = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    private final LongAdder[] busAccesses = new LongAdder[Region.values().length];
+    private final FrameTimeHistogram frameTimes = new FrameTimeHistogram();
+    private final Rate cycleRate = new Rate(cycles);
+    private final Rate instructionRate = new Rate(instructions);
+    {
+        for (int region = 0; region < busAccesses.length; region++) {
+            busAccesses[region] = new LongAdder();
+        }
+    }
+    // Owned by the emulation thread, used to turn the CPU's running totals into deltas
+    private long observedCycles;
+    private long observedInstructions;
+
+    InstanceMetrics(String name, MetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void observe(Cpu cpu) {
+        long cycles = cpu.cycles();
+        long instructions = cpu.instructions();
+        recordExecution(cycles - observedCycles, instructions - observedInstructions);
+        observedCycles = cycles;
+        observedInstructions = instructions;
+    }
+
+    // Takes the CPU's totals as they are without recording anything, e.g. after they were rolled back by a restore
+    public void rebase(Cpu cpu) {
+        observedCycles = cpu.cycles();
+        observedInstructions = cpu.instructions();
+    }
+
+    public void recordExecution(long cycles, long instructions) {
+        this.cycles.add(cycles);
+        this.instructions.add(instructions);
+        registry.recordExecution(cycles, instructions);
+    }
+
+    public void recordFrame(long nanos) {
+        frameTimes.record(nanos);
+    }
+
+    void recordBusAccesses(int region, long accesses) {
+        if (accesses != 0) {
+            busAccesses[region].add(accesses);
+        }
+    }
+
+    public long busAccesses(Region region) {
+        return busAccesses[region.ordinal()].sum();
+    }
+
+    public FrameTimeHistogram frameTimes() {
+        return frameTimes;
+    }
+
+    @Override
+    public long getCycles() {
+        return cycles.sum();
+    }
+
+    @Override
+    public long getInstructions() {
+        return instructions.sum();
+    }
+
+    @Override
+    public double getCyclesPerSecond() {
+        return cycleRate.perSecond();
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        return instructionRate.perSecond();
+    }
+
+    @Override
+    public long getFrames() {
+        return frameTimes.count();
+    }
+
+    @Override
+    public double getFrameTimeP50Millis() {
+        return frameTimes.percentile(50) / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeP90Millis() {
+        return frameTimes.percentile(90) / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeP99Millis() {
+        return frameTimes.percentile(99) / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeP999Millis() {
+        return frameTimes.percentile(99.9) / 1e6;
+    }
+
+    @Override
+    public long getRamAccesses() {
+        return busAccesses(Region.Ram);
+    }
+
+    @Override
+    public long getPpuAccesses() {
+        return busAccesses(Region.Ppu);
+    }
+
+    @Override
+    public long getIoAccesses() {
+        return busAccesses(Region.Io);
+    }
+
+    @Override
+    public long getCartridgeAccesses() {
+        return busAccesses(Region.Cartridge);
+    }
+
+    @Override
+    public void resetFrameTimes() {
+        frameTimes.reset();
+    }
+}
@@ -0,0 +1,31 @@
+package com.experiments.nes.metrics;
+
+public interface InstanceMetricsMBean {
+    long getCycles();
+
+    long getInstructions();
+
+    double getCyclesPerSecond();
+
+    double getInstructionsPerSecond();
+
+    long getFrames();
+
+    double getFrameTimeP50Millis();
+
+    double getFrameTimeP90Millis();
+
+    double getFrameTimeP99Millis();
+
+    double getFrameTimeP999Millis();
+
+    long getRamAccesses();
+
+    long getPpuAccesses();
+
+    long getIoAccesses();
+
+    long getCartridgeAccesses();
+
+    void resetFrameTimes();
+}
@@ -0,0 +1,139 @@
+package com.experiments.nes.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricsRegistry implements MetricsRegistryMBean {
+    private static final String DOMAIN = "com.experiments.nes";
+
+    private final ConcurrentMap<String, InstanceMetrics> instances = new ConcurrentHashMap<>();
+    // Every instance adds into these, so they are striped to keep many emulation threads from contending
+    private final LongAdder cycles = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    private final Rate cycleRate = new Rate(cycles);
+    private final Rate instructionRate = new Rate(instructions);
+    private MBeanServer server;
+
+    public InstanceMetrics instance(String name) {
+        return instances.computeIfAbsent(name, key -> {
+            InstanceMetrics metrics = new InstanceMetrics(key, this);
+            if (server != null) {
+                register(metrics);
+            }
+            return metrics;
+        });
+    }
+
+    public void remove(String name) {
+        InstanceMetrics metrics = instances.remove(name);
+        if (metrics != null && server != null) {
+            unregister(instanceName(name));
+        }
+    }
+
+    public Collection<InstanceMetrics> instances() {
+        return instances.values();
+    }
+
+    public synchronized void exportTo(MBeanServer server) {
+        this.server = server;
+        registerBean(this, registryName());
+        instances.values().forEach(this::register);
+    }
+
+    public void exportToPlatform() {
+        exportTo(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public synchronized void unexport() {
+        if (server == null) {
+            return;
+        }
+        unregister(registryName());
+        instances.keySet().forEach(name -> unregister(instanceName(name)));
+        server = null;
+    }
+
+    void recordExecution(long cycles, long instructions) {
+        this.cycles.add(cycles);
+        this.instructions.add(instructions);
+    }
+
+    @Override
+    public int getInstances() {
+        return instances.size();
+    }
+
+    @Override
+    public long getCycles() {
+        return cycles.sum();
+    }
+
+    @Override
+    public long getInstructions() {
+        return instructions.sum();
+    }
+
+    @Override
+    public double getCyclesPerSecond() {
+        return cycleRate.perSecond();
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        return instructionRate.perSecond();
+    }
+
+    private void register(InstanceMetrics metrics) {
+        registerBean(metrics, instanceName(metrics.name()));
+    }
+
+    private void registerBean(Object bean, ObjectName name) {
+        try {
+            server.registerMBean(bean, name);
+        }
+        catch (InstanceAlreadyExistsException ex) {
+            // Already exported, e.g. after a second exportTo() call
+        }
+        catch (JMException ex) {
+            throw new IllegalStateException("Cannot register " + name, ex);
+        }
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        }
+        catch (InstanceNotFoundException ex) {
+            // Nothing to remove
+        }
+        catch (JMException ex) {
+            throw new IllegalStateException("Cannot unregister " + name, ex);
+        }
+    }
+
+    private static ObjectName registryName() {
+        return objectName("type=Registry");
+    }
+
+    private static ObjectName instanceName(String name) {
+        return objectName("type=Instance,name=" + ObjectName.quote(name));
+    }
+
+    private static ObjectName objectName(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        }
+        catch (JMException ex) {
+            throw new IllegalArgumentException(properties, ex);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.experiments.nes.metrics;
+
+public interface MetricsRegistryMBean {
+    int getInstances();
+
+    long getCycles();
+
+    long getInstructions();
+
+    double getCyclesPerSecond();
+
+    double getInstructionsPerSecond();
+}
@@ -0,0 +1,39 @@
+package com.experiments.nes.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Rate over the last sampling window of at least a second. Windows are closed by whichever read comes after they
+// have run their length, so every reader sees the same rate rather than the gap since its own last read. Only
+// readers synchronize; writers just add to the adder.
+class Rate {
+    static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final LongAdder counter;
+    private final LongSupplier clock;
+    private long windowCount;
+    private long windowStart;
+    private double rate;
+
+    Rate(LongAdder counter) {
+        this(counter, System::nanoTime);
+    }
+
+    Rate(LongAdder counter, LongSupplier clock) {
+        this.counter = counter;
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+    }
+
+    synchronized double perSecond() {
+        long time = clock.getAsLong();
+        long elapsed = time - windowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            long count = counter.sum();
+            rate = (count - windowCount) * 1e9 / elapsed;
+            windowCount = count;
+            windowStart = time;
+        }
+        return rate;
+    }
+}
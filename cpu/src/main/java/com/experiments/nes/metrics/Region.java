@@ -0,0 +1,22 @@
+package com.experiments.nes.metrics;
+
+public enum Region {
+    Ram, Ppu, Io, Cartridge;
+
+    private static final Region[] VALUES = values();
+
+    public static Region of(short address) {
+        return VALUES[index(address)];
+    }
+
+    static int index(short address) {
+        int unsigned = address & 0xFFFF;
+        if (unsigned < 0x2000) {
+            return 0;
+        }
+        if (unsigned < 0x4000) {
+            return 1;
+        }
+        return unsigned < 0x4020 ? 2 : 3;
+    }
+}
@@ -0,0 +1,81 @@
+package com.experiments.nes.scheduler;
+
+import java.util.Arrays;
+
+// Indexed binary min-heap of one deadline per device id, kept in primitive arrays
+class DeadlineQueue {
+    private long[] deadlines = new long[4];
+    private int[] heap = new int[4];
+    private int[] positions = new int[4];
+    private int size;
+
+    void add(int id, long deadline) {
+        if (id >= deadlines.length) {
+            int length = Math.max(id + 1, deadlines.length * 2);
+            deadlines = Arrays.copyOf(deadlines, length);
+            heap = Arrays.copyOf(heap, length);
+            positions = Arrays.copyOf(positions, length);
+        }
+        deadlines[id] = deadline;
+        heap[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+    }
+
+    void update(int id, long deadline) {
+        long previous = deadlines[id];
+        deadlines[id] = deadline;
+        if (deadline < previous) {
+            siftUp(positions[id]);
+        }
+        else if (deadline > previous) {
+            siftDown(positions[id]);
+        }
+    }
+
+    // Device with the earliest deadline, only meaningful when the queue is not empty
+    int first() {
+        return heap[0];
+    }
+
+    long firstDeadline() {
+        return size == 0 ? Long.MAX_VALUE : deadlines[heap[0]];
+    }
+
+    private void siftUp(int position) {
+        int id = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >> 1;
+            if (deadlines[heap[parent]] <= deadlines[id]) {
+                break;
+            }
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(id, position);
+    }
+
+    private void siftDown(int position) {
+        int id = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && deadlines[heap[child + 1]] < deadlines[heap[child]]) {
+                child++;
+            }
+            if (deadlines[heap[child]] >= deadlines[id]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(id, position);
+    }
+
+    private void move(int id, int position) {
+        heap[position] = id;
+        positions[id] = position;
+    }
+}
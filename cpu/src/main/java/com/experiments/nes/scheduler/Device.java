@@ -0,0 +1,12 @@
+package com.experiments.nes.scheduler;
+
+// A device clocked lazily by the Scheduler, which only brings it up to date when the CPU touches its registers or
+// when a deadline it asked for comes due
+public interface Device {
+    // Runs the device up to and including the given CPU cycle
+    void sync(long cycle);
+
+    // Earliest CPU cycle after the last sync at which the device needs to run, e.g. to raise an interrupt or finish a
+    // frame, or Long.MAX_VALUE when it has nothing pending
+    long deadline();
+}
@@ -0,0 +1,111 @@
+package com.experiments.nes.scheduler;
+
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+// Runs the CPU uninterrupted up to the earliest device deadline, then brings the due devices up to date. Devices are
+// otherwise only synced when their registers are accessed through memory returned by registers().
+public class Scheduler {
+    private final LongSupplier clock;
+    private final DeadlineQueue queue = new DeadlineQueue();
+    private Device[] devices = new Device[4];
+    private int count;
+    // The CPU inside run(), stopped early when a register access brings a deadline forward
+    private Cpu running;
+
+    // The clock supplies the current CPU cycle for syncs caused by register accesses
+    public Scheduler(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public int add(Device device) {
+        if (count == devices.length) {
+            devices = Arrays.copyOf(devices, count * 2);
+        }
+        devices[count] = device;
+        queue.add(count, device.deadline());
+        return count++;
+    }
+
+    // Wraps the register window of a device so every access first syncs it and then picks up any new deadline
+    public Memory registers(int id, Memory registers) {
+        return new Memory() {
+            @Override
+            public byte load(short address) {
+                sync(id);
+                byte value = registers.load(address);
+                reschedule(id);
+                return value;
+            }
+
+            @Override
+            public void store(short address, byte value) {
+                sync(id);
+                registers.store(address, value);
+                reschedule(id);
+            }
+        };
+    }
+
+    public void sync(int id) {
+        devices[id].sync(clock.getAsLong());
+    }
+
+    // Brings every device up to the current cycle, e.g. at the end of a frame
+    public void syncAll() {
+        long cycle = clock.getAsLong();
+        for (int id = 0; id < count; id++) {
+            devices[id].sync(cycle);
+            reschedule(id);
+        }
+    }
+
+    public void reschedule(int id) {
+        queue.update(id, devices[id].deadline());
+        if (running != null) {
+            running.stop(queue.firstDeadline());
+        }
+    }
+
+    // Picks up every device's deadline again, e.g. after their state was restored from a snapshot
+    public void rescheduleAll() {
+        for (int id = 0; id < count; id++) {
+            reschedule(id);
+        }
+    }
+
+    public long deadline() {
+        return queue.firstDeadline();
+    }
+
+    // Runs the CPU until it has executed the given cycle, stopping at each deadline on the way
+    public void run(Cpu cpu, long until) {
+        running = cpu;
+        try {
+            while (cpu.cycles() < until) {
+                long stop = Math.min(until, queue.firstDeadline());
+                if (stop > cpu.cycles()) {
+                    cpu.run(stop - cpu.cycles());
+                }
+                dispatch(cpu.cycles());
+            }
+        }
+        finally {
+            running = null;
+        }
+    }
+
+    // Syncs the devices whose deadlines have come due
+    public void dispatch(long cycle) {
+        while (queue.firstDeadline() <= cycle) {
+            int id = queue.first();
+            Device device = devices[id];
+            device.sync(cycle);
+            // A device still asking for a cycle that has passed is run again on the next one rather than spinning here
+            queue.update(id, Math.max(device.deadline(), cycle + 1));
+        }
+    }
+}
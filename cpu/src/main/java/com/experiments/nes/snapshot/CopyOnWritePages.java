@@ -0,0 +1,159 @@
+package com.experiments.nes.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Writable memory split into pages that forks share until one of them writes, when the writer takes its own copy of
+// the page. Pages shared with a fork are never written again, so a fork can run on another thread as soon as it has
+// been made. Writes are also tracked at a finer grain for incremental snapshots.
+public class CopyOnWritePages {
+    private static final int WRITE_SHIFT = 6;
+
+    private final int size;
+    private final int pageShift;
+    private final int pageMask;
+    private final byte[][] pages;
+    // Pages this instance may write in place, the rest being shared with a fork or the instance it was forked from
+    private final boolean[] owned;
+    private final DirtyPages written;
+    // A page's worth of restored contents, compared with the page before anything is copied
+    private final byte[] restored;
+
+    public CopyOnWritePages(int size, int pageShift) {
+        if (pageShift < WRITE_SHIFT) {
+            throw new IllegalStateException("Pages must be at least " + (1 << WRITE_SHIFT) + " bytes: " + (1 << pageShift));
+        }
+        this.size = size;
+        this.pageShift = pageShift;
+        this.pageMask = (1 << pageShift) - 1;
+        this.pages = new byte[(size + pageMask) >>> pageShift][];
+        this.owned = new boolean[pages.length];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new byte[Math.min(1 << pageShift, size - (page << pageShift))];
+            owned[page] = true;
+        }
+        this.written = new DirtyPages(size, WRITE_SHIFT);
+        this.restored = new byte[1 << pageShift];
+    }
+
+    private CopyOnWritePages(CopyOnWritePages source) {
+        this.size = source.size;
+        this.pageShift = source.pageShift;
+        this.pageMask = source.pageMask;
+        this.pages = source.pages.clone();
+        this.owned = new boolean[pages.length];
+        this.written = new DirtyPages(size, WRITE_SHIFT);
+        this.restored = new byte[1 << pageShift];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Pages written since the last incremental save
+    public DirtyPages written() {
+        return written;
+    }
+
+    public byte get(int offset) {
+        return pages[offset >>> pageShift][offset & pageMask];
+    }
+
+    public void set(int offset, byte value) {
+        int page = offset >>> pageShift;
+        if (!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+        pages[page][offset & pageMask] = value;
+        written.mark(offset);
+    }
+
+    // A copy sharing every page with this one. Must not run concurrently with writes to this instance.
+    public CopyOnWritePages fork() {
+        Arrays.fill(owned, false);
+        return new CopyOnWritePages(this);
+    }
+
+    // Drops this instance's contents in favour of sharing the source's pages
+    public void share(CopyOnWritePages source) {
+        if (source.size != size || source.pageShift != pageShift) {
+            throw new IllegalStateException(String.format("Cannot share %d byte pages of %d bytes with %d byte pages"
+                    + " of %d bytes", 1 << source.pageShift, source.size, 1 << pageShift, size));
+        }
+        Arrays.fill(source.owned, false);
+        System.arraycopy(source.pages, 0, pages, 0, pages.length);
+        Arrays.fill(owned, false);
+        written.markAll();
+    }
+
+    // Number of pages still shared with another instance
+    public int shared() {
+        int shared = 0;
+        for (boolean page : owned) {
+            shared += page ? 0 : 1;
+        }
+        return shared;
+    }
+
+    public int pageSize() {
+        return 1 << pageShift;
+    }
+
+    public int pages() {
+        return pages.length;
+    }
+
+    // The current contents of a page, which must not be modified
+    public byte[] page(int page) {
+        return pages[page];
+    }
+
+    public void get(int offset, byte[] destination, int destinationOffset, int length) {
+        while (length > 0) {
+            int page = offset >>> pageShift;
+            int start = offset & pageMask;
+            int count = Math.min(length, pages[page].length - start);
+            System.arraycopy(pages[page], start, destination, destinationOffset, count);
+            offset += count;
+            destinationOffset += count;
+            length -= count;
+        }
+    }
+
+    public byte[] toArray() {
+        byte[] contents = new byte[size];
+        get(0, contents, 0, size);
+        return contents;
+    }
+
+    // Replaces the whole contents from the buffer. Pages the buffer leaves unchanged stay shared; a shared page that
+    // changes is copied, the only allocation, so that the instances sharing it are left alone. Only what changed is
+    // marked written, so restoring leaves the next incremental save as small as the difference.
+    public void set(ByteBuffer source) {
+        int chunk = 1 << WRITE_SHIFT;
+        for (int page = 0; page < pages.length; page++) {
+            byte[] contents = pages[page];
+            int length = contents.length;
+            source.get(restored, 0, length);
+            boolean changed = false;
+            for (int start = 0; start < length; start += chunk) {
+                int end = Math.min(length, start + chunk);
+                if (!Arrays.equals(restored, start, end, contents, start, end)) {
+                    written.mark(page << pageShift | start);
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            if (owned[page]) {
+                System.arraycopy(restored, 0, contents, 0, length);
+            }
+            else {
+                pages[page] = Arrays.copyOf(restored, length);
+                owned[page] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.experiments.nes.snapshot;
+
+import java.util.Arrays;
+
+// One bit per page of a memory region or snapshot image, set by writes and cleared once the page has been captured
+public class DirtyPages {
+    private final int size;
+    private final int pageShift;
+    private final int pages;
+    private final long[] bits;
+
+    public DirtyPages(int size, int pageShift) {
+        this.size = size;
+        this.pageShift = pageShift;
+        this.pages = (size + (1 << pageShift) - 1) >>> pageShift;
+        this.bits = new long[(pages + 63) >>> 6];
+        // Nothing has been captured yet
+        fill(bits, pages);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pageSize() {
+        return 1 << pageShift;
+    }
+
+    public int pages() {
+        return pages;
+    }
+
+    public void mark(int offset) {
+        int page = offset >>> pageShift;
+        bits[page >>> 6] |= 1L << page;
+    }
+
+    public void mark(int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        for (int page = offset >>> pageShift, last = (offset + length - 1) >>> pageShift; page <= last; page++) {
+            bits[page >>> 6] |= 1L << page;
+        }
+    }
+
+    // Marks the pages dirty in another set of the same size
+    public void mark(DirtyPages other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    public void markAll() {
+        fill(bits, pages);
+    }
+
+    // Sets the bits of every page, leaving those past the last page clear
+    private static void fill(long[] bits, int pages) {
+        Arrays.fill(bits, -1L);
+        int spare = bits.length * 64 - pages;
+        if (spare > 0) {
+            bits[bits.length - 1] >>>= spare;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0);
+    }
+
+    // Clears the pages lying wholly inside the range
+    public void clear(int offset, int length) {
+        int page = (offset + (1 << pageShift) - 1) >>> pageShift;
+        int end = offset + length == size ? pages : (offset + length) >>> pageShift;
+        for (; page < end; page++) {
+            bits[page >>> 6] &= ~(1L << page);
+        }
+    }
+
+    public boolean dirty(int page) {
+        return (bits[page >>> 6] & 1L << page) != 0;
+    }
+
+    // The first dirty page at or after the given one, or -1
+    public int next(int page) {
+        if (page >= pages) {
+            return -1;
+        }
+        int word = page >>> 6;
+        long remaining = bits[word] & (-1L << page);
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        return word * 64 + Long.numberOfTrailingZeros(remaining);
+    }
+
+    public int count() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,341 @@
+package com.experiments.nes.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Keeps a snapshot of every captured frame in a fixed-size off-heap ring. Every Nth snapshot is a keyframe, the rest
+// are XORed against the latest keyframe, and both are stored as runs of unchanged bytes and literals, so a frame that
+// changes little costs a few bytes. The oldest frames are dropped to make room, a keyframe together with its deltas.
+// Snapshots are taken with saveChanges into the same image each frame, so memory that was not written is neither copied
+// nor compared.
+public class RewindBuffer {
+    // Frame, encoded length and keyframe flag ahead of each entry's runs
+    private static final int ENTRY_HEADER = 13;
+    private static final int PAGE_SHIFT = 6;
+
+    private final Snapshottable machine;
+    private final int keyframeInterval;
+    private final ByteBuffer ring;
+    private final byte[] current;
+    private final byte[] keyframe;
+    private final byte[] zeros;
+    private final byte[] encoded;
+    private final ByteBuffer snapshot;
+    // Pages of the image rewritten by the latest capture, and by any capture since the keyframe
+    private final DirtyPages changed;
+    private final DirtyPages pending;
+
+    // Entries from oldest to newest, a circular index into the ring
+    private final long[] frames;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final boolean[] keyframes;
+    private int first;
+    private int count;
+    private int head;
+    private int snapshotLength;
+
+    private long keyframeFrame = -1;
+    private int sinceKeyframe;
+    private boolean forceKeyframe = true;
+    private long encodedBytes;
+    private long rawBytes;
+
+    public RewindBuffer(Snapshottable machine, int snapshotSize, int capacity, int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalStateException("Keyframe interval must be at least 1: " + keyframeInterval);
+        }
+        this.machine = machine;
+        this.keyframeInterval = keyframeInterval;
+        this.ring = ByteBuffer.allocateDirect(capacity);
+        this.current = new byte[snapshotSize];
+        this.keyframe = new byte[snapshotSize];
+        this.zeros = new byte[snapshotSize];
+        // Worst case, every byte a literal plus the run lengths
+        this.encoded = new byte[snapshotSize + snapshotSize / 64 + 16];
+        this.snapshot = ByteBuffer.wrap(current);
+        this.changed = new DirtyPages(snapshotSize, PAGE_SHIFT);
+        this.pending = new DirtyPages(snapshotSize, PAGE_SHIFT);
+        // Even entries with no changes take a header and two run lengths
+        int entries = Math.max(16, capacity / (ENTRY_HEADER + 4));
+        this.frames = new long[entries];
+        this.offsets = new int[entries];
+        this.lengths = new int[entries];
+        this.keyframes = new boolean[entries];
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    public int keyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long oldest() {
+        requireEntries();
+        return frames[first];
+    }
+
+    public long newest() {
+        requireEntries();
+        return frames[index(count - 1)];
+    }
+
+    public boolean contains(long frame) {
+        return find(frame) >= 0;
+    }
+
+    // Bytes of the ring holding live entries
+    public int bytesUsed() {
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            used += lengths[index(i)];
+        }
+        return used;
+    }
+
+    // Ratio of snapshot bytes captured to bytes stored, over all captures
+    public double compression() {
+        return encodedBytes == 0 ? 0 : (double) rawBytes / encodedBytes;
+    }
+
+    // Saves the machine as the given frame. Capturing a frame at or before the newest drops the newer entries first,
+    // as happens when play carries on after a restore.
+    public void capture(long frame) {
+        while (count > 0 && frames[index(count - 1)] >= frame) {
+            count--;
+            head = count > 0 ? offsets[index(count - 1)] + lengths[index(count - 1)] : 0;
+        }
+        if (keyframeFrame >= frame) {
+            forceKeyframe = true;
+        }
+        changed.markAll();
+        snapshot.clear();
+        machine.saveChanges(snapshot, changed);
+        snapshotLength = snapshot.position();
+        pending.mark(changed);
+
+        boolean key = forceKeyframe || sinceKeyframe >= keyframeInterval;
+        int length = key ? encode(zeros, null) : encode(keyframe, pending);
+        int offset = allocate(length);
+        // Making room dropped the keyframe this delta is against, so store it whole instead
+        if (!key && (count == 0 || frames[first] > keyframeFrame)) {
+            key = true;
+            length = encode(zeros, null);
+            offset = allocate(length);
+        }
+        ring.putLong(offset, frame);
+        ring.putInt(offset + 8, length);
+        ring.put(offset + 12, (byte) (key ? 1 : 0));
+        ring.put(offset + ENTRY_HEADER, encoded, 0, length);
+
+        int index = index(count);
+        frames[index] = frame;
+        offsets[index] = offset;
+        lengths[index] = ENTRY_HEADER + length;
+        keyframes[index] = key;
+        count++;
+        head = offset + ENTRY_HEADER + length;
+        rawBytes += snapshotLength;
+        encodedBytes += ENTRY_HEADER + length;
+
+        if (key) {
+            System.arraycopy(current, 0, keyframe, 0, snapshotLength);
+            keyframeFrame = frame;
+            sinceKeyframe = 1;
+            pending.clear();
+            forceKeyframe = false;
+        }
+        else {
+            sinceKeyframe++;
+        }
+    }
+
+    // Restores the machine to a retained frame. The next capture starts a new keyframe.
+    public void restore(long frame) {
+        int position = find(frame);
+        if (position < 0) {
+            throw new IllegalStateException(String.format("Frame %d is not retained, %s", frame,
+                    count == 0 ? "the buffer is empty" : "frames " + oldest() + " to " + newest() + " are"));
+        }
+        int key = position;
+        while (!keyframes[index(key)]) {
+            key--;
+        }
+        Arrays.fill(current, (byte) 0);
+        decode(index(key));
+        if (key != position) {
+            decode(index(position));
+        }
+        machine.restore(ByteBuffer.wrap(current, 0, snapshotLength));
+        forceKeyframe = true;
+    }
+
+    // Restores the frame the given number of frames before the newest
+    public long rewind(int frames) {
+        long frame = Math.max(oldest(), newest() - frames);
+        restore(frame);
+        return frame;
+    }
+
+    public void clear() {
+        count = 0;
+        head = 0;
+        forceKeyframe = true;
+        keyframeFrame = -1;
+    }
+
+    private int index(int position) {
+        return (first + position) % frames.length;
+    }
+
+    private int find(long frame) {
+        for (int position = count - 1; position >= 0; position--) {
+            long entry = frames[index(position)];
+            if (entry == frame) {
+                return position;
+            }
+            if (entry < frame) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private void requireEntries() {
+        if (count == 0) {
+            throw new IllegalStateException("No frames captured");
+        }
+    }
+
+    // Finds room for an entry after the newest, dropping the oldest entries it would overwrite
+    private int allocate(int length) {
+        int size = ENTRY_HEADER + length;
+        if (size > ring.capacity()) {
+            throw new IllegalStateException(String.format("A %d byte entry does not fit a %d byte rewind buffer", size,
+                    ring.capacity()));
+        }
+        int offset = head;
+        boolean wrapped = offset + size > ring.capacity();
+        if (wrapped) {
+            offset = 0;
+        }
+        int end = offset + size;
+        while (count > 0) {
+            int oldest = first;
+            boolean skipped = wrapped && offsets[oldest] >= head;
+            boolean overlaps = offsets[oldest] < end && offsets[oldest] + lengths[oldest] > offset;
+            if (count == frames.length || skipped || overlaps) {
+                evict();
+            }
+            else {
+                break;
+            }
+        }
+        // Deltas are useless without their keyframe
+        while (count > 0 && !keyframes[first]) {
+            evict();
+        }
+        return offset;
+    }
+
+    private void evict() {
+        first = (first + 1) % frames.length;
+        count--;
+    }
+
+    // Encodes the snapshot XORed with the reference as alternating runs of unchanged bytes and changed bytes, each
+    // run length a varint and changed bytes stored XORed. Only the dirty pages are compared, the rest being known to
+    // match, or all of them without a dirty set.
+    private int encode(byte[] reference, DirtyPages dirty) {
+        int length = 0;
+        int position = 0;
+        while (position < snapshotLength) {
+            int mismatch = mismatch(reference, position, dirty);
+            int unchanged = mismatch - position;
+            position = mismatch;
+            // Changed bytes run until four unchanged ones in a row, where a new run is cheaper than literals
+            int start = position;
+            int same = 0;
+            while (position < snapshotLength && same < 4) {
+                same = current[position] == reference[position] ? same + 1 : 0;
+                position++;
+            }
+            int changed = position - start - same;
+            position -= same;
+            length = varint(unchanged, length);
+            length = varint(changed, length);
+            for (int i = start; i < start + changed; i++) {
+                encoded[length++] = (byte) (current[i] ^ reference[i]);
+            }
+        }
+        return length;
+    }
+
+    // The first byte at or after position differing from the reference, or the snapshot length
+    private int mismatch(byte[] reference, int position, DirtyPages dirty) {
+        while (position < snapshotLength) {
+            int end = snapshotLength;
+            if (dirty != null) {
+                int page = dirty.next(position >>> PAGE_SHIFT);
+                if (page < 0) {
+                    return snapshotLength;
+                }
+                position = Math.max(position, page << PAGE_SHIFT);
+                end = Math.min(snapshotLength, (page + 1) << PAGE_SHIFT);
+            }
+            int mismatch = Arrays.mismatch(current, position, end, reference, position, end);
+            if (mismatch >= 0) {
+                return position + mismatch;
+            }
+            position = end;
+        }
+        return snapshotLength;
+    }
+
+    private int varint(int value, int offset) {
+        while ((value & ~0x7F) != 0) {
+            encoded[offset++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        encoded[offset++] = (byte) value;
+        return offset;
+    }
+
+    // XORs an entry's changed bytes into the current snapshot
+    private void decode(int index) {
+        int position = offsets[index] + ENTRY_HEADER;
+        int end = offsets[index] + lengths[index];
+        int target = 0;
+        while (position < end) {
+            int unchanged = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = ring.get(position++);
+                unchanged |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int changed = 0;
+            shift = 0;
+            do {
+                b = ring.get(position++);
+                changed |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            target += unchanged;
+            for (int i = 0; i < changed; i++) {
+                current[target++] ^= ring.get(position++);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.experiments.nes.snapshot;
+
+import java.nio.ByteBuffer;
+
+// Binary snapshot format: a magic number and version, then each component's state in a fixed order. Arrays are
+// stored with their length so a snapshot of a differently sized machine is rejected rather than misread.
+public final class Snapshot {
+    public static final int MAGIC = 0x4E455353;
+    public static final int VERSION = 2;
+
+    private Snapshot() {
+    }
+
+    public static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    public static void readHeader(ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        if (magic != MAGIC) {
+            throw new IllegalStateException(String.format("Not a snapshot, magic number %08x", magic));
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalStateException(String.format("Unsupported snapshot version %d, expected %d", version,
+                    VERSION));
+        }
+    }
+
+    public static void put(ByteBuffer buffer, boolean value) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    public static boolean getBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+
+    public static void put(ByteBuffer buffer, byte[] values) {
+        buffer.putInt(values.length).put(values);
+    }
+
+    public static void get(ByteBuffer buffer, byte[] values) {
+        length(buffer, values.length);
+        buffer.get(values);
+    }
+
+    // Saves values into a buffer already holding them as of the last incremental save, copying only the pages written
+    // since. Pages of changed left alone are cleared. Without changed this is a full save that leaves written alone.
+    public static void put(ByteBuffer buffer, byte[] values, DirtyPages written, DirtyPages changed) {
+        if (changed == null) {
+            put(buffer, values);
+            return;
+        }
+        buffer.putInt(values.length);
+        int base = buffer.position();
+        changed.clear(base, values.length);
+        int pageSize = written.pageSize();
+        for (int page = written.next(0); page >= 0; page = written.next(page + 1)) {
+            int offset = page * pageSize;
+            int length = Math.min(pageSize, values.length - offset);
+            buffer.put(base + offset, values, offset, length);
+            changed.mark(base + offset, length);
+        }
+        buffer.position(base + values.length);
+        written.clear();
+    }
+
+    // Restoring replaces everything, so every page needs saving again
+    public static void get(ByteBuffer buffer, byte[] values, DirtyPages written) {
+        get(buffer, values);
+        written.markAll();
+    }
+
+    // Saved the same way as an array of the same size, incrementally when changed is given as for a tracked array
+    public static void put(ByteBuffer buffer, CopyOnWritePages values, DirtyPages changed) {
+        buffer.putInt(values.size());
+        if (changed == null) {
+            for (int page = 0; page < values.pages(); page++) {
+                buffer.put(values.page(page));
+            }
+            return;
+        }
+        int base = buffer.position();
+        changed.clear(base, values.size());
+        DirtyPages written = values.written();
+        int pageSize = written.pageSize();
+        int perPage = values.pageSize() / pageSize;
+        for (int page = written.next(0); page >= 0; page = written.next(page + 1)) {
+            int offset = page * pageSize;
+            int length = Math.min(pageSize, values.size() - offset);
+            buffer.put(base + offset, values.page(page / perPage), offset % values.pageSize(), length);
+            changed.mark(base + offset, length);
+        }
+        buffer.position(base + values.size());
+        written.clear();
+    }
+
+    public static void get(ByteBuffer buffer, CopyOnWritePages values) {
+        length(buffer, values.size());
+        values.set(buffer);
+    }
+
+    public static void put(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+    }
+
+    public static void get(ByteBuffer buffer, int[] values) {
+        length(buffer, values.length);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt();
+        }
+    }
+
+    private static void length(ByteBuffer buffer, int expected) {
+        int length = buffer.getInt();
+        if (length != expected) {
+            throw new IllegalStateException(String.format("Snapshot holds %d elements where %d are expected", length,
+                    expected));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.experiments.nes.snapshot;
+
+import java.nio.ByteBuffer;
+
+// A component whose state can be written to and read back from a snapshot buffer. Restoring reads exactly the bytes
+// save wrote, in the same order, and neither allocates, except that restoring new contents into a CopyOnWritePages
+// page still shared with a fork copies that page.
+public interface Snapshottable {
+    void save(ByteBuffer buffer);
+
+    void restore(ByteBuffer buffer);
+
+    // Saves into a buffer that holds this component's previous saveChanges, rewriting only memory written since and
+    // clearing the pages of changed, in buffer positions, that were left alone. Only one buffer may be kept up to date
+    // this way, as the write tracking is reset by each call.
+    default void saveChanges(ByteBuffer buffer, DirtyPages changed) {
+        save(buffer);
+    }
+}
@@ -0,0 +1,164 @@
+package com.experiments.nes.cpu;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static com.experiments.nes.HexAssertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchCpuTest {
+    private static final int LANES = 4;
+
+    private final MemoryStub[] memories = new MemoryStub[LANES];
+    private final BatchCpu cpu;
+
+    BatchCpuTest() {
+        for (int lane = 0; lane < LANES; lane++) {
+            memories[lane] = new MemoryStub();
+        }
+        this.cpu = new BatchCpu(memories);
+    }
+
+    private void program(int address, int... bytes) {
+        for (MemoryStub memory : memories) {
+            for (int i = 0; i < bytes.length; i++) {
+                memory.store((short) (address + i), (byte) bytes[i]);
+            }
+        }
+    }
+
+    private void pc(int pc) {
+        for (int lane = 0; lane < LANES; lane++) {
+            cpu.pc(lane, pc);
+        }
+    }
+
+    @Test
+    void testReset() {
+        program(0xFFFC, 0x00, 0x80);
+
+        cpu.reset();
+
+        for (int lane = 0; lane < LANES; lane++) {
+            assertEquals(0x8000, cpu.pc(lane));
+            assertEquals(0xFA, cpu.s(lane));
+            assertTrue(cpu.flag(lane, Cpu.Flag.InterruptDisabled));
+        }
+    }
+
+    @Test
+    void testLanesRunTogether() {
+        program(0x0200,
+                0xA5, 0x10, // LDA $10
+                0x69, 0x01, // ADC #$01
+                0xAA);      // TAX
+        pc(0x0200);
+        for (int lane = 0; lane < LANES; lane++) {
+            memories[lane].store((short) 0x10, (byte) (lane * 0x40));
+        }
+
+        cpu.step();
+        cpu.step();
+        cpu.step();
+
+        for (int lane = 0; lane < LANES; lane++) {
+            assertEquals(lane * 0x40 + 1, cpu.a(lane));
+            assertEquals(lane * 0x40 + 1, cpu.x(lane));
+            Assertions.assertEquals(lane >= 2, cpu.flag(lane, Cpu.Flag.Negative));
+            assertEquals(0x0205, cpu.pc(lane));
+            Assertions.assertEquals(7, cpu.cycles(lane));
+            Assertions.assertEquals(3, cpu.instructions(lane));
+        }
+        Assertions.assertEquals(3 * LANES, cpu.batched());
+        Assertions.assertEquals(0, cpu.scalar());
+    }
+
+    @Test
+    void testDivergedLanesRunAlone() {
+        program(0x0200, 0xE8, 0xE8, 0xE8); // INX
+        program(0x0300, 0xC8, 0xC8, 0xC8); // INY
+        pc(0x0200);
+        cpu.pc(3, 0x0300);
+
+        cpu.step();
+        cpu.step();
+
+        for (int lane = 0; lane < 3; lane++) {
+            assertEquals(2, cpu.x(lane));
+            assertEquals(0, cpu.y(lane));
+        }
+        assertEquals(0, cpu.x(3));
+        assertEquals(2, cpu.y(3));
+        Assertions.assertEquals(6, cpu.batched());
+        Assertions.assertEquals(2, cpu.scalar());
+    }
+
+    @Test
+    void testSelfModifiedLaneRunsAlone() {
+        program(0x0200, 0xE8); // INX
+        pc(0x0200);
+        // Same PC, different opcode
+        memories[1].store((short) 0x0200, (byte) 0xC8); // INY
+
+        cpu.step();
+
+        assertEquals(1, cpu.x(0));
+        assertEquals(0, cpu.x(1));
+        assertEquals(1, cpu.y(1));
+        Assertions.assertEquals(3, cpu.batched());
+        Assertions.assertEquals(1, cpu.scalar());
+    }
+
+    @Test
+    void testPageCrossingCycles() {
+        program(0x0200, 0xBD, 0xFF, 0x02); // LDA $02FF,X
+        pc(0x0200);
+        cpu.x(1, 0x01);
+
+        cpu.step();
+
+        Assertions.assertEquals(4, cpu.cycles(0));
+        Assertions.assertEquals(5, cpu.cycles(1));
+    }
+
+    @Test
+    void testRun() {
+        program(0x0200,
+                0xEA,              // NOP
+                0x4C, 0x00, 0x02); // JMP $0200
+        pc(0x0200);
+        cpu.pc(2, 0x0201);
+
+        cpu.run(100);
+
+        for (int lane = 0; lane < LANES; lane++) {
+            assertTrue(cpu.cycles(lane) >= 100 && cpu.cycles(lane) < 103);
+        }
+        // The loop takes five cycles from either instruction
+        Assertions.assertEquals(40, cpu.instructions(0));
+        Assertions.assertEquals(40, cpu.instructions(2));
+    }
+
+    @Test
+    void testNmi() {
+        program(0xFFFA, 0x00, 0x03);
+        program(0x0200, 0xEA, 0xEA, 0xEA); // NOP
+        program(0x0300, 0x40);             // RTI
+        pc(0x0200);
+
+        cpu.nmi(2);
+        cpu.step();
+
+        assertEquals(0x0201, cpu.pc(0));
+        assertEquals(0x0300, cpu.pc(2));
+        Assertions.assertEquals(7, cpu.cycles(2));
+        assertTrue(cpu.flag(2, Cpu.Flag.InterruptDisabled));
+
+        cpu.step();
+        cpu.step();
+
+        // The handler returned to the NOP
+        assertEquals(0x0201, cpu.pc(2));
+        assertEquals(0x0203, cpu.pc(0));
+    }
+}
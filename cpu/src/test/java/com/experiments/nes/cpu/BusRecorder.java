@@ -0,0 +1,127 @@
+package com.experiments.nes.cpu;
+
+import java.util.Arrays;
+
+import static com.experiments.nes.HexAssertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Bus activity in parallel primitive arrays, so recording millions of cycles neither boxes nor allocates per access.
+// Entries must be recorded in non-decreasing cycle order, which lets lookups binary search by cycle.
+public class BusRecorder {
+    private int[] cycles;
+    private short[] addresses;
+    private byte[] values;
+    private boolean[] writes;
+    private int size;
+
+    public BusRecorder() {
+        this(64);
+    }
+
+    public BusRecorder(int capacity) {
+        this.cycles = new int[capacity];
+        this.addresses = new short[capacity];
+        this.values = new byte[capacity];
+        this.writes = new boolean[capacity];
+    }
+
+    public void read(int cycle, short address, byte value) {
+        record(cycle, address, value, false);
+    }
+
+    public void write(int cycle, short address, byte value) {
+        record(cycle, address, value, true);
+    }
+
+    public void record(int cycle, short address, byte value, boolean write) {
+        if (size == cycles.length) {
+            grow();
+        }
+        cycles[size] = cycle;
+        addresses[size] = address;
+        values[size] = value;
+        writes[size] = write;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cycle(int index) {
+        return cycles[index];
+    }
+
+    public short address(int index) {
+        return addresses[index];
+    }
+
+    public byte value(int index) {
+        return values[index];
+    }
+
+    public boolean isWrite(int index) {
+        return writes[index];
+    }
+
+    public int lastRead(int cycle) {
+        for (int index = last(cycle); index >= 0 && cycles[index] == cycle; index--) {
+            if (!writes[index]) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public int lastWrite(int cycle, short address) {
+        for (int index = last(cycle); index >= 0 && cycles[index] == cycle; index--) {
+            if (writes[index] && addresses[index] == address) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public void verifyReadAddress(int cycle, int expectedReadAddress, String description) {
+        int index = lastRead(cycle);
+        assertTrue(index >= 0, String.format("%s: Expecting read at address %04x on cycle %d",
+                description, expectedReadAddress, cycle));
+        assertEquals(expectedReadAddress, addresses[index]);
+    }
+
+    public void verifyWriteAddress(int cycle, int expectedWriteAddress, int expectedValue, String description) {
+        int index = lastWrite(cycle, (short) expectedWriteAddress);
+        assertTrue(index >= 0, String.format("%s: Expecting write at address %04x on cycle %d",
+                description, expectedWriteAddress, cycle));
+        assertEquals(expectedValue, values[index], String.format("%s: Expecting write at address %04x on cycle %d",
+                description, expectedWriteAddress, cycle));
+    }
+
+    // Index of the last entry recorded on or before the cycle
+    private int last(int cycle) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (cycles[middle] <= cycle) {
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, cycles.length * 2);
+        cycles = Arrays.copyOf(cycles, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        values = Arrays.copyOf(values, capacity);
+        writes = Arrays.copyOf(writes, capacity);
+    }
+}
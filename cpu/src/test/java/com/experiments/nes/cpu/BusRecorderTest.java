@@ -0,0 +1,48 @@
+package com.experiments.nes.cpu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BusRecorderTest {
+    @Test
+    void testGrowsPastInitialCapacity() {
+        BusRecorder recorder = new BusRecorder(1);
+        for (int cycle = 0; cycle < 1_000_000; cycle++) {
+            recorder.read(cycle, (short) cycle, (byte) cycle);
+        }
+
+        assertEquals(1_000_000, recorder.size());
+        assertEquals(999_999, recorder.lastRead(999_999));
+        recorder.verifyReadAddress(123_456, 123_456 & 0xFFFF, "Read");
+    }
+
+    @Test
+    void testLastAccessInCycleWins() {
+        BusRecorder recorder = new BusRecorder();
+        recorder.read(0, (short) 0x0100, (byte) 0xA9);
+        recorder.read(2, (short) 0x0200, (byte) 0x00);
+        recorder.write(2, (short) 0x0010, (byte) 0x01);
+        recorder.read(2, (short) 0x0201, (byte) 0x00);
+        recorder.write(2, (short) 0x0010, (byte) 0x02);
+
+        recorder.verifyReadAddress(2, 0x0201, "Second read");
+        recorder.verifyWriteAddress(2, 0x0010, 0x02, "Second write");
+        assertEquals(-1, recorder.lastRead(1));
+        assertEquals(-1, recorder.lastWrite(0, (short) 0x0010));
+        assertThrows(AssertionError.class, () -> recorder.verifyReadAddress(1, 0x0100, "Missing read"));
+        assertThrows(AssertionError.class, () -> recorder.verifyWriteAddress(2, 0x0010, 0x01, "Wrong value"));
+    }
+
+    @Test
+    void testClear() {
+        BusRecorder recorder = new BusRecorder();
+        recorder.write(5, (short) 0x8000, (byte) 0xFF);
+
+        recorder.clear();
+
+        assertEquals(0, recorder.size());
+        assertEquals(-1, recorder.lastWrite(5, (short) 0x8000));
+    }
+}
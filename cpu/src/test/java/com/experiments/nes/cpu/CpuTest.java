@@ -65,6 +65,38 @@ class CpuTest {
         assertTrue(this.cpu.flag(Cpu.Flag.Negative));
     }
 
+    @Test
+    void testCounters() {
+        cpu.pc(0x0100);
+        memory(0x0100, 0xA9); // LDA #02
+        memory(0x0101, 0x02);
+        memory(0x0102, 0xEA); // NOP
+
+        clock(4);
+
+        Assertions.assertEquals(4, cpu.cycles());
+        Assertions.assertEquals(2, cpu.instructions());
+    }
+
+    @Test
+    void testStall() {
+        cpu.pc(0x0100);
+        memory(0x0100, 0xEA); // NOP
+        memory(0x0101, 0xEA); // NOP
+
+        clock(1);
+        cpu.stall(3);
+        clock(4);
+
+        Assertions.assertEquals(5, cpu.cycles());
+        Assertions.assertEquals(1, cpu.instructions());
+        assertEquals(0x0101, cpu.pc());
+
+        clock(1);
+
+        Assertions.assertEquals(2, cpu.instructions());
+    }
+
     void memory(int address, int value) {
         this.memory.store((short) address, (byte) value);
     }
@@ -883,6 +915,8 @@ class CpuTest {
             memory(0x0102, 0x2C); // BIT $1234
             memory(0x0103, 0x34);
             memory(0x0104, 0x12);
+            // BIT has no indexed mode, so X must not affect the effective address
+            cpu.x(0x01);
 
             clock(7);
 
@@ -896,6 +930,44 @@ class CpuTest {
         }
     }
 
+    @Nested
+    class BRK {
+        @Test
+        void testBreak() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0x00); // BRK
+            memory(0xFFFE, 0x00);
+            memory(0xFFFF, 0x02);
+
+            clock(8);
+
+            cycle(0, "Fetch opcode"                ).read(0x0100       ).s(0xFD).flags("..1..I..");
+            cycle(1, "Read padding, increment PC"  ).read(0x0101       ).s(0xFD).flags("..1..I..");
+            cycle(2, "Push PCH"                    ).write(0x01FD, 0x01).s(0xFC).flags("..1..I..");
+            cycle(3, "Push PCL"                    ).write(0x01FC, 0x02).s(0xFB).flags("..1..I..");
+            cycle(4, "Push P with B set"           ).write(0x01FB, 0x34).s(0xFA).flags("..1..I..");
+            cycle(5, "Fetch vector low byte"       ).read(0xFFFE       ).s(0xFA).flags("..1..I..");
+            cycle(6, "Fetch vector high byte"      ).read(0xFFFF       ).s(0xFA).flags("..1..I..");
+            cycle(7, "Fetch opcode"                ).read(0x0200       ).s(0xFA).flags("..1..I..");
+        }
+
+        @Test
+        void testNmiHijacksVector() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0x00); // BRK
+            memory(0xFFFA, 0x00);
+            memory(0xFFFB, 0x03);
+            cpu.nmi(3);
+
+            clock(8);
+
+            cycle(4, "Push P with B set"           ).write(0x01FB, 0x34);
+            cycle(5, "Fetch NMI vector low byte"   ).read(0xFFFA);
+            cycle(6, "Fetch NMI vector high byte"  ).read(0xFFFB);
+            cycle(7, "Fetch opcode"                ).read(0x0300);
+        }
+    }
+
     @Nested
     class CLC {
         @Test
@@ -1152,7 +1224,7 @@ class CpuTest {
             cpu.pc(0x0100);
             memory(0x0100, 0xA9); // LDA #7F
             memory(0x0101, 0x7F);
-            memory(0x0102, 0xC9); // CMP #FE -> 127 - (-2) = 129 (overflow -> -126)
+            memory(0x0102, 0xC9); // CMP #FE -> unsigned 127 < 254, difference $81 has bit 7 set
             memory(0x0103, 0xFE);
 
             clock(5);
@@ -1161,7 +1233,7 @@ class CpuTest {
             cycle(1, "Fetch value" ).read(0x0101).a(0x00).flags("..1..I..");
             cycle(2, "Fetch opcode").read(0x0102).a(0x7F).flags("..1..I..");
             cycle(3, "Fetch value" ).read(0x0103).a(0x7F).flags("..1..I..");
-            cycle(4, "Fetch opcode").read(0x0104).a(0x7F).flags("..1..I.C");
+            cycle(4, "Fetch opcode").read(0x0104).a(0x7F).flags("N.1..I..");
         }
 
         @Test
@@ -1169,7 +1241,7 @@ class CpuTest {
             cpu.pc(0x0100);
             memory(0x0100, 0xA9); // LDA #80
             memory(0x0101, 0x80);
-            memory(0x0102, 0xC9); // CMP #00 -> -128 - 1 = -129 (overflow -> 127)
+            memory(0x0102, 0xC9); // CMP #01 -> unsigned 128 >= 1, difference $7F has bit 7 clear
             memory(0x0103, 0x01);
 
             clock(5);
@@ -1178,7 +1250,7 @@ class CpuTest {
             cycle(1, "Fetch value" ).read(0x0101).a(0x00).flags("..1..I..");
             cycle(2, "Fetch opcode").read(0x0102).a(0x80).flags("N.1..I..");
             cycle(3, "Fetch value" ).read(0x0103).a(0x80).flags("N.1..I..");
-            cycle(4, "Fetch opcode").read(0x0104).a(0x80).flags("N.1..I..");
+            cycle(4, "Fetch opcode").read(0x0104).a(0x80).flags("..1..I.C");
         }
 
         @Test
@@ -2056,6 +2128,92 @@ class CpuTest {
         }
     }
 
+    @Nested
+    class IRQ {
+        @Test
+        void testInterrupt() {
+            cpu.pc(0x0100);
+            cpu.p(0x20);
+            memory(0x0100, 0xEA); // NOP
+            memory(0xFFFE, 0x00);
+            memory(0xFFFF, 0x02);
+            cpu.irq(true);
+
+            clock(8);
+
+            cycle(0, "Fetch opcode, throw away"    ).read(0x0100       ).s(0xFD).flags("..1.....");
+            cycle(1, "Read PC, throw away"         ).read(0x0100       ).s(0xFD).flags("..1.....");
+            cycle(2, "Push PCH"                    ).write(0x01FD, 0x01).s(0xFC).flags("..1.....");
+            cycle(3, "Push PCL"                    ).write(0x01FC, 0x00).s(0xFB).flags("..1.....");
+            cycle(4, "Push P with B clear"         ).write(0x01FB, 0x20).s(0xFA).flags("..1.....");
+            cycle(5, "Fetch vector low byte"       ).read(0xFFFE       ).s(0xFA).flags("..1..I..");
+            cycle(6, "Fetch vector high byte"      ).read(0xFFFF       ).s(0xFA).flags("..1..I..");
+            cycle(7, "Fetch opcode"                ).read(0x0200       ).s(0xFA).flags("..1..I..");
+            Assertions.assertEquals(1, cpu.instructions());
+        }
+
+        @Test
+        void testMasked() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0xEA); // NOP
+            memory(0x0101, 0xEA); // NOP
+            cpu.irq(true);
+
+            clock(4);
+
+            cycle(2, "Fetch opcode").read(0x0101);
+            Assertions.assertEquals(Long.MAX_VALUE, cpu.nextInterruptCycle());
+        }
+
+        @Test
+        void testDelayedByCli() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0x58); // CLI
+            memory(0x0101, 0xEA); // NOP
+            cpu.irq(true);
+
+            clock(8);
+
+            cycle(0, "Fetch opcode"                ).read(0x0100).flags("..1..I..");
+            cycle(1, "Fetch next instruction"      ).read(0x0101).flags("..1..I..");
+            cycle(2, "Fetch opcode"                ).read(0x0101).flags("..1.....");
+            cycle(3, "Fetch next instruction"      ).read(0x0102).flags("..1.....");
+            cycle(4, "Fetch opcode, throw away"    ).read(0x0102).flags("..1.....");
+            cycle(5, "Read PC, throw away"         ).read(0x0102).flags("..1.....");
+            cycle(6, "Push PCH"                    ).write(0x01FD, 0x01);
+            cycle(7, "Push PCL"                    ).write(0x01FC, 0x02);
+        }
+
+        @Test
+        void testTakenRightAfterSei() {
+            cpu.pc(0x0100);
+            cpu.p(0x20);
+            memory(0x0100, 0x78); // SEI
+            // Asserted before the last cycle of SEI, which is polled with the flag still clear
+            cpu.irq(2);
+
+            clock(5);
+
+            cycle(2, "Fetch opcode, throw away"    ).read(0x0101).flags("..1..I..");
+            cycle(3, "Read PC, throw away"         ).read(0x0101);
+            cycle(4, "Push PCH"                    ).write(0x01FD, 0x01);
+        }
+
+        @Test
+        void testReleased() {
+            cpu.pc(0x0100);
+            cpu.p(0x20);
+            memory(0x0100, 0xEA); // NOP
+            cpu.irq(true);
+            cpu.irq(false);
+
+            clock(2);
+
+            cycle(1, "Fetch next instruction").read(0x0101);
+            Assertions.assertEquals(Long.MAX_VALUE, cpu.nextInterruptCycle());
+        }
+    }
+
     @Nested
     class JMP {
         @Test
@@ -2924,6 +3082,61 @@ class CpuTest {
         }
     }
 
+    @Nested
+    class NMI {
+        @Test
+        void testInterrupt() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0xEA); // NOP
+            memory(0xFFFA, 0x00);
+            memory(0xFFFB, 0x03);
+            cpu.nmi();
+
+            clock(8);
+
+            cycle(0, "Fetch opcode, throw away"    ).read(0x0100       ).s(0xFD);
+            cycle(1, "Read PC, throw away"         ).read(0x0100       ).s(0xFD);
+            cycle(2, "Push PCH"                    ).write(0x01FD, 0x01).s(0xFC);
+            cycle(3, "Push PCL"                    ).write(0x01FC, 0x00).s(0xFB);
+            cycle(4, "Push P with B clear"         ).write(0x01FB, 0x24).s(0xFA);
+            cycle(5, "Fetch vector low byte"       ).read(0xFFFA       ).s(0xFA);
+            cycle(6, "Fetch vector high byte"      ).read(0xFFFB       ).s(0xFA);
+            cycle(7, "Fetch opcode"                ).read(0x0300       ).s(0xFA);
+        }
+
+        @Test
+        void testScheduled() {
+            cpu.pc(0x0100);
+            for (int address = 0x0100; address < 0x0110; address++) {
+                memory(address, 0xEA); // NOP
+            }
+            cpu.nmi(10);
+
+            Assertions.assertEquals(10, cpu.nextInterruptCycle());
+            clock(12);
+
+            cycle(8,  "Fetch opcode"               ).read(0x0104);
+            cycle(10, "Fetch opcode, throw away"   ).read(0x0105);
+            cycle(11, "Read PC, throw away"        ).read(0x0105);
+            Assertions.assertEquals(5, cpu.instructions());
+        }
+
+        @Test
+        void testTakenOnce() {
+            cpu.pc(0x0100);
+            memory(0xFFFA, 0x00);
+            memory(0xFFFB, 0x03);
+            memory(0x0300, 0xEA); // NOP
+            cpu.nmi();
+
+            clock(10);
+
+            cycle(7, "Fetch opcode"                ).read(0x0300);
+            cycle(9, "Fetch opcode"                ).read(0x0301);
+            Assertions.assertEquals(Long.MAX_VALUE, cpu.nextInterruptCycle());
+        }
+    }
+
     @Nested
     class ORA {
         @Test
@@ -3315,6 +3528,20 @@ class CpuTest {
 
     @Nested
     class ROR {
+        @Test
+        void testAccumulatorNegative() {
+            cpu.pc(0x0100);
+            memory(0x0100, 0xA9); // LDA #82
+            memory(0x0101, 0x82);
+            memory(0x0102, 0x6A); // ROR A
+
+            clock(5);
+
+            cycle(2, "Fetch opcode"                      ).read(0x0102).a(0x82).flags("N.1..I..");
+            cycle(3, "Fetch next instruction, throw away").read(0x0103).a(0x82).flags("N.1..I..");
+            cycle(4, "Fetch opcode"                      ).read(0x0103).a(0x41).flags("..1..I..");
+        }
+
         @Test
         void testAccumulator() {
             cpu.pc(0x0100);
@@ -3467,6 +3694,45 @@ class CpuTest {
         }
     }
 
+    @Nested
+    class RTI {
+        @Test
+        void testReturn() {
+            cpu.pc(0x0100);
+            cpu.s(0xFA);
+            memory(0x0100, 0x40); // RTI
+            memory(0x01FB, 0xD3);
+            memory(0x01FC, 0x05);
+            memory(0x01FD, 0x02);
+
+            clock(7);
+
+            cycle(0, "Fetch opcode"                      ).read(0x0100).s(0xFA).flags("..1..I..");
+            cycle(1, "Fetch next instruction, throw away").read(0x0101).s(0xFA).flags("..1..I..");
+            cycle(2, "Increment S"                       ).read(0x01FA).s(0xFB).flags("..1..I..");
+            cycle(3, "Pull P from stack"                 ).read(0x01FB).s(0xFC).flags("NV1...ZC");
+            cycle(4, "Pull PCL from stack"               ).read(0x01FC).s(0xFD).flags("NV1...ZC");
+            cycle(5, "Pull PCH from stack"               ).read(0x01FD).s(0xFD).flags("NV1...ZC");
+            cycle(6, "Fetch opcode"                      ).read(0x0205).s(0xFD).flags("NV1...ZC");
+        }
+
+        @Test
+        void testPendingIrqTakenAfterReturn() {
+            cpu.pc(0x0100);
+            cpu.s(0xFA);
+            memory(0x0100, 0x40); // RTI
+            memory(0x01FB, 0x20);
+            memory(0x01FC, 0x05);
+            memory(0x01FD, 0x02);
+            cpu.irq(true);
+
+            clock(8);
+
+            cycle(6, "Fetch opcode, throw away"          ).read(0x0205);
+            cycle(7, "Read PC, throw away"               ).read(0x0205);
+        }
+    }
+
     @Nested
     class RTS {
         @Test
@@ -4281,7 +4547,7 @@ class CpuTest {
 
             cycle(0, "Fetch opcode"                      ).read(0x0100).s(0xFD).flags("..1..I..");
             cycle(1, "Fetch next instruction, throw away").read(0x0101).s(0xFD).flags("..1..I..");
-            cycle(2, "Fetch opcode"                      ).read(0x0101).s(0x00).flags("..1..IZ.");
+            cycle(2, "Fetch opcode"                      ).read(0x0101).s(0x00).flags("..1..I..");
         }
     }
 
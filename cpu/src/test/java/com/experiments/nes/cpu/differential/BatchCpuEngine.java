@@ -0,0 +1,81 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BatchCpu;
+import com.experiments.nes.cpu.Memory;
+
+// Drives BatchCpu, with every lane on an array of its own
+public class BatchCpuEngine implements BatchEngine {
+    private final BatchCpu probe = new BatchCpu(new Memory[1]);
+    private BatchCpu cpu;
+    private byte[][] memories;
+    private long[] cycles;
+
+    @Override
+    public boolean supports(int opcode) {
+        return probe.implemented(opcode);
+    }
+
+    @Override
+    public void reset(Registers[] registers, byte[][] memories) {
+        this.memories = memories;
+        Memory[] lanes = new Memory[memories.length];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = new ArrayMemory(memories[lane]);
+        }
+        this.cpu = new BatchCpu(lanes);
+        this.cycles = new long[lanes.length];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            cpu.pc(lane, registers[lane].pc());
+            cpu.a(lane, registers[lane].a());
+            cpu.x(lane, registers[lane].x());
+            cpu.y(lane, registers[lane].y());
+            cpu.s(lane, registers[lane].s());
+            cpu.p(lane, registers[lane].p());
+        }
+    }
+
+    @Override
+    public void step() {
+        for (int lane = 0; lane < cycles.length; lane++) {
+            cycles[lane] = cpu.cycles(lane);
+        }
+        cpu.step();
+    }
+
+    @Override
+    public Registers registers(int lane) {
+        return new Registers(cpu.pc(lane) & 0xFFFF, cpu.a(lane) & 0xFF, cpu.x(lane) & 0xFF, cpu.y(lane) & 0xFF,
+                cpu.s(lane) & 0xFF, cpu.p(lane) & 0xFF);
+    }
+
+    @Override
+    public int cycles(int lane) {
+        return (int) (cpu.cycles(lane) - cycles[lane]);
+    }
+
+    @Override
+    public byte[] memory(int lane) {
+        return memories[lane];
+    }
+
+    // Instructions run for several lanes at once and for one alone since the last reset, 0 before the first
+    public long batched() {
+        return cpu == null ? 0 : cpu.batched();
+    }
+
+    public long scalar() {
+        return cpu == null ? 0 : cpu.scalar();
+    }
+
+    private record ArrayMemory(byte[] memory) implements Memory {
+        @Override
+        public byte load(short address) {
+            return memory[address & 0xFFFF];
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            memory[address & 0xFFFF] = value;
+        }
+    }
+}
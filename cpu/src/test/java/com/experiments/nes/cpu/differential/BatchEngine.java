@@ -0,0 +1,64 @@
+package com.experiments.nes.cpu.differential;
+
+import java.util.function.Supplier;
+
+// Lanes of one program stepped an instruction at a time, together, each on registers and memory of its own
+public interface BatchEngine {
+    boolean supports(int opcode);
+
+    void reset(Registers[] registers, byte[][] memories);
+
+    void step();
+
+    Registers registers(int lane);
+
+    // Cycles the lane's last step took
+    int cycles(int lane);
+
+    byte[] memory(int lane);
+
+    // Steps a scalar engine per lane, one lane after another. A scalar engine reads or writes the bus every cycle,
+    // so its accesses are its cycles.
+    static BatchEngine lanes(Supplier<Engine> engine) {
+        Engine probe = engine.get();
+        return new BatchEngine() {
+            private Engine[] lanes;
+
+            @Override
+            public boolean supports(int opcode) {
+                return probe.supports(opcode);
+            }
+
+            @Override
+            public void reset(Registers[] registers, byte[][] memories) {
+                lanes = new Engine[registers.length];
+                for (int lane = 0; lane < lanes.length; lane++) {
+                    lanes[lane] = engine.get();
+                    lanes[lane].reset(registers[lane], memories[lane]);
+                }
+            }
+
+            @Override
+            public void step() {
+                for (Engine lane : lanes) {
+                    lane.step();
+                }
+            }
+
+            @Override
+            public Registers registers(int lane) {
+                return lanes[lane].registers();
+            }
+
+            @Override
+            public int cycles(int lane) {
+                return lanes[lane].accesses();
+            }
+
+            @Override
+            public byte[] memory(int lane) {
+                return lanes[lane].memory();
+            }
+        };
+    }
+}
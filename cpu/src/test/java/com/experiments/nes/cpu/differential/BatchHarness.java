@@ -0,0 +1,99 @@
+package com.experiments.nes.cpu.differential;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Runs DifferentialHarness programs on several lanes of two batch engines in lockstep, comparing every lane's
+// registers and cycles after each instruction and its memory at the end
+public class BatchHarness {
+    private final Supplier<BatchEngine> first;
+    private final Supplier<BatchEngine> second;
+    private final int instructions;
+    private final int lanes;
+    private final int[] opcodes;
+
+    public BatchHarness(Supplier<BatchEngine> first, Supplier<BatchEngine> second, int instructions, int lanes) {
+        this.first = first;
+        this.second = second;
+        this.instructions = instructions;
+        this.lanes = lanes;
+        BatchEngine a = first.get();
+        BatchEngine b = second.get();
+        this.opcodes = DifferentialHarness.opcodes(opcode -> a.supports(opcode) && b.supports(opcode));
+    }
+
+    public List<Divergence> run(long seed, int programs) {
+        return IntStream.range(0, programs)
+                .parallel()
+                .mapToObj(program -> run(DifferentialHarness.programSeed(seed, program)))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public Divergence run(long seed) {
+        DifferentialHarness.Program program = DifferentialHarness.program(seed, opcodes, instructions, lanes);
+
+        BatchEngine a = first.get();
+        BatchEngine b = second.get();
+        a.reset(program.registers(), copy(program.memories()));
+        b.reset(program.registers(), copy(program.memories()));
+        int[] fetched = new int[lanes];
+        for (int step = 0; step < instructions && fetch(a, fetched); step++) {
+            try {
+                a.step();
+                b.step();
+                for (int lane = 0; lane < lanes; lane++) {
+                    String difference = compare(a, b, lane);
+                    if (difference != null) {
+                        return new Divergence(seed, step, fetched[lane], "lane " + lane + ": " + difference);
+                    }
+                }
+            }
+            catch (RuntimeException ex) {
+                return new Divergence(seed, step, fetched[0], ex.toString());
+            }
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            int mismatch = Arrays.mismatch(a.memory(lane), b.memory(lane));
+            if (mismatch >= 0) {
+                return new Divergence(seed, instructions, 0, String.format("lane %d: memory %04x: %02x vs %02x",
+                        lane, mismatch, a.memory(lane)[mismatch], b.memory(lane)[mismatch]));
+            }
+        }
+        return null;
+    }
+
+    // Reads each lane's next opcode, false once any lane has left the generated program
+    private boolean fetch(BatchEngine engine, int[] fetched) {
+        for (int lane = 0; lane < lanes; lane++) {
+            fetched[lane] = engine.memory(lane)[engine.registers(lane).pc()] & 0xFF;
+            if (Arrays.binarySearch(opcodes, fetched[lane]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String compare(BatchEngine a, BatchEngine b, int lane) {
+        Registers registersA = a.registers(lane);
+        Registers registersB = b.registers(lane);
+        if (!registersA.equals(registersB)) {
+            return registersA + " vs " + registersB;
+        }
+        if (a.cycles(lane) != b.cycles(lane)) {
+            return String.format("%d cycles vs %d", a.cycles(lane), b.cycles(lane));
+        }
+        return null;
+    }
+
+    private static byte[][] copy(byte[][] memories) {
+        byte[][] copies = new byte[memories.length][];
+        for (int lane = 0; lane < memories.length; lane++) {
+            copies[lane] = memories[lane].clone();
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,105 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BusRecorder;
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+
+// Drives the cycle-level Cpu. An instruction is complete once the next opcode has been fetched, since read
+// instructions finish in the same cycle as that fetch.
+public class CpuEngine implements Engine {
+    private static final int MAX_CYCLES = 16;
+
+    private final BusRecorder bus = new BusRecorder();
+    private byte[] memory;
+    private Cpu cpu = new Cpu(new RecordingMemory());
+    private int cycle;
+
+    @Override
+    public boolean supports(int opcode) {
+        return cpu.implemented(opcode);
+    }
+
+    @Override
+    public void reset(Registers registers, byte[] memory) {
+        this.memory = memory;
+        this.cpu = new Cpu(new RecordingMemory());
+        cpu.pc(registers.pc());
+        cpu.a(registers.a());
+        cpu.x(registers.x());
+        cpu.y(registers.y());
+        cpu.s(registers.s());
+        cpu.p(registers.p());
+        bus.clear();
+        cycle = 0;
+        // Fetch the first opcode so every step starts with its fetch already on the bus
+        clock();
+    }
+
+    @Override
+    public void step() {
+        int last = bus.size() - 1;
+        short fetchAddress = bus.address(last);
+        byte fetchValue = bus.value(last);
+        bus.clear();
+        bus.read(0, fetchAddress, fetchValue);
+        long instructions = cpu.instructions();
+        for (int cycles = 0; cpu.instructions() == instructions; cycles++) {
+            if (cycles == MAX_CYCLES) {
+                throw new IllegalStateException("Instruction did not complete within " + MAX_CYCLES + " cycles");
+            }
+            try {
+                clock();
+            }
+            catch (IllegalStateException ex) {
+                // Fetching an unimplemented opcode fails after the current instruction has completed, which is
+                // where the harness stops anyway
+                if (cpu.instructions() == instructions || cpu.implemented(bus.value(bus.size() - 1))) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Registers registers() {
+        // The next opcode has already been fetched
+        return new Registers((cpu.pc() - 1) & 0xFFFF, cpu.a() & 0xFF, cpu.x() & 0xFF, cpu.y() & 0xFF,
+                cpu.s() & 0xFF, cpu.p() & 0xFF);
+    }
+
+    @Override
+    public BusRecorder bus() {
+        return bus;
+    }
+
+    @Override
+    public int accesses() {
+        // The last access is the opcode fetch of the following instruction
+        return bus.size() - 1;
+    }
+
+    @Override
+    public byte[] memory() {
+        return memory;
+    }
+
+    private void clock() {
+        cpu.clock();
+        cycle++;
+    }
+
+    private class RecordingMemory implements Memory {
+        @Override
+        public byte load(short address) {
+            byte value = memory == null ? 0 : memory[address & 0xFFFF];
+            bus.read(cycle, address, value);
+            return value;
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            bus.write(cycle, address, value);
+            memory[address & 0xFFFF] = value;
+        }
+    }
+}
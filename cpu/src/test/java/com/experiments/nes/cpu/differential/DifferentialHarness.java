@@ -0,0 +1,157 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BusRecorder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Runs random instruction streams from random initial states on two engines in lockstep. Every program derives
+// its own seed from the run seed and its index, so a reported divergence reproduces with run(seed) regardless of
+// how programs were scheduled across cores. BatchHarness runs the same programs on several lanes.
+public class DifferentialHarness {
+    private final Supplier<Engine> first;
+    private final Supplier<Engine> second;
+    private final int instructions;
+    private final int[] opcodes;
+
+    public DifferentialHarness(Supplier<Engine> first, Supplier<Engine> second, int instructions) {
+        this.first = first;
+        this.second = second;
+        this.instructions = instructions;
+        Engine a = first.get();
+        Engine b = second.get();
+        this.opcodes = opcodes(opcode -> a.supports(opcode) && b.supports(opcode));
+    }
+
+    // Memory and initial registers of each lane of a program. Lanes share the instructions but not their registers
+    // or the data in the first 2 KB, so their results differ while their PCs mostly stay together, until a jump or a
+    // write over the program sends one elsewhere.
+    public record Program(byte[][] memories, Registers[] registers) {
+    }
+
+    public List<Divergence> run(long seed, int programs) {
+        return IntStream.range(0, programs)
+                .parallel()
+                .mapToObj(program -> run(programSeed(seed, program)))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public Divergence run(long seed) {
+        Program program = program(seed, opcodes, instructions, 1);
+
+        Engine a = first.get();
+        Engine b = second.get();
+        a.reset(program.registers()[0], program.memories()[0].clone());
+        b.reset(program.registers()[0], program.memories()[0].clone());
+        for (int step = 0; step < instructions; step++) {
+            int opcode = a.memory()[a.registers().pc()] & 0xFF;
+            if (!supported(opcode)) {
+                // Control flow left the generated program
+                break;
+            }
+            String difference;
+            try {
+                a.step();
+                b.step();
+                difference = compare(a, b);
+            }
+            catch (RuntimeException ex) {
+                difference = ex.toString();
+            }
+            if (difference != null) {
+                return new Divergence(seed, step, opcode, difference);
+            }
+        }
+        int mismatch = Arrays.mismatch(a.memory(), b.memory());
+        if (mismatch >= 0) {
+            return new Divergence(seed, instructions, 0, String.format("memory %04x: %02x vs %02x",
+                    mismatch, a.memory()[mismatch], b.memory()[mismatch]));
+        }
+        return null;
+    }
+
+    // Defined opcodes the engines support
+    static int[] opcodes(IntPredicate supported) {
+        return IntStream.range(0, 0x100)
+                .filter(opcode -> Opcodes.defined(opcode) && supported.test(opcode))
+                .toArray();
+    }
+
+    static Program program(long seed, int[] opcodes, int instructions, int lanes) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] memory = new byte[0x10000];
+        random.nextBytes(memory);
+        int pc = random.nextInt(0x10000);
+        writeProgram(memory, pc, random, opcodes, instructions);
+        byte[][] memories = new byte[lanes][];
+        Registers[] registers = new Registers[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            memories[lane] = lane == 0 ? memory : memory.clone();
+            if (lane > 0) {
+                for (int i = 0; i < 0x100; i++) {
+                    memories[lane][random.nextInt(0x800)] = (byte) random.nextInt(0x100);
+                }
+            }
+            registers[lane] = new Registers(pc, random.nextInt(0x100), random.nextInt(0x100), random.nextInt(0x100),
+                    random.nextInt(0x100), random.nextInt(0x100) | 0x20);
+        }
+        return new Program(memories, registers);
+    }
+
+    private static void writeProgram(byte[] memory, int pc, SplittableRandom random, int[] opcodes,
+                                     int instructions) {
+        for (int i = 0; i < instructions; i++) {
+            int opcode = opcodes[random.nextInt(opcodes.length)];
+            memory[pc] = (byte) opcode;
+            // Operands keep the random bytes already in memory
+            pc = (pc + Opcodes.length(opcode)) & 0xFFFF;
+        }
+    }
+
+    private boolean supported(int opcode) {
+        return Arrays.binarySearch(opcodes, opcode) >= 0;
+    }
+
+    private static String compare(Engine a, Engine b) {
+        Registers registersA = a.registers();
+        Registers registersB = b.registers();
+        if (!registersA.equals(registersB)) {
+            return registersA + " vs " + registersB;
+        }
+        BusRecorder busA = a.bus();
+        BusRecorder busB = b.bus();
+        int accesses = Math.max(a.accesses(), b.accesses());
+        for (int i = 0; i < accesses; i++) {
+            if (i >= a.accesses() || i >= b.accesses()
+                    || busA.address(i) != busB.address(i)
+                    || busA.value(i) != busB.value(i)
+                    || busA.isWrite(i) != busB.isWrite(i)) {
+                return String.format("bus cycle %d: %s vs %s", i, access(busA, i, a.accesses()),
+                        access(busB, i, b.accesses()));
+            }
+        }
+        return null;
+    }
+
+    private static String access(BusRecorder bus, int index, int accesses) {
+        if (index >= accesses) {
+            return "nothing";
+        }
+        return String.format("%s %04x=%02x", bus.isWrite(index) ? "write" : "read",
+                bus.address(index) & 0xFFFF, bus.value(index) & 0xFF);
+    }
+
+    static long programSeed(long seed, int program) {
+        // SplitMix64 finalizer
+        long z = seed + (program + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
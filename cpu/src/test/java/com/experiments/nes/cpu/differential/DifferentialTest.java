@@ -0,0 +1,115 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BusRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DifferentialTest {
+    private static final long SEED = Long.getLong("differential.seed", 0x6502L);
+    private static final int PROGRAMS = Integer.getInteger("differential.programs", 2000);
+
+    @Test
+    void testCpuMatchesReference() {
+        DifferentialHarness harness = new DifferentialHarness(CpuEngine::new, ReferenceEngine::new, 200);
+
+        List<Divergence> divergences = harness.run(SEED, PROGRAMS);
+
+        assertTrue(divergences.isEmpty(), divergences.stream().limit(10)
+                .map(Divergence::toString)
+                .collect(Collectors.joining("\n")));
+    }
+
+    @Test
+    void testDivergenceIsReproducible() {
+        DifferentialHarness harness = new DifferentialHarness(ReferenceEngine::new, CarryFlipping::new, 200);
+
+        List<Divergence> divergences = harness.run(SEED, 50);
+
+        assertFalse(divergences.isEmpty());
+        Divergence divergence = divergences.get(0);
+        assertEquals(divergence, harness.run(divergence.seed()));
+    }
+
+    @Test
+    void testBatchCpuMatchesReference() {
+        List<BatchCpuEngine> engines = new CopyOnWriteArrayList<>();
+        BatchHarness harness = new BatchHarness(() -> {
+            BatchCpuEngine engine = new BatchCpuEngine();
+            engines.add(engine);
+            return engine;
+        }, () -> BatchEngine.lanes(ReferenceEngine::new), 200, 8);
+
+        List<Divergence> divergences = harness.run(SEED, PROGRAMS / 10);
+
+        assertTrue(divergences.isEmpty(), divergences.stream().limit(10)
+                .map(Divergence::toString)
+                .collect(Collectors.joining("\n")));
+        long batched = engines.stream().mapToLong(BatchCpuEngine::batched).sum();
+        long scalar = engines.stream().mapToLong(BatchCpuEngine::scalar).sum();
+        assertTrue(batched > scalar, batched + " batched, " + scalar + " scalar");
+    }
+
+    @Test
+    void testBatchDivergenceIsReproducible() {
+        BatchHarness harness = new BatchHarness(() -> BatchEngine.lanes(ReferenceEngine::new),
+                () -> BatchEngine.lanes(CarryFlipping::new), 200, 4);
+
+        List<Divergence> divergences = harness.run(SEED, 50);
+
+        assertFalse(divergences.isEmpty());
+        Divergence divergence = divergences.get(0);
+        assertTrue(divergence.message().startsWith("lane "), divergence.message());
+        assertEquals(divergence, harness.run(divergence.seed()));
+    }
+
+    // Reference model that gets SEC wrong
+    private static class CarryFlipping implements Engine {
+        private final ReferenceEngine engine = new ReferenceEngine();
+        private boolean broken;
+
+        @Override
+        public boolean supports(int opcode) {
+            return engine.supports(opcode);
+        }
+
+        @Override
+        public void reset(Registers registers, byte[] memory) {
+            engine.reset(registers, memory);
+        }
+
+        @Override
+        public void step() {
+            broken = engine.memory()[engine.registers().pc()] == 0x38;
+            engine.step();
+        }
+
+        @Override
+        public Registers registers() {
+            Registers registers = engine.registers();
+            return broken ? new Registers(registers.pc(), registers.a(), registers.x(), registers.y(),
+                    registers.s(), registers.p() & ~0x01) : registers;
+        }
+
+        @Override
+        public BusRecorder bus() {
+            return engine.bus();
+        }
+
+        @Override
+        public int accesses() {
+            return engine.accesses();
+        }
+
+        @Override
+        public byte[] memory() {
+            return engine.memory();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.experiments.nes.cpu.differential;
+
+public record Divergence(long seed, int step, int opcode, String message) {
+    @Override
+    public String toString() {
+        return String.format("seed %016x, step %d, opcode %02x (%s): %s",
+                seed, step, opcode, Opcodes.defined(opcode) ? Opcodes.mnemonic(opcode) : "?", message);
+    }
+}
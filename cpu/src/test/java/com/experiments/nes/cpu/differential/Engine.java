@@ -0,0 +1,21 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BusRecorder;
+
+// One execution engine under test, observed at instruction boundaries
+public interface Engine {
+    boolean supports(int opcode);
+
+    void reset(Registers registers, byte[] memory);
+
+    void step();
+
+    Registers registers();
+
+    // Bus activity of the last step starts with its opcode fetch and spans the first accesses() entries
+    BusRecorder bus();
+
+    int accesses();
+
+    byte[] memory();
+}
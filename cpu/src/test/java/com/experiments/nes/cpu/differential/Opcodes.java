@@ -0,0 +1,117 @@
+package com.experiments.nes.cpu.differential;
+
+// Documented 6502 opcodes known to the reference model
+final class Opcodes {
+    enum Mode {
+        Implied(1), Accumulator(1), Immediate(2), ZeroPage(2), ZeroPageX(2), ZeroPageY(2), Absolute(3),
+        AbsoluteX(3), AbsoluteY(3), IndexedIndirect(2), IndirectIndexed(2), Indirect(3);
+
+        final int length;
+
+        Mode(int length) {
+            this.length = length;
+        }
+    }
+
+    private static final String[] MNEMONICS = new String[0x100];
+    private static final Mode[] MODES = new Mode[0x100];
+
+    static {
+        define("ADC", 0x69, 0x65, 0x75, 0x6D, 0x7D, 0x79, 0x61, 0x71);
+        define("AND", 0x29, 0x25, 0x35, 0x2D, 0x3D, 0x39, 0x21, 0x31);
+        define("CMP", 0xC9, 0xC5, 0xD5, 0xCD, 0xDD, 0xD9, 0xC1, 0xD1);
+        define("EOR", 0x49, 0x45, 0x55, 0x4D, 0x5D, 0x59, 0x41, 0x51);
+        define("LDA", 0xA9, 0xA5, 0xB5, 0xAD, 0xBD, 0xB9, 0xA1, 0xB1);
+        define("ORA", 0x09, 0x05, 0x15, 0x0D, 0x1D, 0x19, 0x01, 0x11);
+        define("SBC", 0xE9, 0xE5, 0xF5, 0xED, 0xFD, 0xF9, 0xE1, 0xF1);
+        define("STA", -1, 0x85, 0x95, 0x8D, 0x9D, 0x99, 0x81, 0x91);
+        defineShift("ASL", 0x0A, 0x06, 0x16, 0x0E, 0x1E);
+        defineShift("LSR", 0x4A, 0x46, 0x56, 0x4E, 0x5E);
+        defineShift("ROL", 0x2A, 0x26, 0x36, 0x2E, 0x3E);
+        defineShift("ROR", 0x6A, 0x66, 0x76, 0x6E, 0x7E);
+        defineShift("DEC", -1, 0xC6, 0xD6, 0xCE, 0xDE);
+        defineShift("INC", -1, 0xE6, 0xF6, 0xEE, 0xFE);
+        define("BIT", 0x24, Mode.ZeroPage);
+        define("BIT", 0x2C, Mode.Absolute);
+        define("CPX", 0xE0, Mode.Immediate);
+        define("CPX", 0xE4, Mode.ZeroPage);
+        define("CPX", 0xEC, Mode.Absolute);
+        define("CPY", 0xC0, Mode.Immediate);
+        define("CPY", 0xC4, Mode.ZeroPage);
+        define("CPY", 0xCC, Mode.Absolute);
+        define("LDX", 0xA2, Mode.Immediate);
+        define("LDX", 0xA6, Mode.ZeroPage);
+        define("LDX", 0xB6, Mode.ZeroPageY);
+        define("LDX", 0xAE, Mode.Absolute);
+        define("LDX", 0xBE, Mode.AbsoluteY);
+        define("LDY", 0xA0, Mode.Immediate);
+        define("LDY", 0xA4, Mode.ZeroPage);
+        define("LDY", 0xB4, Mode.ZeroPageX);
+        define("LDY", 0xAC, Mode.Absolute);
+        define("LDY", 0xBC, Mode.AbsoluteX);
+        define("STX", 0x86, Mode.ZeroPage);
+        define("STX", 0x96, Mode.ZeroPageY);
+        define("STX", 0x8E, Mode.Absolute);
+        define("STY", 0x84, Mode.ZeroPage);
+        define("STY", 0x94, Mode.ZeroPageX);
+        define("STY", 0x8C, Mode.Absolute);
+        define("JMP", 0x4C, Mode.Absolute);
+        define("JMP", 0x6C, Mode.Indirect);
+        define("JSR", 0x20, Mode.Absolute);
+        define("RTS", 0x60, Mode.Implied);
+        String[] implied = {
+                "CLC", "18", "CLD", "D8", "CLI", "58", "CLV", "B8", "DEX", "CA", "DEY", "88", "INX", "E8",
+                "INY", "C8", "NOP", "EA", "SEC", "38", "SED", "F8", "SEI", "78", "TAX", "AA", "TAY", "A8",
+                "TSX", "BA", "TXA", "8A", "TXS", "9A", "TYA", "98"};
+        for (int i = 0; i < implied.length; i += 2) {
+            define(implied[i], Integer.parseInt(implied[i + 1], 16), Mode.Implied);
+        }
+    }
+
+    private Opcodes() {
+    }
+
+    static boolean defined(int opcode) {
+        return MNEMONICS[opcode] != null;
+    }
+
+    static String mnemonic(int opcode) {
+        return MNEMONICS[opcode];
+    }
+
+    static Mode mode(int opcode) {
+        return MODES[opcode];
+    }
+
+    static int length(int opcode) {
+        return MODES[opcode].length;
+    }
+
+    private static void define(String mnemonic, int immediate, int zeroPage, int zeroPageX, int absolute,
+                               int absoluteX, int absoluteY, int indexedIndirect, int indirectIndexed) {
+        define(mnemonic, immediate, Mode.Immediate);
+        define(mnemonic, zeroPage, Mode.ZeroPage);
+        define(mnemonic, zeroPageX, Mode.ZeroPageX);
+        define(mnemonic, absolute, Mode.Absolute);
+        define(mnemonic, absoluteX, Mode.AbsoluteX);
+        define(mnemonic, absoluteY, Mode.AbsoluteY);
+        define(mnemonic, indexedIndirect, Mode.IndexedIndirect);
+        define(mnemonic, indirectIndexed, Mode.IndirectIndexed);
+    }
+
+    private static void defineShift(String mnemonic, int accumulator, int zeroPage, int zeroPageX, int absolute,
+                                    int absoluteX) {
+        define(mnemonic, accumulator, Mode.Accumulator);
+        define(mnemonic, zeroPage, Mode.ZeroPage);
+        define(mnemonic, zeroPageX, Mode.ZeroPageX);
+        define(mnemonic, absolute, Mode.Absolute);
+        define(mnemonic, absoluteX, Mode.AbsoluteX);
+    }
+
+    private static void define(String mnemonic, int opcode, Mode mode) {
+        if (opcode >= 0) {
+            MNEMONICS[opcode] = mnemonic;
+            MODES[opcode] = mode;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.experiments.nes.cpu.differential;
+
+import com.experiments.nes.cpu.BusRecorder;
+
+import java.util.function.IntUnaryOperator;
+
+// Instruction-at-a-time 6502 model written straight from the documented bus behaviour of each addressing mode,
+// deliberately sharing no code with Cpu. Decimal mode is ignored, as on the NES.
+public class ReferenceEngine implements Engine {
+    private static final int C = 0x01;
+    private static final int Z = 0x02;
+    private static final int V = 0x40;
+    private static final int N = 0x80;
+
+    private final BusRecorder bus = new BusRecorder();
+    private byte[] memory;
+    private int pc;
+    private int a;
+    private int x;
+    private int y;
+    private int s;
+    private int p;
+    private int cycle;
+
+    @Override
+    public boolean supports(int opcode) {
+        return Opcodes.defined(opcode);
+    }
+
+    @Override
+    public void reset(Registers registers, byte[] memory) {
+        this.memory = memory;
+        this.pc = registers.pc();
+        this.a = registers.a();
+        this.x = registers.x();
+        this.y = registers.y();
+        this.s = registers.s();
+        this.p = registers.p();
+        bus.clear();
+    }
+
+    @Override
+    public Registers registers() {
+        return new Registers(pc, a, x, y, s, p);
+    }
+
+    @Override
+    public BusRecorder bus() {
+        return bus;
+    }
+
+    @Override
+    public int accesses() {
+        return bus.size();
+    }
+
+    @Override
+    public byte[] memory() {
+        return memory;
+    }
+
+    @Override
+    public void step() {
+        bus.clear();
+        cycle = 0;
+        int opcode = fetch();
+        Opcodes.Mode mode = Opcodes.mode(opcode);
+        switch (Opcodes.mnemonic(opcode)) {
+            case "ADC" -> addWithCarry(operand(mode));
+            case "SBC" -> addWithCarry(operand(mode) ^ 0xFF);
+            case "AND" -> a = flags(a & operand(mode));
+            case "EOR" -> a = flags(a ^ operand(mode));
+            case "ORA" -> a = flags(a | operand(mode));
+            case "LDA" -> a = flags(operand(mode));
+            case "LDX" -> x = flags(operand(mode));
+            case "LDY" -> y = flags(operand(mode));
+            case "CMP" -> compare(a, operand(mode));
+            case "CPX" -> compare(x, operand(mode));
+            case "CPY" -> compare(y, operand(mode));
+            case "BIT" -> {
+                int value = operand(mode);
+                p = (p & ~(N | V | Z)) | (value & (N | V)) | ((a & value) == 0 ? Z : 0);
+            }
+            case "STA" -> write(address(mode, true), a);
+            case "STX" -> write(address(mode, true), x);
+            case "STY" -> write(address(mode, true), y);
+            case "ASL" -> modify(mode, value -> {
+                carry((value & 0x80) != 0);
+                return flags((value << 1) & 0xFF);
+            });
+            case "LSR" -> modify(mode, value -> {
+                carry((value & 0x01) != 0);
+                return flags(value >> 1);
+            });
+            case "ROL" -> modify(mode, value -> {
+                int result = ((value << 1) | (p & C)) & 0xFF;
+                carry((value & 0x80) != 0);
+                return flags(result);
+            });
+            case "ROR" -> modify(mode, value -> {
+                int result = (value >> 1) | ((p & C) << 7);
+                carry((value & 0x01) != 0);
+                return flags(result);
+            });
+            case "INC" -> modify(mode, value -> flags((value + 1) & 0xFF));
+            case "DEC" -> modify(mode, value -> flags((value - 1) & 0xFF));
+            case "INX" -> x = flags(implied(x + 1));
+            case "INY" -> y = flags(implied(y + 1));
+            case "DEX" -> x = flags(implied(x - 1));
+            case "DEY" -> y = flags(implied(y - 1));
+            case "TAX" -> x = flags(implied(a));
+            case "TAY" -> y = flags(implied(a));
+            case "TSX" -> x = flags(implied(s));
+            case "TXA" -> a = flags(implied(x));
+            case "TYA" -> a = flags(implied(y));
+            // TXS is the only transfer that leaves the flags alone
+            case "TXS" -> s = implied(x);
+            case "CLC" -> p = implied(p & ~C);
+            case "SEC" -> p = implied(p | C);
+            case "CLI" -> p = implied(p & ~0x04);
+            case "SEI" -> p = implied(p | 0x04);
+            case "CLD" -> p = implied(p & ~0x08);
+            case "SED" -> p = implied(p | 0x08);
+            case "CLV" -> p = implied(p & ~V);
+            case "NOP" -> implied(0);
+            case "JMP" -> jump(mode);
+            case "JSR" -> jumpToSubroutine();
+            case "RTS" -> returnFromSubroutine();
+            default -> throw new IllegalStateException(String.format("Opcode %02x", opcode));
+        }
+    }
+
+    private int read(int address) {
+        int value = memory[address & 0xFFFF] & 0xFF;
+        bus.read(cycle++, (short) address, (byte) value);
+        return value;
+    }
+
+    private void write(int address, int value) {
+        memory[address & 0xFFFF] = (byte) value;
+        bus.write(cycle++, (short) address, (byte) value);
+    }
+
+    private int fetch() {
+        int value = read(pc);
+        pc = (pc + 1) & 0xFFFF;
+        return value;
+    }
+
+    private int implied(int result) {
+        read(pc);
+        return result & 0xFF;
+    }
+
+    private int operand(Opcodes.Mode mode) {
+        return mode == Opcodes.Mode.Immediate ? fetch() : read(address(mode, false));
+    }
+
+    // Effective address, after the dummy accesses a read would not make when no page is crossed
+    private int address(Opcodes.Mode mode, boolean alwaysFixUp) {
+        return switch (mode) {
+            case ZeroPage -> fetch();
+            case ZeroPageX -> zeroPageIndexed(x);
+            case ZeroPageY -> zeroPageIndexed(y);
+            case Absolute -> fetch() | fetch() << 8;
+            case AbsoluteX -> indexed(fetch() | fetch() << 8, x, alwaysFixUp);
+            case AbsoluteY -> indexed(fetch() | fetch() << 8, y, alwaysFixUp);
+            case IndexedIndirect -> {
+                int pointer = fetch();
+                read(pointer);
+                yield read((pointer + x) & 0xFF) | read((pointer + x + 1) & 0xFF) << 8;
+            }
+            case IndirectIndexed -> {
+                int pointer = fetch();
+                yield indexed(read(pointer) | read((pointer + 1) & 0xFF) << 8, y, alwaysFixUp);
+            }
+            default -> throw new IllegalStateException(mode.toString());
+        };
+    }
+
+    private int zeroPageIndexed(int index) {
+        int base = fetch();
+        read(base);
+        return (base + index) & 0xFF;
+    }
+
+    private int indexed(int base, int index, boolean alwaysFixUp) {
+        int address = (base + index) & 0xFFFF;
+        if (alwaysFixUp || (address & 0xFF00) != (base & 0xFF00)) {
+            // The low byte is added first, so the address before carrying into the high byte is read
+            read((base & 0xFF00) | (address & 0x00FF));
+        }
+        return address;
+    }
+
+    private void modify(Opcodes.Mode mode, IntUnaryOperator operation) {
+        if (mode == Opcodes.Mode.Accumulator) {
+            a = operation.applyAsInt(implied(a));
+            return;
+        }
+        int address = address(mode, true);
+        int value = read(address);
+        write(address, value);
+        write(address, operation.applyAsInt(value));
+    }
+
+    private void jump(Opcodes.Mode mode) {
+        int address = fetch() | fetch() << 8;
+        if (mode == Opcodes.Mode.Indirect) {
+            // The pointer high byte is fetched without carrying into the page
+            address = read(address) | read((address & 0xFF00) | ((address + 1) & 0x00FF)) << 8;
+        }
+        pc = address;
+    }
+
+    private void jumpToSubroutine() {
+        int low = fetch();
+        read(0x0100 | s);
+        push(pc >> 8);
+        push(pc & 0xFF);
+        pc = low | read(pc) << 8;
+    }
+
+    private void returnFromSubroutine() {
+        read(pc);
+        read(0x0100 | s);
+        s = (s + 1) & 0xFF;
+        int low = read(0x0100 | s);
+        s = (s + 1) & 0xFF;
+        pc = low | read(0x0100 | s) << 8;
+        fetch();
+    }
+
+    private void push(int value) {
+        write(0x0100 | s, value);
+        s = (s - 1) & 0xFF;
+    }
+
+    private int flags(int value) {
+        p = (p & ~(N | Z)) | (value & N) | (value == 0 ? Z : 0);
+        return value;
+    }
+
+    private void carry(boolean set) {
+        p = set ? p | C : p & ~C;
+    }
+
+    private void addWithCarry(int value) {
+        int sum = a + value + (p & C);
+        boolean overflow = ((a ^ sum) & (value ^ sum) & 0x80) != 0;
+        carry(sum > 0xFF);
+        a = flags(sum & 0xFF);
+        p = overflow ? p | V : p & ~V;
+    }
+
+    private void compare(int register, int value) {
+        int difference = register - value;
+        carry(difference >= 0);
+        flags(difference & 0xFF);
+    }
+}
@@ -0,0 +1,8 @@
+package com.experiments.nes.cpu.differential;
+
+public record Registers(int pc, int a, int x, int y, int s, int p) {
+    @Override
+    public String toString() {
+        return String.format("pc=%04x a=%02x x=%02x y=%02x s=%02x p=%02x", pc, a, x, y, s, p);
+    }
+}
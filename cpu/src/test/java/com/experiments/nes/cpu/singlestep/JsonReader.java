@@ -0,0 +1,173 @@
+package com.experiments.nes.cpu.singlestep;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+// Minimal pull parser for the single-step suites. It only materializes the value under the cursor, so a file with
+// ten thousand cases never needs to fit in memory. Separators are consumed leniently since the files are trusted.
+class JsonReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[1 << 16];
+    private final StringBuilder string = new StringBuilder();
+    private int position;
+    private int limit;
+
+    JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    boolean hasNext() throws IOException {
+        int c = peekToken();
+        return c != ']' && c != '}' && c != -1;
+    }
+
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException {
+        expect('"');
+        string.setLength(0);
+        for (int c = read(); c != '"'; c = read()) {
+            if (c == -1) {
+                throw new IOException("Unterminated string");
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n' -> string.append('\n');
+                    case 't' -> string.append('\t');
+                    case 'r' -> string.append('\r');
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'u' -> string.append((char) Integer.parseInt(
+                            new String(new char[] {(char) read(), (char) read(), (char) read(), (char) read()}), 16));
+                    default -> string.append((char) c);
+                }
+            }
+            else {
+                string.append((char) c);
+            }
+        }
+        return string.toString();
+    }
+
+    int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new IOException("Integer out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    long nextLong() throws IOException {
+        int c = peekToken();
+        boolean negative = c == '-';
+        if (negative) {
+            position++;
+            c = peek();
+        }
+        if (c < '0' || c > '9') {
+            throw new IOException("Expected number but found " + describe(c));
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            position++;
+            c = peek();
+        }
+        return negative ? -value : value;
+    }
+
+    void skipValue() throws IOException {
+        int c = peekToken();
+        switch (c) {
+            case '[' -> {
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+            }
+            case '{' -> {
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+            }
+            case '"' -> nextString();
+            default -> {
+                // Numbers and literals
+                while (c != -1 && c != ',' && c != ']' && c != '}' && !Character.isWhitespace(c)) {
+                    position++;
+                    c = peek();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = peekToken();
+        if (c != expected) {
+            throw new IOException("Expected '" + expected + "' but found " + describe(c));
+        }
+        position++;
+    }
+
+    private int peekToken() throws IOException {
+        int c = peek();
+        while (c == ',' || Character.isWhitespace(c)) {
+            position++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        position++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position >= limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+}
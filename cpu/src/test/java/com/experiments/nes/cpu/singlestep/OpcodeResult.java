@@ -0,0 +1,14 @@
+package com.experiments.nes.cpu.singlestep;
+
+import java.util.List;
+
+public record OpcodeResult(int opcode, boolean skipped, int passed, int failed, List<String> failures) {
+    @Override
+    public String toString() {
+        if (skipped) {
+            return String.format("%02x: skipped (not implemented)", opcode);
+        }
+        return String.format("%02x: %d passed, %d failed%s", opcode, passed, failed,
+                failures.isEmpty() ? "" : "\n    " + String.join("\n    ", failures));
+    }
+}
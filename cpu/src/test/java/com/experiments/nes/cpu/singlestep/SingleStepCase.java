@@ -0,0 +1,95 @@
+package com.experiments.nes.cpu.singlestep;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// One test case, reused across the cases of a file so parsing allocates only the name
+class SingleStepCase {
+    String name;
+    final MachineState initial = new MachineState();
+    final MachineState expected = new MachineState();
+    int cycleCount;
+    int[] cycleAddresses = new int[16];
+    int[] cycleValues = new int[16];
+    boolean[] cycleWrites = new boolean[16];
+
+    void read(JsonReader json) throws IOException {
+        name = null;
+        cycleCount = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "name" -> name = json.nextString();
+                case "initial" -> initial.read(json);
+                case "final" -> expected.read(json);
+                case "cycles" -> readCycles(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readCycles(JsonReader json) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            if (cycleCount == cycleAddresses.length) {
+                cycleAddresses = Arrays.copyOf(cycleAddresses, cycleCount * 2);
+                cycleValues = Arrays.copyOf(cycleValues, cycleCount * 2);
+                cycleWrites = Arrays.copyOf(cycleWrites, cycleCount * 2);
+            }
+            json.beginArray();
+            cycleAddresses[cycleCount] = json.nextInt();
+            cycleValues[cycleCount] = json.nextInt();
+            cycleWrites[cycleCount] = json.nextString().equals("write");
+            json.endArray();
+            cycleCount++;
+        }
+        json.endArray();
+    }
+
+    static class MachineState {
+        int pc;
+        int s;
+        int a;
+        int x;
+        int y;
+        int p;
+        int ramCount;
+        int[] ramAddresses = new int[16];
+        int[] ramValues = new int[16];
+
+        private void read(JsonReader json) throws IOException {
+            ramCount = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "pc" -> pc = json.nextInt();
+                    case "s" -> s = json.nextInt();
+                    case "a" -> a = json.nextInt();
+                    case "x" -> x = json.nextInt();
+                    case "y" -> y = json.nextInt();
+                    case "p" -> p = json.nextInt();
+                    case "ram" -> readRam(json);
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+
+        private void readRam(JsonReader json) throws IOException {
+            json.beginArray();
+            while (json.hasNext()) {
+                if (ramCount == ramAddresses.length) {
+                    ramAddresses = Arrays.copyOf(ramAddresses, ramCount * 2);
+                    ramValues = Arrays.copyOf(ramValues, ramCount * 2);
+                }
+                json.beginArray();
+                ramAddresses[ramCount] = json.nextInt();
+                ramValues[ramCount] = json.nextInt();
+                json.endArray();
+                ramCount++;
+            }
+            json.endArray();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.experiments.nes.cpu.singlestep;
+
+import com.experiments.nes.cpu.BusRecorder;
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// Runs the per-opcode single-step suites (one file per opcode, e.g. a9.json, each an array of cases with initial
+// state, final state and the expected bus activity per cycle). Files are streamed and processed in parallel.
+public class SingleStepRunner {
+    private static final int MAX_REPORTED_FAILURES = 5;
+    private static final byte NOP = (byte) 0xEA;
+
+    private final int parallelism;
+
+    public SingleStepRunner(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public SingleStepRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public List<OpcodeResult> run(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(SingleStepRunner::isSuiteFile).sorted().toList();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<OpcodeTask> tasks = files.stream().map(OpcodeTask::new).toList();
+            return pool.submit(() -> ForkJoinTask.invokeAll(tasks).stream()
+                            .map(ForkJoinTask::join)
+                            .sorted(Comparator.comparingInt(OpcodeResult::opcode))
+                            .toList())
+                    .join();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public OpcodeResult run(Path file, int opcode) throws IOException {
+        if (!new Cpu(new CaseMemory()).implemented(opcode)) {
+            return new OpcodeResult(opcode, true, 0, 0, List.of());
+        }
+        CaseMemory memory = new CaseMemory();
+        SingleStepCase testCase = new SingleStepCase();
+        List<String> failures = new ArrayList<>();
+        int passed = 0;
+        int failed = 0;
+        try (JsonReader json = new JsonReader(reader(file))) {
+            json.beginArray();
+            while (json.hasNext()) {
+                testCase.read(json);
+                String failure = run(testCase, memory);
+                if (failure == null) {
+                    passed++;
+                }
+                else {
+                    failed++;
+                    if (failures.size() < MAX_REPORTED_FAILURES) {
+                        failures.add(testCase.name + ": " + failure);
+                    }
+                }
+            }
+            json.endArray();
+        }
+        return new OpcodeResult(opcode, false, passed, failed, failures);
+    }
+
+    String run(SingleStepCase testCase, CaseMemory memory) {
+        SingleStepCase.MachineState initial = testCase.initial;
+        for (int i = 0; i < initial.ramCount; i++) {
+            memory.bytes[initial.ramAddresses[i]] = (byte) initial.ramValues[i];
+        }
+        Cpu cpu = new Cpu(memory);
+        cpu.pc(initial.pc);
+        cpu.s(initial.s);
+        cpu.a(initial.a);
+        cpu.x(initial.x);
+        cpu.y(initial.y);
+        cpu.p(initial.p);
+        try {
+            for (int cycle = 0; cycle < testCase.cycleCount; cycle++) {
+                cpu.clock();
+                memory.cycle++;
+            }
+            long instructions = cpu.instructions();
+            // Read instructions finish in the cycle that fetches the next opcode, so clock once more with a NOP on
+            // the bus to let the registers settle
+            memory.settled = true;
+            cpu.clock();
+            if (instructions != 1 || cpu.instructions() != 2) {
+                return String.format("Expected the instruction to take %d cycles", testCase.cycleCount);
+            }
+            return verify(testCase, cpu, memory);
+        }
+        catch (RuntimeException ex) {
+            return ex.toString();
+        }
+        finally {
+            memory.clear(testCase);
+        }
+    }
+
+    private String verify(SingleStepCase testCase, Cpu cpu, CaseMemory memory) {
+        // The settle cycle fetched one extra opcode
+        BusRecorder recorder = memory.recorder;
+        int accesses = recorder.size() - 1;
+        for (int i = 0; i < Math.max(accesses, testCase.cycleCount); i++) {
+            if (i >= accesses || i >= testCase.cycleCount
+                    || recorder.cycle(i) != i
+                    || (recorder.address(i) & 0xFFFF) != testCase.cycleAddresses[i]
+                    || (recorder.value(i) & 0xFF) != testCase.cycleValues[i]
+                    || recorder.isWrite(i) != testCase.cycleWrites[i]) {
+                return String.format("Cycle %d: expected %s but was %s", i,
+                        i < testCase.cycleCount ? describe(testCase.cycleAddresses[i],
+                                testCase.cycleValues[i], testCase.cycleWrites[i]) : "nothing",
+                        i < accesses ? describe(recorder.address(i) & 0xFFFF, recorder.value(i) & 0xFF,
+                                recorder.isWrite(i)) : "nothing");
+            }
+        }
+        SingleStepCase.MachineState expected = testCase.expected;
+        String registers = compare("pc", expected.pc, (cpu.pc() - 1) & 0xFFFF)
+                + compare("s", expected.s, cpu.s() & 0xFF)
+                + compare("a", expected.a, cpu.a() & 0xFF)
+                + compare("x", expected.x, cpu.x() & 0xFF)
+                + compare("y", expected.y, cpu.y() & 0xFF)
+                + compare("p", expected.p, cpu.p() & 0xFF);
+        if (!registers.isEmpty()) {
+            return registers.trim();
+        }
+        for (int i = 0; i < expected.ramCount; i++) {
+            int actual = memory.bytes[expected.ramAddresses[i]] & 0xFF;
+            if (actual != expected.ramValues[i]) {
+                return String.format("RAM %04x: expected %02x but was %02x",
+                        expected.ramAddresses[i], expected.ramValues[i], actual);
+            }
+        }
+        return null;
+    }
+
+    private static String compare(String register, int expected, int actual) {
+        return expected == actual ? "" : String.format(" %s: expected %02x but was %02x", register, expected, actual);
+    }
+
+    private static String describe(int address, int value, boolean write) {
+        return String.format("%s %04x=%02x", write ? "write" : "read", address, value);
+    }
+
+    private static boolean isSuiteFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return (name.endsWith(".json") || name.endsWith(".json.gz")) && opcode(file) >= 0;
+    }
+
+    static int opcode(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return name.length() > 2 && name.charAt(2) == '.' ? Integer.parseInt(name.substring(0, 2), 16) : -1;
+        }
+        catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static BufferedReader reader(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            input = new GZIPInputStream(input, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private class OpcodeTask extends RecursiveTask<OpcodeResult> {
+        private final Path file;
+
+        OpcodeTask(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        protected OpcodeResult compute() {
+            try {
+                return run(file, opcode(file));
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(file.toString(), ex);
+            }
+        }
+    }
+
+    static class CaseMemory implements Memory {
+        final byte[] bytes = new byte[0x10000];
+        final BusRecorder recorder = new BusRecorder();
+        int cycle;
+        boolean settled;
+
+        @Override
+        public byte load(short address) {
+            byte value = settled ? NOP : bytes[address & 0xFFFF];
+            recorder.read(cycle, address, value);
+            return value;
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            recorder.write(cycle, address, value);
+            bytes[address & 0xFFFF] = value;
+        }
+
+        void clear(SingleStepCase testCase) {
+            // Only touched addresses are reset, instead of the whole 64K per case
+            for (int i = 0; i < testCase.initial.ramCount; i++) {
+                bytes[testCase.initial.ramAddresses[i]] = 0;
+            }
+            for (int i = 0; i < recorder.size(); i++) {
+                if (recorder.isWrite(i)) {
+                    bytes[recorder.address(i) & 0xFFFF] = 0;
+                }
+            }
+            recorder.clear();
+            cycle = 0;
+            settled = false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.experiments.nes.cpu.singlestep;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleStepRunnerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPassingAndFailingCases() throws IOException {
+        Files.writeString(directory.resolve("a9.json"), """
+                [
+                  {
+                    "name": "a9 02 ea",
+                    "initial": {"pc": 256, "s": 253, "a": 0, "x": 0, "y": 0, "p": 36, "ram": [[256, 169], [257, 2]]},
+                    "final": {"pc": 258, "s": 253, "a": 2, "x": 0, "y": 0, "p": 36, "ram": [[256, 169], [257, 2]]},
+                    "cycles": [[256, 169, "read"], [257, 2, "read"]]
+                  },
+                  {
+                    "name": "a9 80 ea",
+                    "initial": {"pc": 256, "s": 253, "a": 0, "x": 0, "y": 0, "p": 36, "ram": [[256, 169], [257, 128]]},
+                    "final": {"pc": 258, "s": 253, "a": 128, "x": 0, "y": 0, "p": 36, "ram": []},
+                    "cycles": [[256, 169, "read"], [257, 128, "read"]]
+                  }
+                ]
+                """);
+        Files.writeString(directory.resolve("85.json"), """
+                [{"name": "85 10 ea",
+                  "initial": {"pc": 512, "s": 253, "a": 85, "x": 0, "y": 0, "p": 36, "ram": [[512, 133], [513, 16]]},
+                  "final": {"pc": 514, "s": 253, "a": 85, "x": 0, "y": 0, "p": 36, "ram": [[16, 85]]},
+                  "cycles": [[512, 133, "read"], [513, 16, "read"], [16, 85, "write"]]}]
+                """);
+        Files.writeString(directory.resolve("02.json"), "[]");
+        Files.writeString(directory.resolve("README.md"), "Not a suite file");
+
+        List<OpcodeResult> results = new SingleStepRunner(2).run(directory);
+
+        assertEquals(3, results.size());
+        assertEquals(0x02, results.get(0).opcode());
+        assertTrue(results.get(0).skipped());
+        assertEquals(1, results.get(1).passed(), results.get(1).toString());
+        assertEquals(0, results.get(1).failed(), results.get(1).toString());
+        // The second LDA case forgets the negative flag
+        assertEquals(1, results.get(2).passed());
+        assertEquals(1, results.get(2).failed());
+        assertEquals("a9 80 ea: p: expected 24 but was a4", results.get(2).failures().get(0));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "singlestep.dir", matches = ".+")
+    void testSuite() throws IOException {
+        List<OpcodeResult> results = new SingleStepRunner().run(Path.of(System.getProperty("singlestep.dir")));
+
+        String failures = results.stream()
+                .filter(result -> result.failed() > 0)
+                .map(OpcodeResult::toString)
+                .collect(Collectors.joining("\n"));
+        assertTrue(failures.isEmpty(), failures);
+    }
+}
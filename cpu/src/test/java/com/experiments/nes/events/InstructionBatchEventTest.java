@@ -0,0 +1,56 @@
+package com.experiments.nes.events;
+
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstructionBatchEventTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBatchIsRecorded() throws IOException {
+        byte[] program = new byte[0x10000];
+        // Fill memory with NOPs so every instruction takes two cycles
+        Arrays.fill(program, (byte) 0xEA);
+        Cpu cpu = new Cpu(new Memory() {
+            @Override
+            public byte load(short address) {
+                return program[address & 0xFFFF];
+            }
+
+            @Override
+            public void store(short address, byte value) {
+                program[address & 0xFFFF] = value;
+            }
+        });
+
+        Path file = directory.resolve("batch.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(InstructionBatchEvent.class).withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            cpu.run(1000);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.experiments.nes.InstructionBatch"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(0, events.get(0).getLong("startCycle"));
+        assertEquals(1000, events.get(0).getLong("cycles"));
+        assertEquals(500, events.get(0).getLong("instructions"));
+    }
+}
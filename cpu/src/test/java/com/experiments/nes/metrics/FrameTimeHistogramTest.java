@@ -0,0 +1,58 @@
+package com.experiments.nes.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameTimeHistogramTest {
+    @Test
+    void testSmallValuesAreExact() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        for (int value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(32, histogram.count());
+        assertEquals(15, histogram.percentile(50));
+        assertEquals(31, histogram.percentile(100));
+    }
+
+    @Test
+    void testPercentilesWithinRelativeError() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        for (long millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertWithin(50_000_000, histogram.percentile(50));
+        assertWithin(90_000_000, histogram.percentile(90));
+        assertWithin(99_000_000, histogram.percentile(99));
+        assertWithin(100_000_000, histogram.percentile(100));
+    }
+
+    @Test
+    void testBucketsCoverWholeRange() {
+        assertEquals(Long.MAX_VALUE, FrameTimeHistogram.highestValue(FrameTimeHistogram.bucket(Long.MAX_VALUE)));
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long highest = FrameTimeHistogram.highestValue(FrameTimeHistogram.bucket(value));
+            assertTrue(highest >= value, "Bucket for " + value + " ends at " + highest);
+        }
+    }
+
+    @Test
+    void testReset() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        histogram.record(1_000_000);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+                "Expected about " + expected + " but was " + actual);
+    }
+}
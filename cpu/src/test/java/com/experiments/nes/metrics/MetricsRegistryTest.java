@@ -0,0 +1,138 @@
+package com.experiments.nes.metrics;
+
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsRegistryTest {
+    @Test
+    void testObserveCpu() {
+        MetricsRegistry registry = new MetricsRegistry();
+        InstanceMetrics metrics = registry.instance("console-1");
+        byte[] program = new byte[0x10000];
+        Arrays.fill(program, (byte) 0xEA);
+        CountingMemory memory = new CountingMemory(new FlatMemory(program));
+        Cpu cpu = new Cpu(memory);
+        cpu.pc(0x8000);
+
+        cpu.run(100);
+        metrics.observe(cpu);
+        cpu.run(100);
+        metrics.observe(cpu);
+        memory.flush(metrics);
+
+        assertEquals(200, metrics.getCycles());
+        assertEquals(100, metrics.getInstructions());
+        assertEquals(200, registry.getCycles());
+        assertEquals(200, metrics.getCartridgeAccesses());
+        assertEquals(0, metrics.getRamAccesses());
+    }
+
+    @Test
+    void testRebase() {
+        MetricsRegistry registry = new MetricsRegistry();
+        InstanceMetrics metrics = registry.instance("console-1");
+        byte[] program = new byte[0x10000];
+        Arrays.fill(program, (byte) 0xEA);
+        Cpu cpu = new Cpu(new FlatMemory(program));
+        cpu.pc(0x8000);
+        ByteBuffer snapshot = ByteBuffer.allocate(1024);
+        cpu.save(snapshot);
+
+        cpu.run(100);
+        metrics.observe(cpu);
+        // Rolled back to cycle 0
+        cpu.restore(snapshot.flip());
+        metrics.rebase(cpu);
+        cpu.run(50);
+        metrics.observe(cpu);
+
+        assertEquals(150, metrics.getCycles());
+        assertEquals(75, metrics.getInstructions());
+        assertEquals(150, registry.getCycles());
+    }
+
+    @Test
+    void testRateSharedByReaders() {
+        LongAdder counter = new LongAdder();
+        long[] time = {0};
+        Rate rate = new Rate(counter, () -> time[0]);
+
+        counter.add(500);
+        time[0] = Rate.WINDOW_NANOS / 2;
+        assertEquals(0, rate.perSecond());
+        counter.add(500);
+        time[0] = Rate.WINDOW_NANOS;
+        assertEquals(1000, rate.perSecond());
+        // Another reader in the same window sees the same rate rather than the gap since the last read
+        counter.add(100);
+        time[0] = Rate.WINDOW_NANOS + 1000;
+        assertEquals(1000, rate.perSecond());
+        assertEquals(1000, rate.perSecond());
+        counter.add(1900);
+        time[0] = 2 * Rate.WINDOW_NANOS;
+        assertEquals(2000, rate.perSecond());
+    }
+
+    @Test
+    void testConcurrentInstances() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        IntStream.range(0, 64).parallel().forEach(instance -> {
+            InstanceMetrics metrics = registry.instance("console-" + (instance % 8));
+            for (int frame = 0; frame < 1000; frame++) {
+                metrics.recordExecution(29781, 10000);
+                metrics.recordFrame(1_000_000);
+            }
+        });
+
+        assertEquals(8, registry.getInstances());
+        assertEquals(64L * 1000 * 29781, registry.getCycles());
+        assertEquals(8000, registry.instance("console-3").getFrames());
+    }
+
+    @Test
+    void testExportToJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.instance("before").recordExecution(10, 5);
+
+        registry.exportTo(server);
+        registry.instance("after").recordExecution(20, 7);
+
+        ObjectName before = new ObjectName("com.experiments.nes:type=Instance,name=\"before\"");
+        ObjectName after = new ObjectName("com.experiments.nes:type=Instance,name=\"after\"");
+        assertEquals(10L, server.getAttribute(before, "Cycles"));
+        assertEquals(7L, server.getAttribute(after, "Instructions"));
+        assertEquals(30L, server.getAttribute(new ObjectName("com.experiments.nes:type=Registry"), "Cycles"));
+
+        registry.remove("before");
+        assertFalse(server.isRegistered(before));
+        registry.unexport();
+        assertTrue(server.queryNames(new ObjectName("com.experiments.nes:*"), null).isEmpty());
+    }
+
+    private record FlatMemory(byte[] bytes) implements Memory {
+        @Override
+        public byte load(short address) {
+            return bytes[address & 0xFFFF];
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            bytes[address & 0xFFFF] = value;
+        }
+    }
+}
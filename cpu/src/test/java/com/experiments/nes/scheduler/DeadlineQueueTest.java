@@ -0,0 +1,57 @@
+package com.experiments.nes.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeadlineQueueTest {
+    @Test
+    void testEmpty() {
+        assertEquals(Long.MAX_VALUE, new DeadlineQueue().firstDeadline());
+    }
+
+    @Test
+    void testOrder() {
+        DeadlineQueue queue = new DeadlineQueue();
+        queue.add(0, 300);
+        queue.add(1, 100);
+        queue.add(2, 200);
+
+        assertEquals(1, queue.first());
+        assertEquals(100, queue.firstDeadline());
+
+        queue.update(1, 400);
+        assertEquals(2, queue.first());
+        queue.update(0, 50);
+        assertEquals(0, queue.first());
+        queue.update(0, Long.MAX_VALUE);
+        queue.update(2, Long.MAX_VALUE);
+        assertEquals(1, queue.first());
+        assertEquals(400, queue.firstDeadline());
+    }
+
+    @Test
+    void testRandomUpdates() {
+        DeadlineQueue queue = new DeadlineQueue();
+        long[] deadlines = new long[10];
+        Random random = new Random(1);
+        for (int id = 0; id < deadlines.length; id++) {
+            deadlines[id] = random.nextInt(1000);
+            queue.add(id, deadlines[id]);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int id = random.nextInt(deadlines.length);
+            deadlines[id] = random.nextInt(1000);
+            queue.update(id, deadlines[id]);
+
+            long min = Long.MAX_VALUE;
+            for (long deadline : deadlines) {
+                min = Math.min(min, deadline);
+            }
+            assertEquals(min, queue.firstDeadline());
+            assertEquals(min, deadlines[queue.first()]);
+        }
+    }
+}
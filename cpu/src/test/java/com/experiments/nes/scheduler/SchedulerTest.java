@@ -0,0 +1,137 @@
+package com.experiments.nes.scheduler;
+
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchedulerTest {
+    private final byte[] memory = new byte[0x10000];
+    private Cpu cpu;
+    private Scheduler scheduler;
+    private Ticker ticker;
+    private int tickerId;
+
+    @BeforeEach
+    void setup() {
+        // NOPs everywhere, except registers of the ticker at $4000
+        Arrays.fill(memory, (byte) 0xEA);
+        scheduler = new Scheduler(() -> cpu.cycles());
+        ticker = new Ticker(100);
+        tickerId = scheduler.add(ticker);
+        Memory registers = scheduler.registers(tickerId, ticker);
+        cpu = new Cpu(new Memory() {
+            @Override
+            public byte load(short address) {
+                return (address & 0xFFFF) == 0x4000 ? registers.load(address) : memory[address & 0xFFFF];
+            }
+
+            @Override
+            public void store(short address, byte value) {
+                if ((address & 0xFFFF) == 0x4000) {
+                    registers.store(address, value);
+                }
+                else {
+                    memory[address & 0xFFFF] = value;
+                }
+            }
+        });
+    }
+
+    @Test
+    void testDeadlines() {
+        scheduler.run(cpu, 350);
+
+        assertEquals(350, cpu.cycles());
+        // NOPs take 2 cycles, so the CPU stops on the first cycle at or after each deadline
+        assertEquals(List.of(100L, 200L, 300L), ticker.syncs);
+        assertEquals(400, scheduler.deadline());
+    }
+
+    @Test
+    void testRegisterAccessSyncs() {
+        // LDA $4000 at $0000
+        memory[0x0000] = (byte) 0xAD;
+        memory[0x0001] = 0x00;
+        memory[0x0002] = 0x40;
+
+        // Four NOPs from $FFFC take 8 cycles, then the load of $4000 is the fourth cycle of LDA
+        scheduler.run(cpu, 50);
+
+        assertEquals(List.of(12L), ticker.syncs);
+    }
+
+    @Test
+    void testRegisterWriteReschedules() {
+        // STA $4000 at $0000 sets the ticker period to 0 (stopped)
+        memory[0x0000] = (byte) 0x8D;
+        memory[0x0001] = 0x00;
+        memory[0x0002] = 0x40;
+
+        scheduler.run(cpu, 1000);
+
+        assertEquals(List.of(12L), ticker.syncs);
+        assertEquals(Long.MAX_VALUE, scheduler.deadline());
+    }
+
+    @Test
+    void testRegisterWriteBringsDeadlineForward() {
+        // LDA #$14, STA $4000 at $0000 shortens the ticker period from 100 to 20 cycles
+        memory[0x0000] = (byte) 0xA9;
+        memory[0x0001] = 0x14;
+        memory[0x0002] = (byte) 0x8D;
+        memory[0x0003] = 0x00;
+        memory[0x0004] = 0x40;
+
+        // The store is the last cycle of STA, after 8 cycles of NOPs and 2 of LDA
+        scheduler.run(cpu, 90);
+
+        assertEquals(List.of(14L, 20L, 40L, 60L, 80L), ticker.syncs);
+    }
+
+    @Test
+    void testSyncAll() {
+        scheduler.run(cpu, 50);
+        scheduler.syncAll();
+
+        assertEquals(List.of(50L), ticker.syncs);
+    }
+
+    // Asks to run every period cycles, with its period as its only register
+    static class Ticker implements Device, Memory {
+        final List<Long> syncs = new ArrayList<>();
+        private long cycle;
+        private int period;
+
+        Ticker(int period) {
+            this.period = period;
+        }
+
+        @Override
+        public void sync(long cycle) {
+            this.cycle = cycle;
+            syncs.add(cycle);
+        }
+
+        @Override
+        public long deadline() {
+            return period == 0 ? Long.MAX_VALUE : (cycle / period + 1) * period;
+        }
+
+        @Override
+        public byte load(short address) {
+            return (byte) period;
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            period = value;
+        }
+    }
+}
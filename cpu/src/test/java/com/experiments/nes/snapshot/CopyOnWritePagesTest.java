@@ -0,0 +1,96 @@
+package com.experiments.nes.snapshot;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CopyOnWritePagesTest {
+    @Test
+    void testFork() {
+        CopyOnWritePages memory = new CopyOnWritePages(0x800, 8);
+        memory.set(0x10, (byte) 1);
+        memory.set(0x310, (byte) 3);
+
+        CopyOnWritePages fork = memory.fork();
+        assertEquals(8, memory.shared());
+        assertEquals(8, fork.shared());
+        assertSame(memory.page(3), fork.page(3));
+
+        fork.set(0x310, (byte) 4);
+        memory.set(0x10, (byte) 2);
+
+        assertEquals(2, memory.get(0x10));
+        assertEquals(3, memory.get(0x310));
+        assertEquals(1, fork.get(0x10));
+        assertEquals(4, fork.get(0x310));
+        // Each took a copy of the one page it wrote
+        assertEquals(7, memory.shared());
+        assertEquals(7, fork.shared());
+        assertSame(memory.page(5), fork.page(5));
+    }
+
+    @Test
+    void testShare() {
+        CopyOnWritePages memory = new CopyOnWritePages(0x1000, 10);
+        memory.set(0x800, (byte) 9);
+        CopyOnWritePages other = new CopyOnWritePages(0x1000, 10);
+        other.written().clear();
+
+        other.share(memory);
+
+        assertEquals(9, other.get(0x800));
+        assertEquals(other.written().pages(), other.written().count());
+        assertThrows(IllegalStateException.class, () -> other.share(new CopyOnWritePages(0x800, 10)));
+    }
+
+    @Test
+    void testSaveAndRestore() {
+        CopyOnWritePages memory = new CopyOnWritePages(0x800, 8);
+        for (int i = 0; i < memory.size(); i++) {
+            memory.set(i, (byte) i);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(0x804);
+        Snapshot.put(buffer, memory, null);
+        CopyOnWritePages fork = memory.fork();
+
+        memory.set(0, (byte) 0x55);
+        fork.set(1, (byte) 0x66);
+        // Restoring into shared pages leaves the other side alone, and pages the snapshot matches stay shared
+        Snapshot.get(buffer.flip(), fork);
+
+        assertEquals(0x55, memory.get(0));
+        assertEquals(0, fork.get(0));
+        assertEquals(1, fork.get(1));
+        assertEquals(7, fork.shared());
+        assertSame(memory.page(1), fork.page(1));
+        byte[] contents = memory.toArray();
+        contents[0] = 0;
+        assertArrayEquals(contents, fork.toArray());
+    }
+
+    @Test
+    void testRestoreMarksChanges() {
+        CopyOnWritePages memory = new CopyOnWritePages(0x800, 8);
+        memory.set(0x100, (byte) 1);
+        ByteBuffer buffer = ByteBuffer.allocate(0x804);
+        Snapshot.put(buffer, memory, null);
+        memory.set(0x100, (byte) 2);
+        memory.set(0x500, (byte) 3);
+        memory.written().clear();
+
+        Snapshot.get(buffer.flip(), memory);
+
+        assertEquals(1, memory.get(0x100));
+        assertEquals(0, memory.get(0x500));
+        // Only the two 64 byte chunks the snapshot changed need saving again
+        assertEquals(2, memory.written().count());
+        assertTrue(memory.written().dirty(0x100 >> 6));
+        assertTrue(memory.written().dirty(0x500 >> 6));
+    }
+}
@@ -0,0 +1,86 @@
+package com.experiments.nes.snapshot;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirtyPagesTest {
+    @Test
+    void testMarkAndNext() {
+        // 130 pages, spanning three words of bits
+        DirtyPages pages = new DirtyPages(130 * 64 - 10, 6);
+        assertEquals(130, pages.pages());
+        assertEquals(130, pages.count());
+
+        pages.clear();
+        pages.mark(64);
+        pages.mark(127 * 64, 200);
+
+        assertEquals(5, pages.count());
+        assertEquals(1, pages.next(0));
+        assertEquals(127, pages.next(2));
+        assertEquals(129, pages.next(129));
+        assertEquals(-1, pages.next(130));
+        assertTrue(pages.dirty(128));
+        assertFalse(pages.dirty(0));
+    }
+
+    @Test
+    void testClearRange() {
+        DirtyPages pages = new DirtyPages(1000, 6);
+
+        // Only pages wholly inside are cleared, except the last page of the region which may be short
+        pages.clear(32, 200);
+        assertTrue(pages.dirty(0));
+        assertFalse(pages.dirty(1));
+        assertFalse(pages.dirty(2));
+        assertTrue(pages.dirty(3));
+        pages.clear(960, 40);
+        assertFalse(pages.dirty(15));
+    }
+
+    @Test
+    void testIncrementalSave() {
+        byte[] values = new byte[300];
+        DirtyPages written = new DirtyPages(values.length, 6);
+        ByteBuffer image = ByteBuffer.allocate(310);
+        DirtyPages changed = new DirtyPages(310, 6);
+        image.put((byte) 1);
+        Snapshot.put(image, values, written, changed);
+        assertEquals(305, image.position());
+        assertEquals(0, written.count());
+
+        values[100] = 7;
+        written.mark(100);
+        values[200] = 9;
+        changed.markAll();
+        image.position(1);
+        Snapshot.put(image, values, written, changed);
+
+        // Page 1 of the values is copied, the write to page 3 went unmarked
+        image.position(5);
+        byte[] saved = new byte[values.length];
+        image.get(saved);
+        assertEquals(7, saved[100]);
+        assertEquals(0, saved[200]);
+        // The copied page lands at 69 to 132 of the image. Pages 0 and 4 hold other data too, so stay marked.
+        assertTrue(changed.dirty(0));
+        assertTrue(changed.dirty(1));
+        assertTrue(changed.dirty(2));
+        assertFalse(changed.dirty(3));
+        assertTrue(changed.dirty(4));
+
+        // A full save copies everything and leaves the tracking alone
+        written.mark(200);
+        ByteBuffer full = ByteBuffer.allocate(304);
+        Snapshot.put(full, values, written, null);
+        assertArrayEquals(values, Arrays.copyOfRange(full.array(), 4, 304));
+        assertTrue(written.dirty(3));
+    }
+}
@@ -0,0 +1,143 @@
+package com.experiments.nes.snapshot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RewindBufferTest {
+    private static final int SIZE = 4096;
+    // The memory and its length
+    private static final int SNAPSHOT_SIZE = SIZE + 4;
+
+    static class Machine implements Snapshottable {
+        final byte[] memory = new byte[SIZE];
+        final DirtyPages written = new DirtyPages(SIZE, 6);
+
+        void write(int offset, byte value) {
+            memory[offset] = value;
+            written.mark(offset);
+        }
+
+        @Override
+        public void save(ByteBuffer buffer) {
+            Snapshot.put(buffer, memory);
+        }
+
+        @Override
+        public void saveChanges(ByteBuffer buffer, DirtyPages changed) {
+            Snapshot.put(buffer, memory, written, changed);
+        }
+
+        @Override
+        public void restore(ByteBuffer buffer) {
+            Snapshot.get(buffer, memory, written);
+        }
+    }
+
+    private final Random random = new Random(1);
+    private final List<byte[]> history = new ArrayList<>();
+    private Machine machine;
+
+    @BeforeEach
+    void setup() {
+        machine = new Machine();
+        random.nextBytes(machine.memory);
+    }
+
+    @Test
+    void testRestoreAnyFrame() {
+        RewindBuffer rewind = new RewindBuffer(machine, SNAPSHOT_SIZE, 1 << 20, 10);
+        run(rewind, 100);
+
+        assertEquals(100, rewind.size());
+        for (int frame : new int[] {0, 9, 10, 11, 55, 99}) {
+            rewind.restore(frame);
+            assertArrayEquals(history.get(frame), machine.memory, "Frame " + frame);
+        }
+        // A keyframe every 10 frames, the deltas a few bytes each
+        assertTrue(rewind.compression() > 5, "Compression " + rewind.compression());
+    }
+
+    @Test
+    void testEviction() {
+        RewindBuffer rewind = new RewindBuffer(machine, SNAPSHOT_SIZE, 3 * SIZE, 10);
+        run(rewind, 100);
+
+        assertEquals(99, rewind.newest());
+        assertTrue(rewind.oldest() > 0);
+        // Whole groups are dropped, so the oldest frame is always a keyframe
+        assertEquals(0, rewind.oldest() % 10);
+        assertTrue(rewind.bytesUsed() <= rewind.capacity());
+        assertFalse(rewind.contains(0));
+        assertThrows(IllegalStateException.class, () -> rewind.restore(0));
+        for (long frame = rewind.oldest(); frame <= rewind.newest(); frame++) {
+            rewind.restore(frame);
+            assertArrayEquals(history.get((int) frame), machine.memory, "Frame " + frame);
+        }
+    }
+
+    @Test
+    void testCaptureAfterRestoreDropsNewerFrames() {
+        RewindBuffer rewind = new RewindBuffer(machine, SNAPSHOT_SIZE, 1 << 20, 10);
+        run(rewind, 30);
+
+        assertEquals(25, rewind.rewind(4));
+        history.subList(26, history.size()).clear();
+        run(rewind, 10);
+
+        assertEquals(35, rewind.newest());
+        assertEquals(36, rewind.size());
+        for (int frame : new int[] {20, 25, 26, 35}) {
+            rewind.restore(frame);
+            assertArrayEquals(history.get(frame), machine.memory, "Frame " + frame);
+        }
+    }
+
+    @Test
+    void testCapturesOnlyWrittenPages() {
+        RewindBuffer rewind = new RewindBuffer(machine, SNAPSHOT_SIZE, 1 << 20, 10);
+        byte[] memory = machine.memory.clone();
+        rewind.capture(0);
+
+        // Written behind the machine's back, so not captured
+        machine.memory[100]++;
+        machine.write(2000, (byte) (memory[2000] + 1));
+        rewind.capture(1);
+        machine.write(3000, (byte) (memory[3000] + 1));
+        rewind.restore(1);
+
+        memory[2000]++;
+        assertArrayEquals(memory, machine.memory);
+        // Restoring replaces all of memory, so the next capture copies all of it
+        assertEquals(machine.written.pages(), machine.written.count());
+    }
+
+    @Test
+    void testTooSmall() {
+        RewindBuffer rewind = new RewindBuffer(machine, SNAPSHOT_SIZE, SIZE / 2, 10);
+
+        assertThrows(IllegalStateException.class, () -> rewind.capture(0));
+    }
+
+    // Captures frames, changing a few bytes between them as a game would
+    private void run(RewindBuffer rewind, int frames) {
+        for (int i = 0; i < frames; i++) {
+            long frame = history.size();
+            rewind.capture(frame);
+            history.add(machine.memory.clone());
+            for (int change = 0; change < 20; change++) {
+                machine.write(random.nextInt(SIZE), (byte) random.nextInt());
+            }
+        }
+    }
+}
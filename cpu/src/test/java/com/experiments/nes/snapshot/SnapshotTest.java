@@ -0,0 +1,102 @@
+package com.experiments.nes.snapshot;
+
+import com.experiments.nes.cpu.Cpu;
+import com.experiments.nes.cpu.Memory;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotTest {
+    // Counts in $10 and pushes to the stack through a subroutine
+    private static final int[] PROGRAM = {
+            0xE6, 0x10,       // $0200 INC $10
+            0x20, 0x08, 0x02, // $0202 JSR $0208
+            0x4C, 0x00, 0x02, // $0205 JMP $0200
+            0xB1, 0x20,       // $0208 LDA ($20),Y
+            0xC8,             // $020A INY
+            0x91, 0x22,       // $020B STA ($22),Y
+            0x60,             // $020D RTS
+    };
+
+    record ArrayMemory(byte[] bytes) implements Memory {
+        @Override
+        public byte load(short address) {
+            return bytes[address & 0xFFFF];
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            bytes[address & 0xFFFF] = value;
+        }
+    }
+
+    @Test
+    void testCpuMidInstruction() {
+        ArrayMemory memory = new ArrayMemory(new byte[0x10000]);
+        for (int i = 0; i < PROGRAM.length; i++) {
+            memory.bytes()[0x0200 + i] = (byte) PROGRAM[i];
+        }
+        memory.bytes()[0x21] = 0x03;
+        memory.bytes()[0x23] = 0x04;
+        Cpu cpu = new Cpu(memory);
+        cpu.pc(0x0200);
+        // Stops inside the indirect load
+        cpu.run(13);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Snapshot.writeHeader(buffer);
+        cpu.save(buffer);
+        byte[] saved = memory.bytes().clone();
+        cpu.run(1000);
+
+        ArrayMemory copy = new ArrayMemory(saved);
+        Cpu restored = new Cpu(copy);
+        buffer.flip();
+        Snapshot.readHeader(buffer);
+        restored.restore(buffer);
+        restored.run(1000);
+
+        assertEquals(buffer.limit(), buffer.position());
+        assertEquals(cpu.cycles(), restored.cycles());
+        assertEquals(cpu.instructions(), restored.instructions());
+        assertEquals(cpu.pc(), restored.pc());
+        assertEquals(cpu.a(), restored.a());
+        assertEquals(cpu.y(), restored.y());
+        assertEquals(cpu.s(), restored.s());
+        assertEquals(cpu.p(), restored.p());
+        assertArrayEquals(memory.bytes(), copy.bytes());
+    }
+
+    @Test
+    void testHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(Snapshot.MAGIC).putInt(Snapshot.VERSION + 1).flip();
+        assertThrows(IllegalStateException.class, () -> Snapshot.readHeader(buffer));
+
+        buffer.clear();
+        buffer.putInt(0).putInt(Snapshot.VERSION).flip();
+        assertThrows(IllegalStateException.class, () -> Snapshot.readHeader(buffer));
+    }
+
+    @Test
+    void testArrays() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Snapshot.put(buffer, new byte[] {1, 2, 3});
+        Snapshot.put(buffer, new int[] {-1, 70000});
+        buffer.flip();
+
+        byte[] bytes = new byte[3];
+        int[] ints = new int[2];
+        Snapshot.get(buffer, bytes);
+        Snapshot.get(buffer, ints);
+
+        assertArrayEquals(new byte[] {1, 2, 3}, bytes);
+        assertArrayEquals(new int[] {-1, 70000}, ints);
+        buffer.rewind();
+        assertThrows(IllegalStateException.class, () -> Snapshot.get(buffer, new byte[4]));
+    }
+}
@@ -0,0 +1,110 @@
+package com.experiments.nes.farm;
+
+import com.experiments.nes.metrics.MetricsRegistry;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+// Runs many independent instances on a bounded pool of carrier threads. Each instance runs a slice of frames at a
+// time and then goes to the back of a shared first in first out submission queue that every carrier takes from, so
+// thousands of instances share the carriers fairly however long each runs. Loading and finishing, which may block, run
+// on virtual threads instead.
+public class Farm implements AutoCloseable {
+    private final int parallelism;
+    private final int sliceFrames;
+    private final MetricsRegistry metrics;
+    private final ForkJoinPool compute;
+    private final ExecutorService io;
+    private final Set<Instance<?>> active = ConcurrentHashMap.newKeySet();
+    // Names of the active instances, which their metrics are registered under
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+    public Farm(int parallelism, int sliceFrames, MetricsRegistry metrics) {
+        if (parallelism < 1) {
+            throw new IllegalStateException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (sliceFrames < 1) {
+            throw new IllegalStateException("Slices must be at least 1 frame: " + sliceFrames);
+        }
+        this.parallelism = parallelism;
+        this.sliceFrames = sliceFrames;
+        this.metrics = metrics;
+        // Async mode takes queued slices first in first out, so instances are served round robin
+        this.compute = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.io = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    public Farm(int parallelism, int sliceFrames) {
+        this(parallelism, sliceFrames, new MetricsRegistry());
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int sliceFrames() {
+        return sliceFrames;
+    }
+
+    public MetricsRegistry metrics() {
+        return metrics;
+    }
+
+    // Instances loading, running or finishing
+    public int active() {
+        return active.size();
+    }
+
+    public <R> Instance<R> submit(Job<R> job) {
+        if (compute.isShutdown()) {
+            throw new IllegalStateException("Farm is closed");
+        }
+        if (!names.add(job.name())) {
+            throw new IllegalStateException("An instance named " + job.name() + " is already active");
+        }
+        Instance<R> instance = new Instance<>(this, job);
+        active.add(instance);
+        instance.result().whenComplete((result, failure) -> {
+            // The name is freed only after its metrics are gone, so that a new instance cannot share them
+            metrics.remove(job.name());
+            names.remove(job.name());
+            active.remove(instance);
+        });
+        io.execute(instance::load);
+        return instance;
+    }
+
+    // Slices always go through the pool's shared queues. Forked from a carrier they would go on its own queue, which
+    // it drains before looking elsewhere, and the instances it had would starve the rest.
+    void schedule(Runnable slice) {
+        compute.externalSubmit(ForkJoinTask.adapt(slice));
+    }
+
+    void io(Runnable task) {
+        io.execute(task);
+    }
+
+    // Waits for every submitted instance to complete, then stops the pools
+    @Override
+    public void close() {
+        while (!active.isEmpty()) {
+            for (Instance<?> instance : active) {
+                instance.result().exceptionally(failure -> null).join();
+            }
+        }
+        compute.shutdown();
+        io.shutdown();
+        try {
+            compute.awaitTermination(1, TimeUnit.MINUTES);
+            io.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
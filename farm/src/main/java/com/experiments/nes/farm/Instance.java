@@ -0,0 +1,140 @@
+package com.experiments.nes.farm;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.metrics.InstanceMetrics;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+// A job's progress on a farm. Only one slice of an instance runs at a time, each picking up where the last left off.
+public class Instance<R> {
+    public enum State { Loading, Running, Finishing, Done, Failed, Cancelled }
+
+    private final Farm farm;
+    private final Job<R> job;
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+    private final InstanceMetrics metrics;
+    private volatile State state = State.Loading;
+    private volatile boolean cancelled;
+    private Console console;
+
+    // Written by the slice running the instance, read from anywhere
+    private volatile long frames;
+    private volatile long slices;
+    private volatile long runNanos;
+    private volatile long waitNanos;
+    private long queued;
+
+    Instance(Farm farm, Job<R> job) {
+        this.farm = farm;
+        this.job = job;
+        this.metrics = farm.metrics().instance(job.name());
+    }
+
+    public String name() {
+        return job.name();
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public CompletableFuture<R> result() {
+        return result;
+    }
+
+    // Emulation metrics, which stay readable after the instance leaves the farm's registry
+    public InstanceMetrics metrics() {
+        return metrics;
+    }
+
+    public long frames() {
+        return frames;
+    }
+
+    public long slices() {
+        return slices;
+    }
+
+    // Time spent running slices, and waiting in the queue for a carrier between them
+    public long runNanos() {
+        return runNanos;
+    }
+
+    public long waitNanos() {
+        return waitNanos;
+    }
+
+    // Frames per second of carrier time
+    public double framesPerSecond() {
+        long nanos = runNanos;
+        return nanos == 0 ? 0 : frames * 1e9 / nanos;
+    }
+
+    // Stops the instance at its next slice without finishing it
+    public void cancel() {
+        cancelled = true;
+    }
+
+    void load() {
+        try {
+            console = job.load();
+            console.metrics(metrics);
+            state = State.Running;
+            queued = System.nanoTime();
+            farm.schedule(this::slice);
+        }
+        catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void slice() {
+        try {
+            long start = System.nanoTime();
+            waitNanos += start - queued;
+            if (cancelled) {
+                state = State.Cancelled;
+                result.completeExceptionally(new CancellationException(job.name() + " was cancelled"));
+                return;
+            }
+            boolean done;
+            int frame = 0;
+            while (!(done = job.done(console)) && frame < farm.sliceFrames()) {
+                console.runFrame();
+                frame++;
+            }
+            long end = System.nanoTime();
+            frames += frame;
+            slices++;
+            runNanos += end - start;
+            if (done) {
+                state = State.Finishing;
+                farm.io(this::finish);
+            }
+            else {
+                queued = end;
+                farm.schedule(this::slice);
+            }
+        }
+        catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void finish() {
+        try {
+            R value = job.finish(console);
+            state = State.Done;
+            result.complete(value);
+        }
+        catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Throwable e) {
+        state = State.Failed;
+        result.completeExceptionally(e);
+    }
+}
@@ -0,0 +1,17 @@
+package com.experiments.nes.farm;
+
+import com.experiments.nes.console.Console;
+
+// One instance's work on a farm. Loading and finishing run on virtual threads so they may block on files or the
+// network, while the frames in between run in slices on the farm's carrier pool.
+public interface Job<R> {
+    // Names the instance's metrics, so should be unique among the farm's running instances
+    String name();
+
+    Console load() throws Exception;
+
+    // Checked before every frame
+    boolean done(Console console);
+
+    R finish(Console console) throws Exception;
+}
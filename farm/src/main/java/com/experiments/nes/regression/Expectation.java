@@ -0,0 +1,84 @@
+package com.experiments.nes.regression;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Properties;
+
+// What a test ROM must do within a number of frames, read from the properties file beside it:
+//   frames           frames to run at most
+//   result.address   hex address of a result byte in RAM or cartridge RAM, with
+//   result.value     the hex value it must hold, and optionally
+//   result.running   the value the ROM writes while running, ending the test once it has been written over
+//   hash             or the hex hash the last frame must have
+//   golden           and or instead, frames whose hashes must match the golden store's for the ROM
+public record Expectation(int frames, OptionalInt resultAddress, OptionalInt resultValue, OptionalInt running,
+                          OptionalLong hash, List<Integer> golden) {
+    public static Expectation load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        return parse(properties, path.getFileName().toString());
+    }
+
+    public static Expectation parse(Properties properties, String name) {
+        String frames = properties.getProperty("frames");
+        if (frames == null) {
+            throw new IllegalStateException(name + " does not give the frames to run");
+        }
+        Expectation expectation = new Expectation(Integer.parseInt(frames.trim()),
+                hex(properties, "result.address"), hex(properties, "result.value"),
+                hex(properties, "result.running"),
+                properties.containsKey("hash")
+                        ? OptionalLong.of(Long.parseUnsignedLong(properties.getProperty("hash").trim(), 16))
+                        : OptionalLong.empty(),
+                golden(properties.getProperty("golden", "")));
+        if (expectation.resultAddress.isPresent() != expectation.resultValue.isPresent()) {
+            throw new IllegalStateException(name + " needs both result.address and result.value");
+        }
+        int address = expectation.resultAddress.orElse(0);
+        if (address >= 0x0800 && (address < 0x6000 || address > 0x7FFF)) {
+            throw new IllegalStateException(String.format("%s reads its result from %04x, which is neither RAM nor"
+                    + " cartridge RAM", name, address));
+        }
+        if (expectation.resultAddress.isEmpty() && expectation.hash.isEmpty() && expectation.golden.isEmpty()) {
+            throw new IllegalStateException(name + " expects neither a result byte nor frame hashes");
+        }
+        if (expectation.frames < 1) {
+            throw new IllegalStateException(name + " must run at least 1 frame: " + expectation.frames);
+        }
+        for (int frame : expectation.golden) {
+            if (frame < 1 || frame > expectation.frames) {
+                throw new IllegalStateException(String.format("%s checks frame %d outside frames 1 to %d", name,
+                        frame, expectation.frames));
+            }
+        }
+        return expectation;
+    }
+
+    // Whether frames are hashed as they are produced
+    public boolean hashing() {
+        return hash.isPresent() || !golden.isEmpty();
+    }
+
+    private static List<Integer> golden(String frames) {
+        return Arrays.stream(frames.split(","))
+                .map(String::trim)
+                .filter(frame -> !frame.isEmpty())
+                .map(Integer::parseInt)
+                .sorted()
+                .distinct()
+                .toList();
+    }
+
+    private static OptionalInt hex(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null ? OptionalInt.empty() : OptionalInt.of(Integer.parseInt(value.trim(), 16));
+    }
+}
@@ -0,0 +1,91 @@
+package com.experiments.nes.regression;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Known good frame hashes keyed by ROM hash and frame number, so a regression shows up as a changed hash without an
+// image ever being drawn or written. Each ROM has a text file named after its hash with a line per frame, the frame
+// number and its hash in hex, which keeps changes readable in version control.
+public class GoldenStore {
+    private static final String EXTENSION = ".golden";
+
+    private final Path directory;
+    private final Map<Long, TreeMap<Long, Long>> roms = new HashMap<>();
+    private final Set<Long> changed = new HashSet<>();
+
+    public GoldenStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public synchronized OptionalLong get(long rom, long frame) throws IOException {
+        Long hash = frames(rom).get(frame);
+        return hash == null ? OptionalLong.empty() : OptionalLong.of(hash);
+    }
+
+    public synchronized void put(long rom, long frame, long hash) throws IOException {
+        Long previous = frames(rom).put(frame, hash);
+        if (previous == null || previous != hash) {
+            changed.add(rom);
+        }
+    }
+
+    // Writes the files of ROMs with new or changed hashes
+    public synchronized void save() throws IOException {
+        Files.createDirectories(directory);
+        for (long rom : changed) {
+            try (BufferedWriter writer = Files.newBufferedWriter(path(rom))) {
+                for (Map.Entry<Long, Long> entry : roms.get(rom).entrySet()) {
+                    writer.write(String.format("%d %016x%n", entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        changed.clear();
+    }
+
+    private TreeMap<Long, Long> frames(long rom) throws IOException {
+        TreeMap<Long, Long> frames = roms.get(rom);
+        if (frames == null) {
+            frames = load(path(rom));
+            roms.put(rom, frames);
+        }
+        return frames;
+    }
+
+    private static TreeMap<Long, Long> load(Path path) throws IOException {
+        TreeMap<Long, Long> frames = new TreeMap<>();
+        if (!Files.exists(path)) {
+            return frames;
+        }
+        List<String> lines = Files.readAllLines(path);
+        for (int number = 0; number < lines.size(); number++) {
+            String line = lines.get(number).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw new IllegalStateException(String.format("%s line %d is not a frame and a hash: %s",
+                        path.getFileName(), number + 1, line));
+            }
+            frames.put(Long.parseLong(fields[0]), Long.parseUnsignedLong(fields[1], 16));
+        }
+        return frames;
+    }
+
+    private Path path(long rom) {
+        return directory.resolve(String.format("%016x%s", rom, EXTENSION));
+    }
+}
@@ -0,0 +1,76 @@
+package com.experiments.nes.regression;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+// Writes outcomes as a single JUnit XML test suite, the format CI servers read test results from
+public class JUnitReport {
+    private JUnitReport() {
+    }
+
+    public static void write(String suite, List<Outcome> outcomes, Path path) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            write(suite, outcomes, output);
+        }
+    }
+
+    public static void write(String suite, List<Outcome> outcomes, OutputStream output) throws IOException {
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(output, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("name", suite);
+            xml.writeAttribute("tests", Integer.toString(outcomes.size()));
+            xml.writeAttribute("failures", Long.toString(count(outcomes, Outcome.Status.Failed)));
+            xml.writeAttribute("errors", Long.toString(count(outcomes, Outcome.Status.Error)));
+            xml.writeAttribute("skipped", Long.toString(count(outcomes, Outcome.Status.Skipped)));
+            xml.writeAttribute("time", seconds(outcomes.stream().mapToLong(Outcome::nanos).sum()));
+            for (Outcome outcome : outcomes) {
+                xml.writeCharacters("\n  ");
+                xml.writeStartElement("testcase");
+                xml.writeAttribute("classname", suite);
+                xml.writeAttribute("name", outcome.name());
+                xml.writeAttribute("time", seconds(outcome.nanos()));
+                switch (outcome.status()) {
+                    case Passed -> {
+                    }
+                    case Failed -> element(xml, "failure", outcome.message());
+                    case Error -> element(xml, "error", outcome.message());
+                    case Skipped -> element(xml, "skipped", outcome.message());
+                }
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void element(XMLStreamWriter xml, String name, String message) throws XMLStreamException {
+        xml.writeEmptyElement(name);
+        if (message != null) {
+            xml.writeAttribute("message", message);
+        }
+    }
+
+    private static long count(List<Outcome> outcomes, Outcome.Status status) {
+        return outcomes.stream().filter(outcome -> outcome.status() == status).count();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,9 @@
+package com.experiments.nes.regression;
+
+public record Outcome(String name, Status status, String message, long frames, long nanos) {
+    public enum Status { Passed, Failed, Error, Skipped }
+
+    public boolean passed() {
+        return status == Status.Passed;
+    }
+}
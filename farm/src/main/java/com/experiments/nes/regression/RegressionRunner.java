@@ -0,0 +1,159 @@
+package com.experiments.nes.regression;
+
+import com.experiments.nes.farm.Farm;
+import com.experiments.nes.farm.Instance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+// Runs every .nes file in a directory against the expectations in the .properties file of the same name, each on a
+// console of its own, spread over all cores. Outcomes are listed by name, so the report is the same however the runs
+// were scheduled. Frames checked against golden hashes read them from the store, and when recording, frames without a
+// golden hash add theirs to it.
+public class RegressionRunner {
+    private static final int SLICE_FRAMES = 60;
+
+    private final int parallelism;
+    private final GoldenStore golden;
+    private final boolean record;
+
+    public RegressionRunner(int parallelism, GoldenStore golden, boolean record) {
+        this.parallelism = parallelism;
+        this.golden = golden;
+        this.record = record;
+    }
+
+    public RegressionRunner(int parallelism) {
+        this(parallelism, null, false);
+    }
+
+    public List<Outcome> run(Path directory) throws IOException {
+        List<Path> roms;
+        try (Stream<Path> files = Files.list(directory)) {
+            roms = files.filter(path -> path.getFileName().toString().endsWith(".nes"))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        }
+        Outcome[] outcomes = new Outcome[roms.size()];
+        List<Instance<Outcome>> instances = new ArrayList<>();
+        try (Farm farm = new Farm(parallelism, SLICE_FRAMES)) {
+            for (int i = 0; i < roms.size(); i++) {
+                Path rom = roms.get(i);
+                String name = rom.getFileName().toString().replaceFirst("\\.nes$", "");
+                Path properties = rom.resolveSibling(name + ".properties");
+                if (!Files.exists(properties)) {
+                    outcomes[i] = new Outcome(name, Outcome.Status.Skipped, "No " + properties.getFileName(), 0, 0);
+                    instances.add(null);
+                    continue;
+                }
+                try {
+                    instances.add(farm.submit(new RomJob(name, rom, Expectation.load(properties), golden, record)));
+                }
+                catch (IOException | RuntimeException e) {
+                    outcomes[i] = new Outcome(name, Outcome.Status.Error, e.toString(), 0, 0);
+                    instances.add(null);
+                }
+            }
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            Instance<Outcome> instance = instances.get(i);
+            if (instance != null) {
+                outcomes[i] = outcome(instance);
+            }
+        }
+        if (record && golden != null) {
+            golden.save();
+        }
+        return List.of(outcomes);
+    }
+
+    private static Outcome outcome(Instance<Outcome> instance) {
+        try {
+            Outcome outcome = instance.result().join();
+            return new Outcome(outcome.name(), outcome.status(), outcome.message(), outcome.frames(),
+                    instance.runNanos());
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return new Outcome(instance.name(), Outcome.Status.Error, cause.toString(), instance.frames(),
+                    instance.runNanos());
+        }
+    }
+
+    // Usage: RegressionRunner <rom directory> [--report <file>] [--threads <count>] [--golden <directory>] [--record]
+    // Exits with 0 when every ROM passed or was skipped, 1 when any failed, and 2 on bad arguments.
+    public static void main(String[] args) throws IOException {
+        Path directory = null;
+        Path report = null;
+        Path golden = null;
+        boolean record = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--report" -> report = Path.of(argument(args, ++i));
+                case "--threads" -> threads = count(args[i], argument(args, ++i));
+                case "--golden" -> golden = Path.of(argument(args, ++i));
+                case "--record" -> record = true;
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        System.err.println("Unknown option " + args[i]);
+                        usage();
+                    }
+                    directory = Path.of(args[i]);
+                }
+            }
+        }
+        if (directory == null || !Files.isDirectory(directory) || record && golden == null) {
+            usage();
+        }
+
+        List<Outcome> outcomes = new RegressionRunner(threads, golden == null ? null : new GoldenStore(golden), record)
+                .run(directory);
+        for (Outcome outcome : outcomes) {
+            System.out.printf("%-8s %s%s%n", outcome.status(), outcome.name(),
+                    outcome.message() == null ? "" : ": " + outcome.message());
+        }
+        long passed = outcomes.stream().filter(Outcome::passed).count();
+        long skipped = outcomes.stream().filter(outcome -> outcome.status() == Outcome.Status.Skipped).count();
+        System.out.printf("%d passed, %d failed, %d skipped%n", passed, outcomes.size() - passed - skipped, skipped);
+        if (report != null) {
+            JUnitReport.write(directory.getFileName().toString(), outcomes, report);
+        }
+        System.exit(passed + skipped == outcomes.size() ? 0 : 1);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: RegressionRunner <rom directory> [--report <file>] [--threads <count>] "
+                + "[--golden <directory>] [--record]");
+        System.exit(2);
+    }
+
+    private static String argument(String[] args, int index) {
+        if (index >= args.length) {
+            System.err.println(args[index - 1] + " needs a value");
+            System.exit(2);
+        }
+        return args[index];
+    }
+
+    private static int count(String option, String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= 1) {
+                return count;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println(option + " needs a positive count: " + value);
+        System.exit(2);
+        return 0;
+    }
+}
@@ -0,0 +1,126 @@
+package com.experiments.nes.regression;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.farm.Job;
+import com.experiments.nes.mapper.Cartridge;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+
+// Runs one test ROM on a console of its own, with no input, so the outcome depends only on the ROM. Frames are hashed
+// by the PPU as they are produced and never drawn.
+public class RomJob implements Job<Outcome> {
+    private final String name;
+    private final Path rom;
+    private final Expectation expectation;
+    private final GoldenStore golden;
+    private final boolean record;
+    // Set once the result byte has held the running value
+    private boolean started;
+    private long romHash;
+    // Golden hashes of the frames to check, read while loading, and the hashes the frames had
+    private final List<OptionalLong> expected = new ArrayList<>();
+    private final long[] hashes;
+
+    public RomJob(String name, Path rom, Expectation expectation, GoldenStore golden, boolean record) {
+        this.name = name;
+        this.rom = rom;
+        this.expectation = expectation;
+        this.golden = golden;
+        this.record = record;
+        this.hashes = new long[expectation.golden().size()];
+    }
+
+    public RomJob(String name, Path rom, Expectation expectation) {
+        this(name, rom, expectation, null, false);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Console load() throws Exception {
+        Cartridge cartridge = Cartridge.load(rom);
+        romHash = cartridge.hash();
+        if (!expectation.golden().isEmpty()) {
+            if (golden == null) {
+                throw new IllegalStateException(name + " checks golden frames but there is no golden store");
+            }
+            for (int frame : expectation.golden()) {
+                expected.add(golden.get(romHash, frame));
+            }
+        }
+        Console console = new Console(cartridge);
+        console.render(0);
+        console.ppu().hashing(expectation.hashing());
+        return console;
+    }
+
+    @Override
+    public boolean done(Console console) {
+        long frames = console.frames();
+        int index = expectation.golden().indexOf((int) frames);
+        if (index >= 0) {
+            hashes[index] = console.ppu().frameHash();
+        }
+        if (frames >= expectation.frames()) {
+            return true;
+        }
+        // Hashed frames are checked at fixed frames, not when the result is in
+        if (expectation.running().isEmpty() || expectation.hashing()) {
+            return false;
+        }
+        boolean running = result(console) == expectation.running().getAsInt();
+        started |= running;
+        return started && !running;
+    }
+
+    @Override
+    public Outcome finish(Console console) throws Exception {
+        List<String> failures = new ArrayList<>();
+        if (expectation.resultAddress().isPresent()) {
+            int result = result(console);
+            int expected = expectation.resultValue().getAsInt();
+            if (result != expected) {
+                failures.add(String.format("Expected %02x at %04x, was %02x", expected,
+                        expectation.resultAddress().getAsInt(), result));
+            }
+        }
+        if (expectation.hash().isPresent()) {
+            long hash = console.ppu().frameHash();
+            long expected = expectation.hash().getAsLong();
+            if (hash != expected) {
+                failures.add(String.format("Expected frame hash %016x, was %016x", expected, hash));
+            }
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            int frame = expectation.golden().get(i);
+            OptionalLong known = expected.get(i);
+            if (known.isPresent() && known.getAsLong() != hashes[i]) {
+                failures.add(String.format("Frame %d hash %016x, golden %016x", frame, hashes[i], known.getAsLong()));
+            }
+            else if (known.isEmpty()) {
+                if (record) {
+                    golden.put(romHash, frame, hashes[i]);
+                }
+                else {
+                    failures.add(String.format("Frame %d has no golden hash for ROM %016x", frame, romHash));
+                }
+            }
+        }
+        return new Outcome(name, failures.isEmpty() ? Outcome.Status.Passed : Outcome.Status.Failed,
+                failures.isEmpty() ? null : String.join(", ", failures) + " after " + console.frames() + " frames",
+                console.frames(), 0);
+    }
+
+    // Read from memory directly, as reading through the bus would have the side effects of any register there
+    private int result(Console console) {
+        int address = expectation.resultAddress().getAsInt();
+        byte result = address < 0x0800 ? console.ram(address) : console.mapper().prgRam(address - 0x6000);
+        return result & 0xFF;
+    }
+}
@@ -0,0 +1,162 @@
+package com.experiments.nes.farm;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.console.ConsoleTest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FarmTest {
+    private static Console console() {
+        Console console = ConsoleTest.console(ConsoleTest.NMI_COUNTER, false);
+        console.render(0);
+        return console;
+    }
+
+    // Runs a number of frames and returns the NMI counter
+    private record Frames(String name, long frames, AtomicLong finished) implements Job<Integer> {
+        Frames(String name, long frames) {
+            this(name, frames, null);
+        }
+
+        @Override
+        public Console load() {
+            return console();
+        }
+
+        @Override
+        public boolean done(Console console) {
+            return console.frames() >= frames;
+        }
+
+        @Override
+        public Integer finish(Console console) {
+            if (finished != null) {
+                finished.compareAndSet(-1, System.nanoTime());
+            }
+            return console.ram()[0] & 0xFF;
+        }
+    }
+
+    @Test
+    void testRunsJobs() {
+        List<Instance<Integer>> instances = new ArrayList<>();
+        try (Farm farm = new Farm(4, 5)) {
+            for (int i = 0; i < 32; i++) {
+                instances.add(farm.submit(new Frames("instance-" + i, 10 + i)));
+            }
+        }
+
+        for (int i = 0; i < instances.size(); i++) {
+            Instance<Integer> instance = instances.get(i);
+            assertEquals(Instance.State.Done, instance.state());
+            assertEquals(9 + i, instance.result().join());
+            assertEquals(10 + i, instance.frames());
+            // Slices of five frames, the last possibly empty
+            assertEquals((10 + i) / 5 + ((10 + i) % 5 == 0 ? 0 : 1), instance.slices(), 1);
+            assertEquals(10 + i, instance.metrics().getFrames());
+            assertTrue(instance.metrics().getCycles() > 0);
+            assertTrue(instance.framesPerSecond() > 0);
+        }
+    }
+
+    @Test
+    void testMetricsLeaveRegistry() {
+        Instance<Integer> instance;
+        try (Farm farm = new Farm(1, 5)) {
+            instance = farm.submit(new Frames("instance", 20));
+            instance.result().join();
+            farm.close();
+            assertEquals(0, farm.active());
+            assertTrue(farm.metrics().instances().isEmpty());
+        }
+        assertEquals(20, instance.metrics().getFrames());
+    }
+
+    @Test
+    void testRejectsActiveName() {
+        try (Farm farm = new Farm(1, 5)) {
+            Instance<Integer> instance = farm.submit(new Frames("instance", 20));
+
+            assertThrows(IllegalStateException.class, () -> farm.submit(new Frames("instance", 10)));
+            instance.result().join();
+            while (farm.active() > 0) {
+                Thread.onSpinWait();
+            }
+            // The name is free again once the instance has left the farm
+            assertEquals(19, farm.submit(new Frames("instance", 20)).result().join());
+        }
+    }
+
+    @Test
+    void testSharesFairly() {
+        // One carrier and a short job behind long ones: round robin slices let it finish long before they do
+        AtomicLong shortFinished = new AtomicLong(-1);
+        AtomicLong longFinished = new AtomicLong(-1);
+        try (Farm farm = new Farm(1, 2)) {
+            for (int i = 0; i < 4; i++) {
+                farm.submit(new Frames("long-" + i, 200, longFinished));
+            }
+            farm.submit(new Frames("short", 10, shortFinished));
+        }
+
+        assertTrue(shortFinished.get() < longFinished.get());
+    }
+
+    @Test
+    void testLoadFailure() {
+        Instance<Integer> instance;
+        try (Farm farm = new Farm(1, 5)) {
+            instance = farm.submit(new Job<>() {
+                @Override
+                public String name() {
+                    return "broken";
+                }
+
+                @Override
+                public Console load() throws Exception {
+                    throw new IOException("No such ROM");
+                }
+
+                @Override
+                public boolean done(Console console) {
+                    return true;
+                }
+
+                @Override
+                public Integer finish(Console console) {
+                    return 0;
+                }
+            });
+        }
+
+        assertEquals(Instance.State.Failed, instance.state());
+        CompletionException e = assertThrows(CompletionException.class, () -> instance.result().join());
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void testCancel() {
+        Instance<Integer> instance;
+        try (Farm farm = new Farm(1, 1)) {
+            instance = farm.submit(new Frames("forever", Long.MAX_VALUE));
+            while (instance.frames() < 3) {
+                Thread.onSpinWait();
+            }
+            instance.cancel();
+        }
+
+        assertEquals(Instance.State.Cancelled, instance.state());
+        assertThrows(CancellationException.class, () -> instance.result().join());
+    }
+}
@@ -0,0 +1,174 @@
+package com.experiments.nes.regression;
+
+import com.experiments.nes.console.Console;
+import com.experiments.nes.mapper.Cartridge;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RegressionRunnerTest {
+    @TempDir
+    Path directory;
+
+    // Writes $80 to $6000 while running, and the result from the first NMI handler on
+    private static byte[] rom(int result) {
+        int[] program = {
+                0xA9, 0x80,       // $8000 LDA #$80
+                0x8D, 0x00, 0x60, // $8002 STA $6000
+                0x8D, 0x00, 0x20, // $8005 STA $2000
+                0x4C, 0x08, 0x80, // $8008 JMP $8008
+                0xA9, result,     // $800B NMI: LDA #result
+                0x8D, 0x00, 0x60, // $800D STA $6000
+                0x40,             // $8010 RTI
+        };
+        byte[] image = new byte[16 + 0x4000 + 0x2000];
+        image[0] = 'N';
+        image[1] = 'E';
+        image[2] = 'S';
+        image[3] = 0x1A;
+        image[4] = 1;
+        image[5] = 1;
+        for (int i = 0; i < program.length; i++) {
+            image[16 + i] = (byte) program[i];
+        }
+        // NMI $800B, reset $8000, IRQ $800B
+        int[] vectors = {0x0B, 0x80, 0x00, 0x80, 0x0B, 0x80};
+        for (int i = 0; i < vectors.length; i++) {
+            image[16 + 0x3FFA + i] = (byte) vectors[i];
+        }
+        return image;
+    }
+
+    private void test(String name, byte[] rom, String properties) throws Exception {
+        Files.write(directory.resolve(name + ".nes"), rom);
+        if (properties != null) {
+            Files.writeString(directory.resolve(name + ".properties"), properties);
+        }
+    }
+
+    private static long hash(byte[] rom, int frames) {
+        Console console = new Console(Cartridge.parse(rom));
+        console.render(0);
+        console.ppu().hashing(true);
+        console.runFrames(frames);
+        return console.ppu().frameHash();
+    }
+
+    @Test
+    void testOutcomes() throws Exception {
+        String result = "frames=60\nresult.address=6000\nresult.value=00\nresult.running=80\n";
+        test("pass", rom(0x00), result);
+        test("fail", rom(0x03), result);
+        test("hash", rom(0x00), String.format("frames=10\nhash=%016x\n", hash(rom(0x00), 10)));
+        test("wrong-hash", rom(0x00), "frames=10\nhash=0123456789abcdef\n");
+        test("missing", rom(0x00), null);
+        test("corrupt", new byte[16], result);
+        test("register", rom(0x00), "frames=60\nresult.address=2002\nresult.value=00\n");
+
+        List<Outcome> outcomes = new RegressionRunner(4).run(directory);
+
+        assertEquals(List.of("corrupt", "fail", "hash", "missing", "pass", "register", "wrong-hash"),
+                outcomes.stream().map(Outcome::name).toList());
+        assertEquals(Outcome.Status.Error, outcomes.get(0).status());
+        assertEquals(Outcome.Status.Failed, outcomes.get(1).status());
+        assertEquals("Expected 00 at 6000, was 03 after 2 frames", outcomes.get(1).message());
+        assertEquals(Outcome.Status.Passed, outcomes.get(2).status());
+        assertEquals(10, outcomes.get(2).frames());
+        assertEquals(Outcome.Status.Skipped, outcomes.get(3).status());
+        // Finishes as soon as the result is written
+        assertEquals(Outcome.Status.Passed, outcomes.get(4).status());
+        assertNull(outcomes.get(4).message());
+        assertEquals(2, outcomes.get(4).frames());
+        // Results are not read through the bus, where reading a register has side effects
+        assertEquals(Outcome.Status.Error, outcomes.get(5).status());
+        assertEquals(Outcome.Status.Failed, outcomes.get(6).status());
+    }
+
+    @Test
+    void testDeterministic() throws Exception {
+        for (int i = 0; i < 16; i++) {
+            test("rom-" + i, rom(i), String.format("frames=%d\nhash=%016x\n", 5 + i, hash(rom(i), 5 + i)));
+        }
+
+        List<Outcome> serial = new RegressionRunner(1).run(directory);
+        List<Outcome> parallel = new RegressionRunner(8).run(directory);
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(Outcome.Status.Passed, serial.get(i).status(), serial.get(i).message());
+            assertEquals(serial.get(i).name(), parallel.get(i).name());
+            assertEquals(serial.get(i).status(), parallel.get(i).status());
+            assertEquals(serial.get(i).frames(), parallel.get(i).frames());
+        }
+    }
+
+    @Test
+    void testGolden() throws Exception {
+        test("rom", rom(0x00), "frames=10\nresult.address=6000\nresult.value=00\ngolden=1,5,10\n");
+        Path store = directory.resolve("golden");
+
+        // Nothing to compare against until the hashes are recorded
+        assertEquals(Outcome.Status.Failed, new RegressionRunner(2, new GoldenStore(store), false).run(directory)
+                .get(0).status());
+        assertEquals(Outcome.Status.Passed, new RegressionRunner(2, new GoldenStore(store), true).run(directory)
+                .get(0).status());
+        Path file = store.resolve(String.format("%016x.golden", Cartridge.parse(rom(0x00)).hash()));
+        assertEquals(List.of("1", "5", "10"), Files.readAllLines(file).stream().map(line -> line.split(" ")[0])
+                .toList());
+        assertEquals(String.format("10 %016x", hash(rom(0x00), 10)), Files.readAllLines(file).get(2));
+        Outcome verified = new RegressionRunner(2, new GoldenStore(store), false).run(directory).get(0);
+        assertEquals(Outcome.Status.Passed, verified.status(), verified.message());
+        // Runs to the last checked frame though the result is in earlier
+        assertEquals(10, verified.frames());
+
+        Files.writeString(file, Files.readString(file).replaceFirst("(?m)^5 \\w+", "5 0123456789abcdef"));
+        Outcome tampered = new RegressionRunner(2, new GoldenStore(store), false).run(directory).get(0);
+        assertEquals(Outcome.Status.Failed, tampered.status());
+        assertEquals(String.format("Frame 5 hash %016x, golden 0123456789abcdef after 10 frames",
+                hash(rom(0x00), 5)), tampered.message());
+    }
+
+    @Test
+    void testGoldenNeedsStore() throws Exception {
+        test("rom", rom(0x00), "frames=10\ngolden=10\n");
+
+        assertEquals(Outcome.Status.Error, new RegressionRunner(2).run(directory).get(0).status());
+    }
+
+    @Test
+    void testReport() throws Exception {
+        List<Outcome> outcomes = List.of(
+                new Outcome("pass", Outcome.Status.Passed, null, 10, 1_500_000_000L),
+                new Outcome("fail", Outcome.Status.Failed, "Expected 00 at 6000, was <03>", 10, 0),
+                new Outcome("missing", Outcome.Status.Skipped, "No missing.properties", 0, 0));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        JUnitReport.write("roms", outcomes, output);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(output.toByteArray()));
+        Element suite = document.getDocumentElement();
+        assertEquals("testsuite", suite.getTagName());
+        assertEquals("3", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("0", suite.getAttribute("errors"));
+        assertEquals("1", suite.getAttribute("skipped"));
+        NodeList cases = suite.getElementsByTagName("testcase");
+        assertEquals(3, cases.getLength());
+        assertEquals("1.500", ((Element) cases.item(0)).getAttribute("time"));
+        Element failure = (Element) ((Element) cases.item(1)).getElementsByTagName("failure").item(0);
+        assertEquals("Expected 00 at 6000, was <03>", failure.getAttribute("message"));
+        assertEquals(1, ((Element) cases.item(2)).getElementsByTagName("skipped").getLength());
+    }
+}
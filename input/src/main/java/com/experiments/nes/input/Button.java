@@ -0,0 +1,18 @@
+package com.experiments.nes.input;
+
+// Standard controller buttons, in the order the shift register reports them
+public enum Button {
+    A, B, Select, Start, Up, Down, Left, Right;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public static int mask(Button... buttons) {
+        int mask = 0;
+        for (Button button : buttons) {
+            mask |= button.mask();
+        }
+        return mask;
+    }
+}
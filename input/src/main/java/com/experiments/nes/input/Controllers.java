@@ -0,0 +1,144 @@
+package com.experiments.nes.input;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The two standard controllers at $4016/$4017. Button state is published by one control thread as a single long
+// and picked up by the emulation thread once per frame, so neither side takes a lock and a frame never sees a torn
+// or half-applied update. Queued scripts take precedence over published state until they run out.
+public class Controllers implements Memory, Snapshottable {
+    // Bits 0-15 hold the buttons of both ports, the rest a publication sequence number
+    private final AtomicLong published = new AtomicLong();
+    private final Queue<InputScript> scripts = new ConcurrentLinkedQueue<>();
+    // Only touched by the publishing thread
+    private long sequence;
+
+    private InputScript script;
+    private int scriptFrame;
+    private int buttons;
+    private long consumed;
+    private boolean frozen;
+    private boolean strobe;
+    private int shift1;
+    private int shift2;
+
+    // Called from the control thread. Only one thread may publish to a given instance.
+    public void publish(int port1, int port2) {
+        sequence++;
+        published.setRelease(sequence << 16 | (port1 & 0xFF) | (port2 & 0xFF) << 8);
+    }
+
+    // Called from any thread; the script starts at the next frame once earlier scripts have finished
+    public void queue(InputScript script) {
+        scripts.add(script);
+    }
+
+    // Called by the emulation thread to drop the script in progress and any queued, e.g. when input is about to be
+    // replayed from a different point. Published state applies from the next frame unless new scripts are queued.
+    public void cancel() {
+        scripts.clear();
+        script = null;
+    }
+
+    // Keeps the current buttons through calls to frame(), leaving scripts and publications where they are. Used to
+    // run frames speculatively with the input of the frame before.
+    public void freeze(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    public boolean frozen() {
+        return frozen;
+    }
+
+    // Called by the emulation thread at the start of each frame to pick the buttons held during it
+    public void frame() {
+        if (frozen) {
+            return;
+        }
+        while (script == null || scriptFrame >= script.length()) {
+            script = scripts.poll();
+            scriptFrame = 0;
+            if (script == null) {
+                long value = published.getAcquire();
+                buttons = (int) (value & 0xFFFF);
+                consumed = value >>> 16;
+                return;
+            }
+        }
+        buttons = script.frame(scriptFrame++);
+    }
+
+    // Whether the buttons of the current frame came from a script
+    public boolean scripted() {
+        return script != null;
+    }
+
+    public int buttons(int port) {
+        return port == 0 ? buttons & 0xFF : buttons >> 8;
+    }
+
+    // Sequence number of the last publication seen by frame(), 0 before the first
+    public long consumed() {
+        return consumed;
+    }
+
+    // Only what the game can observe is saved; published input and queued scripts belong to the caller
+    @Override
+    public void save(ByteBuffer buffer) {
+        buffer.putInt(buttons);
+        Snapshot.put(buffer, strobe);
+        buffer.putInt(shift1).putInt(shift2);
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        buttons = buffer.getInt();
+        strobe = Snapshot.getBoolean(buffer);
+        shift1 = buffer.getInt();
+        shift2 = buffer.getInt();
+    }
+
+    @Override
+    public byte load(short address) {
+        int port = address & 0x01;
+        if (strobe) {
+            latch();
+        }
+        int bit;
+        if (port == 0) {
+            bit = shift1 & 0x01;
+            // Official controllers report 1 once all eight buttons have been read
+            shift1 = shift1 >> 1 | 0x80;
+        }
+        else {
+            bit = shift2 & 0x01;
+            shift2 = shift2 >> 1 | 0x80;
+        }
+        // The upper bits are open bus, which is normally the $40 of the address
+        return (byte) (0x40 | bit);
+    }
+
+    // Only $4016 is handled here, a write to $4017 belongs to the APU frame counter
+    @Override
+    public void store(short address, byte value) {
+        if ((address & 0x01) != 0) {
+            return;
+        }
+        boolean strobe = (value & 0x01) != 0;
+        if (this.strobe || strobe) {
+            latch();
+        }
+        this.strobe = strobe;
+    }
+
+    private void latch() {
+        shift1 = buttons & 0xFF;
+        shift2 = buttons >> 8;
+    }
+}
@@ -0,0 +1,37 @@
+package com.experiments.nes.input;
+
+import java.util.Arrays;
+
+// Button states for consecutive frames, each frame packed as port 1 in bits 0-7 and port 2 in bits 8-15
+public class InputScript {
+    private short[] frames = new short[64];
+    private int length;
+
+    public InputScript hold(int port1, int port2, int count) {
+        if (length + count > frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, length + count));
+        }
+        Arrays.fill(frames, length, length + count, (short) ((port1 & 0xFF) | (port2 & 0xFF) << 8));
+        length += count;
+        return this;
+    }
+
+    public InputScript hold(int port1, int count) {
+        return hold(port1, 0, count);
+    }
+
+    public InputScript release(int count) {
+        return hold(0, 0, count);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int frame(int index) {
+        if (index < 0 || index >= length) {
+            throw new IllegalStateException(String.format("Frame %d is outside the script of %d frames", index, length));
+        }
+        return frames[index] & 0xFFFF;
+    }
+}
@@ -0,0 +1,159 @@
+package com.experiments.nes.input;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControllersTest {
+    private Controllers controllers;
+
+    @BeforeEach
+    void setup() {
+        controllers = new Controllers();
+    }
+
+    @Test
+    void testRead() {
+        controllers.publish(Button.mask(Button.A, Button.Start, Button.Right), Button.B.mask());
+        controllers.frame();
+
+        strobe();
+
+        assertEquals("10010001", read(0x4016, 8));
+        assertEquals("01000000", read(0x4017, 8));
+        assertEquals("111", read(0x4016, 3));
+    }
+
+    @Test
+    void testOpenBus() {
+        assertEquals(0x40, controllers.load((short) 0x4016));
+    }
+
+    @Test
+    void testStrobeHeldReadsA() {
+        controllers.publish(Button.A.mask(), 0);
+        controllers.frame();
+
+        controllers.store((short) 0x4016, (byte) 1);
+
+        assertEquals("111", read(0x4016, 3));
+    }
+
+    @Test
+    void testPublishedOncePerFrame() {
+        controllers.publish(Button.A.mask(), 0);
+        controllers.frame();
+        controllers.publish(Button.B.mask(), 0);
+
+        assertEquals(Button.A.mask(), controllers.buttons(0));
+        assertEquals(1, controllers.consumed());
+
+        controllers.frame();
+
+        assertEquals(Button.B.mask(), controllers.buttons(0));
+        assertEquals(2, controllers.consumed());
+    }
+
+    @Test
+    void testPublishFromAnotherThread() throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            for (int i = 1; i <= 1000; i++) {
+                controllers.publish(i & 0xFF, ~i & 0xFF);
+            }
+        });
+        thread.start();
+        long last = 0;
+        while (last < 1000) {
+            controllers.frame();
+            if (controllers.consumed() == 0) {
+                continue;
+            }
+            // Both ports always come from the same publication
+            assertEquals(controllers.consumed() & 0xFF, controllers.buttons(0));
+            assertEquals(~controllers.consumed() & 0xFF, controllers.buttons(1));
+            assertTrue(controllers.consumed() >= last);
+            last = controllers.consumed();
+        }
+        thread.join();
+    }
+
+    @Test
+    void testScripts() {
+        controllers.publish(Button.Select.mask(), 0);
+        controllers.queue(new InputScript().hold(Button.A.mask(), 2).release(1));
+        controllers.queue(new InputScript().hold(0, Button.Up.mask(), 1));
+
+        int[] port1 = new int[5];
+        int[] port2 = new int[5];
+        boolean[] scripted = new boolean[5];
+        for (int frame = 0; frame < 5; frame++) {
+            controllers.frame();
+            port1[frame] = controllers.buttons(0);
+            port2[frame] = controllers.buttons(1);
+            scripted[frame] = controllers.scripted();
+        }
+
+        assertEquals(Button.A.mask(), port1[0]);
+        assertEquals(Button.A.mask(), port1[1]);
+        assertEquals(0, port1[2]);
+        assertEquals(Button.Up.mask(), port2[3]);
+        assertTrue(scripted[3]);
+        assertEquals(Button.Select.mask(), port1[4]);
+        assertFalse(scripted[4]);
+    }
+
+    @Test
+    void testCancel() {
+        controllers.publish(Button.Select.mask(), 0);
+        controllers.queue(new InputScript().hold(Button.A.mask(), 10));
+        controllers.queue(new InputScript().hold(Button.B.mask(), 10));
+        controllers.frame();
+
+        controllers.cancel();
+        controllers.frame();
+
+        assertEquals(Button.Select.mask(), controllers.buttons(0));
+        assertFalse(controllers.scripted());
+    }
+
+    @Test
+    void testFreeze() {
+        controllers.queue(new InputScript().hold(Button.A.mask(), 1).hold(Button.B.mask(), 1));
+        controllers.frame();
+
+        controllers.freeze(true);
+        controllers.publish(Button.Select.mask(), 0);
+        controllers.frame();
+        controllers.frame();
+        assertEquals(Button.A.mask(), controllers.buttons(0));
+
+        controllers.freeze(false);
+        controllers.frame();
+        assertEquals(Button.B.mask(), controllers.buttons(0));
+    }
+
+    @Test
+    void testScriptBounds() {
+        InputScript script = new InputScript().hold(1, 100);
+
+        assertEquals(100, script.length());
+        assertThrows(IllegalStateException.class, () -> script.frame(100));
+    }
+
+    private void strobe() {
+        controllers.store((short) 0x4016, (byte) 1);
+        controllers.store((short) 0x4016, (byte) 0);
+    }
+
+    private String read(int address, int count) {
+        StringBuilder bits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            bits.append(controllers.load((short) address) & 0x01);
+        }
+        return bits.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+
+// Mapper 7, a switchable 32 KB PRG bank and single screen mirroring selected by bit 4
+public final class AxRom extends Mapper {
+    public AxRom(Cartridge cartridge) {
+        super(cartridge);
+        prg32k(0);
+        mirroring(Mirroring.SingleScreenLower);
+    }
+
+    @Override
+    protected void write(int address, int value) {
+        prg32k(value & 0x07);
+        mirroring((value & 0x10) != 0 ? Mirroring.SingleScreenUpper : Mirroring.SingleScreenLower);
+    }
+}
@@ -0,0 +1,58 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Contents of an iNES image. CHR is empty for boards with CHR RAM.
+public record Cartridge(int mapper, byte[] prg, byte[] chr, Mirroring mirroring, boolean battery) {
+    private static final int HEADER = 16;
+    private static final int TRAINER = 512;
+
+    public static Cartridge load(Path path) throws IOException {
+        return parse(Files.readAllBytes(path));
+    }
+
+    public static Cartridge parse(byte[] image) {
+        if (image.length < HEADER || image[0] != 'N' || image[1] != 'E' || image[2] != 'S' || image[3] != 0x1A) {
+            throw new IllegalStateException("Not an iNES image");
+        }
+        int flags6 = image[6] & 0xFF;
+        int flags7 = image[7] & 0xFF;
+        int mapper = (flags7 & 0xF0) | flags6 >> 4;
+        boolean nes2 = (flags7 & 0x0C) == 0x08;
+        if (nes2) {
+            mapper |= (image[8] & 0x0F) << 8;
+        }
+        int prgSize = (image[4] & 0xFF) * 0x4000;
+        int chrSize = (image[5] & 0xFF) * 0x2000;
+        int start = HEADER + ((flags6 & 0x04) != 0 ? TRAINER : 0);
+        if (prgSize == 0 || image.length < start + prgSize + chrSize) {
+            throw new IllegalStateException(String.format("Truncated iNES image, %d bytes of PRG and %d of CHR expected",
+                    prgSize, chrSize));
+        }
+        Mirroring mirroring = (flags6 & 0x08) != 0 ? Mirroring.FourScreen
+                : (flags6 & 0x01) != 0 ? Mirroring.Vertical
+                : Mirroring.Horizontal;
+        return new Cartridge(mapper,
+                Arrays.copyOfRange(image, start, start + prgSize),
+                Arrays.copyOfRange(image, start + prgSize, start + prgSize + chrSize),
+                mirroring,
+                (flags6 & 0x02) != 0);
+    }
+
+    // 64-bit FNV-1a over the board, PRG and CHR, identifying the game whatever its file is called
+    public long hash() {
+        long hash = 0xCBF29CE484222325L;
+        hash = (hash ^ mapper) * 0x100000001B3L;
+        for (byte[] bytes : new byte[][] {prg, chr}) {
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,13 @@
+package com.experiments.nes.mapper;
+
+// Mapper 3, fixed PRG and a switchable 8 KB CHR bank
+public final class Cnrom extends Mapper {
+    public Cnrom(Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    protected void write(int address, int value) {
+        chr8k(value);
+    }
+}
@@ -0,0 +1,279 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.events.BankSwitchEvent;
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import com.experiments.nes.scheduler.Device;
+import com.experiments.nes.snapshot.CopyOnWritePages;
+import com.experiments.nes.snapshot.DirtyPages;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+
+// Cartridge board, seen by the CPU at $6000-$FFFF and by the PPU through chr(). PRG is mapped in 8 KB pages and CHR
+// in 1 KB pages, each page an offset into the PRG or CHR array, so switching a bank is a few array stores.
+public abstract class Mapper implements Memory, Device, Snapshottable {
+    private static final int PRG_PAGE = 0x2000;
+    private static final int CHR_PAGE = 0x0400;
+    // Comfortably more than any board's saveRegisters writes
+    private static final int REGISTERS_SIZE = 1024;
+
+    private final Cartridge cartridge;
+    private final byte[] prg;
+    // CHR ROM, or null for CHR RAM
+    private final byte[] chr;
+    private final int chrSize;
+    private final CopyOnWritePages chrRam;
+    private final CopyOnWritePages prgRam = new CopyOnWritePages(0x2000, 10);
+    private final int[] prgPages = new int[4];
+    private final int[] chrPages = new int[8];
+    private final Memory chrMemory = new Memory() {
+        @Override
+        public byte load(short address) {
+            int offset = chrPages[(address >> 10) & 0x07] | (address & 0x03FF);
+            return chr != null ? chr[offset] : chrRam.get(offset);
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            if (chr == null) {
+                chrRam.set(chrPages[(address >> 10) & 0x07] | (address & 0x03FF), value);
+            }
+        }
+    };
+    private Mirroring mirroring;
+    private Ppu ppu;
+    private boolean prgRamEnabled = true;
+    protected long cycle;
+
+    protected Mapper(Cartridge cartridge) {
+        this.cartridge = cartridge;
+        this.prg = cartridge.prg();
+        boolean rom = cartridge.chr().length > 0;
+        this.chr = rom ? cartridge.chr() : null;
+        this.chrRam = rom ? null : new CopyOnWritePages(0x2000, 10);
+        this.chrSize = rom ? chr.length : chrRam.size();
+        this.mirroring = cartridge.mirroring();
+        prg16k(0, 0);
+        prg16k(1, -1);
+        chr8k(0);
+    }
+
+    public Memory chr() {
+        return chrMemory;
+    }
+
+    public Cartridge cartridge() {
+        return cartridge;
+    }
+
+    // A copy of PRG RAM
+    public byte[] prgRam() {
+        return prgRam.toArray();
+    }
+
+    // One byte of PRG RAM, by its offset from $6000, read whether or not the RAM is enabled
+    public byte prgRam(int offset) {
+        return prgRam.get(offset);
+    }
+
+    public Mirroring mirroring() {
+        return mirroring;
+    }
+
+    // Connects the PPU, which is told about mirroring changes and CHR bank switches
+    public void attach(Ppu ppu) {
+        this.ppu = ppu;
+        ppu.mirroring(mirroring);
+    }
+
+    protected Ppu ppu() {
+        return ppu;
+    }
+
+    public boolean irq() {
+        return false;
+    }
+
+    @Override
+    public void sync(long cycle) {
+        this.cycle = cycle;
+    }
+
+    @Override
+    public long deadline() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public final void save(ByteBuffer buffer) {
+        save(buffer, null);
+    }
+
+    @Override
+    public final void saveChanges(ByteBuffer buffer, DirtyPages changed) {
+        save(buffer, changed);
+    }
+
+    // RAM goes last so that fork can copy everything before it
+    private void save(ByteBuffer buffer, DirtyPages changed) {
+        saveRegisters(buffer);
+        Snapshot.put(buffer, prgRam, changed);
+        if (chr == null) {
+            Snapshot.put(buffer, chrRam, changed);
+        }
+    }
+
+    @Override
+    public final void restore(ByteBuffer buffer) {
+        restoreRegisters(buffer);
+        Snapshot.get(buffer, prgRam);
+        if (chr == null) {
+            Snapshot.get(buffer, chrRam);
+        }
+        if (ppu != null) {
+            ppu.mirroring(mirroring);
+            ppu.chrChanged(0, 0x2000);
+        }
+    }
+
+    // Boards with registers beyond the page tables save them after these, and restore them in the same order
+    protected void saveRegisters(ByteBuffer buffer) {
+        Snapshot.put(buffer, prgPages);
+        Snapshot.put(buffer, chrPages);
+        buffer.put((byte) mirroring.ordinal());
+        Snapshot.put(buffer, prgRamEnabled);
+        buffer.putLong(cycle);
+    }
+
+    protected void restoreRegisters(ByteBuffer buffer) {
+        Snapshot.get(buffer, prgPages);
+        Snapshot.get(buffer, chrPages);
+        mirroring = Mirroring.of(buffer.get());
+        prgRamEnabled = Snapshot.getBoolean(buffer);
+        cycle = buffer.getLong();
+    }
+
+    // A board in the same state sharing ROM, with RAM shared copy-on-write. It is made through Mappers, so boards of
+    // other numbers need a provider, and is attached to no PPU.
+    public Mapper fork() {
+        Mapper fork = Mappers.create(cartridge);
+        if (fork.getClass() != getClass()) {
+            throw new IllegalStateException(String.format("Mapper %d is created as %s, not %s", cartridge.mapper(),
+                    fork.getClass().getSimpleName(), getClass().getSimpleName()));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(REGISTERS_SIZE);
+        saveRegisters(buffer);
+        fork.restoreRegisters(buffer.flip());
+        fork.prgRam.share(prgRam);
+        if (chr == null) {
+            fork.chrRam.share(chrRam);
+        }
+        return fork;
+    }
+
+    @Override
+    public byte load(short address) {
+        int cpuAddress = address & 0xFFFF;
+        if (cpuAddress >= 0x8000) {
+            return prg[prgPages[(cpuAddress >> 13) & 0x03] | (cpuAddress & 0x1FFF)];
+        }
+        if (cpuAddress >= 0x6000 && prgRamEnabled) {
+            return prgRam.get(cpuAddress & 0x1FFF);
+        }
+        // Open bus is not modelled
+        return 0;
+    }
+
+    @Override
+    public void store(short address, byte value) {
+        int cpuAddress = address & 0xFFFF;
+        if (cpuAddress >= 0x8000) {
+            write(cpuAddress, value & 0xFF);
+        }
+        else if (cpuAddress >= 0x6000 && prgRamEnabled) {
+            prgRam.set(cpuAddress & 0x1FFF, value);
+        }
+    }
+
+    // A write to the board's registers at $8000-$FFFF
+    protected abstract void write(int address, int value);
+
+    protected final void prgRamEnabled(boolean enabled) {
+        this.prgRamEnabled = enabled;
+    }
+
+    protected final void mirroring(Mirroring mirroring) {
+        if (this.mirroring != mirroring) {
+            this.mirroring = mirroring;
+            if (ppu != null) {
+                ppu.mirroring(mirroring);
+            }
+        }
+    }
+
+    // Banks count from the end of PRG or CHR when negative, and wrap around the number of banks present
+    protected final void prg8k(int slot, int bank) {
+        prg(slot, 1, bank);
+    }
+
+    protected final void prg16k(int slot, int bank) {
+        prg(slot * 2, 2, bank);
+    }
+
+    protected final void prg32k(int bank) {
+        prg(0, 4, bank);
+    }
+
+    protected final void chr1k(int slot, int bank) {
+        chr(slot, 1, bank);
+    }
+
+    protected final void chr2k(int slot, int bank) {
+        chr(slot * 2, 2, bank);
+    }
+
+    protected final void chr4k(int slot, int bank) {
+        chr(slot * 4, 4, bank);
+    }
+
+    protected final void chr8k(int bank) {
+        chr(0, 8, bank);
+    }
+
+    private void prg(int slot, int pages, int bank) {
+        int size = pages * PRG_PAGE;
+        // A 16 KB image fills a 32 KB window twice
+        int banks = Math.max(1, prg.length / size);
+        int offset = Math.floorMod(bank, banks) * size;
+        boolean changed = false;
+        for (int page = 0; page < pages; page++) {
+            int pageOffset = (offset + page * PRG_PAGE) % prg.length;
+            changed |= prgPages[slot + page] != pageOffset;
+            prgPages[slot + page] = pageOffset;
+        }
+        if (changed) {
+            BankSwitchEvent.emit(cycle, 0x8000 + slot * PRG_PAGE, Math.floorMod(bank, banks), false);
+        }
+    }
+
+    private void chr(int slot, int pages, int bank) {
+        int size = pages * CHR_PAGE;
+        int banks = Math.max(1, chrSize / size);
+        int offset = Math.floorMod(bank, banks) * size;
+        boolean changed = false;
+        for (int page = 0; page < pages; page++) {
+            int pageOffset = offset + page * CHR_PAGE;
+            changed |= chrPages[slot + page] != pageOffset;
+            chrPages[slot + page] = pageOffset;
+        }
+        if (changed) {
+            BankSwitchEvent.emit(cycle, slot * CHR_PAGE, Math.floorMod(bank, banks), true);
+            if (ppu != null) {
+                ppu.chrChanged(slot * CHR_PAGE, size);
+            }
+        }
+    }
+}
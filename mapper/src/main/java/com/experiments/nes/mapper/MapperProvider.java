@@ -0,0 +1,8 @@
+package com.experiments.nes.mapper;
+
+// Service provider for boards not built in, registered in META-INF/services/com.experiments.nes.mapper.MapperProvider
+public interface MapperProvider {
+    boolean supports(int mapper);
+
+    Mapper create(Cartridge cartridge);
+}
@@ -0,0 +1,27 @@
+package com.experiments.nes.mapper;
+
+import java.util.ServiceLoader;
+
+public final class Mappers {
+    private Mappers() {
+    }
+
+    public static Mapper create(Cartridge cartridge) {
+        return switch (cartridge.mapper()) {
+            case 0 -> new Nrom(cartridge);
+            case 1 -> new Mmc1(cartridge);
+            case 2 -> new UxRom(cartridge);
+            case 3 -> new Cnrom(cartridge);
+            case 4 -> new Mmc3(cartridge);
+            case 7 -> new AxRom(cartridge);
+            default -> {
+                for (MapperProvider provider : ServiceLoader.load(MapperProvider.class)) {
+                    if (provider.supports(cartridge.mapper())) {
+                        yield provider.create(cartridge);
+                    }
+                }
+                throw new IllegalStateException("Unsupported mapper " + cartridge.mapper());
+            }
+        };
+    }
+}
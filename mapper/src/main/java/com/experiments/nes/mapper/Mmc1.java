@@ -0,0 +1,88 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+
+import java.nio.ByteBuffer;
+
+// Mapper 1. Registers are loaded a bit at a time through a 5 bit shift register.
+public final class Mmc1 extends Mapper {
+    private static final Mirroring[] MIRRORING = {
+            Mirroring.SingleScreenLower, Mirroring.SingleScreenUpper, Mirroring.Vertical, Mirroring.Horizontal
+    };
+
+    private int shift;
+    private int shiftCount;
+    private int control = 0x0C;
+    private int chrBank0;
+    private int chrBank1;
+    private int prgBank;
+
+    public Mmc1(Cartridge cartridge) {
+        super(cartridge);
+        update();
+    }
+
+    @Override
+    protected void saveRegisters(ByteBuffer buffer) {
+        super.saveRegisters(buffer);
+        buffer.putInt(shift).putInt(shiftCount).putInt(control).putInt(chrBank0).putInt(chrBank1).putInt(prgBank);
+    }
+
+    @Override
+    protected void restoreRegisters(ByteBuffer buffer) {
+        super.restoreRegisters(buffer);
+        shift = buffer.getInt();
+        shiftCount = buffer.getInt();
+        control = buffer.getInt();
+        chrBank0 = buffer.getInt();
+        chrBank1 = buffer.getInt();
+        prgBank = buffer.getInt();
+    }
+
+    @Override
+    protected void write(int address, int value) {
+        if ((value & 0x80) != 0) {
+            shift = 0;
+            shiftCount = 0;
+            control |= 0x0C;
+            update();
+            return;
+        }
+        shift |= (value & 0x01) << shiftCount;
+        if (++shiftCount < 5) {
+            return;
+        }
+        switch ((address >> 13) & 0x03) {
+            case 0 -> control = shift;
+            case 1 -> chrBank0 = shift;
+            case 2 -> chrBank1 = shift;
+            case 3 -> prgBank = shift;
+        }
+        shift = 0;
+        shiftCount = 0;
+        update();
+    }
+
+    private void update() {
+        mirroring(MIRRORING[control & 0x03]);
+        switch ((control >> 2) & 0x03) {
+            case 0, 1 -> prg32k((prgBank & 0x0E) >> 1);
+            case 2 -> {
+                prg16k(0, 0);
+                prg16k(1, prgBank & 0x0F);
+            }
+            case 3 -> {
+                prg16k(0, prgBank & 0x0F);
+                prg16k(1, -1);
+            }
+        }
+        if ((control & 0x10) != 0) {
+            chr4k(0, chrBank0);
+            chr4k(1, chrBank1);
+        }
+        else {
+            chr8k(chrBank0 >> 1);
+        }
+        prgRamEnabled((prgBank & 0x10) == 0);
+    }
+}
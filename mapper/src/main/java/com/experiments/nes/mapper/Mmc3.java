@@ -0,0 +1,168 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import com.experiments.nes.snapshot.Snapshot;
+
+import java.nio.ByteBuffer;
+
+// Mapper 4. The scanline counter is clocked by the PPU's line clocks, read when the board is synced, and its next
+// interrupt is handed to the scheduler as a deadline rather than counting PPU dots.
+public final class Mmc3 extends Mapper {
+    private final int[] registers = new int[8];
+    private int select;
+    private int irqLatch;
+    private int irqCounter;
+    private boolean irqReload;
+    private boolean irqEnabled;
+    private boolean irq;
+    private long lineClocks;
+
+    public Mmc3(Cartridge cartridge) {
+        super(cartridge);
+        update();
+    }
+
+    @Override
+    public void attach(Ppu ppu) {
+        super.attach(ppu);
+        this.lineClocks = ppu.lineClocks();
+    }
+
+    @Override
+    public boolean irq() {
+        return irq;
+    }
+
+    @Override
+    public void sync(long cycle) {
+        super.sync(cycle);
+        Ppu ppu = ppu();
+        if (ppu == null) {
+            return;
+        }
+        ppu.sync(cycle);
+        for (long clocks = ppu.lineClocks() - lineClocks; clocks > 0; clocks--) {
+            clockCounter();
+        }
+        lineClocks = ppu.lineClocks();
+    }
+
+    // Cycle of the line clock that will raise the interrupt, assuming rendering stays enabled
+    @Override
+    public long deadline() {
+        Ppu ppu = ppu();
+        if (ppu == null || !irqEnabled || irq) {
+            return Long.MAX_VALUE;
+        }
+        int clocks;
+        if (irqCounter == 0 || irqReload) {
+            clocks = 1 + irqLatch;
+        }
+        else {
+            clocks = irqCounter;
+        }
+        return ppu.lineClockDeadline(clocks);
+    }
+
+    @Override
+    protected void saveRegisters(ByteBuffer buffer) {
+        super.saveRegisters(buffer);
+        Snapshot.put(buffer, registers);
+        buffer.putInt(select).putInt(irqLatch).putInt(irqCounter);
+        Snapshot.put(buffer, irqReload);
+        Snapshot.put(buffer, irqEnabled);
+        Snapshot.put(buffer, irq);
+        buffer.putLong(lineClocks);
+    }
+
+    @Override
+    protected void restoreRegisters(ByteBuffer buffer) {
+        super.restoreRegisters(buffer);
+        Snapshot.get(buffer, registers);
+        select = buffer.getInt();
+        irqLatch = buffer.getInt();
+        irqCounter = buffer.getInt();
+        irqReload = Snapshot.getBoolean(buffer);
+        irqEnabled = Snapshot.getBoolean(buffer);
+        irq = Snapshot.getBoolean(buffer);
+        lineClocks = buffer.getLong();
+    }
+
+    @Override
+    protected void write(int address, int value) {
+        boolean even = (address & 0x01) == 0;
+        switch ((address >> 13) & 0x03) {
+            case 0 -> {
+                if (even) {
+                    select = value;
+                }
+                else {
+                    registers[select & 0x07] = value;
+                }
+                update();
+            }
+            case 1 -> {
+                if (even) {
+                    if (mirroring() != Mirroring.FourScreen) {
+                        mirroring((value & 0x01) != 0 ? Mirroring.Horizontal : Mirroring.Vertical);
+                    }
+                }
+                else {
+                    prgRamEnabled((value & 0x80) != 0);
+                }
+            }
+            case 2 -> {
+                if (even) {
+                    irqLatch = value;
+                }
+                else {
+                    irqCounter = 0;
+                    irqReload = true;
+                }
+            }
+            case 3 -> {
+                irqEnabled = !even;
+                if (even) {
+                    irq = false;
+                }
+            }
+        }
+    }
+
+    private void clockCounter() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        }
+        else {
+            irqCounter--;
+        }
+        if (irqCounter == 0 && irqEnabled) {
+            irq = true;
+        }
+    }
+
+    private void update() {
+        if ((select & 0x40) == 0) {
+            prg8k(0, registers[6]);
+            prg8k(2, -2);
+        }
+        else {
+            prg8k(0, -2);
+            prg8k(2, registers[6]);
+        }
+        prg8k(1, registers[7]);
+        prg8k(3, -1);
+        // Bit 7 swaps the 2 KB and 1 KB halves of the pattern tables
+        int inverted = (select & 0x80) != 0 ? 4 : 0;
+        chr1k(inverted, registers[0] & 0xFE);
+        chr1k(inverted + 1, registers[0] | 0x01);
+        chr1k(inverted + 2, registers[1] & 0xFE);
+        chr1k(inverted + 3, registers[1] | 0x01);
+        chr1k(4 - inverted, registers[2]);
+        chr1k(5 - inverted, registers[3]);
+        chr1k(6 - inverted, registers[4]);
+        chr1k(7 - inverted, registers[5]);
+    }
+}
@@ -0,0 +1,12 @@
+package com.experiments.nes.mapper;
+
+// Mapper 0, no banking. A 16 KB image is mirrored at $C000.
+public final class Nrom extends Mapper {
+    public Nrom(Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    protected void write(int address, int value) {
+    }
+}
@@ -0,0 +1,13 @@
+package com.experiments.nes.mapper;
+
+// Mapper 2, a switchable 16 KB bank at $8000 and the last bank fixed at $C000
+public final class UxRom extends Mapper {
+    public UxRom(Cartridge cartridge) {
+        super(cartridge);
+    }
+
+    @Override
+    protected void write(int address, int value) {
+        prg16k(0, value);
+    }
+}
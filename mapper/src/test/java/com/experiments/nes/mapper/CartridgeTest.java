@@ -0,0 +1,93 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CartridgeTest {
+    static byte[] image(int mapper, int prgBanks, int chrBanks, int flags6) {
+        byte[] image = new byte[16 + prgBanks * 0x4000 + chrBanks * 0x2000];
+        image[0] = 'N';
+        image[1] = 'E';
+        image[2] = 'S';
+        image[3] = 0x1A;
+        image[4] = (byte) prgBanks;
+        image[5] = (byte) chrBanks;
+        image[6] = (byte) ((mapper & 0x0F) << 4 | flags6);
+        image[7] = (byte) (mapper & 0xF0);
+        // Tag every 1 KB of PRG and CHR with its index
+        for (int i = 0; i < prgBanks * 16; i++) {
+            image[16 + i * 0x400] = (byte) i;
+        }
+        for (int i = 0; i < chrBanks * 8; i++) {
+            image[16 + prgBanks * 0x4000 + i * 0x400] = (byte) i;
+        }
+        return image;
+    }
+
+    static Cartridge cartridge(int mapper, int prgBanks, int chrBanks) {
+        return Cartridge.parse(image(mapper, prgBanks, chrBanks, 0));
+    }
+
+    @Test
+    void testParse() {
+        Cartridge cartridge = Cartridge.parse(image(0x42, 2, 1, 0x03));
+
+        assertEquals(0x42, cartridge.mapper());
+        assertEquals(0x8000, cartridge.prg().length);
+        assertEquals(0x2000, cartridge.chr().length);
+        assertEquals(Mirroring.Vertical, cartridge.mirroring());
+        assertTrue(cartridge.battery());
+        assertEquals(1, cartridge.prg()[0x400]);
+    }
+
+    @Test
+    void testTrainerIsSkipped() {
+        byte[] image = image(0, 1, 0, 0x04);
+        byte[] trained = new byte[image.length + 512];
+        System.arraycopy(image, 0, trained, 0, 16);
+        System.arraycopy(image, 16, trained, 16 + 512, image.length - 16);
+
+        Cartridge cartridge = Cartridge.parse(trained);
+
+        assertEquals(1, cartridge.prg()[0x400]);
+        assertEquals(0, cartridge.chr().length);
+    }
+
+    @Test
+    void testHash() {
+        byte[] image = image(0, 1, 1, 0);
+        // The header's mirroring is not part of the game
+        byte[] mirrored = image.clone();
+        mirrored[6] |= 0x01;
+        byte[] patched = image.clone();
+        patched[16 + 0x1234] = 1;
+
+        assertEquals(Cartridge.parse(image).hash(), Cartridge.parse(mirrored).hash());
+        assertNotEquals(Cartridge.parse(image).hash(), Cartridge.parse(patched).hash());
+        assertNotEquals(Cartridge.parse(image).hash(), cartridge(2, 1, 1).hash());
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalStateException.class, () -> Cartridge.parse(new byte[16]));
+        byte[] truncated = image(0, 2, 1, 0);
+        assertThrows(IllegalStateException.class, () -> Cartridge.parse(java.util.Arrays.copyOf(truncated, 0x4010)));
+    }
+
+    @Test
+    void testMappers() {
+        assertInstanceOf(Nrom.class, Mappers.create(cartridge(0, 1, 1)));
+        assertInstanceOf(Mmc1.class, Mappers.create(cartridge(1, 1, 1)));
+        assertInstanceOf(UxRom.class, Mappers.create(cartridge(2, 1, 0)));
+        assertInstanceOf(Cnrom.class, Mappers.create(cartridge(3, 1, 1)));
+        assertInstanceOf(Mmc3.class, Mappers.create(cartridge(4, 1, 1)));
+        assertInstanceOf(AxRom.class, Mappers.create(cartridge(7, 2, 0)));
+        assertThrows(IllegalStateException.class, () -> Mappers.create(cartridge(5, 1, 1)));
+    }
+}
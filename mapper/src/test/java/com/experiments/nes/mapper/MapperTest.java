@@ -0,0 +1,130 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static com.experiments.nes.mapper.CartridgeTest.cartridge;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MapperTest {
+    // Index of the 1 KB PRG page mapped at a CPU address
+    static int prg(Mapper mapper, int address) {
+        return mapper.load((short) (address & 0xFC00));
+    }
+
+    static int chr(Mapper mapper, int address) {
+        return mapper.chr().load((short) (address & 0xFC00));
+    }
+
+    static void write(Mapper mapper, int address, int value) {
+        mapper.store((short) address, (byte) value);
+    }
+
+    @Nested
+    class NROM {
+        @Test
+        void testMirroredPrg() {
+            Mapper mapper = new Nrom(cartridge(0, 1, 1));
+
+            assertEquals(0, prg(mapper, 0x8000));
+            assertEquals(0, prg(mapper, 0xC000));
+            assertEquals(15, prg(mapper, 0xFC00));
+        }
+
+        @Test
+        void testPrgRam() {
+            Mapper mapper = new Nrom(cartridge(0, 2, 1));
+
+            write(mapper, 0x6123, 0x42);
+
+            assertEquals(0x42, mapper.load((short) 0x6123));
+            assertEquals(0x42, mapper.prgRam()[0x123]);
+        }
+
+        @Test
+        void testChrRam() {
+            Mapper mapper = new Nrom(cartridge(0, 1, 0));
+
+            mapper.chr().store((short) 0x1234, (byte) 0x42);
+
+            assertEquals(0x42, mapper.chr().load((short) 0x1234));
+        }
+
+        @Test
+        void testChrRomIsReadOnly() {
+            Mapper mapper = new Nrom(cartridge(0, 1, 1));
+
+            mapper.chr().store((short) 0x0400, (byte) 0x42);
+
+            assertEquals(1, chr(mapper, 0x0400));
+        }
+    }
+
+    @Nested
+    class UxROM {
+        @Test
+        void testSwitch() {
+            Mapper mapper = new UxRom(cartridge(2, 8, 0));
+
+            write(mapper, 0x8000, 3);
+
+            assertEquals(3 * 16, prg(mapper, 0x8000));
+            assertEquals(7 * 16, prg(mapper, 0xC000));
+        }
+
+        @Test
+        void testBankWraps() {
+            Mapper mapper = new UxRom(cartridge(2, 4, 0));
+
+            write(mapper, 0x8000, 5);
+
+            assertEquals(16, prg(mapper, 0x8000));
+        }
+    }
+
+    @Nested
+    class CNROM {
+        @Test
+        void testSwitch() {
+            Mapper mapper = new Cnrom(cartridge(3, 2, 4));
+
+            write(mapper, 0x8000, 2);
+
+            assertEquals(16, chr(mapper, 0x0000));
+            assertEquals(23, chr(mapper, 0x1C00));
+        }
+
+        @Test
+        void testSwitchInvalidatesTiles() {
+            Mapper mapper = new Cnrom(cartridge(3, 2, 4));
+            Ppu ppu = new Ppu(mapper.chr());
+            mapper.attach(ppu);
+            // Render the first line, which decodes tile 0 from the blank nametable
+            ppu.store((short) 0x2001, (byte) 0x08);
+            ppu.sync(200);
+
+            write(mapper, 0x8000, 1);
+
+            assertEquals(1, ppu.tiles().invalidations());
+            assertEquals(8, chr(mapper, 0x0000));
+        }
+    }
+
+    @Nested
+    class AxROM {
+        @Test
+        void testSwitch() {
+            Mapper mapper = new AxRom(cartridge(7, 8, 0));
+            assertEquals(0, prg(mapper, 0x8000));
+            assertEquals(Mirroring.SingleScreenLower, mapper.mirroring());
+
+            write(mapper, 0x8000, 0x12);
+
+            assertEquals(2 * 32, prg(mapper, 0x8000));
+            assertEquals(2 * 32 + 31, prg(mapper, 0xFC00));
+            assertEquals(Mirroring.SingleScreenUpper, mapper.mirroring());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.experiments.nes.mapper.CartridgeTest.cartridge;
+import static com.experiments.nes.mapper.MapperTest.chr;
+import static com.experiments.nes.mapper.MapperTest.prg;
+import static com.experiments.nes.mapper.MapperTest.write;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Mmc1Test {
+    private Mapper mapper;
+
+    @BeforeEach
+    void setup() {
+        mapper = new Mmc1(cartridge(1, 8, 4));
+    }
+
+    @Test
+    void testPowerOn() {
+        assertEquals(0, prg(mapper, 0x8000));
+        assertEquals(7 * 16, prg(mapper, 0xC000));
+    }
+
+    @Test
+    void testPrgBank() {
+        serial(0xE000, 3);
+
+        assertEquals(3 * 16, prg(mapper, 0x8000));
+        assertEquals(7 * 16, prg(mapper, 0xC000));
+    }
+
+    @Test
+    void testFixedFirstBank() {
+        serial(0x8000, 0x08);
+        serial(0xE000, 5);
+
+        assertEquals(0, prg(mapper, 0x8000));
+        assertEquals(5 * 16, prg(mapper, 0xC000));
+    }
+
+    @Test
+    void testPrg32k() {
+        serial(0x8000, 0x00);
+        serial(0xE000, 5);
+
+        assertEquals(4 * 16, prg(mapper, 0x8000));
+        assertEquals(5 * 16, prg(mapper, 0xC000));
+    }
+
+    @Test
+    void testChr4k() {
+        serial(0x8000, 0x1C);
+        serial(0xA000, 3);
+        serial(0xC000, 6);
+
+        assertEquals(12, chr(mapper, 0x0000));
+        assertEquals(24, chr(mapper, 0x1000));
+    }
+
+    @Test
+    void testChr8k() {
+        serial(0xA000, 3);
+
+        assertEquals(8, chr(mapper, 0x0000));
+        assertEquals(12, chr(mapper, 0x1000));
+    }
+
+    @Test
+    void testMirroring() {
+        serial(0x8000, 0x0E);
+        assertEquals(Mirroring.Vertical, mapper.mirroring());
+
+        serial(0x8000, 0x01);
+        assertEquals(Mirroring.SingleScreenUpper, mapper.mirroring());
+    }
+
+    @Test
+    void testResetClearsShift() {
+        write(mapper, 0xE000, 1);
+        write(mapper, 0xE000, 1);
+        write(mapper, 0x8000, 0x80);
+
+        serial(0xE000, 2);
+
+        assertEquals(2 * 16, prg(mapper, 0x8000));
+    }
+
+    @Test
+    void testPrgRamDisable() {
+        write(mapper, 0x6000, 0x42);
+        serial(0xE000, 0x10);
+
+        assertEquals(0, mapper.load((short) 0x6000));
+    }
+
+    private void serial(int address, int value) {
+        for (int i = 0; i < 5; i++) {
+            write(mapper, address, value >> i);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.experiments.nes.mapper;
+
+import com.experiments.nes.ppu.Mirroring;
+import com.experiments.nes.ppu.Ppu;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.experiments.nes.mapper.CartridgeTest.cartridge;
+import static com.experiments.nes.mapper.MapperTest.chr;
+import static com.experiments.nes.mapper.MapperTest.prg;
+import static com.experiments.nes.mapper.MapperTest.write;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mmc3Test {
+    private Mapper mapper;
+    private Ppu ppu;
+
+    @BeforeEach
+    void setup() {
+        mapper = new Mmc3(cartridge(4, 8, 16));
+        ppu = new Ppu(mapper.chr());
+        mapper.attach(ppu);
+    }
+
+    @Test
+    void testPrgBanks() {
+        write(mapper, 0x8000, 6);
+        write(mapper, 0x8001, 3);
+        write(mapper, 0x8000, 7);
+        write(mapper, 0x8001, 5);
+
+        assertEquals(3 * 8, prg(mapper, 0x8000));
+        assertEquals(5 * 8, prg(mapper, 0xA000));
+        assertEquals(14 * 8, prg(mapper, 0xC000));
+        assertEquals(15 * 8, prg(mapper, 0xE000));
+
+        write(mapper, 0x8000, 0x46);
+
+        assertEquals(14 * 8, prg(mapper, 0x8000));
+        assertEquals(3 * 8, prg(mapper, 0xC000));
+    }
+
+    @Test
+    void testChrBanks() {
+        write(mapper, 0x8000, 0);
+        write(mapper, 0x8001, 9);
+        write(mapper, 0x8000, 5);
+        write(mapper, 0x8001, 20);
+
+        assertEquals(8, chr(mapper, 0x0000));
+        assertEquals(9, chr(mapper, 0x0400));
+        assertEquals(20, chr(mapper, 0x1C00));
+
+        write(mapper, 0x8000, 0x80);
+
+        assertEquals(8, chr(mapper, 0x1000));
+        assertEquals(20, chr(mapper, 0x0C00));
+    }
+
+    @Test
+    void testMirroring() {
+        write(mapper, 0xA000, 1);
+
+        assertEquals(Mirroring.Horizontal, mapper.mirroring());
+    }
+
+    @Test
+    void testIrqDeadline() {
+        // Rendering enabled, interrupt after 8 line clocks
+        ppu.store((short) 0x2001, (byte) 0x18);
+        write(mapper, 0xC000, 7);
+        write(mapper, 0xC001, 0);
+        write(mapper, 0xE001, 0);
+
+        long deadline = mapper.deadline();
+
+        // The 8th clock is at dot 260 of line 7
+        assertEquals((7 * 341 + 260 + 2) / 3, deadline);
+        mapper.sync(deadline - 1);
+        assertFalse(mapper.irq());
+        mapper.sync(deadline);
+        assertTrue(mapper.irq());
+        assertEquals(Long.MAX_VALUE, mapper.deadline());
+    }
+
+    @Test
+    void testIrqReloads() {
+        ppu.store((short) 0x2001, (byte) 0x18);
+        write(mapper, 0xC000, 1);
+        write(mapper, 0xC001, 0);
+        write(mapper, 0xE001, 0);
+        mapper.sync(mapper.deadline());
+        assertTrue(mapper.irq());
+
+        write(mapper, 0xE000, 0);
+        write(mapper, 0xE001, 0);
+
+        assertFalse(mapper.irq());
+        // The counter reached zero, so the next clock reloads it and the one after raises the interrupt
+        long deadline = mapper.deadline();
+        assertEquals((3 * 341 + 260 + 2) / 3, deadline);
+        mapper.sync(deadline);
+        assertTrue(mapper.irq());
+    }
+
+    @Test
+    void testNoClocksWhenRenderingDisabled() {
+        write(mapper, 0xC000, 0);
+        write(mapper, 0xC001, 0);
+        write(mapper, 0xE001, 0);
+
+        mapper.sync(30000);
+
+        assertFalse(mapper.irq());
+        assertEquals(0, ppu.lineClocks());
+    }
+}
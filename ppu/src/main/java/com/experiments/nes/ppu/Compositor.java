@@ -0,0 +1,51 @@
+package com.experiments.nes.ppu;
+
+// Resolves background/sprite priority for a scanline and maps the winning palette indices to ARGB
+public interface Compositor {
+    // Composites WIDTH pixels of background (starting at fineX) and sprite line entries into the framebuffer at
+    // offset, using colors as the palette index to ARGB table. Returns whether sprite 0 overlapped the background.
+    boolean composite(byte[] background, int fineX, byte[] sprites, int[] colors, int[] framebuffer, int offset);
+
+    static Compositor scalar() {
+        return new ScalarCompositor();
+    }
+
+    static Compositor vector() {
+        if (!vectorAvailable()) {
+            throw new IllegalStateException("Module jdk.incubator.vector is not available, run with --add-modules jdk.incubator.vector");
+        }
+        try {
+            // Loaded reflectively so this class never links against the incubator module when it is absent
+            return (Compositor) vectorCompositor().getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the vector compositor", e);
+        }
+    }
+
+    // The vector compositor when the incubator module is present, the hardware has vectors wide enough for it and it
+    // is not disabled with -Dnes.ppu.vector=false
+    static Compositor create() {
+        if (vectorAvailable() && vectorPreferred() && Boolean.parseBoolean(System.getProperty("nes.ppu.vector", "true"))) {
+            return vector();
+        }
+        return scalar();
+    }
+
+    static boolean vectorPreferred() {
+        try {
+            return (Boolean) vectorCompositor().getDeclaredMethod("preferred").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to query the vector compositor", e);
+        }
+    }
+
+    private static Class<?> vectorCompositor() throws ClassNotFoundException {
+        return Class.forName("com.experiments.nes.ppu.VectorCompositor");
+    }
+
+    static boolean vectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+}
@@ -0,0 +1,75 @@
+package com.experiments.nes.ppu;
+
+import java.util.Arrays;
+
+import static com.experiments.nes.ppu.Ppu.HEIGHT;
+
+// Framebuffer rows that changed during a frame, with the span of changed pixels in each row
+public class DirtyRows {
+    private final long[] rows = new long[(HEIGHT + 63) >> 6];
+    private final int[] start = new int[HEIGHT];
+    private final int[] end = new int[HEIGHT];
+
+    public boolean dirty(int row) {
+        return (rows[row >> 6] & 1L << row) != 0;
+    }
+
+    // First dirty row at or after row, or -1 when there is none
+    public int next(int row) {
+        int word = row >> 6;
+        if (word >= rows.length) {
+            return -1;
+        }
+        long bits = rows[word] & -1L << row;
+        while (bits == 0) {
+            if (++word == rows.length) {
+                return -1;
+            }
+            bits = rows[word];
+        }
+        return word << 6 | Long.numberOfTrailingZeros(bits);
+    }
+
+    public int count() {
+        int count = 0;
+        for (long bits : rows) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    public boolean any() {
+        for (long bits : rows) {
+            if (bits != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // First changed pixel of a dirty row
+    public int start(int row) {
+        return start[row];
+    }
+
+    // One past the last changed pixel of a dirty row
+    public int end(int row) {
+        return end[row];
+    }
+
+    void mark(int row, int from, int to) {
+        if (dirty(row)) {
+            start[row] = Math.min(start[row], from);
+            end[row] = Math.max(end[row], to);
+        }
+        else {
+            rows[row >> 6] |= 1L << row;
+            start[row] = from;
+            end[row] = to;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(rows, 0);
+    }
+}
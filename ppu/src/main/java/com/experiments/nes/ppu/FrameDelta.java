@@ -0,0 +1,39 @@
+package com.experiments.nes.ppu;
+
+import static com.experiments.nes.ppu.Ppu.HEIGHT;
+import static com.experiments.nes.ppu.Ppu.WIDTH;
+
+// Encodes the changed spans of a frame as (row, start, length, pixels...) records, so a consumer holding the previous
+// frame can bring it up to date with apply()
+public class FrameDelta {
+    public static final int MAX_LENGTH = HEIGHT * (3 + WIDTH);
+
+    private FrameDelta() {
+    }
+
+    // Returns the number of ints written to delta, which must hold MAX_LENGTH ints for a frame that changed entirely
+    public static int encode(int[] framebuffer, DirtyRows dirty, int[] delta) {
+        int length = 0;
+        for (int row = dirty.next(0); row >= 0; row = dirty.next(row + 1)) {
+            int start = dirty.start(row);
+            int count = dirty.end(row) - start;
+            delta[length++] = row;
+            delta[length++] = start;
+            delta[length++] = count;
+            System.arraycopy(framebuffer, row * WIDTH + start, delta, length, count);
+            length += count;
+        }
+        return length;
+    }
+
+    public static void apply(int[] delta, int length, int[] framebuffer) {
+        int position = 0;
+        while (position < length) {
+            int row = delta[position++];
+            int start = delta[position++];
+            int count = delta[position++];
+            System.arraycopy(delta, position, framebuffer, row * WIDTH + start, count);
+            position += count;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.experiments.nes.ppu;
+
+// 64-bit hash of a frame's pixels, built a line at a time as the PPU produces them so a frame can be checked without
+// being drawn or encoded. Lines are hashed with four independent xxHash64-style accumulators over pairs of pixels,
+// and line hashes are folded into the frame in order. Not cryptographic.
+public class FrameHash {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private long hash;
+    private int lines;
+    private long frameHash;
+    private long frames;
+
+    // Hash of a whole framebuffer, as the PPU would have built it from the same lines
+    public static long of(int[] framebuffer) {
+        FrameHash hash = new FrameHash();
+        for (int line = 0; line < Ppu.HEIGHT; line++) {
+            hash.line(line, framebuffer, line * Ppu.WIDTH);
+        }
+        return hash.frameHash;
+    }
+
+    // Hash of the latest frame whose lines were all hashed
+    public long frameHash() {
+        return frameHash;
+    }
+
+    // Number of frames hashed
+    public long frames() {
+        return frames;
+    }
+
+    // Adds a line, starting over at line 0. A frame that was not hashed from its first line is not completed.
+    void line(int line, int[] pixels, int offset) {
+        if (line == 0) {
+            hash = P5 + (long) Ppu.WIDTH * Ppu.HEIGHT * 4;
+            lines = 0;
+        }
+        else if (lines != line) {
+            return;
+        }
+        hash = Long.rotateLeft(hash ^ round(0, line(pixels, offset)), 27) * P1 + P4;
+        lines++;
+        if (lines == Ppu.HEIGHT) {
+            frameHash = avalanche(hash);
+            frames++;
+        }
+    }
+
+    // Drops a partly hashed frame, e.g. when the PPU is restored part way into one
+    void reset() {
+        lines = -1;
+    }
+
+    private static long line(int[] pixels, int offset) {
+        long a1 = P1 + P2;
+        long a2 = P2;
+        long a3 = 0;
+        long a4 = -P1;
+        for (int i = offset, end = offset + Ppu.WIDTH; i < end; i += 8) {
+            a1 = round(a1, pack(pixels[i], pixels[i + 1]));
+            a2 = round(a2, pack(pixels[i + 2], pixels[i + 3]));
+            a3 = round(a3, pack(pixels[i + 4], pixels[i + 5]));
+            a4 = round(a4, pack(pixels[i + 6], pixels[i + 7]));
+        }
+        return Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+    }
+
+    private static long pack(int first, int second) {
+        return (long) first << 32 | second & 0xFFFFFFFFL;
+    }
+
+    private static long round(long accumulator, long value) {
+        return Long.rotateLeft(accumulator + value * P2, 31) * P1;
+    }
+
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        return hash ^ hash >>> 32;
+    }
+}
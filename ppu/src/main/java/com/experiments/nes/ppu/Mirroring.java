@@ -0,0 +1,27 @@
+package com.experiments.nes.ppu;
+
+public enum Mirroring {
+    Horizontal(0, 0, 1, 1),
+    Vertical(0, 1, 0, 1),
+    SingleScreenLower(0, 0, 0, 0),
+    SingleScreenUpper(1, 1, 1, 1),
+    FourScreen(0, 1, 2, 3);
+
+    private static final Mirroring[] VALUES = values();
+
+    private final int[] pages;
+
+    Mirroring(int... pages) {
+        this.pages = pages;
+    }
+
+    // Without the copy values() makes, for restoring snapshots
+    public static Mirroring of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Offset into the nametable RAM of a PPU address in $2000-$3EFF
+    int offset(int address) {
+        return pages[(address >> 10) & 0x03] << 10 | (address & 0x03FF);
+    }
+}
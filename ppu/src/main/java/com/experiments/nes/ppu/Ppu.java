@@ -0,0 +1,871 @@
+package com.experiments.nes.ppu;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.scheduler.Device;
+import com.experiments.nes.snapshot.CopyOnWritePages;
+import com.experiments.nes.snapshot.DirtyPages;
+import com.experiments.nes.snapshot.Snapshot;
+import com.experiments.nes.snapshot.Snapshottable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class Ppu implements Memory, Device, Snapshottable {
+    public static final int WIDTH = 256;
+    public static final int HEIGHT = 240;
+    public static final int DOTS = 341;
+    public static final int SCANLINES = 262;
+    public static final int VBLANK_SCANLINE = 241;
+    public static final int PRE_RENDER_SCANLINE = 261;
+    public static final int LINE_CLOCK_DOT = 260;
+
+    private static final int CONTROL_INCREMENT = 0x04;
+    private static final int CONTROL_SPRITE_TABLE = 0x08;
+    private static final int CONTROL_BACKGROUND_TABLE = 0x10;
+    private static final int CONTROL_TALL_SPRITES = 0x20;
+    private static final int CONTROL_NMI = 0x80;
+    private static final int MASK_GRAYSCALE = 0x01;
+    private static final int MASK_BACKGROUND_LEFT = 0x02;
+    private static final int MASK_SPRITES_LEFT = 0x04;
+    private static final int MASK_BACKGROUND = 0x08;
+    private static final int MASK_SPRITES = 0x10;
+    private static final int STATUS_OVERFLOW = 0x20;
+    private static final int STATUS_SPRITE_ZERO = 0x40;
+    private static final int STATUS_VBLANK = 0x80;
+    // Comfortably more than saveRegisters writes
+    private static final int REGISTERS_SIZE = 1024;
+
+    // Sprite line entries: palette index 16-31 in the low bits, 0 when transparent
+
+    static final int SPRITE_COLOR = 0x1F;
+    static final int SPRITE_BEHIND = 0x20;
+    static final int SPRITE_ZERO = 0x40;
+
+    public enum Mode {
+        // Renders each visible line in one pass when the PPU reaches the end of it
+        Scanline,
+        // Runs the background fetch pipeline and sprite output dot by dot, for games that change registers mid-line
+        Dot
+    }
+
+    private final Memory chr;
+    private final Mode mode;
+    private final TileCache tiles;
+    private final Compositor compositor;
+    private final int[] colors = new int[0x20];
+    // One page per nametable
+    private final CopyOnWritePages nametables = new CopyOnWritePages(0x1000, 10);
+    private final byte[] palette = new byte[0x20];
+    private final byte[] oam = new byte[0x100];
+    // Allocated once there is output, which a fork used for search may never have
+    private int[] framebuffer;
+    private final int[] line = new int[WIDTH];
+    // Rows changed by the frame being drawn and by the last completed frame, swapped when vertical blank starts
+    private DirtyRows drawing = new DirtyRows();
+    private DirtyRows drawn = new DirtyRows();
+    private Mirroring mirroring = Mirroring.Horizontal;
+    private boolean output;
+    // Hashes lines as they are produced, with or without output
+    private FrameHash hash;
+
+    private int control;
+    private int mask;
+    private int status;
+    private int oamAddress;
+    private int v;
+    private int t;
+    private int fineX;
+    private boolean w;
+    private int readBuffer;
+    private int latch;
+
+    private int dot;
+    private int scanline;
+    private long frame;
+    // CPU cycle the PPU has been run up to, three dots per cycle
+    private long cycle;
+    // Rendered lines counted at LINE_CLOCK_DOT, where fetching sprite patterns from $1000 raises A12
+    private long lineClocks;
+
+    // Sprites selected for the line being drawn
+    private int spriteCount;
+    private final int[] spriteX = new int[8];
+    private final int[] spriteLow = new int[8];
+    private final int[] spriteHigh = new int[8];
+    private final int[] spritePattern = new int[8];
+    private final int[] spriteAttributes = new int[8];
+    private boolean spriteZeroSelected;
+
+    // Scanline mode line buffers, sized for the extra tile fetched when fine X scroll is non-zero
+    private final byte[] backgroundLine = new byte[WIDTH + 8];
+    private final byte[] spriteLine = new byte[WIDTH];
+
+    // Dot mode background pipeline
+    private int nextTile;
+    private int nextAttribute;
+    private int nextLow;
+    private int nextHigh;
+    private int patternShiftLow;
+    private int patternShiftHigh;
+    private int attributeShiftLow;
+    private int attributeShiftHigh;
+
+    public Ppu(Memory chr, Mode mode, Compositor compositor) {
+        this(chr, mode, compositor, true);
+    }
+
+    private Ppu(Memory chr, Mode mode, Compositor compositor, boolean output) {
+        this.chr = chr;
+        this.mode = mode;
+        this.tiles = new TileCache(chr, true);
+        this.compositor = compositor;
+        this.output = output;
+        this.framebuffer = output ? new int[WIDTH * HEIGHT] : null;
+    }
+
+    public Ppu(Memory chr, Mode mode) {
+        this(chr, mode, Compositor.create());
+    }
+
+    public Ppu(Memory chr) {
+        this(chr, Mode.Scanline);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public Compositor compositor() {
+        return compositor;
+    }
+
+    public void mirroring(Mirroring mirroring) {
+        this.mirroring = mirroring;
+    }
+
+    // Whether lines are drawn into the framebuffer. Without output or hashing only sprite zero lines are composited,
+    // for the hit.
+    public void output(boolean output) {
+        this.output = output;
+        if (output && framebuffer == null) {
+            framebuffer = new int[WIDTH * HEIGHT];
+        }
+    }
+
+    public boolean output() {
+        return output;
+    }
+
+    // Whether each frame's lines are hashed as they are produced. Hashing composites every line like output does, but
+    // leaves the framebuffer alone.
+    public void hashing(boolean hashing) {
+        if (hashing != (hash != null)) {
+            hash = hashing ? new FrameHash() : null;
+        }
+    }
+
+    public boolean hashing() {
+        return hash != null;
+    }
+
+    // Hash of the latest frame hashed from its first line to its last, or 0 before there is one
+    public long frameHash() {
+        return hash != null ? hash.frameHash() : 0;
+    }
+
+    public TileCache tiles() {
+        return tiles;
+    }
+
+    // Called when pattern memory changes behind the PPU's back, e.g. by a CHR bank switch
+    public void chrChanged(int address, int length) {
+        tiles.invalidate(address, length);
+    }
+
+    // The framebuffer and dirty rows are output rather than state and are not saved; the next frame redraws them
+    @Override
+    public void save(ByteBuffer buffer) {
+        save(buffer, null);
+    }
+
+    @Override
+    public void saveChanges(ByteBuffer buffer, DirtyPages changed) {
+        save(buffer, changed);
+    }
+
+    // Nametables go last so that fork can copy everything before them
+    private void save(ByteBuffer buffer, DirtyPages changed) {
+        saveRegisters(buffer);
+        Snapshot.put(buffer, nametables, changed);
+    }
+
+    private void saveRegisters(ByteBuffer buffer) {
+        buffer.putInt(control).putInt(mask).putInt(status).putInt(oamAddress);
+        buffer.putInt(v).putInt(t).putInt(fineX);
+        Snapshot.put(buffer, w);
+        buffer.putInt(readBuffer).putInt(latch);
+        buffer.putInt(dot).putInt(scanline).putLong(frame).putLong(cycle).putLong(lineClocks);
+        buffer.put((byte) mirroring.ordinal());
+        Snapshot.put(buffer, palette);
+        Snapshot.put(buffer, oam);
+        buffer.putInt(spriteCount);
+        Snapshot.put(buffer, spriteX);
+        Snapshot.put(buffer, spriteLow);
+        Snapshot.put(buffer, spriteHigh);
+        Snapshot.put(buffer, spritePattern);
+        Snapshot.put(buffer, spriteAttributes);
+        Snapshot.put(buffer, spriteZeroSelected);
+        buffer.putInt(nextTile).putInt(nextAttribute).putInt(nextLow).putInt(nextHigh);
+        buffer.putInt(patternShiftLow).putInt(patternShiftHigh).putInt(attributeShiftLow).putInt(attributeShiftHigh);
+    }
+
+    @Override
+    public void restore(ByteBuffer buffer) {
+        restoreRegisters(buffer);
+        Snapshot.get(buffer, nametables);
+    }
+
+    private void restoreRegisters(ByteBuffer buffer) {
+        control = buffer.getInt();
+        mask = buffer.getInt();
+        status = buffer.getInt();
+        oamAddress = buffer.getInt();
+        v = buffer.getInt();
+        t = buffer.getInt();
+        fineX = buffer.getInt();
+        w = Snapshot.getBoolean(buffer);
+        readBuffer = buffer.getInt();
+        latch = buffer.getInt();
+        dot = buffer.getInt();
+        scanline = buffer.getInt();
+        frame = buffer.getLong();
+        cycle = buffer.getLong();
+        lineClocks = buffer.getLong();
+        mirroring = Mirroring.of(buffer.get());
+        Snapshot.get(buffer, palette);
+        Snapshot.get(buffer, oam);
+        spriteCount = buffer.getInt();
+        Snapshot.get(buffer, spriteX);
+        Snapshot.get(buffer, spriteLow);
+        Snapshot.get(buffer, spriteHigh);
+        Snapshot.get(buffer, spritePattern);
+        Snapshot.get(buffer, spriteAttributes);
+        spriteZeroSelected = Snapshot.getBoolean(buffer);
+        nextTile = buffer.getInt();
+        nextAttribute = buffer.getInt();
+        nextLow = buffer.getInt();
+        nextHigh = buffer.getInt();
+        patternShiftLow = buffer.getInt();
+        patternShiftHigh = buffer.getInt();
+        attributeShiftLow = buffer.getInt();
+        attributeShiftHigh = buffer.getInt();
+        // CHR may have been restored too
+        tiles.invalidateAll();
+        if (hash != null) {
+            hash.reset();
+        }
+    }
+
+    // A copy of this PPU reading pattern memory from the given CHR, e.g. a forked board's, with the nametables shared
+    // copy-on-write. The fork has no output until asked for, and its own compositor.
+    public Ppu fork(Memory chr) {
+        Ppu fork = new Ppu(chr, mode, Compositor.create(), false);
+        ByteBuffer buffer = ByteBuffer.allocate(REGISTERS_SIZE);
+        saveRegisters(buffer);
+        fork.restoreRegisters(buffer.flip());
+        fork.nametables.share(nametables);
+        return fork;
+    }
+
+    public int[] framebuffer() {
+        if (framebuffer == null) {
+            framebuffer = new int[WIDTH * HEIGHT];
+        }
+        return framebuffer;
+    }
+
+    // Rows the last completed frame changed relative to the frame before it
+    public DirtyRows dirtyRows() {
+        return drawn;
+    }
+
+    public long frame() {
+        return frame;
+    }
+
+    // Frames completed, counting a frame as complete once its vertical blank has started
+    public long vblanks() {
+        boolean started = scanline > VBLANK_SCANLINE || (scanline == VBLANK_SCANLINE && dot >= 1);
+        return frame + (started ? 1 : 0);
+    }
+
+    public int scanline() {
+        return scanline;
+    }
+
+    public int dot() {
+        return dot;
+    }
+
+    // Level of the NMI output, which the CPU samples for a falling edge
+    public boolean nmi() {
+        return (status & STATUS_VBLANK) != 0 && (control & CONTROL_NMI) != 0;
+    }
+
+    @Override
+    public byte load(short address) {
+        switch (address & 0x0007) {
+            case 2 -> {
+                int result = (status & 0xE0) | (latch & 0x1F);
+                status &= ~STATUS_VBLANK;
+                w = false;
+                latch = result;
+            }
+            case 4 -> latch = oam[oamAddress] & 0xFF;
+            case 7 -> {
+                if ((v & 0x3FFF) < 0x3F00) {
+                    latch = readBuffer;
+                    readBuffer = read(v);
+                }
+                else {
+                    // Palette reads are immediate, the buffer picks up the nametable byte underneath
+                    latch = (latch & 0xC0) | read(v);
+                    readBuffer = read(v - 0x1000);
+                }
+                incrementAddress();
+            }
+            default -> {
+                // Write-only registers return the last value on the PPU data bus
+            }
+        }
+        return (byte) latch;
+    }
+
+    @Override
+    public void store(short address, byte value) {
+        int data = value & 0xFF;
+        latch = data;
+        switch (address & 0x0007) {
+            case 0 -> {
+                control = data;
+                t = (t & ~0x0C00) | ((data & 0x03) << 10);
+            }
+            case 1 -> mask = data;
+            case 3 -> oamAddress = data;
+            case 4 -> {
+                oam[oamAddress] = value;
+                oamAddress = (oamAddress + 1) & 0xFF;
+            }
+            case 5 -> {
+                if (!w) {
+                    t = (t & ~0x001F) | (data >> 3);
+                    fineX = data & 0x07;
+                }
+                else {
+                    t = (t & ~0x73E0) | ((data & 0x07) << 12) | ((data & 0xF8) << 2);
+                }
+                w = !w;
+            }
+            case 6 -> {
+                if (!w) {
+                    t = (t & 0x00FF) | ((data & 0x3F) << 8);
+                }
+                else {
+                    t = (t & 0xFF00) | data;
+                    v = t;
+                }
+                w = !w;
+            }
+            case 7 -> {
+                write(v, data);
+                incrementAddress();
+            }
+            default -> {
+                // $2002 is read-only
+            }
+        }
+    }
+
+    // One CPU cycle is three PPU dots
+    public void clock() {
+        sync(cycle + 1);
+    }
+
+    public long cycle() {
+        return cycle;
+    }
+
+    @Override
+    public void sync(long cycle) {
+        if (cycle <= this.cycle) {
+            return;
+        }
+        advance((int) (cycle - this.cycle) * 3);
+        this.cycle = cycle;
+    }
+
+    public long lineClocks() {
+        return lineClocks;
+    }
+
+    // CPU cycle by which lineClocks() will have grown by the given count, if rendering stays enabled. Like deadline(),
+    // it may be a dot early for every odd frame skip it crosses.
+    public long lineClockDeadline(int clocks) {
+        long dots = 0;
+        int line = scanline;
+        int position = dot;
+        while (true) {
+            if ((line < HEIGHT || line == PRE_RENDER_SCANLINE) && position < LINE_CLOCK_DOT) {
+                dots += LINE_CLOCK_DOT - position;
+                position = LINE_CLOCK_DOT;
+                if (--clocks == 0) {
+                    break;
+                }
+            }
+            dots += DOTS - position;
+            position = 0;
+            line++;
+            if (line == SCANLINES) {
+                line = 0;
+                dots--;
+            }
+        }
+        return cycle + (dots + 2) / 3;
+    }
+
+    // The start of the next vertical blank, which raises NMI and completes a frame
+    @Override
+    public long deadline() {
+        int position = scanline * DOTS + dot;
+        int vblank = VBLANK_SCANLINE * DOTS + 1;
+        // Across the pre-render line the odd frame skip may save a dot, so ask one dot early and let sync run again
+        int dots = position < vblank ? vblank - position : DOTS * SCANLINES - position + vblank - 1;
+        return cycle + (dots + 2) / 3;
+    }
+
+    public void advance(int dots) {
+        if (mode == Mode.Scanline) {
+            advanceScanlines(dots);
+        }
+        else {
+            for (int i = 0; i < dots; i++) {
+                clockDot();
+            }
+        }
+    }
+
+    int read(int address) {
+        address &= 0x3FFF;
+        if (address < 0x2000) {
+            return chr.load((short) address) & 0xFF;
+        }
+        if (address < 0x3F00) {
+            return nametables.get(mirroring.offset(address)) & 0xFF;
+        }
+        return palette[paletteIndex(address)] & 0xFF;
+    }
+
+    void write(int address, int value) {
+        address &= 0x3FFF;
+        if (address < 0x2000) {
+            chr.store((short) address, (byte) value);
+            tiles.invalidate(address);
+        }
+        else if (address < 0x3F00) {
+            nametables.set(mirroring.offset(address), (byte) value);
+        }
+        else {
+            palette[paletteIndex(address)] = (byte) value;
+        }
+    }
+
+    private static int paletteIndex(int address) {
+        int index = address & 0x1F;
+        // The backdrop entries of the sprite palettes mirror the background ones
+        return (index & 0x13) == 0x10 ? index & 0x0F : index;
+    }
+
+    private void incrementAddress() {
+        v = (v + ((control & CONTROL_INCREMENT) != 0 ? 32 : 1)) & 0x7FFF;
+    }
+
+    private boolean renderingEnabled() {
+        return (mask & (MASK_BACKGROUND | MASK_SPRITES)) != 0;
+    }
+
+    private void advanceScanlines(int dots) {
+        // Only dots 1, 257, LINE_CLOCK_DOT and the end of the line do anything in scanline mode, so jump between them
+        while (dots > 0) {
+            int next = dot < 1 ? 1 : dot < 257 ? 257 : dot < LINE_CLOCK_DOT ? LINE_CLOCK_DOT : DOTS;
+            int step = Math.min(dots, next - dot);
+            dot += step;
+            dots -= step;
+            if (dot == 1) {
+                startOfLine();
+            }
+            else if (dot == 257) {
+                if (scanline < HEIGHT) {
+                    renderLine();
+                }
+                if (renderingEnabled() && (scanline < HEIGHT || scanline == PRE_RENDER_SCANLINE)) {
+                    incrementY();
+                    copyHorizontal();
+                    if (scanline == PRE_RENDER_SCANLINE) {
+                        copyVertical();
+                    }
+                }
+            }
+            else if (dot == LINE_CLOCK_DOT) {
+                clockLine();
+            }
+            else if (dot == DOTS) {
+                endOfLine();
+            }
+        }
+    }
+
+    private void clockLine() {
+        if (renderingEnabled() && (scanline < HEIGHT || scanline == PRE_RENDER_SCANLINE)) {
+            lineClocks++;
+        }
+    }
+
+    private void startOfLine() {
+        if (scanline == VBLANK_SCANLINE) {
+            status |= STATUS_VBLANK;
+            // The last visible line has been drawn
+            DirtyRows completed = drawing;
+            drawing = drawn;
+            drawn = completed;
+            drawing.clear();
+        }
+        else if (scanline == PRE_RENDER_SCANLINE) {
+            status &= ~(STATUS_VBLANK | STATUS_SPRITE_ZERO | STATUS_OVERFLOW);
+        }
+    }
+
+    private void endOfLine() {
+        dot = 0;
+        scanline++;
+        if (scanline == SCANLINES) {
+            scanline = 0;
+            frame++;
+            // Odd frames skip the first dot when rendering is enabled
+            if ((frame & 1) != 0 && renderingEnabled()) {
+                dot = 1;
+            }
+        }
+    }
+
+    private void renderLine() {
+        if (!renderingEnabled()) {
+            if (output || hash != null) {
+                Arrays.fill(line, color(0));
+                commitLine();
+            }
+            return;
+        }
+        // Sprites are selected a line ahead on hardware, so sprites for this line use the previous line's Y
+        evaluateSprites(scanline - 1);
+        if (!output && hash == null && !spriteZeroSelected) {
+            return;
+        }
+        fetchBackgroundLine();
+        fetchSpriteLine();
+
+        boolean background = (mask & MASK_BACKGROUND) != 0;
+        boolean sprites = (mask & MASK_SPRITES) != 0;
+        if ((mask & MASK_BACKGROUND_LEFT) == 0 || !background) {
+            Arrays.fill(backgroundLine, fineX, fineX + 8, (byte) 0);
+            if (!background) {
+                Arrays.fill(backgroundLine, (byte) 0);
+            }
+        }
+        if ((mask & MASK_SPRITES_LEFT) == 0 || !sprites) {
+            Arrays.fill(spriteLine, 0, 8, (byte) 0);
+        }
+        int colorMask = (mask & MASK_GRAYSCALE) != 0 ? 0x30 : 0x3F;
+        for (int index = 0; index < colors.length; index++) {
+            colors[index] = Palette.ARGB[palette[index] & colorMask];
+        }
+        if (compositor.composite(backgroundLine, fineX, spriteLine, colors, line, 0)) {
+            status |= STATUS_SPRITE_ZERO;
+        }
+        commitLine();
+    }
+
+    // Hashes the line and copies its changed span into the framebuffer, marking the row dirty
+    private void commitLine() {
+        if (hash != null) {
+            hash.line(scanline, line, 0);
+        }
+        if (!output) {
+            return;
+        }
+        int offset = scanline * WIDTH;
+        int start = Arrays.mismatch(line, 0, WIDTH, framebuffer, offset, offset + WIDTH);
+        if (start < 0) {
+            return;
+        }
+        int end = WIDTH;
+        while (line[end - 1] == framebuffer[offset + end - 1]) {
+            end--;
+        }
+        System.arraycopy(line, start, framebuffer, offset + start, end - start);
+        drawing.mark(scanline, start, end);
+    }
+
+    private void fetchBackgroundLine() {
+        int table = (control & CONTROL_BACKGROUND_TABLE) != 0 ? 0x100 : 0x000;
+        int fineY = (v >> 12) & 0x07;
+        int address = v;
+        byte[] pixels = tiles.pixels();
+        for (int tile = 0; tile < 33; tile++) {
+            int attributeShift = ((address >> 4) & 0x04) | (address & 0x02);
+            int attribute = ((read(attributeAddress(address)) >> attributeShift) & 0x03) << 2;
+            int row = tiles.row(table | read(0x2000 | (address & 0x0FFF)), fineY);
+            for (int x = tile * 8, end = x + 8; x < end; x++, row++) {
+                int pixel = pixels[row];
+                backgroundLine[x] = (byte) (pixel == 0 ? 0 : attribute | pixel);
+            }
+            address = incrementCoarseX(address);
+        }
+    }
+
+    private void fetchSpriteLine() {
+        Arrays.fill(spriteLine, (byte) 0);
+        // Draw back to front, so lower OAM indices win regardless of their background priority
+        for (int sprite = spriteCount - 1; sprite >= 0; sprite--) {
+            int attributes = spriteAttributes[sprite];
+            int flags = (16 + ((attributes & 0x03) << 2))
+                    | ((attributes & 0x20) != 0 ? SPRITE_BEHIND : 0)
+                    | (sprite == 0 && spriteZeroSelected ? SPRITE_ZERO : 0);
+            int pattern = spritePattern[sprite];
+            byte[] pixels = (attributes & 0x40) != 0 ? tiles.flippedPixels() : tiles.pixels();
+            int row = tiles.row(pattern >> 4, pattern & 0x07);
+            for (int x = spriteX[sprite], end = Math.min(x + 8, WIDTH); x < end; x++, row++) {
+                int pixel = pixels[row];
+                if (pixel != 0) {
+                    spriteLine[x] = (byte) (flags | pixel);
+                }
+            }
+        }
+    }
+
+    // Selects the first eight sprites covering the line after the given one and fetches their patterns
+    private void evaluateSprites(int line) {
+        spriteCount = 0;
+        spriteZeroSelected = false;
+        if (line < 0 || line >= HEIGHT) {
+            return;
+        }
+        int height = (control & CONTROL_TALL_SPRITES) != 0 ? 16 : 8;
+        for (int sprite = 0; sprite < 64; sprite++) {
+            int row = line - (oam[sprite * 4] & 0xFF);
+            if (row < 0 || row >= height) {
+                continue;
+            }
+            if (spriteCount == 8) {
+                status |= STATUS_OVERFLOW;
+                break;
+            }
+            int tile = oam[sprite * 4 + 1] & 0xFF;
+            int attributes = oam[sprite * 4 + 2] & 0xFF;
+            if ((attributes & 0x80) != 0) {
+                row = height - 1 - row;
+            }
+            int pattern;
+            if (height == 16) {
+                pattern = (tile & 0x01) << 12 | ((tile & 0xFE) + (row >> 3)) << 4 | (row & 0x07);
+            }
+            else {
+                pattern = ((control & CONTROL_SPRITE_TABLE) != 0 ? 0x1000 : 0x0000) | tile << 4 | row;
+            }
+            if (mode == Mode.Dot) {
+                int low = read(pattern);
+                int high = read(pattern + 8);
+                if ((attributes & 0x40) != 0) {
+                    low = Integer.reverse(low) >>> 24;
+                    high = Integer.reverse(high) >>> 24;
+                }
+                spriteLow[spriteCount] = low;
+                spriteHigh[spriteCount] = high;
+            }
+            spriteX[spriteCount] = oam[sprite * 4 + 3] & 0xFF;
+            spritePattern[spriteCount] = pattern;
+            spriteAttributes[spriteCount] = attributes;
+            if (sprite == 0) {
+                spriteZeroSelected = true;
+            }
+            spriteCount++;
+        }
+    }
+
+    private void clockDot() {
+        boolean rendering = renderingEnabled();
+        boolean visible = scanline < HEIGHT;
+        boolean preRender = scanline == PRE_RENDER_SCANLINE;
+        if (dot == 1) {
+            startOfLine();
+        }
+        else if (dot == LINE_CLOCK_DOT) {
+            clockLine();
+        }
+        if (rendering && (visible || preRender)) {
+            if ((dot >= 2 && dot <= 257) || (dot >= 321 && dot <= 337)) {
+                shiftBackground();
+                switch ((dot - 1) & 0x07) {
+                    case 0 -> {
+                        loadBackground();
+                        nextTile = read(0x2000 | (v & 0x0FFF));
+                    }
+                    case 2 -> nextAttribute = (read(attributeAddress(v))
+                            >> (((v >> 4) & 0x04) | (v & 0x02))) & 0x03;
+                    case 4 -> nextLow = read(backgroundPattern());
+                    case 6 -> nextHigh = read(backgroundPattern() + 8);
+                    case 7 -> v = incrementCoarseX(v);
+                    default -> {
+                    }
+                }
+            }
+            if (dot == 256) {
+                incrementY();
+            }
+            else if (dot == 257) {
+                loadBackground();
+                copyHorizontal();
+                evaluateSprites(preRender ? -1 : scanline);
+            }
+            else if (preRender && dot >= 280 && dot <= 304) {
+                copyVertical();
+            }
+        }
+        if (visible && dot >= 1 && dot <= WIDTH) {
+            renderDot(dot - 1);
+        }
+        dot++;
+        if (dot == DOTS) {
+            endOfLine();
+        }
+    }
+
+    private void renderDot(int x) {
+        if (!renderingEnabled()) {
+            plot(x, color(0));
+            return;
+        }
+        int backgroundPixel = 0;
+        if ((mask & MASK_BACKGROUND) != 0 && (x >= 8 || (mask & MASK_BACKGROUND_LEFT) != 0)) {
+            int bit = 0x8000 >> fineX;
+            int pixel = ((patternShiftLow & bit) != 0 ? 1 : 0) | ((patternShiftHigh & bit) != 0 ? 2 : 0);
+            if (pixel != 0) {
+                int attribute = ((attributeShiftLow & bit) != 0 ? 1 : 0) | ((attributeShiftHigh & bit) != 0 ? 2 : 0);
+                backgroundPixel = attribute << 2 | pixel;
+            }
+        }
+        int pixel = backgroundPixel;
+        if ((mask & MASK_SPRITES) != 0 && (x >= 8 || (mask & MASK_SPRITES_LEFT) != 0)) {
+            for (int sprite = 0; sprite < spriteCount; sprite++) {
+                int column = x - spriteX[sprite];
+                if (column < 0 || column > 7) {
+                    continue;
+                }
+                int spritePixel = ((spriteLow[sprite] >> (7 - column)) & 0x01)
+                        | (((spriteHigh[sprite] >> (7 - column)) & 0x01) << 1);
+                if (spritePixel == 0) {
+                    continue;
+                }
+                int attributes = spriteAttributes[sprite];
+                if (sprite == 0 && spriteZeroSelected && backgroundPixel != 0 && x != WIDTH - 1) {
+                    status |= STATUS_SPRITE_ZERO;
+                }
+                if (backgroundPixel == 0 || (attributes & 0x20) == 0) {
+                    pixel = 16 + ((attributes & 0x03) << 2) + spritePixel;
+                }
+                break;
+            }
+        }
+        plot(x, Palette.ARGB[palette[pixel] & ((mask & MASK_GRAYSCALE) != 0 ? 0x30 : 0x3F)]);
+    }
+
+    private void plot(int x, int color) {
+        if (hash != null) {
+            line[x] = color;
+            if (x == WIDTH - 1) {
+                hash.line(scanline, line, 0);
+            }
+        }
+        if (!output) {
+            return;
+        }
+        int offset = scanline * WIDTH + x;
+        if (framebuffer[offset] != color) {
+            framebuffer[offset] = color;
+            drawing.mark(scanline, x, x + 1);
+        }
+    }
+
+    private int backgroundPattern() {
+        return ((control & CONTROL_BACKGROUND_TABLE) != 0 ? 0x1000 : 0x0000) | nextTile << 4 | ((v >> 12) & 0x07);
+    }
+
+    private void shiftBackground() {
+        patternShiftLow = (patternShiftLow << 1) & 0xFFFF;
+        patternShiftHigh = (patternShiftHigh << 1) & 0xFFFF;
+        attributeShiftLow = (attributeShiftLow << 1) & 0xFFFF;
+        attributeShiftHigh = (attributeShiftHigh << 1) & 0xFFFF;
+    }
+
+    private void loadBackground() {
+        patternShiftLow = (patternShiftLow & 0xFF00) | nextLow;
+        patternShiftHigh = (patternShiftHigh & 0xFF00) | nextHigh;
+        attributeShiftLow = (attributeShiftLow & 0xFF00) | ((nextAttribute & 0x01) != 0 ? 0xFF : 0x00);
+        attributeShiftHigh = (attributeShiftHigh & 0xFF00) | ((nextAttribute & 0x02) != 0 ? 0xFF : 0x00);
+    }
+
+    private int color(int index) {
+        return Palette.ARGB[palette[index] & ((mask & MASK_GRAYSCALE) != 0 ? 0x30 : 0x3F)];
+    }
+
+    private static int attributeAddress(int address) {
+        return 0x23C0 | (address & 0x0C00) | ((address >> 4) & 0x38) | ((address >> 2) & 0x07);
+    }
+
+    private static int incrementCoarseX(int address) {
+        if ((address & 0x001F) == 31) {
+            // Wrap into the horizontally adjacent nametable
+            return (address & ~0x001F) ^ 0x0400;
+        }
+        return address + 1;
+    }
+
+    private void incrementY() {
+        if ((v & 0x7000) != 0x7000) {
+            v += 0x1000;
+            return;
+        }
+        v &= ~0x7000;
+        int coarseY = (v & 0x03E0) >> 5;
+        if (coarseY == 29) {
+            // Row 29 is the last tile row, wrap into the vertically adjacent nametable
+            coarseY = 0;
+            v ^= 0x0800;
+        }
+        else if (coarseY == 31) {
+            // Rows 30 and 31 hold attributes; scrolling into them wraps without switching nametables
+            coarseY = 0;
+        }
+        else {
+            coarseY++;
+        }
+        v = (v & ~0x03E0) | (coarseY << 5);
+    }
+
+    private void copyHorizontal() {
+        v = (v & ~0x041F) | (t & 0x041F);
+    }
+
+    private void copyVertical() {
+        v = (v & ~0x7BE0) | (t & 0x7BE0);
+    }
+}
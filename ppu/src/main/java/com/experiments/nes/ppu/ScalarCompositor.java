@@ -0,0 +1,28 @@
+package com.experiments.nes.ppu;
+
+import static com.experiments.nes.ppu.Ppu.SPRITE_BEHIND;
+import static com.experiments.nes.ppu.Ppu.SPRITE_COLOR;
+import static com.experiments.nes.ppu.Ppu.SPRITE_ZERO;
+import static com.experiments.nes.ppu.Ppu.WIDTH;
+
+class ScalarCompositor implements Compositor {
+    @Override
+    public boolean composite(byte[] background, int fineX, byte[] sprites, int[] colors, int[] framebuffer, int offset) {
+        boolean spriteZeroHit = false;
+        for (int x = 0; x < WIDTH; x++) {
+            int backgroundPixel = background[x + fineX];
+            int spritePixel = sprites[x];
+            int pixel = backgroundPixel;
+            if ((spritePixel & SPRITE_COLOR) != 0) {
+                if (backgroundPixel != 0 && (spritePixel & SPRITE_ZERO) != 0 && x != WIDTH - 1) {
+                    spriteZeroHit = true;
+                }
+                if (backgroundPixel == 0 || (spritePixel & SPRITE_BEHIND) == 0) {
+                    pixel = spritePixel & SPRITE_COLOR;
+                }
+            }
+            framebuffer[offset + x] = colors[pixel];
+        }
+        return spriteZeroHit;
+    }
+}
@@ -0,0 +1,119 @@
+package com.experiments.nes.ppu;
+
+import com.experiments.nes.cpu.Memory;
+import com.experiments.nes.events.CacheInvalidationEvent;
+
+// Pattern table tiles decoded to 2-bit color indices, one byte per pixel, so a row of a tile is eight array reads
+// instead of two pattern fetches and sixteen shifts. Tiles are decoded on first use after being invalidated, and the
+// pixel arrays allocated on first use, which a headless fork may only reach on sprite zero lines.
+public class TileCache {
+    public static final int TILES = 0x2000 >> 4;
+
+    private final Memory chr;
+    private final boolean flipped;
+    private byte[] pixels;
+    private byte[] flippedPixels;
+    private final boolean[] valid = new boolean[TILES];
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    public TileCache(Memory chr, boolean flipped) {
+        this.chr = chr;
+        this.flipped = flipped;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long invalidations() {
+        return invalidations;
+    }
+
+    public boolean flipped() {
+        return flipped;
+    }
+
+    byte[] pixels() {
+        allocate();
+        return pixels;
+    }
+
+    byte[] flippedPixels() {
+        allocate();
+        return flippedPixels;
+    }
+
+    // Offset of the first pixel of a tile row in pixels() and flippedPixels()
+    int row(int tile, int y) {
+        if (valid[tile]) {
+            hits++;
+        }
+        else {
+            misses++;
+            decode(tile);
+        }
+        return tile << 6 | y << 3;
+    }
+
+    public void invalidate(int address) {
+        int tile = (address & 0x1FFF) >> 4;
+        if (valid[tile]) {
+            valid[tile] = false;
+            invalidations++;
+            CacheInvalidationEvent.emit("tiles", tile, 1);
+        }
+    }
+
+    public void invalidate(int address, int length) {
+        int first = (address & 0x1FFF) >> 4;
+        int last = Math.min(TILES, first + ((length + 15) >> 4));
+        int count = 0;
+        for (int tile = first; tile < last; tile++) {
+            if (valid[tile]) {
+                valid[tile] = false;
+                count++;
+            }
+        }
+        if (count > 0) {
+            invalidations += count;
+            CacheInvalidationEvent.emit("tiles", first, count);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidate(0x0000, 0x2000);
+    }
+
+    private void allocate() {
+        if (pixels == null) {
+            pixels = new byte[TILES * 64];
+            flippedPixels = flipped ? new byte[TILES * 64] : null;
+        }
+    }
+
+    private void decode(int tile) {
+        allocate();
+        int address = tile << 4;
+        int offset = tile << 6;
+        for (int y = 0; y < 8; y++) {
+            int low = chr.load((short) (address + y)) & 0xFF;
+            int high = chr.load((short) (address + y + 8)) & 0xFF;
+            for (int x = 0; x < 8; x++) {
+                int bit = 7 - x;
+                byte pixel = (byte) (((low >> bit) & 0x01) | (((high >> bit) & 0x01) << 1));
+                pixels[offset + x] = pixel;
+                if (flippedPixels != null) {
+                    flippedPixels[offset + bit] = pixel;
+                }
+            }
+            offset += 8;
+        }
+        valid[tile] = true;
+    }
+}
@@ -0,0 +1,52 @@
+package com.experiments.nes.ppu;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static com.experiments.nes.ppu.Ppu.SPRITE_BEHIND;
+import static com.experiments.nes.ppu.Ppu.SPRITE_COLOR;
+import static com.experiments.nes.ppu.Ppu.SPRITE_ZERO;
+import static com.experiments.nes.ppu.Ppu.WIDTH;
+
+// Composites eight pixels per step: priority and transparency become lane masks, and the palette lookup a gather
+class VectorCompositor implements Compositor {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+    private static final int LANES = BYTES.length();
+    // Sprite zero never hits on the last pixel of the line
+    private static final VectorMask<Byte> LAST_SPAN = VectorMask.fromLong(BYTES, (1L << (LANES - 1)) - 1);
+
+    private final int[] indices = new int[WIDTH];
+
+    // Whether the hardware has 256-bit vectors. With narrower ones, the eight int lanes are not compiled to SIMD and
+    // run slower than the scalar compositor.
+    static boolean preferred() {
+        return IntVector.SPECIES_PREFERRED.vectorBitSize() >= INTS.vectorBitSize();
+    }
+
+    @Override
+    public boolean composite(byte[] background, int fineX, byte[] sprites, int[] colors, int[] framebuffer, int offset) {
+        boolean spriteZeroHit = false;
+        for (int x = 0; x < WIDTH; x += LANES) {
+            ByteVector backgroundPixels = ByteVector.fromArray(BYTES, background, x + fineX);
+            ByteVector spritePixels = ByteVector.fromArray(BYTES, sprites, x);
+            ByteVector spriteColors = spritePixels.and((byte) SPRITE_COLOR);
+
+            VectorMask<Byte> backgroundOpaque = backgroundPixels.compare(VectorOperators.NE, 0);
+            VectorMask<Byte> spriteOpaque = spriteColors.compare(VectorOperators.NE, 0);
+            VectorMask<Byte> spriteInFront = spritePixels.and((byte) SPRITE_BEHIND).compare(VectorOperators.EQ, 0);
+            VectorMask<Byte> hit = spritePixels.and((byte) SPRITE_ZERO).compare(VectorOperators.NE, 0)
+                    .and(spriteOpaque)
+                    .and(backgroundOpaque);
+            spriteZeroHit |= (x == WIDTH - LANES ? hit.and(LAST_SPAN) : hit).anyTrue();
+
+            ByteVector pixels = backgroundPixels.blend(spriteColors, spriteOpaque.and(backgroundOpaque.not().or(spriteInFront)));
+            pixels.convertShape(VectorOperators.B2I, INTS, 0).reinterpretAsInts().intoArray(indices, x);
+            IntVector.fromArray(INTS, colors, 0, indices, x).intoArray(framebuffer, offset + x);
+        }
+        return spriteZeroHit;
+    }
+}
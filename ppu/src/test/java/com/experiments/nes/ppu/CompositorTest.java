@@ -0,0 +1,100 @@
+package com.experiments.nes.ppu;
+
+import jdk.incubator.vector.IntVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompositorTest {
+    private final byte[] background = new byte[Ppu.WIDTH + 8];
+    private final byte[] sprites = new byte[Ppu.WIDTH];
+    private final int[] colors = new int[0x20];
+
+    @BeforeEach
+    void setup() {
+        for (int index = 0; index < colors.length; index++) {
+            colors[index] = 0xFF000000 | index;
+        }
+    }
+
+    @Test
+    void testPriority() {
+        background[0] = 0x05;
+        sprites[0] = 0x11;
+        background[1] = 0x05;
+        sprites[1] = (byte) (0x11 | Ppu.SPRITE_BEHIND);
+        sprites[2] = (byte) (0x12 | Ppu.SPRITE_BEHIND);
+        background[3] = 0x06;
+        sprites[3] = Ppu.SPRITE_ZERO;
+        int[] framebuffer = new int[Ppu.WIDTH];
+
+        boolean hit = Compositor.scalar().composite(background, 0, sprites, colors, framebuffer, 0);
+
+        assertFalse(hit);
+        assertEquals(colors[0x11], framebuffer[0]);
+        assertEquals(colors[0x05], framebuffer[1]);
+        assertEquals(colors[0x12], framebuffer[2]);
+        assertEquals(colors[0x06], framebuffer[3]);
+        assertEquals(colors[0x00], framebuffer[4]);
+    }
+
+    @Test
+    void testSpriteZeroHit() {
+        background[10] = 0x01;
+        sprites[10] = (byte) (0x11 | Ppu.SPRITE_ZERO | Ppu.SPRITE_BEHIND);
+
+        assertTrue(Compositor.scalar().composite(background, 0, sprites, colors, new int[Ppu.WIDTH], 0));
+    }
+
+    @Test
+    void testNoSpriteZeroHitOnLastPixel() {
+        background[Ppu.WIDTH - 1] = 0x01;
+        sprites[Ppu.WIDTH - 1] = (byte) (0x11 | Ppu.SPRITE_ZERO);
+
+        assertFalse(Compositor.scalar().composite(background, 0, sprites, colors, new int[Ppu.WIDTH], 0));
+        if (Compositor.vectorAvailable()) {
+            assertFalse(Compositor.vector().composite(background, 0, sprites, colors, new int[Ppu.WIDTH], 0));
+        }
+    }
+
+    @Test
+    void testCreateNeedsWideVectors() {
+        boolean wide = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256;
+
+        assertEquals(wide, Compositor.vectorPreferred());
+        assertEquals(wide ? "VectorCompositor" : "ScalarCompositor", Compositor.create().getClass().getSimpleName());
+    }
+
+    @Test
+    void testVectorMatchesScalar() {
+        assertTrue(Compositor.vectorAvailable());
+        Compositor scalar = Compositor.scalar();
+        Compositor vector = Compositor.vector();
+        Random random = new Random(1);
+        for (int line = 0; line < 1000; line++) {
+            for (int x = 0; x < background.length; x++) {
+                // Mostly transparent pixels so every priority combination turns up
+                background[x] = (byte) (random.nextInt(3) == 0 ? 0 : random.nextInt(16));
+            }
+            for (int x = 0; x < sprites.length; x++) {
+                int color = random.nextInt(3) == 0 ? 0x10 | random.nextInt(16) : 0;
+                sprites[x] = (byte) (color | random.nextInt(4) << 5);
+            }
+            int fineX = random.nextInt(8);
+            int[] expected = new int[Ppu.WIDTH * 2];
+            int[] actual = new int[Ppu.WIDTH * 2];
+
+            boolean expectedHit = scalar.composite(background, fineX, sprites, colors, expected, Ppu.WIDTH);
+            boolean actualHit = vector.composite(background, fineX, sprites, colors, actual, Ppu.WIDTH);
+
+            assertEquals(expectedHit, actualHit);
+            assertArrayEquals(expected, actual);
+        }
+    }
+}
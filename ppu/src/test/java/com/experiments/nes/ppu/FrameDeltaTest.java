@@ -0,0 +1,62 @@
+package com.experiments.nes.ppu;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameDeltaTest {
+    private static final int FRAME_DOTS = Ppu.DOTS * Ppu.SCANLINES;
+
+    @ParameterizedTest
+    @EnumSource(Ppu.Mode.class)
+    void testDirtyRows(Ppu.Mode mode) {
+        PpuTest.ChrMemory chr = new PpuTest.ChrMemory();
+        Ppu ppu = new Ppu(chr, mode);
+        for (int row = 0; row < 8; row++) {
+            chr.bytes[0x0010 + row] = (byte) 0xFF;
+        }
+        write(ppu, 0x3F00, 0x0F, 0x21);
+        write(ppu, 0x3F11, 0x16);
+        ppu.store((short) 0x2001, (byte) 0x1E);
+
+        ppu.advance(FRAME_DOTS);
+        assertEquals(Ppu.HEIGHT, ppu.dirtyRows().count());
+        ppu.advance(FRAME_DOTS);
+        assertFalse(ppu.dirtyRows().any());
+
+        // An 8x8 sprite at y 100 is drawn on lines 101-108
+        ppu.store((short) 0x2003, (byte) 0);
+        for (int value : new int[] {100, 1, 0, 40}) {
+            ppu.store((short) 0x2004, (byte) value);
+        }
+        int[] previous = ppu.framebuffer().clone();
+        ppu.advance(FRAME_DOTS);
+
+        DirtyRows dirty = ppu.dirtyRows();
+        assertEquals(8, dirty.count());
+        assertEquals(101, dirty.next(0));
+        assertEquals(108, dirty.next(102 + 6));
+        assertEquals(-1, dirty.next(109));
+        assertTrue(dirty.dirty(104));
+        assertEquals(40, dirty.start(104));
+        assertEquals(48, dirty.end(104));
+
+        int[] delta = new int[FrameDelta.MAX_LENGTH];
+        int length = FrameDelta.encode(ppu.framebuffer(), dirty, delta);
+        assertEquals(8 * (3 + 8), length);
+        FrameDelta.apply(delta, length, previous);
+        assertArrayEquals(ppu.framebuffer(), previous);
+    }
+
+    private static void write(Ppu ppu, int address, int... values) {
+        ppu.store((short) 0x2006, (byte) (address >> 8));
+        ppu.store((short) 0x2006, (byte) address);
+        for (int value : values) {
+            ppu.store((short) 0x2007, (byte) value);
+        }
+    }
+}
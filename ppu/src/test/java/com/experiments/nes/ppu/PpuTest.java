@@ -0,0 +1,256 @@
+package com.experiments.nes.ppu;
+
+import com.experiments.nes.cpu.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PpuTest {
+    private static final int FRAME_DOTS = Ppu.DOTS * Ppu.SCANLINES;
+
+    private ChrMemory chr;
+    private Ppu ppu;
+
+    @BeforeEach
+    void setup() {
+        chr = new ChrMemory();
+        ppu = new Ppu(chr);
+    }
+
+    @Test
+    void testVblankAndNmi() {
+        ppu.store((short) 0x2000, (byte) 0x80);
+
+        ppu.advance(Ppu.VBLANK_SCANLINE * Ppu.DOTS);
+        assertFalse(ppu.nmi());
+        ppu.advance(1);
+        assertTrue(ppu.nmi());
+
+        assertEquals((byte) 0x80, (byte) (ppu.load((short) 0x2002) & 0x80));
+        assertFalse(ppu.nmi());
+        assertEquals(0, ppu.load((short) 0x2002) & 0x80);
+    }
+
+    @Test
+    void testVblankClearedOnPreRenderLine() {
+        ppu.advance(Ppu.VBLANK_SCANLINE * Ppu.DOTS + 1);
+        ppu.store((short) 0x2000, (byte) 0x80);
+        assertTrue(ppu.nmi());
+
+        ppu.advance((Ppu.PRE_RENDER_SCANLINE - Ppu.VBLANK_SCANLINE) * Ppu.DOTS);
+
+        assertFalse(ppu.nmi());
+    }
+
+    @Test
+    void testDeadlineIsVblank() {
+        ppu.store((short) 0x2000, (byte) 0x80);
+        for (int frame = 0; frame < 3; frame++) {
+            long deadline = ppu.deadline();
+            ppu.sync(deadline - 1);
+            assertFalse(ppu.nmi());
+            ppu.sync(deadline);
+            // Deadlines across the pre-render line may be a dot early, and then the next one is the vblank
+            if (!ppu.nmi()) {
+                assertEquals(deadline + 1, ppu.deadline());
+                ppu.sync(deadline + 1);
+            }
+            assertTrue(ppu.nmi());
+            assertEquals(Ppu.VBLANK_SCANLINE, ppu.scanline());
+            ppu.load((short) 0x2002);
+        }
+    }
+
+    @Test
+    void testBufferedDataRead() {
+        write(0x2400, 0x12, 0x34);
+
+        address(0x2400);
+        ppu.load((short) 0x2007);
+        assertEquals(0x12, ppu.load((short) 0x2007));
+        assertEquals(0x34, ppu.load((short) 0x2007));
+    }
+
+    @Test
+    void testIncrementBy32() {
+        ppu.store((short) 0x2000, (byte) 0x04);
+        write(0x2000, 0x01, 0x02);
+
+        ppu.store((short) 0x2000, (byte) 0x00);
+        address(0x2020);
+        ppu.load((short) 0x2007);
+        assertEquals(0x02, ppu.load((short) 0x2007));
+    }
+
+    @Test
+    void testPaletteMirrors() {
+        write(0x3F10, 0x2A);
+
+        address(0x3F00);
+        assertEquals(0x2A, ppu.load((short) 0x2007));
+        address(0x3F20);
+        assertEquals(0x2A, ppu.load((short) 0x2007));
+    }
+
+    @Test
+    void testHorizontalMirroring() {
+        ppu.mirroring(Mirroring.Horizontal);
+        write(0x2000, 0x55);
+
+        address(0x2400);
+        ppu.load((short) 0x2007);
+        assertEquals(0x55, ppu.load((short) 0x2007));
+        address(0x2800);
+        ppu.load((short) 0x2007);
+        assertNotEquals(0x55, ppu.load((short) 0x2007));
+    }
+
+    @Test
+    void testChrWrites() {
+        write(0x0010, 0xAA);
+
+        assertEquals((byte) 0xAA, chr.bytes[0x0010]);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Ppu.Mode.class)
+    void testBackgroundAndSprites(Ppu.Mode mode) {
+        Ppu ppu = scene(new Ppu(chr, mode));
+
+        ppu.advance(2 * FRAME_DOTS);
+
+        int[] frame = ppu.framebuffer();
+        // Tile 1 is solid color 1, the first row of tiles uses palette 1
+        assertEquals(Palette.ARGB[0x16], frame[0]);
+        // Background elsewhere uses palette 0
+        assertEquals(Palette.ARGB[0x21], frame[40 * Ppu.WIDTH + 16]);
+        // Sprite 0 is drawn a line below its Y, in front of the background, with a border of color 3
+        assertEquals(Palette.ARGB[0x31], frame[17 * Ppu.WIDTH + 16]);
+        assertEquals(Palette.ARGB[0x30], frame[17 * Ppu.WIDTH + 17]);
+        assertEquals(Palette.ARGB[0x21], frame[16 * Ppu.WIDTH + 16]);
+        // Sprite zero hit is cleared on the pre-render line and set again once its line has been drawn
+        assertEquals(0, ppu.load((short) 0x2002) & 0x40);
+        ppu.advance(20 * Ppu.DOTS);
+        assertEquals(0x40, ppu.load((short) 0x2002) & 0x40);
+    }
+
+    @Test
+    void testModesAgree() {
+        Ppu scanline = scene(new Ppu(chr, Ppu.Mode.Scanline));
+        Ppu dot = scene(new Ppu(chr, Ppu.Mode.Dot));
+        for (Ppu ppu : new Ppu[] {scanline, dot}) {
+            // Scroll 3 pixels right and 5 down
+            ppu.store((short) 0x2005, (byte) 3);
+            ppu.store((short) 0x2005, (byte) 5);
+            ppu.hashing(true);
+        }
+
+        scanline.advance(2 * FRAME_DOTS);
+        dot.advance(2 * FRAME_DOTS);
+
+        assertArrayEquals(scanline.framebuffer(), dot.framebuffer());
+        assertEquals(scanline.frameHash(), dot.frameHash());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Ppu.Mode.class)
+    void testFrameHashWithoutOutput(Ppu.Mode mode) {
+        Ppu drawn = scene(new Ppu(chr, mode));
+        drawn.advance(2 * FRAME_DOTS);
+        Ppu hashed = scene(new Ppu(chr, mode));
+        hashed.output(false);
+        hashed.hashing(true);
+
+        hashed.advance(2 * FRAME_DOTS);
+
+        assertNotEquals(0, hashed.frameHash());
+        assertEquals(FrameHash.of(drawn.framebuffer()), hashed.frameHash());
+        // Nothing was drawn
+        assertEquals(0, hashed.framebuffer()[0]);
+        assertEquals(0, drawn.frameHash());
+    }
+
+    @Test
+    void testFrameHashNeedsWholeFrame() {
+        scene(ppu);
+        ppu.advance(FRAME_DOTS / 2);
+        ppu.hashing(true);
+
+        ppu.advance(FRAME_DOTS / 2);
+        assertEquals(0, ppu.frameHash());
+        ppu.advance(FRAME_DOTS);
+        long hash = ppu.frameHash();
+        assertNotEquals(0, hash);
+
+        // A different backdrop changes the hash of the next frame
+        write(0x3F00, 0x0E);
+        ppu.advance(FRAME_DOTS);
+        assertNotEquals(hash, ppu.frameHash());
+    }
+
+    private Ppu scene(Ppu ppu) {
+        this.ppu = ppu;
+        ppu.mirroring(Mirroring.Vertical);
+        for (int row = 0; row < 8; row++) {
+            // Tile 1: every pixel color 1; tile 2: every pixel color 2 with a left border of color 3
+            chr.bytes[0x0010 + row] = (byte) 0xFF;
+            chr.bytes[0x0020 + row] = (byte) 0x80;
+            chr.bytes[0x0028 + row] = (byte) 0xFF;
+        }
+        for (int tile = 0; tile < 32 * 30; tile += 3) {
+            write(0x2000 + tile, tile % 2 == 0 ? 1 : 2);
+        }
+        // Top-left attribute quadrant uses palette 1
+        write(0x23C0, 0x01);
+        write(0x3F00, 0x0F, 0x21, 0x22, 0x23, 0x0F, 0x16, 0x17, 0x18);
+        write(0x3F11, 0x2C, 0x30, 0x31);
+        // Sprite 0 at (16, 17) using tile 2, sprite 1 flipped behind the background
+        sprite(0, 16, 2, 0x00, 16);
+        sprite(1, 60, 2, 0x60, 100);
+        ppu.store((short) 0x2000, (byte) 0x00);
+        ppu.store((short) 0x2001, (byte) 0x1E);
+        address(0x0000);
+        return ppu;
+    }
+
+    private void sprite(int index, int y, int tile, int attributes, int x) {
+        ppu.store((short) 0x2003, (byte) (index * 4));
+        ppu.store((short) 0x2004, (byte) y);
+        ppu.store((short) 0x2004, (byte) tile);
+        ppu.store((short) 0x2004, (byte) attributes);
+        ppu.store((short) 0x2004, (byte) x);
+    }
+
+    private void address(int address) {
+        ppu.store((short) 0x2006, (byte) (address >> 8));
+        ppu.store((short) 0x2006, (byte) address);
+    }
+
+    private void write(int address, int... values) {
+        address(address);
+        for (int value : values) {
+            ppu.store((short) 0x2007, (byte) value);
+        }
+    }
+
+    static class ChrMemory implements Memory {
+        final byte[] bytes = new byte[0x2000];
+
+        @Override
+        public byte load(short address) {
+            return bytes[address & 0x1FFF];
+        }
+
+        @Override
+        public void store(short address, byte value) {
+            bytes[address & 0x1FFF] = value;
+        }
+    }
+}
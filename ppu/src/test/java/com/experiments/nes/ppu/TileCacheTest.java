@@ -0,0 +1,146 @@
+package com.experiments.nes.ppu;
+
+import com.experiments.nes.events.CacheInvalidationEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TileCacheTest {
+    @TempDir
+    Path directory;
+
+    private PpuTest.ChrMemory chr;
+    private TileCache cache;
+
+    @BeforeEach
+    void setup() {
+        chr = new PpuTest.ChrMemory();
+        cache = new TileCache(chr, true);
+        // Tile 1, row 2: colors 3 2 1 0 0 1 2 3
+        chr.bytes[0x0012] = (byte) 0b10100101;
+        chr.bytes[0x001A] = (byte) 0b11000011;
+    }
+
+    @Test
+    void testDecode() {
+        int row = cache.row(1, 2);
+
+        assertEquals(1 << 6 | 2 << 3, row);
+        assertArrayEquals(new byte[] {3, 2, 1, 0, 0, 1, 2, 3}, slice(cache.pixels(), row));
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void testFlipped() {
+        chr.bytes[0x0012] = (byte) 0b10000000;
+
+        int row = cache.row(1, 2);
+
+        assertArrayEquals(new byte[] {3, 2, 0, 0, 0, 0, 2, 2}, slice(cache.pixels(), row));
+        assertArrayEquals(new byte[] {2, 2, 0, 0, 0, 0, 2, 3}, slice(cache.flippedPixels(), row));
+    }
+
+    @Test
+    void testHits() {
+        cache.row(1, 0);
+        cache.row(1, 7);
+        cache.row(2, 0);
+
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void testInvalidate() {
+        cache.row(1, 2);
+        chr.bytes[0x0012] = 0;
+        cache.row(1, 2);
+        assertEquals(3, cache.pixels()[(1 << 6 | 2 << 3)]);
+
+        cache.invalidate(0x001F);
+        int row = cache.row(1, 2);
+
+        assertArrayEquals(new byte[] {2, 2, 0, 0, 0, 0, 2, 2}, slice(cache.pixels(), row));
+        assertEquals(1, cache.invalidations());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void testInvalidateRange() {
+        cache.row(0, 0);
+        cache.row(1, 0);
+        cache.row(2, 0);
+
+        cache.invalidate(0x0010, 0x0020);
+
+        assertEquals(2, cache.invalidations());
+        cache.row(0, 0);
+        cache.row(1, 0);
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    void testPpuChrWriteInvalidates() {
+        Ppu ppu = new Ppu(chr);
+        ppu.tiles().row(1, 2);
+
+        ppu.store((short) 0x2006, (byte) 0x00);
+        ppu.store((short) 0x2006, (byte) 0x12);
+        ppu.store((short) 0x2007, (byte) 0x00);
+
+        assertEquals(1, ppu.tiles().invalidations());
+        int row = ppu.tiles().row(1, 2);
+        assertArrayEquals(new byte[] {2, 2, 0, 0, 0, 0, 2, 2}, slice(ppu.tiles().pixels(), row));
+    }
+
+    @Test
+    void testChrChanged() {
+        Ppu ppu = new Ppu(chr);
+        ppu.tiles().row(0x100, 0);
+
+        ppu.chrChanged(0x1000, 0x1000);
+
+        assertEquals(1, ppu.tiles().invalidations());
+    }
+
+    @Test
+    void testInvalidationEventCountsValidTiles() throws IOException {
+        cache.row(1, 0);
+        cache.row(3, 0);
+
+        Path file = directory.resolve("invalidation.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(CacheInvalidationEvent.class);
+            recording.start();
+            // Tiles 0 to 3, of which only 1 and 3 were decoded
+            cache.invalidate(0x0000, 0x0040);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.experiments.nes.CacheInvalidation"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(0, events.get(0).getInt("first"));
+        assertEquals(2, events.get(0).getInt("count"));
+        assertEquals(2, cache.invalidations());
+    }
+
+    private static byte[] slice(byte[] pixels, int row) {
+        byte[] slice = new byte[8];
+        System.arraycopy(pixels, row, slice, 0, 8);
+        return slice;
+    }
+}